@@ -0,0 +1,277 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+
+/**
+ * Adaptive replication controller. Instead of a fixed number
+ * of replicas per sweep cell, replicas are run in parallel
+ * batches until the 95% Student-t confidence interval of the
+ * average packet delay is tight enough:
+ *
+ *      t(0.975, n - 1) * s / sqrt(n) <= target * |mean|
+ *
+ * Cells with a noisy estimate (high lambda) get more replicas
+ * and cells that converge quickly stop early. Replicas use the
+ * same files and layout as GenerateReplicas (independent mode),
+ * so ProcessData can still process the sims folder afterwards.
+ * The grid, packets and output folder come from a sweep spec,
+ * the built in SweepSpec defaults unless a spec file is given.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class AdaptiveReplication {
+
+  private static final String OUTPUT_TIMES_FOLDER = "times";
+  private static final String OUTPUT_SIMS_FOLDER = "sims";
+
+  public static final double DEFAULT_TARGET = 0.05;
+  public static final int DEFAULT_MIN_REPLICAS = 5;
+  public static final int DEFAULT_MAX_REPLICAS = 200;
+
+  /** grid, packets and output folder of the replicas **/
+  private SweepSpec spec;
+
+  /** relative half width to reach in every cell **/
+  private double target;
+
+  private int minReplicas;
+  private int maxReplicas;
+
+  /** replicas run concurrently in one batch **/
+  private int batchSize;
+
+  private ExecutorService executor;
+
+  /**
+   * main
+   *
+   * @param relative half width target [default = 0.05]
+   * @param minimum replicas per cell [default = 5]
+   * @param maximum replicas per cell [default = 200]
+   * @param number of threads [default = available processors]
+   * @param sweep spec file [default = built in grid]
+   */
+  public static void main(String[] args) throws Exception {
+
+    double target = DEFAULT_TARGET;
+    int minReplicas = DEFAULT_MIN_REPLICAS;
+    int maxReplicas = DEFAULT_MAX_REPLICAS;
+    int threads = Runtime.getRuntime().availableProcessors();
+    SweepSpec spec = SweepSpec.defaults();
+
+    try {
+      if (args.length > 0) {
+        target = Double.parseDouble(args[0]);
+      }
+      if (args.length > 1) {
+        minReplicas = Integer.parseInt(args[1]);
+      }
+      if (args.length > 2) {
+        maxReplicas = Integer.parseInt(args[2]);
+      }
+      if (args.length > 3) {
+        threads = Integer.parseInt(args[3]);
+      }
+    } catch (NumberFormatException e) {
+      System.out.println("Usage:\n" +
+        "(1) Relative half width target [default = 0.05]\n" +
+        "(2) Minimum replicas per cell [default = 5]\n" +
+        "(3) Maximum replicas per cell [default = 200]\n" +
+        "(4) Number of threads [default = available processors]\n" +
+        "(5) Sweep spec file [default = built in grid]");
+      return;
+    }
+
+    if (args.length > 4) {
+      try {
+        spec = SweepSpec.load(args[4]);
+      } catch (IOException e) {
+        System.out.println("Error: " + e.getMessage());
+        return;
+      }
+      if (!spec.getMode().equals(GenerateReplicas.INDEPENDENT)) {
+        System.out.println("Error: adaptive replication runs independent replicas only");
+        return;
+      }
+    }
+
+    AdaptiveReplication controller = new AdaptiveReplication(spec, target, minReplicas, maxReplicas, threads);
+    try {
+      controller.run();
+    } finally {
+      controller.shutdown();
+    }
+  }
+
+  /**
+   * AdaptiveReplication
+   *
+   * @param target      : relative half width, e.g. 0.05
+   * @param minReplicas : replicas before the rule is checked, at least 2
+   * @param maxReplicas : replicas after which a cell stops regardless
+   * @param threads     : replicas run in parallel
+   */
+  public AdaptiveReplication(double target, int minReplicas, int maxReplicas, int threads) {
+    this(SweepSpec.defaults(), target, minReplicas, maxReplicas, threads);
+  }
+
+  /**
+   * AdaptiveReplication
+   *
+   * @param spec : grid, packets and output folder, the
+   *               replica count and mode are not used
+   */
+  public AdaptiveReplication(SweepSpec spec, double target, int minReplicas, int maxReplicas, int threads) {
+    if (target <= 0 || minReplicas < 2 || maxReplicas < minReplicas || threads < 1) {
+      throw new IllegalArgumentException("Invalid adaptive replication parameters");
+    }
+    this.spec = spec;
+    this.target = target;
+    this.minReplicas = minReplicas;
+    this.maxReplicas = maxReplicas;
+    this.batchSize = threads;
+    executor = Executors.newFixedThreadPool(threads);
+  }
+
+  /**
+   * run
+   *
+   * Run every sweep cell until its target is met
+   * and print one result line per cell
+   */
+  public void run() throws IOException, InterruptedException {
+
+    System.out.println("File,Replicas,Utilization,Packet Delay,Packet Delay CI,Relative Half Width," +
+      "Packets in System,Packets in System CI");
+
+    new File(spec.getOutput() + File.separator + OUTPUT_TIMES_FOLDER).mkdirs();
+
+    for (double interval : spec.getIntervals()) {
+      for (int lambda : spec.getLambdas()) {
+        runCell(interval, lambda);
+      }
+    }
+  }
+
+  /**
+   * runCell
+   *
+   * Launch batches of replicas for one (interval, lambda)
+   * cell until the relative half width target is reached
+   */
+  private void runCell(final double interval, final int lambda) throws IOException, InterruptedException {
+
+    String cell = "sim-" + lambda + "-" + spec.getMu() + "-" + interval;
+    new File(spec.getOutput() + File.separator + OUTPUT_SIMS_FOLDER + File.separator + cell).mkdirs();
+
+    List<double[]> results = new ArrayList<double[]>();
+    double halfWidth = Double.POSITIVE_INFINITY;
+    double mean = 0.0;
+
+    while (results.size() < maxReplicas) {
+      int first = results.size();
+      int size = first < minReplicas ? Math.max(batchSize, minReplicas - first) : batchSize;
+      size = Math.min(size, maxReplicas - first);
+
+      List<Future<double[]>> batch = new ArrayList<Future<double[]>>();
+      for (int i = first; i < first + size; i++) {
+        final int replica = i;
+        batch.add(executor.submit(new Callable<double[]>() {
+          public double[] call() throws IOException {
+            return runReplica(replica, interval, lambda);
+          }
+        }));
+      }
+
+      for (Future<double[]> future : batch) {
+        try {
+          results.add(future.get());
+        } catch (ExecutionException e) {
+          throw new IOException("Replica failed in " + cell + ": " + e.getCause().getMessage());
+        }
+      }
+
+      double[] delays = column(results, 1);
+      mean = ConfidenceInterval.mean(delays);
+      halfWidth = ConfidenceInterval.halfWidth(delays);
+
+      if (results.size() >= minReplicas && halfWidth <= target * Math.abs(mean)) {
+        break;
+      }
+    }
+
+    double[] packets = column(results, 2);
+
+    System.out.println(cell +
+      "," + results.size() +
+      "," + ConfidenceInterval.mean(column(results, 0)) +
+      "," + mean +
+      "," + halfWidth +
+      "," + (mean != 0 ? halfWidth / Math.abs(mean) : Double.NaN) +
+      "," + ConfidenceInterval.mean(packets) +
+      "," + ConfidenceInterval.halfWidth(packets));
+  }
+
+  /**
+   * runReplica
+   *
+   * Generate the files of one replica when missing
+   * and simulate it
+   *
+   * @return average utilization, packet delay and
+   *         packets in system of the replica
+   */
+  private double[] runReplica(int replica, double interval, int lambda) throws IOException {
+
+    int mu = spec.getMu();
+    double xi = spec.getXi();
+    String random = spec.getOutput() + File.separator;
+    String folder = spec.getOutput() + File.separator + OUTPUT_TIMES_FOLDER + File.separator;
+    String randomIA = random + "randomIA" + replica;
+    String randomST = random + "randomST" + replica;
+    String iaFile = folder + "replica-" + replica + "-ia-" + lambda + "-" + interval + ".csv";
+    String stFile = folder + "replica-" + replica + "-st-" + mu + "-" + interval + ".csv";
+    String outFile = spec.getOutput() + File.separator + OUTPUT_SIMS_FOLDER + File.separator +
+      "sim-" + lambda + "-" + mu + "-" + interval + File.separator + "replica-" + replica + ".csv";
+
+    // cells run one at a time, so only one thread ever
+    // creates the files of a given replica
+    if (!new File(randomIA).exists()) {
+      RandomNumberGenerator.generate(0, 1, spec.getPackets(), randomIA);
+    }
+    if (!new File(randomST).exists()) {
+      RandomNumberGenerator.generate(0, 1, spec.getPackets(), randomST);
+    }
+    // Always Use 0.5 intervals for Service Times
+    TrafficGenerator.generateTimesIfStale(0.5, -0.5, xi, mu, randomST, stFile);
+    TrafficGenerator.generateTimesIfStale(interval, -interval, xi, lambda, randomIA, iaFile);
+
+    SingleServerQueue server = Simulator.run(iaFile, stFile, outFile, "delay", spec.getServers());
+
+    double utilization = 0.0;
+    double delay = 0.0;
+    double packets = 0.0;
+    List<SingleServerQueue.Statistic> statistics = server.getStatistics();
+    for (SingleServerQueue.Statistic stat : statistics) {
+      utilization += stat.serverUtilization;
+      delay += stat.delay;
+      packets += stat.queueSize + stat.serverInUse;
+    }
+
+    int count = statistics.size();
+    return new double[]{utilization / count, delay / count, packets / count};
+  }
+
+  private static double[] column(List<double[]> results, int index) {
+    double[] values = new double[results.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = results.get(i)[index];
+    }
+    return values;
+  }
+
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
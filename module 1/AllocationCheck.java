@@ -0,0 +1,196 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * Allocation regression check of the single server queue
+ * event loop, driven by a trace and by a generator.
+ *
+ * The queue is first run WARMUP_RUNS times so the JIT has
+ * compiled its hot path. Then the bytes allocated by this
+ * thread are measured over a run of N and a run of 2N
+ * packets; the difference over the difference in events
+ * is the steady-state allocation per event, free of the
+ * set-up cost and of the initial transient. A mode fails
+ * when it exceeds its budget in bytes per event.
+ *
+ * Budgets are the allocation of the current event loop:
+ * the trace mode parses every time from its file and keeps
+ * a Statistic row per departure, the generator mode only
+ * allocates an event, its tree node and the boxed service
+ * time of a waiting customer. Lower a budget when the loop
+ * gets leaner.
+ *
+ * Exits with status 1 when a mode is over its budget.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class AllocationCheck {
+
+  private static final int DEFAULT_PACKETS = 100000;
+  private static final int WARMUP_RUNS = 3;
+
+  /** budgets in bytes per event **/
+  private static final double TRACE_BUDGET = 1000.0;
+  private static final double GENERATOR_BUDGET = 128.0;
+
+  /** allowance for the counter's TLAB granularity **/
+  private static final double TOLERANCE = 0.5;
+
+  private static final int LAMBDA = 5;
+  private static final int MU = 10;
+
+  /**
+   * main
+   *
+   * @param packets of the measured window [default = 100000]
+   * @param budget in bytes per event for both modes [default = per mode]
+   */
+  public static void main(String[] args) throws IOException {
+
+    int packets = DEFAULT_PACKETS;
+    double budget = Double.NaN;
+    try {
+      if (args.length > 0) {
+        packets = Integer.parseInt(args[0]);
+      }
+      if (args.length > 1) {
+        budget = Double.parseDouble(args[1]);
+      }
+    } catch (NumberFormatException e) {
+      System.out.println("Usage:\n" +
+        "(1) Packets of the measured window [default = 100000]\n" +
+        "(2) Budget in bytes per event for both modes [default = per mode]");
+      return;
+    }
+
+    if (Benchmark.allocatedBytes() < 0) {
+      System.out.println("Error: this JVM does not count allocated bytes per thread");
+      System.exit(1);
+    }
+
+    final File folder = java.nio.file.Files.createTempDirectory("allocation").toFile();
+    PrintStream out = System.out;
+    boolean passed = true;
+    try {
+      System.setOut(new PrintStream(new ByteArrayOutputStream()));
+      writeTraffic(folder, packets);
+      writeTraffic(folder, 2 * packets);
+      System.setOut(out);
+
+      passed &= check("SingleServerQueue (trace)", packets, Double.isNaN(budget) ? TRACE_BUDGET : budget,
+        new Model() {
+          SingleServerQueue server;
+
+          void prepare(int packets) throws IOException {
+            String prefix = folder.getPath() + File.separator + packets;
+            server = new SingleServerQueue(new TraceEventGenerator(prefix + "-ia.csv", prefix + "-st.csv"), "delay");
+          }
+
+          long run() throws IOException {
+            server.run();
+            return server.getEventsProcessed();
+          }
+        });
+
+      passed &= check("SingleServerQueue (generator)", packets, Double.isNaN(budget) ? GENERATOR_BUDGET : budget,
+        new Model() {
+          SingleServerQueue server;
+
+          void prepare(int packets) {
+            server = new SingleServerQueue(new CorrelatedEventGenerator(LAMBDA, MU, 0.7, 0.5, 1),
+              StopCondition.departures(packets), 1);
+          }
+
+          long run() throws IOException {
+            server.run();
+            return server.getEventsProcessed();
+          }
+        });
+    } finally {
+      System.setOut(out);
+      File[] files = folder.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          file.delete();
+        }
+      }
+      folder.delete();
+    }
+
+    if (!passed) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * check
+   *
+   * Measure the steady-state allocation of a mode
+   *
+   * @return whether it is within the budget
+   */
+  private static boolean check(String name, int packets, double budget, Model model) throws IOException {
+    PrintStream out = System.out;
+    long[] shortRun;
+    long[] longRun;
+    try {
+      System.setOut(new PrintStream(new ByteArrayOutputStream()));
+      for (int i = 0; i < WARMUP_RUNS; i++) {
+        model.prepare(packets);
+        model.run();
+      }
+      shortRun = measure(model, packets);
+      longRun = measure(model, 2 * packets);
+    } finally {
+      System.setOut(out);
+    }
+    double bytesPerEvent = (double) (longRun[1] - shortRun[1]) / (longRun[0] - shortRun[0]);
+
+    boolean passed = bytesPerEvent <= budget + TOLERANCE;
+    System.out.println(name + ": " + bytesPerEvent + " bytes/event, budget " + budget +
+      (passed ? " - OK" : " - FAILED"));
+    return passed;
+  }
+
+  /**
+   * measure
+   *
+   * @return {events, bytes allocated} of one run, the
+   *         set-up of the queue is not measured
+   */
+  private static long[] measure(Model model, int packets) throws IOException {
+    model.prepare(packets);
+    long before = Benchmark.allocatedBytes();
+    long events = model.run();
+    return new long[]{events, Benchmark.allocatedBytes() - before};
+  }
+
+  /**
+   * writeTraffic
+   *
+   * write the inter-arrival and service times files
+   * of the given number of packets
+   */
+  private static void writeTraffic(File folder, int packets) throws IOException {
+    String prefix = folder.getPath() + File.separator + packets;
+    RandomNumberGenerator.generate(0, 1, packets, prefix + "-randomIA", new Random(1));
+    RandomNumberGenerator.generate(0, 1, packets, prefix + "-randomST", new Random(2));
+    TrafficGenerator.generateTimes(0.5, -0.5, 0.7, LAMBDA, prefix + "-randomIA", prefix + "-ia.csv");
+    TrafficGenerator.generateTimes(0.5, -0.5, 0.7, MU, prefix + "-randomST", prefix + "-st.csv");
+  }
+
+  /**
+   * Model
+   *
+   * A queue set up by prepare and run by run
+   */
+  private abstract static class Model {
+    abstract void prepare(int packets) throws IOException;
+
+    /**
+     * @return events processed by the run
+     */
+    abstract long run() throws IOException;
+  }
+}
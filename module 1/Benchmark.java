@@ -0,0 +1,118 @@
+import java.util.*;
+import java.lang.management.*;
+
+/**
+ * Minimal benchmark harness. An operation is run for a number
+ * of warm-up iterations, so the JIT compiles it, and then for
+ * the measured iterations. Every iteration reports its time
+ * per operation, its allocated bytes per operation (from the
+ * thread allocation counter of the HotSpot ThreadMXBean) and
+ * the garbage collections it triggered; the result line is
+ * the mean over iterations with a 95% interval on the time.
+ *
+ * Results go to sink so the JIT cannot drop the work.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class Benchmark {
+
+  public static final int DEFAULT_WARMUP_ITERATIONS = 5;
+  public static final int DEFAULT_ITERATIONS = 10;
+
+  /** consumes benchmark results **/
+  public static volatile double sink;
+
+  /**
+   * Operation
+   *
+   * Benchmarked code, run operations times per call
+   */
+  public interface Operation {
+    /**
+     * @return a value depending on the work, sent to sink
+     */
+    double run(long operations) throws Exception;
+  }
+
+  private int warmupIterations;
+  private int iterations;
+
+  public Benchmark() {
+    this(DEFAULT_WARMUP_ITERATIONS, DEFAULT_ITERATIONS);
+  }
+
+  public Benchmark(int warmupIterations, int iterations) {
+    this.warmupIterations = warmupIterations;
+    this.iterations = Math.max(iterations, 2);
+  }
+
+  public static void printHeader() {
+    System.out.println("Benchmark,ns/op,ns/op CI,ops/s,bytes/op,GCs");
+  }
+
+  /**
+   * measure
+   *
+   * Run and print one benchmark
+   *
+   * @param name       : printed name
+   * @param operations : operations per iteration
+   * @param operation  : the benchmarked code
+   * @return mean nanoseconds per operation
+   */
+  public double measure(String name, long operations, Operation operation) throws Exception {
+
+    for (int i = 0; i < warmupIterations; i++) {
+      sink += operation.run(operations);
+    }
+
+    double[] nanosPerOperation = new double[iterations];
+    double bytes = 0.0;
+    long collections = 0;
+
+    for (int i = 0; i < iterations; i++) {
+      long allocatedBefore = allocatedBytes();
+      long collectionsBefore = collectionCount();
+      long start = System.nanoTime();
+
+      sink += operation.run(operations);
+
+      long elapsed = System.nanoTime() - start;
+      bytes += allocatedBytes() - allocatedBefore;
+      collections += collectionCount() - collectionsBefore;
+      nanosPerOperation[i] = (double) elapsed / operations;
+    }
+
+    double mean = ConfidenceInterval.mean(nanosPerOperation);
+    System.out.println(name +
+      "," + mean +
+      "," + ConfidenceInterval.halfWidth(nanosPerOperation) +
+      "," + (long) (1e9 / mean) +
+      "," + (allocatedBytes() < 0 ? Double.NaN : bytes / iterations / operations) +
+      "," + collections);
+    return mean;
+  }
+
+  /**
+   * allocatedBytes
+   *
+   * @return bytes allocated by this thread so far,
+   *         -1 when the JVM cannot tell
+   */
+  public static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  private static long collectionCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(collector.getCollectionCount(), 0);
+    }
+    return count;
+  }
+}
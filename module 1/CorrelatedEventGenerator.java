@@ -0,0 +1,115 @@
+import java.util.*;
+
+/**
+ * Implementation of a correlated random event generator.
+ * Applies the TES transforms of TrafficGenerator to a
+ * uniform stream on the fly instead of to a file of
+ * random numbers.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class CorrelatedEventGenerator implements EventGenerator {
+
+  private TESModelGenerator generator;
+
+  private Random randomAT;
+  private Random randomST;
+  private double lambda;
+  private double mu;
+  private double xi;
+
+  private double previous_AT_U_prime;
+  private double previous_ST_U_prime;
+
+  /**
+   * Seeded generator. Two generators built with the same
+   * seed produce identical arrival and service streams.
+   *
+   * @param lambda
+   * @param mu
+   * @param xi       : stitching parameter
+   * @param interval : innovations are uniform on [-interval, interval)
+   * @param seed for the arrival and service streams
+   */
+  public CorrelatedEventGenerator(double lambda, double mu, double xi, double interval, long seed) {
+    this.lambda = lambda;
+    this.mu = mu;
+    this.xi = xi;
+
+    Random seeder = new Random(seed);
+    randomAT = new Random(seeder.nextLong());
+    randomST = new Random(seeder.nextLong());
+
+    generator = new TESModelGenerator();
+    generator.setUniformRange(interval, -interval);
+
+    previous_AT_U_prime = randomAT.nextDouble();
+    previous_ST_U_prime = randomST.nextDouble();
+  }
+
+  /**
+   * Generator driven by the given uniform streams, for
+   * example LatticeRandom streams for randomized
+   * quasi-Monte Carlo replicas.
+   *
+   * @param lambda
+   * @param mu
+   * @param xi       : stitching parameter
+   * @param interval : innovations are uniform on [-interval, interval)
+   * @param randomAT uniform source for arrival times
+   * @param randomST uniform source for service times
+   */
+  public CorrelatedEventGenerator(double lambda, double mu, double xi, double interval,
+      Random randomAT, Random randomST) {
+    this.lambda = lambda;
+    this.mu = mu;
+    this.xi = xi;
+    this.randomAT = randomAT;
+    this.randomST = randomST;
+
+    generator = new TESModelGenerator();
+    generator.setUniformRange(interval, -interval);
+
+    previous_AT_U_prime = randomAT.nextDouble();
+    previous_ST_U_prime = randomST.nextDouble();
+  }
+
+  /**
+   * nextArrivalTime
+   *
+   * Using TES Model Generator to generate
+   * correlated exponentially distributed
+   * random variables.
+   *
+   * @return next generated arrival time
+   */
+  public double nextArrivalTime() {
+    double u_prime = generator.generateNext(previous_AT_U_prime, randomAT.nextDouble());
+    double u_n = generator.stitchTransform(u_prime, xi);
+    previous_AT_U_prime = u_prime;
+
+    return generator.inverseExponentialTransform(lambda, u_n);
+  }
+
+  /**
+   * nextServiceTime
+   *
+   * Using TES Model Generator to generate
+   * correlated exponentially distributed
+   * random variables.
+   *
+   * @return next random service time
+   */
+  public double nextServiceTime() {
+    double u_prime = generator.generateNext(previous_ST_U_prime, randomST.nextDouble());
+    double u_n = generator.stitchTransform(u_prime, xi);
+    previous_ST_U_prime = u_prime;
+
+    return generator.inverseExponentialTransform(mu, u_n);
+  }
+
+  public void close() {
+    // nothing to release
+  }
+}
@@ -0,0 +1,77 @@
+import java.util.*;
+
+/**
+ * Implementation of a random event generator. The generator
+ * generates exponentially distributed inter-arrival and
+ * service times on the fly, so runs of any length need no
+ * times files.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class DefaultEventGenerator implements EventGenerator {
+
+  private Random randomAT;
+  private Random randomST;
+  private double lambda;
+  private double mu;
+
+  /**
+   * Seeded generator. Two generators built with the same
+   * seed produce identical arrival and service streams.
+   *
+   * @param lambda
+   * @param mu
+   * @param seed for the arrival and service streams
+   */
+  public DefaultEventGenerator(double lambda, double mu, long seed) {
+    Random seeder = new Random(seed);
+    this.lambda = lambda;
+    this.mu = mu;
+    randomAT = new Random(seeder.nextLong());
+    randomST = new Random(seeder.nextLong());
+  }
+
+  /**
+   * Generator driven by the given uniform streams, for
+   * example LatticeRandom streams for randomized
+   * quasi-Monte Carlo replicas.
+   *
+   * @param lambda
+   * @param mu
+   * @param randomAT uniform source for arrival times
+   * @param randomST uniform source for service times
+   */
+  public DefaultEventGenerator(double lambda, double mu, Random randomAT, Random randomST) {
+    this.lambda = lambda;
+    this.mu = mu;
+    this.randomAT = randomAT;
+    this.randomST = randomST;
+  }
+
+  /**
+   * nextArrivalTime
+   *
+   * Using inversion method to generate exponential distribution
+   *
+   * @return next generated arrival time
+   */
+  public double nextArrivalTime() {
+    return (-1 / lambda) * Math.log(1 - randomAT.nextDouble());
+  }
+
+  /**
+   * nextServiceTime
+   *
+   * Using inversion method to generate exponential distribution
+   *
+   * @return next random service time
+   */
+  public double nextServiceTime() {
+    return (-1 / mu) * Math.log(1 - randomST.nextDouble());
+  }
+
+  public void close() {
+    // nothing to release
+  }
+}
@@ -1,66 +1,212 @@
 import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
 import java.io.*;
 
 public class GenerateReplicas {
 
-  private static final String OUTPUT_FOLDER = "replicas";
   private static final String OUTPUT_TIMES_FOLDER = "times";
   private static final String OUTPUT_SIMS_FOLDER = "sims";
-  private static final int NUMBER_OF_REPLICAS = 20;
-  private static final int NUMBER_OF_PACKETS = 110000;
 
-  private static final double[] intervals = new double[]{0.1,0.01,0.5};
-  private static final int[] lambdas = new int[]{1,3,5,7,9};
-  private static final int mu = 10;
-  private static final double xi = 0.7;
+  /** Replica modes **/
+  public static final String INDEPENDENT = "IND";
+  public static final String ANTITHETIC = "ANTI";
+  public static final String RQMC = "RQMC";
 
+  /**
+   * In RQMC mode the replicas form replicas / RQMC_POINTS
+   * independent randomizations of an RQMC_POINTS point lattice,
+   * RQMC_POINTS is a prime.
+   */
+  public static final int RQMC_POINTS = 5;
+
+  /** Always Use 0.5 intervals for Service Times **/
+  private static final double SERVICE_INTERVAL = 0.5;
+
+  /**
+   * Sweep grid and replica mode:
+   * IND: independent replicas
+   * ANTI: replica i + replicas is the twin of
+   *       replica i, driven by 1 - u uniforms
+   * RQMC: replica i is lattice point i % RQMC_POINTS of
+   *       randomization i / RQMC_POINTS
+   */
+  private static SweepSpec spec = SweepSpec.defaults();
+
+  /**
+   * main
+   *
+   * @param replica mode (IND, ANTI or RQMC) or a sweep spec file
+   */
   public static void main(String[] args) throws IOException {
 
+    if (args.length > 0 && (args[0].equals(ANTITHETIC) || args[0].equals(RQMC))) {
+      spec = spec.withMode(args[0]);
+      System.out.println("Replica mode: " + spec.getMode());
+    } else if (args.length > 0 && new File(args[0]).isFile()) {
+      spec = SweepSpec.load(args[0]);
+      System.out.println("Sweep spec: " + args[0]);
+    }
+
     // 1 - Generate Random Variable sets
-    // generateRandomVariables();
-    
+    if (spec.hasStage(SweepSpec.RANDOM)) {
+      generateRandomVariables();
+    }
+
     // 2 - Generate Correlated Exponential Data
-    // generateTraffic();
+    if (spec.hasStage(SweepSpec.TRAFFIC)) {
+      generateTraffic();
+    }
 
     // 3 - Run the Simulations
-    runSimulations();
+    if (spec.hasStage(SweepSpec.SIMULATE)) {
+      runSimulations();
+    }
   }
 
   public static void generateRandomVariables() throws IOException {
 
     System.out.println("Generating Random Variables");
-    for (int i = 0; i < NUMBER_OF_REPLICAS; i++) {
-      RandomNumberGenerator.generate(0, 1, 
-        NUMBER_OF_PACKETS, 
-        OUTPUT_FOLDER + File.separator + "randomIA" + i);
+
+    for (int unit = 0; unit < randomUnits(spec); unit++) {
+      generateRandomVariables(spec, unit);
+    }
+  }
+
+  /**
+   * randomUnits
+   *
+   * @return number of independent random variable sets: one
+   *         per replica (with its antithetic twin) or one per
+   *         RQMC randomization
+   */
+  public static int randomUnits(SweepSpec spec) {
+    if (spec.getMode().equals(RQMC)) {
+      return spec.getReplicas() / RQMC_POINTS;
+    }
+    return spec.getReplicas();
+  }
+
+  /**
+   * generateRandomVariables
+   *
+   * Generate the random variable files of one unit
+   */
+  public static void generateRandomVariables(SweepSpec spec, int unit) throws IOException {
+
+    String folder = spec.getOutput() + File.separator;
+
+    if (spec.getMode().equals(RQMC)) {
+      generateLatticeVariables(spec, unit);
+      return;
+    }
+
+    RandomNumberGenerator.generate(0, 1,
+      spec.getPackets(),
+      folder + "randomIA" + unit);
+
+    RandomNumberGenerator.generate(0, 1,
+      spec.getPackets(),
+      folder + "randomST" + unit);
+
+    if (spec.getMode().equals(ANTITHETIC)) {
+      int twin = unit + spec.getReplicas();
+      RandomNumberGenerator.generateAntithetic(
+        folder + "randomIA" + unit,
+        folder + "randomIA" + twin);
+
+      RandomNumberGenerator.generateAntithetic(
+        folder + "randomST" + unit,
+        folder + "randomST" + twin);
+    }
+  }
+
+  /**
+   * generateLatticeVariables
+   *
+   * Every randomization draws one shift seed for the
+   * inter-arrival files and one for the service files;
+   * its RQMC_POINTS replicas share those seeds.
+   */
+  private static void generateLatticeVariables(SweepSpec spec, int randomization) throws IOException {
+
+    Random seeds = new Random();
+    long iaSeed = seeds.nextLong();
+    long stSeed = seeds.nextLong();
+
+    for (int point = 0; point < RQMC_POINTS; point++) {
+      int i = randomization * RQMC_POINTS + point;
+
+      RandomNumberGenerator.generate(0, 1,
+        spec.getPackets(),
+        spec.getOutput() + File.separator + "randomIA" + i,
+        new LatticeRandom(point, RQMC_POINTS, iaSeed));
 
       RandomNumberGenerator.generate(0, 1,
-        NUMBER_OF_PACKETS,
-        OUTPUT_FOLDER + File.separator + "randomST" + i);
+        spec.getPackets(),
+        spec.getOutput() + File.separator + "randomST" + i,
+        new LatticeRandom(point, RQMC_POINTS, stSeed));
     }
   }
 
+  /**
+   * generateTraffic
+   *
+   * Rebuild the stale traffic files of every replica and
+   * interval in parallel, up to date files are kept
+   */
   public static void generateTraffic() throws IOException {
 
     System.out.println("Generating Traffic");
 
-    for (int i = 0; i < NUMBER_OF_REPLICAS; i++) {
-      for (double interval : intervals) {
+    final int intervals = spec.getIntervals().length;
+    final AtomicInteger rebuilt = new AtomicInteger();
+    try {
+      IntStream.range(0, spec.totalReplicas() * intervals).parallel().forEach(task -> {
+        try {
+          rebuilt.addAndGet(generateTraffic(spec, task / intervals, spec.getIntervals()[task % intervals]));
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    int files = spec.totalReplicas() * intervals * (spec.getLambdas().length + 1);
+    System.out.println("Regenerated " + rebuilt.get() + " of " + files + " traffic files");
+  }
 
-        // Always Use 0.5 intervals for Service Times
-        // TrafficGenerator.generateTimes(interval, -interval, xi,
-        TrafficGenerator.generateTimes(0.5, -0.5, xi,
-          mu, OUTPUT_FOLDER + File.separator + "randomST" + i,
-          OUTPUT_FOLDER + File.separator + OUTPUT_TIMES_FOLDER + File.separator + "replica-" + i + "-st-" + mu + "-" + interval + ".csv");
+  /**
+   * generateTraffic
+   *
+   * Generate the service times and the inter-arrival times
+   * of every lambda for one replica and interval, skipping
+   * the files whose inputs and parameters are unchanged
+   *
+   * @return number of files regenerated
+   */
+  public static int generateTraffic(SweepSpec spec, int i, double interval) throws IOException {
 
-        for (int lambda : lambdas) {
-          TrafficGenerator.generateTimes(interval, -interval, xi,
-            lambda, OUTPUT_FOLDER + File.separator + "randomIA" + i,
-            OUTPUT_FOLDER + File.separator + OUTPUT_TIMES_FOLDER + File.separator + "replica-" + i + "-ia-" + lambda + "-" + interval + ".csv");
+    String folder = spec.getOutput() + File.separator;
+    int mu = spec.getMu();
+    int rebuilt = 0;
 
-        }
-      }      
+    // TrafficGenerator.generateTimes(interval, -interval, xi,
+    if (TrafficGenerator.generateTimesIfStale(SERVICE_INTERVAL, -SERVICE_INTERVAL, spec.getXi(),
+        mu, folder + "randomST" + i,
+        folder + OUTPUT_TIMES_FOLDER + File.separator + "replica-" + i + "-st-" + mu + "-" + interval + ".csv")) {
+      rebuilt++;
+    }
+
+    for (int lambda : spec.getLambdas()) {
+      if (TrafficGenerator.generateTimesIfStale(interval, -interval, spec.getXi(),
+          lambda, folder + "randomIA" + i,
+          folder + OUTPUT_TIMES_FOLDER + File.separator + "replica-" + i + "-ia-" + lambda + "-" + interval + ".csv")) {
+        rebuilt++;
+      }
     }
+    return rebuilt;
   }
 
   public static void runSimulations() throws IOException {
@@ -70,26 +216,62 @@ public class GenerateReplicas {
     // replica-0-ia-1-0.01
     // replica- (0-19) -ai- (1,3,5,7,9) - (0.01,0.1,0.5) .csv
 
-    String folder = OUTPUT_FOLDER + File.separator + OUTPUT_TIMES_FOLDER + File.separator;
-    String outFolder = OUTPUT_FOLDER + File.separator + OUTPUT_SIMS_FOLDER + File.separator;
-    String iaFile = "";
-    String stFile = "";
-    String outFile = "";
+    ProgressTracker progress = progressTracker(spec);
+    progress.expect(spec.totalReplicas() * spec.getIntervals().length * spec.getLambdas().length,
+      spec.getPackets());
+    progress.start();
+    try {
+      for (int i = 0; i < spec.totalReplicas(); i++) {
+        for (double interval : spec.getIntervals()) {
+          for (int lambda : spec.getLambdas()) {
+            runSimulation(spec, i, interval, lambda, progress);
+            System.out.println("Ran sim: " + i + " - interval: " + interval + " lambda: " + lambda + " mu: " + spec.getMu());
+          }
+        }
+      }
+    } finally {
+      progress.stop();
+    }
+  }
+
+  /**
+   * progressTracker
+   *
+   * Departures tracker writing the progress file of the sweep
+   */
+  public static ProgressTracker progressTracker(SweepSpec spec) {
+    return new ProgressTracker("departures", spec.getOutput() + File.separator + ProgressTracker.PROGRESS_FILE,
+      ProgressTracker.DEFAULT_INTERVAL);
+  }
+
+  /**
+   * runSimulation
+   *
+   * Simulate one replica of one sweep cell
+   */
+  public static void runSimulation(SweepSpec spec, int i, double interval, int lambda) throws IOException {
+    runSimulation(spec, i, interval, lambda, null);
+  }
 
-    for (int i = 0; i < NUMBER_OF_REPLICAS; i++) {
+  /**
+   * runSimulation
+   *
+   * Simulate one replica of one sweep cell, reporting its
+   * departures to the given tracker when not null
+   */
+  public static void runSimulation(SweepSpec spec, int i, double interval, int lambda,
+    ProgressTracker progress) throws IOException {
 
-      for (double interval : intervals) {
-        stFile = folder + "replica-" + i + "-st-" + mu + "-" + interval + ".csv";
+    String folder = spec.getOutput() + File.separator + OUTPUT_TIMES_FOLDER + File.separator;
+    String outFolder = spec.getOutput() + File.separator + OUTPUT_SIMS_FOLDER + File.separator;
+    int mu = spec.getMu();
 
-        for (int lambda :lambdas) {
-          iaFile = folder + "replica-" + i +"-ia-" + lambda + "-" + interval + ".csv";
+    String stFile = folder + "replica-" + i + "-st-" + mu + "-" + interval + ".csv";
+    String iaFile = folder + "replica-" + i +"-ia-" + lambda + "-" + interval + ".csv";
 
-          // outFile = outFolder + "replica-" + i + "-sim-" + lambda + "-" + mu + "-" + interval + ".csv";
-          outFile = outFolder + "sim-"  + lambda + "-" + mu + "-" + interval + File.separator + "replica-" + i + ".csv";
-          Simulator.run(iaFile, stFile, outFile, "delay");
-          System.out.println("Ran sim: " + i + " - interval: " + interval + " lambda: " + lambda + " mu: " + mu);
-        }  
-      }
-    }
+    // outFile = outFolder + "replica-" + i + "-sim-" + lambda + "-" + mu + "-" + interval + ".csv";
+    String outFile = outFolder + "sim-"  + lambda + "-" + mu + "-" + interval + File.separator + "replica-" + i + ".csv";
+    Simulator.run(iaFile, stFile, outFile, "delay", spec.getServers(), false,
+      progress != null ? progress.startCell(spec.getPackets()) : null);
   }
-}
\ No newline at end of file
+}
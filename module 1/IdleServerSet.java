@@ -0,0 +1,115 @@
+/**
+ * Set of idle servers of a c server station stored as a
+ * two level bitmap: one bit per server and one summary bit
+ * per 64 server word that has an idle server. The lowest
+ * idle server is found with two trailing zero counts, so
+ * seizing and releasing servers neither scans all c servers
+ * nor allocates.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class IdleServerSet {
+
+  private long[] words;
+  private long[] summary;
+  private int servers;
+  private int size;
+
+  /**
+   * IdleServerSet
+   *
+   * @param servers : number of servers c, all idle
+   */
+  public IdleServerSet(int servers) {
+    if (servers < 1) {
+      throw new IllegalArgumentException("A station needs at least one server");
+    }
+    this.servers = servers;
+    words = new long[(servers + 63) >>> 6];
+    summary = new long[(words.length + 63) >>> 6];
+    for (int i = 0; i < servers; i++) {
+      add(i);
+    }
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** number of idle servers **/
+  public int size() {
+    return size;
+  }
+
+  /** number of servers c **/
+  public int servers() {
+    return servers;
+  }
+
+  public boolean contains(int server) {
+    return (words[server >>> 6] & (1L << server)) != 0;
+  }
+
+  /**
+   * first
+   *
+   * @return lowest idle server or -1 if all are busy
+   */
+  public int first() {
+    for (int s = 0; s < summary.length; s++) {
+      if (summary[s] != 0) {
+        int w = (s << 6) + Long.numberOfTrailingZeros(summary[s]);
+        return (w << 6) + Long.numberOfTrailingZeros(words[w]);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * add
+   *
+   * Mark a server idle
+   */
+  public void add(int server) {
+    int w = server >>> 6;
+    long bit = 1L << server;
+    if ((words[w] & bit) == 0) {
+      words[w] |= bit;
+      summary[w >>> 6] |= 1L << w;
+      size += 1;
+    }
+  }
+
+  /**
+   * remove
+   *
+   * Mark a server busy
+   */
+  public void remove(int server) {
+    int w = server >>> 6;
+    long bit = 1L << server;
+    if ((words[w] & bit) != 0) {
+      words[w] &= ~bit;
+      if (words[w] == 0) {
+        summary[w >>> 6] &= ~(1L << w);
+      }
+      size -= 1;
+    }
+  }
+
+  /**
+   * poll
+   *
+   * Seize the lowest idle server
+   *
+   * @return the server or -1 if all are busy
+   */
+  public int poll() {
+    int server = first();
+    if (server >= 0) {
+      remove(server);
+    }
+    return server;
+  }
+}
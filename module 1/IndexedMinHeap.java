@@ -0,0 +1,103 @@
+import java.util.*;
+
+/**
+ * Indexed binary min-heap over a fixed set of items 0..n-1,
+ * each with a double key. The key of any item can be changed
+ * in O(log n) and the item with the smallest key (lowest
+ * index on ties) is read in O(1).
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class IndexedMinHeap {
+
+  private double[] keys;
+
+  /** heap position -> item **/
+  private int[] heap;
+
+  /** item -> heap position **/
+  private int[] position;
+
+  /**
+   * IndexedMinHeap
+   *
+   * @param size : number of items, all with key 0
+   */
+  public IndexedMinHeap(int size) {
+    keys = new double[size];
+    heap = new int[size];
+    position = new int[size];
+    for (int i = 0; i < size; i++) {
+      heap[i] = i;
+      position[i] = i;
+    }
+  }
+
+  /** item with the smallest key **/
+  public int min() {
+    return heap[0];
+  }
+
+  public double key(int item) {
+    return keys[item];
+  }
+
+  public int size() {
+    return keys.length;
+  }
+
+  /**
+   * update
+   *
+   * Change the key of an item and restore the heap order
+   */
+  public void update(int item, double key) {
+    double old = keys[item];
+    keys[item] = key;
+    if (key < old) {
+      siftUp(position[item]);
+    } else if (key > old) {
+      siftDown(position[item]);
+    }
+  }
+
+  private void siftUp(int i) {
+    int item = heap[i];
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (!less(item, heap[parent])) {
+        break;
+      }
+      move(heap[parent], i);
+      i = parent;
+    }
+    move(item, i);
+  }
+
+  private void siftDown(int i) {
+    int item = heap[i];
+    int n = heap.length;
+    while (2 * i + 1 < n) {
+      int child = 2 * i + 1;
+      if (child + 1 < n && less(heap[child + 1], heap[child])) {
+        child += 1;
+      }
+      if (!less(heap[child], item)) {
+        break;
+      }
+      move(heap[child], i);
+      i = child;
+    }
+    move(item, i);
+  }
+
+  private boolean less(int a, int b) {
+    return keys[a] < keys[b] || (keys[a] == keys[b] && a < b);
+  }
+
+  private void move(int item, int i) {
+    heap[i] = item;
+    position[item] = i;
+  }
+}
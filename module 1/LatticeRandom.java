@@ -0,0 +1,127 @@
+import java.util.*;
+
+/**
+ * Randomized quasi-Monte Carlo stream. Replica i of n reads
+ * coordinate j of point i of a randomly shifted rank-1
+ * lattice rule:
+ *
+ *      u_j = < (i * a^j mod n) / n + D_j >
+ *
+ * where the shifts D_j are uniform on [0, 1) and shared by
+ * all n points of one randomization. n is prime and a is a
+ * primitive root of n, so the multipliers a^j run through
+ * all n - 1 nonzero residues before they repeat; of those,
+ * a is searched for the best spread 2-D projection of
+ * consecutive coordinates. Each coordinate of the
+ * n replicas is stratified over [0, 1) while every replica
+ * on its own is still a sequence of uniform variables, so
+ * the average over the n points is unbiased and independent
+ * randomizations give a valid confidence interval.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class LatticeRandom extends Random {
+
+  private static final long serialVersionUID = 1L;
+
+  private int pointIndex;
+  private int numberOfPoints;
+  private long generator;
+
+  /** a^j mod n for the next coordinate j **/
+  private long power;
+
+  /** shifts D_j, identical for all points of a randomization **/
+  private Random shifts;
+
+  /**
+   * LatticeRandom
+   *
+   * @param pointIndex     : point i in [0, n)
+   * @param numberOfPoints : lattice size n, a prime
+   * @param shiftSeed      : seed of this randomization
+   */
+  public LatticeRandom(int pointIndex, int numberOfPoints, long shiftSeed) {
+    this.pointIndex = pointIndex;
+    this.numberOfPoints = numberOfPoints;
+    this.generator = latticeGenerator(numberOfPoints);
+    this.power = 1;
+    this.shifts = new Random(shiftSeed);
+  }
+
+  /**
+   * latticeGenerator
+   *
+   * Korobov generating value: the primitive root a of n
+   * whose lattice (i, i * a mod n) has the largest shortest
+   * nonzero vector on the torus
+   */
+  public static long latticeGenerator(int n) {
+    checkNumberOfPoints(n);
+    if (n == 2) {
+      return 1;
+    }
+    long best = 0;
+    long bestDistance = -1;
+    for (long a = 2; a < n; a++) {
+      if (!isPrimitiveRoot(a, n)) {
+        continue;
+      }
+      long distance = Long.MAX_VALUE;
+      for (long i = 1; i < n; i++) {
+        long x = Math.min(i, n - i);
+        long y = Math.min(i * a % n, n - i * a % n);
+        distance = Math.min(distance, x * x + y * y);
+      }
+      if (distance > bestDistance) {
+        best = a;
+        bestDistance = distance;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * checkNumberOfPoints
+   *
+   * @throws IllegalArgumentException unless n is a prime
+   */
+  public static void checkNumberOfPoints(int n) {
+    if (n < 2) {
+      throw new IllegalArgumentException("A lattice needs at least 2 points: " + n);
+    }
+    for (int d = 2; (long) d * d <= n; d++) {
+      if (n % d == 0) {
+        throw new IllegalArgumentException("The number of lattice points must be a prime: " + n);
+      }
+    }
+  }
+
+  /** a^k != 1 mod n for every proper divisor k of n - 1, n prime **/
+  private static boolean isPrimitiveRoot(long a, int n) {
+    for (int k = 1; k < n - 1; k++) {
+      if ((n - 1) % k == 0 && power(a, k, n) == 1) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long power(long a, int k, int n) {
+    long result = 1;
+    for (int i = 0; i < k; i++) {
+      result = result * a % n;
+    }
+    return result;
+  }
+
+  @Override
+  public double nextDouble() {
+    double point = (double) ((pointIndex * power) % numberOfPoints) / numberOfPoints;
+    power = (power * generator) % numberOfPoints;
+
+    double u = point + shifts.nextDouble();
+    return u - Math.floor(u);
+  }
+}
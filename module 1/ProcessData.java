@@ -6,213 +6,241 @@ public class ProcessData {
   private static final String BASE_FILE_NAME = "replica-";
   private static final String FILE_EXT = ".csv";
 
-  private static final double T_STATISTIC_19_0975 = 2.093;
   private static final String INPUT_SIMS_FOLDER = "sims";
-  private static final String OUTPUT_FOLDER = "replicas";
   private static final String OUTPUT_PROCESSED_FOLDER = "processed";
-  private static final int NUMBER_OF_REPLICAS = 20;
-
-  private static final double[] intervals = new double[]{0.01,0.1,0.5};
-  private static final int[] lambdas = new int[]{1,3,5,7,9};
-  private static final int mu = 10;
-  private static final double xi = 0.7;
-
-  public void run() throws IOException {
-
-    System.out.println("File,Utilization,Packet Delay,Packet Delay CI, Packets in System, Packets in System CI");
-
-    String inFolder = OUTPUT_FOLDER + File.separator + INPUT_SIMS_FOLDER + File.separator;
-
-    String outFolder = OUTPUT_FOLDER + File.separator + OUTPUT_PROCESSED_FOLDER + File.separator;
-    String outFile = "";
-    String combinedOutFile = "";
-    String inFile = "";
-
-    BufferedReader replica;
-    BufferedWriter out;
-    BufferedWriter combinedOut;
-    
-    for (double interval : intervals) {
-      for (int lambda :lambdas) {
+  private static final String SUMMARIES_FOLDER = "summaries";
+  private static final String SUMMARY_EXT = ".bin";
+
+  /** delay percentile reported next to the means **/
+  private static final double PERCENTILE = 0.99;
+
+  /** sweep grid the replicas were generated with **/
+  private String outputFolder;
+  private int numberOfReplicas;
+  private double[] intervals;
+  private int[] lambdas;
+  private int mu;
+
+  /**
+   * Replica mode the replicas were generated with
+   * (see GenerateReplicas):
+   * ANTI: replicas i and i + numberOfReplicas are antithetic
+   *       twins averaged into a single observation
+   * RQMC: the RQMC_POINTS replicas of one randomization are
+   *       averaged into a single observation
+   */
+  private String replicaMode;
+
+  public ProcessData() {
+    this(GenerateReplicas.INDEPENDENT);
+  }
 
-        double totalReplicaUtilization = 0.0;
-        double totalReplicaPacketDelay = 0.0;
-        double totalReplicaPacketsInSystem = 0.0;
+  public ProcessData(String replicaMode) {
+    this(SweepSpec.defaults().withMode(replicaMode));
+  }
 
-        List<Double> replicaAvgPacketDelayList = new ArrayList<Double>();
-        List<Double> replicaAvgPacketsInSystemList = new ArrayList<Double>();
+  /**
+   * ProcessData
+   *
+   * @param spec : sweep the replicas were generated with
+   */
+  public ProcessData(SweepSpec spec) {
+    this.replicaMode = spec.getMode();
+    outputFolder = spec.getOutput();
+    numberOfReplicas = spec.getReplicas();
+    intervals = spec.getIntervals();
+    lambdas = spec.getLambdas();
+    mu = spec.getMu();
+  }
 
-        for (int i = 0; i < NUMBER_OF_REPLICAS; i++) {
-          outFile = outFolder + "sim-" + lambda + "-" + mu + "-" + interval + File.separator + "replica-result-" + i + ".csv";
+  private boolean isAntithetic() {
+    return replicaMode.equals(GenerateReplicas.ANTITHETIC);
+  }
 
-          inFile = inFolder + "sim-" + lambda + "-" + mu + "-" + interval + File.separator + "replica-" + i + FILE_EXT;
-          replica = new BufferedReader(new FileReader(new File(inFile)));
+  /**
+   * numberOfRuns
+   *
+   * @return number of replica files per sweep cell
+   */
+  private int numberOfRuns() {
+    return isAntithetic() ? 2 * numberOfReplicas : numberOfReplicas;
+  }
 
-          replica.readLine(); // skip headers
+  /**
+   * observationGroups
+   *
+   * @return replica indices averaged into each independent
+   *         observation used for the confidence intervals
+   */
+  private List<int[]> observationGroups() {
+    List<int[]> groups = new ArrayList<int[]>();
+
+    if (isAntithetic()) {
+      for (int i = 0; i < numberOfReplicas; i++) {
+        groups.add(new int[]{i, i + numberOfReplicas});
+      }
+    } else if (replicaMode.equals(GenerateReplicas.RQMC)) {
+      int points = GenerateReplicas.RQMC_POINTS;
+      for (int r = 0; r < numberOfReplicas / points; r++) {
+        int[] group = new int[points];
+        for (int k = 0; k < points; k++) {
+          group[k] = r * points + k;
+        }
+        groups.add(group);
+      }
+    } else {
+      for (int i = 0; i < numberOfReplicas; i++) {
+        groups.add(new int[]{i});
+      }
+    }
+    return groups;
+  }
 
-          String line;
+  /**
+   * summarize
+   *
+   * Reduce every replica file of a sweep cell to its
+   * ReplicaSummary and spill the summaries to disk, in
+   * observation group order
+   *
+   * @return file holding the summaries
+   */
+  private File summarize(double interval, int lambda) throws IOException {
+    String cell = "sim-" + lambda + "-" + mu + "-" + interval;
+    String inFolder = outputFolder + File.separator + INPUT_SIMS_FOLDER + File.separator + cell + File.separator;
+
+    File summaries = new File(outputFolder + File.separator + SUMMARIES_FOLDER, cell + SUMMARY_EXT);
+    summaries.getParentFile().mkdirs();
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(summaries)));
+    try {
+      for (int[] group : observationGroups()) {
+        for (int i : group) {
+          ReplicaSummary.summarize(inFolder + BASE_FILE_NAME + i + FILE_EXT).writeTo(out);
+        }
+      }
+    } finally {
+      out.close();
+    }
+    return summaries;
+  }
 
-          double totalUtilization = 0.0;
-          double totalPacketDelay = 0.0;
-          double totalPacketsInSystem = 0.0;
+  public void run() throws IOException {
 
-          double count = 0;
+    System.out.println("File,Utilization,Packet Delay,Packet Delay CI, Packets in System, Packets in System CI"
+      + ",Packet Delay P99,Packet Delay P99 CI,Pooled Packet Delay P99"
+      + (isAntithetic() ? ",Packet Delay VRF" : ""));
 
-          double max = 0;
-          while ((line = replica.readLine()) != null) {
+    int numberOfRuns = numberOfRuns();
 
+    String outFolder = outputFolder + File.separator + OUTPUT_PROCESSED_FOLDER + File.separator;
 
-            String[] data = line.split(",");
+    for (double interval : intervals) {
+      for (int lambda :lambdas) {
 
-            Double utilDouble = Double.parseDouble(data[2]);
-            totalUtilization += utilDouble;
+        String outFile = outFolder + "sim-" + lambda + "-" + mu + "-" + interval + File.separator +
+          "replica-result-" + (numberOfRuns - 1) + ".csv";
 
-            Double packetDelay = Double.parseDouble(data[0]);
-            totalPacketDelay += packetDelay;
+        double totalReplicaUtilization = 0.0;
 
-            if (packetDelay > max) {
-              max = packetDelay;
+        // replica values are only needed for the variance reduction
+        ConfidenceInterval.Running replicaPacketDelay = new ConfidenceInterval.Running();
+        ConfidenceInterval.Running packetDelay = new ConfidenceInterval.Running();
+        ConfidenceInterval.Running packetsInSystem = new ConfidenceInterval.Running();
+        ConfidenceInterval.Running packetDelayPercentile = new ConfidenceInterval.Running();
+        QuantileSketch pooledPacketDelay = new QuantileSketch(QuantileSketch.TIME_UNIT);
+
+        DataInputStream summaries = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(summarize(interval, lambda))));
+        try {
+          for (int[] group : observationGroups()) {
+            double groupPacketDelay = 0.0;
+            double groupPacketsInSystem = 0.0;
+            double groupPercentile = 0.0;
+
+            for (int k = 0; k < group.length; k++) {
+              ReplicaSummary replica = ReplicaSummary.readFrom(summaries);
+
+              totalReplicaUtilization += replica.getAverageUtilization();
+              replicaPacketDelay.add(replica.getAveragePacketDelay());
+              pooledPacketDelay.merge(replica.getPacketDelaySketch());
+
+              groupPacketDelay += replica.getAveragePacketDelay() / group.length;
+              groupPacketsInSystem += replica.getAveragePacketsInSystem() / group.length;
+              groupPercentile += replica.getPacketDelaySketch().getQuantile(PERCENTILE) / group.length;
             }
-            Double numOfPackets = Double.parseDouble(data[1]);
-            totalPacketsInSystem += numOfPackets;
 
-            count += 1;
+            packetDelay.add(groupPacketDelay);
+            packetsInSystem.add(groupPacketsInSystem);
+            packetDelayPercentile.add(groupPercentile);
           }
-
-          double avgUtilization = totalUtilization / count;
-          double avgPacketDelay = totalPacketDelay / count;
-
-          double avgPacketsInSystem = totalPacketsInSystem / count;
-
-          replicaAvgPacketsInSystemList.add(avgPacketsInSystem);
-          replicaAvgPacketDelayList.add(avgPacketDelay);
-
-          replica.close();
-
-          totalReplicaUtilization += avgUtilization;
-          totalReplicaPacketDelay += avgPacketDelay;
-          totalReplicaPacketsInSystem += avgPacketsInSystem;
-        }
-
-        double avgReplicaUtilization = totalReplicaUtilization / NUMBER_OF_REPLICAS;
-
-        double avgReplicaPacketDelay = totalReplicaPacketDelay / NUMBER_OF_REPLICAS;
-        double avgReplicaPacketsInSystem = totalReplicaPacketsInSystem / NUMBER_OF_REPLICAS;
-
-        // CALCULATE CONFIDENCE HERE:
-
-        double sumPacketsInSystem = 0.0;
-        double sumPacketDelay = 0.0;
-        for (int j = 0; j < NUMBER_OF_REPLICAS; j++) {
-          sumPacketsInSystem += Math.pow(replicaAvgPacketsInSystemList.get(j) - avgReplicaPacketsInSystem, 2);
-          sumPacketDelay += Math.pow(replicaAvgPacketDelayList.get(j) - avgReplicaPacketDelay, 2);
+        } finally {
+          summaries.close();
         }
 
-        double ssdPacketsInSystem = Math.sqrt(sumPacketsInSystem / (NUMBER_OF_REPLICAS - 1));
-        double ssdPacketDelay = Math.sqrt(sumPacketDelay / (NUMBER_OF_REPLICAS - 1));
-
-        double packetsInSystemCI = (T_STATISTIC_19_0975 * ssdPacketsInSystem) / Math.sqrt(NUMBER_OF_REPLICAS - 1);
-        double packetDelayCI = (T_STATISTIC_19_0975 * ssdPacketDelay) / Math.sqrt(NUMBER_OF_REPLICAS - 1);
-
-       System.out.println(outFile + 
-               "," + avgReplicaUtilization + 
-               "," + avgReplicaPacketDelay + 
-               "," + packetDelayCI +
-               "," + avgReplicaPacketsInSystem +
-               "," + packetsInSystemCI); 
+        // Variance of the mean of two independent replicas
+        // divided by the variance of an antithetic pair
+        double varianceReductionFactor = (replicaPacketDelay.getVariance() / 2) / packetDelay.getVariance();
+
+        System.out.println(outFile +
+               "," + totalReplicaUtilization / numberOfRuns +
+               "," + packetDelay.getMean() +
+               "," + packetDelay.getHalfWidth() +
+               "," + packetsInSystem.getMean() +
+               "," + packetsInSystem.getHalfWidth() +
+               "," + packetDelayPercentile.getMean() +
+               "," + packetDelayPercentile.getHalfWidth() +
+               "," + pooledPacketDelay.getQuantile(PERCENTILE) +
+               (isAntithetic() ? "," + varianceReductionFactor : ""));
       }
     }
   }
 
-
   public void runOccupencies() throws IOException {
 
     System.out.println("File,Number of Packets,Number of Occurences,Confidence Interval");
 
-    String inFolder = OUTPUT_FOLDER + File.separator + INPUT_SIMS_FOLDER + File.separator;
-
-    String outFolder = OUTPUT_FOLDER + File.separator + OUTPUT_PROCESSED_FOLDER + File.separator;
-    String outFile = "";
-    String combinedOutFile = "";
-    String inFile = "";
+    String outFolder = outputFolder + File.separator + OUTPUT_PROCESSED_FOLDER + File.separator;
+    int bins = ReplicaSummary.OCCUPANCY_BINS;
 
-    BufferedReader replica;
-    BufferedWriter out;
-    
     for (double interval : intervals) {
       for (int lambda :lambdas) {
 
-        List<Map<Long, Double>> packetOccurencesList = new ArrayList<Map<Long, Double>>();
-
-        for (int i = 0; i < NUMBER_OF_REPLICAS; i++) {
-          outFile = outFolder + "sim-" + lambda + "-" + mu + "-" + interval + File.separator + "replica-result-" + i + ".csv";
-
-          inFile = inFolder + "sim-" + lambda + "-" + mu + "-" + interval + File.separator + "replica-" + i + FILE_EXT;
-          replica = new BufferedReader(new FileReader(new File(inFile)));
-
-          replica.readLine(); // skip headers
+        String outFile = outFolder + "sim-" + lambda + "-" + mu + "-" + interval + File.separator +
+          "replica-result-" + (numberOfRuns() - 1) + ".csv";
 
-          String line;
-
-          // Map of <# of packets, occurence>
-          Map<Long, Double> packetOccurences = new HashMap<Long, Double>();
-          while ((line = replica.readLine()) != null) {
-
-
-            String[] data = line.split(",");
-
-            Long numOfPackets = Long.parseLong(data[1]);
-            if (packetOccurences.containsKey(numOfPackets)) {
-              packetOccurences.put(numOfPackets, packetOccurences.get(numOfPackets) + 1.0);
-            } else {
-              packetOccurences.put(numOfPackets, 1.0);
-            }
-          }
-
-          // 1 Replica done
-          packetOccurencesList.add(packetOccurences);
+        // occurrences of every number of packets, averaged
+        // over the replicas of each observation group
+        ConfidenceInterval.Running[] occurrences = new ConfidenceInterval.Running[bins];
+        for (int j = 0; j < bins; j++) {
+          occurrences[j] = new ConfidenceInterval.Running();
         }
 
-        // Create Bins
-        Map<Long, Double> replicasPacketOccurences = new HashMap<Long, Double>();
-        for (long j = 0; j < 20; j++) {
-          
-          double count = 0;
-          for (Map<Long, Double> po : packetOccurencesList) {
-            if (po.containsKey(j)) {
-              count += po.get(j);            
+        DataInputStream summaries = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(summarize(interval, lambda))));
+        try {
+          for (int[] group : observationGroups()) {
+            double[] observation = new double[bins];
+            for (int k = 0; k < group.length; k++) {
+              ReplicaSummary replica = ReplicaSummary.readFrom(summaries);
+              for (int j = 0; j < bins; j++) {
+                observation[j] += (double) replica.getOccurrences(j) / group.length;
+              }
             }
-          }
-          replicasPacketOccurences.put(j, count);
-        }
-
-        // Calculate Confidence Intervals
-
-        Map<Long, Double> confidenceIntervals = new HashMap<Long, Double>();
-        for (long j = 0; j < 20; j++) {
-
-          double meanOccurrence = replicasPacketOccurences.get(j) / NUMBER_OF_REPLICAS;
-
-          double sum = 0.0;
-          for (Map<Long, Double> po : packetOccurencesList) {
-            if (po.containsKey(j)) {
-              sum += Math.pow(po.get(j) - meanOccurrence,2);
+            for (int j = 0; j < bins; j++) {
+              occurrences[j].add(observation[j]);
             }
           }
-
-          double s = Math.sqrt(sum / (NUMBER_OF_REPLICAS - 1));
-
-          double ci = T_STATISTIC_19_0975 * s / Math.sqrt(NUMBER_OF_REPLICAS - 1);
-          confidenceIntervals.put(j, ci);
+        } finally {
+          summaries.close();
         }
 
         System.out.println(outFile);
 
-        for (Map.Entry<Long, Double> entry : replicasPacketOccurences.entrySet()) {
-          double avgOccurences = entry.getValue() / NUMBER_OF_REPLICAS;
-          System.out.println(entry.getKey() + "," 
-            + avgOccurences + ","
-            + confidenceIntervals.get(entry.getKey()));
+        for (int j = 0; j < bins; j++) {
+          System.out.println(j + ","
+            + occurrences[j].getMean() + ","
+            + occurrences[j].getHalfWidth());
         }
 
         System.out.println("--------------------------------------------------");
@@ -220,4 +248,4 @@ public class ProcessData {
     }
 
   }
-}
\ No newline at end of file
+}
@@ -5,7 +5,9 @@ public class ProcessDataMain {
 
   public static void main(String[] args) throws IOException {
     
-    ProcessData pd = new ProcessData();
+    // Replica mode used by GenerateReplicas (IND, ANTI or RQMC)
+    String replicaMode = args.length > 0 ? args[0] : GenerateReplicas.INDEPENDENT;
+    ProcessData pd = new ProcessData(replicaMode);
 
     // pd.run();
     pd.runOccupencies(); // Part 2.2
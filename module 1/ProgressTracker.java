@@ -0,0 +1,270 @@
+import java.util.concurrent.atomic.*;
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * Progress of a sweep over concurrent simulation cells.
+ *
+ * Every running cell reports the departures it has completed
+ * against its target. Reports go to striped LongAdder counters,
+ * so cells on different threads never contend, and a simulation
+ * reports once every SimulationMonitor.PUBLISH_INTERVAL events.
+ * A reporter thread sums the counters every interval, prints
+ * the progress with the smoothed throughput and ETA to the
+ * standard error, so it stays out of the results, and
+ * replaces the progress file, a properties file for tools:
+ *
+ *      state         = RUNNING or FINISHED
+ *      unit          = unit of done and total
+ *      done, total   = units completed and expected
+ *      fraction      = done / total
+ *      cells.total, cells.running, cells.finished
+ *      rate          = smoothed units per second
+ *      elapsed, eta  = seconds, eta -1 while unknown
+ *      updated       = time of the report, epoch milliseconds
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class ProgressTracker {
+
+  public static final String PROGRESS_FILE = "progress.properties";
+  public static final long DEFAULT_INTERVAL = 5000;
+
+  /** weight of the latest interval in the smoothed rate **/
+  private static final double SMOOTHING = 0.3;
+
+  private String unit;
+  private String progressFile;
+  private long interval;
+
+  private LongAdder done;
+  private LongAdder total;
+  private LongAdder cellsTotal;
+  private LongAdder cellsStarted;
+  private LongAdder cellsFinished;
+
+  private long startNanos;
+  private Thread reporter;
+
+  /** reporter thread state **/
+  private long lastDone;
+  private long lastNanos;
+  private double rate;
+
+  /**
+   * ProgressTracker
+   *
+   * @param unit         : what cells count, e.g. "departures"
+   * @param progressFile : file replaced on every report, null for none
+   * @param interval     : milliseconds between reports
+   */
+  public ProgressTracker(String unit, String progressFile, long interval) {
+    this.unit = unit;
+    this.progressFile = progressFile;
+    this.interval = interval;
+    done = new LongAdder();
+    total = new LongAdder();
+    cellsTotal = new LongAdder();
+    cellsStarted = new LongAdder();
+    cellsFinished = new LongAdder();
+    rate = Double.NaN;
+  }
+
+  /**
+   * expect
+   *
+   * Add cells to the expected work
+   */
+  public void expect(long cells, long unitsPerCell) {
+    cellsTotal.add(cells);
+    total.add(cells * unitsPerCell);
+  }
+
+  /**
+   * startCell
+   *
+   * @param target : units the cell completes, as expected
+   * @return the handle the simulation of the cell reports to
+   */
+  public Cell startCell(long target) {
+    cellsStarted.increment();
+    return new Cell(target);
+  }
+
+  /**
+   * complete
+   *
+   * Account a whole cell run elsewhere, for example by
+   * a remote worker
+   */
+  public void complete(long units) {
+    cellsStarted.increment();
+    done.add(units);
+    cellsFinished.increment();
+  }
+
+  /**
+   * start
+   *
+   * Start the reporter thread
+   */
+  public void start() {
+    startNanos = System.nanoTime();
+    lastNanos = startNanos;
+    reporter = new Thread(new Runnable() {
+      public void run() {
+        try {
+          while (true) {
+            Thread.sleep(interval);
+            report(false);
+          }
+        } catch (InterruptedException e) {
+          // stopped
+        }
+      }
+    }, "progress-reporter");
+    reporter.setDaemon(true);
+    reporter.start();
+  }
+
+  /**
+   * stop
+   *
+   * Stop the reporter and write the final report
+   */
+  public void stop() {
+    if (reporter == null) {
+      return;
+    }
+    reporter.interrupt();
+    try {
+      reporter.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    reporter = null;
+    report(true);
+  }
+
+  public long getDone() {
+    return done.sum();
+  }
+
+  public long getTotal() {
+    return total.sum();
+  }
+
+  /**
+   * report
+   *
+   * Print the progress and replace the progress file,
+   * called by the reporter thread and by stop only
+   */
+  private void report(boolean finished) {
+    long now = System.nanoTime();
+    long units = done.sum();
+    long expected = total.sum();
+    long finishedCells = cellsFinished.sum();
+    long runningCells = cellsStarted.sum() - finishedCells;
+
+    if (now > lastNanos) {
+      double latest = (units - lastDone) * 1e9 / (now - lastNanos);
+      rate = Double.isNaN(rate) ? latest : SMOOTHING * latest + (1 - SMOOTHING) * rate;
+    }
+    lastDone = units;
+    lastNanos = now;
+
+    double fraction = expected > 0 ? Math.min((double) units / expected, 1.0) : 0.0;
+    double elapsed = (now - startNanos) / 1e9;
+    double eta = finished ? 0.0 : rate > 0 ? Math.max(expected - units, 0) / rate : -1;
+
+    System.err.println("Progress: " + Math.round(fraction * 1000) / 10.0 + "% (" + units + " of " + expected +
+      " " + unit + "), " + finishedCells + " of " + cellsTotal.sum() + " cells done, " + runningCells +
+      " running, " + (long) rate + " " + unit + "/s, ETA " + (eta < 0 ? "unknown" : formatSeconds(eta)));
+
+    if (progressFile == null) {
+      return;
+    }
+    Path path = Paths.get(progressFile);
+    Path temporary = Paths.get(progressFile + ".tmp");
+    try {
+      BufferedWriter out = Files.newBufferedWriter(temporary);
+      try {
+        out.write("state=" + (finished ? "FINISHED" : "RUNNING"));
+        out.newLine();
+        out.write("unit=" + unit);
+        out.newLine();
+        out.write("done=" + units);
+        out.newLine();
+        out.write("total=" + expected);
+        out.newLine();
+        out.write("fraction=" + fraction);
+        out.newLine();
+        out.write("cells.total=" + cellsTotal.sum());
+        out.newLine();
+        out.write("cells.running=" + runningCells);
+        out.newLine();
+        out.write("cells.finished=" + finishedCells);
+        out.newLine();
+        out.write("rate=" + rate);
+        out.newLine();
+        out.write("elapsed=" + elapsed);
+        out.newLine();
+        out.write("eta=" + eta);
+        out.newLine();
+        out.write("updated=" + System.currentTimeMillis());
+        out.newLine();
+      } finally {
+        out.close();
+      }
+      Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      System.err.println("Error: could not write progress file " + progressFile + ": " + e.getMessage());
+    }
+  }
+
+  private static String formatSeconds(double seconds) {
+    long s = (long) Math.ceil(seconds);
+    return String.format("%02d:%02d:%02d", s / 3600, s / 60 % 60, s % 60);
+  }
+
+  /**
+   * Cell
+   *
+   * Progress of one running simulation, written by
+   * its simulation thread only
+   */
+  public class Cell {
+    private long target;
+    private long reported;
+
+    Cell(long target) {
+      this.target = target;
+    }
+
+    /**
+     * update
+     *
+     * @param completed : units completed so far by the cell
+     */
+    public void update(long completed) {
+      long units = Math.min(completed, target);
+      if (units > reported) {
+        done.add(units - reported);
+        reported = units;
+      }
+    }
+
+    /**
+     * finish
+     *
+     * Credit the rest of the target, a cell may stop
+     * short of it, e.g. when its input runs out
+     */
+    public void finish() {
+      update(target);
+      cellsFinished.increment();
+    }
+  }
+}
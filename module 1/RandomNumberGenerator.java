@@ -12,8 +12,12 @@ import java.io.*;
  */
 public class RandomNumberGenerator {
 
-  private static Random random;
-  private static DecimalFormat df;
+  /** Uniform sources **/
+  public static final String PRNG = "PRNG";
+  public static final String RQMC = "RQMC";
+
+  /** largest value below 1 that "#.#########" keeps below 1 **/
+  private static final double MAX_UNIFORM = 0.999999999;
 
   public static void main(String[] args) throws Exception {
     if (args.length < 4) {
@@ -21,7 +25,22 @@ public class RandomNumberGenerator {
       "(1) lower limit\n" +
       "(2) upper limit\n" +
       "(3) number of random variables\n" +
-      "(4) output file\n");
+      "(4) output file\n" +
+      "(5) uniform source (PRNG or RQMC) [default = PRNG]\n" +
+      "(6) RQMC point index\n" +
+      "(7) RQMC number of points, a prime\n" +
+      "(8) RQMC shift seed\n");
+      return;
+    }
+
+    if (args.length > 7 && args[4].equals(RQMC)) {
+      generate(Integer.parseInt(args[0]),
+               Integer.parseInt(args[1]),
+               Integer.parseInt(args[2]),
+               args[3],
+               new LatticeRandom(Integer.parseInt(args[5]),
+                                 Integer.parseInt(args[6]),
+                                 Long.parseLong(args[7])));
       return;
     }
 
@@ -33,17 +52,57 @@ public class RandomNumberGenerator {
   }
 
   public static void generate(int lower, int upper, int total, String outputFile) throws IOException {
+    generate(lower, upper, total, outputFile, new Random());
+  }
+
+  /**
+   * generate
+   *
+   * Write total values drawn from the given uniform source,
+   * for example a LatticeRandom for randomized quasi-Monte Carlo.
+   */
+  public static void generate(int lower, int upper, int total, String outputFile,
+    Random source) throws IOException {
 
-    random = new Random();
-    df = new DecimalFormat("#.#########");
+    DecimalFormat df = new DecimalFormat("#.#########");
+    SimulationEvents.Phase phase = SimulationEvents.phase(SimulationEvents.GENERATE, outputFile);
 
     BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "utf-8"));
  
     for (int i = 0; i < total; i++) {
-      out.write(df.format(lower + (upper - lower) * random.nextDouble()));
+      out.write(df.format(lower + (upper - lower) * source.nextDouble()));
+      out.newLine();
+    }
+
+    out.close();
+    phase.commit();
+  }
+
+  /**
+   * generateAntithetic
+   *
+   * Write the antithetic twin of a random variable file:
+   * every value u of the input becomes 1 - u, clamped so
+   * that u = 0 is not written as 1 and the inverse
+   * transform never takes the log of zero.
+   *
+   * @param inputFile  : random variables to mirror
+   * @param outputFile : destination of the antithetic variables
+   */
+  public static void generateAntithetic(String inputFile, String outputFile) throws IOException {
+
+    DecimalFormat df = new DecimalFormat("#.#########");
+
+    BufferedReader in = new BufferedReader(new FileReader(new File(inputFile)));
+    BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "utf-8"));
+
+    String line;
+    while ((line = in.readLine()) != null) {
+      out.write(df.format(Math.min(1.0 - Double.parseDouble(line), MAX_UNIFORM)));
       out.newLine();
     }
 
+    in.close();
     out.close();
   }
 }
\ No newline at end of file
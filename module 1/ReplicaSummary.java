@@ -0,0 +1,127 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * Fixed size summary of one replica output file (delay
+ * format): the sums of the delay, packets in system and
+ * utilization columns, a sketch of the delays and the
+ * occurrence counts of the number of packets in system.
+ *
+ * A replica file is reduced to its summary in one streaming
+ * pass, so ProcessData can spill the summaries of a sweep
+ * cell to disk and merge them afterwards with memory that
+ * depends neither on the trace length nor on the number of
+ * replicas.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class ReplicaSummary {
+
+  /** occurrences are counted for 0..OCCUPANCY_BINS - 1 packets **/
+  public static final int OCCUPANCY_BINS = 20;
+
+  private long count;
+  private double totalUtilization;
+  private double totalPacketDelay;
+  private double totalPacketsInSystem;
+  private QuantileSketch packetDelays;
+
+  /** occurrences[n] = rows with n packets in system **/
+  private long[] occurrences;
+
+  public ReplicaSummary() {
+    packetDelays = new QuantileSketch(QuantileSketch.TIME_UNIT);
+    occurrences = new long[OCCUPANCY_BINS];
+  }
+
+  /**
+   * summarize
+   *
+   * Reduce a replica file to its summary, one line at a time
+   */
+  public static ReplicaSummary summarize(String replicaFile) throws IOException {
+    ReplicaSummary summary = new ReplicaSummary();
+    SimulationEvents.Phase phase = SimulationEvents.phase(SimulationEvents.ANALYZE, replicaFile);
+
+    BufferedReader replica = new BufferedReader(new FileReader(new File(replicaFile)));
+    try {
+      replica.readLine(); // skip headers
+
+      String line;
+      while ((line = replica.readLine()) != null) {
+        String[] data = line.split(",");
+        summary.add(Double.parseDouble(data[0]), Long.parseLong(data[1]), Double.parseDouble(data[2]));
+      }
+    } finally {
+      replica.close();
+    }
+    phase.commit();
+    return summary;
+  }
+
+  /**
+   * add
+   *
+   * Add one row of a replica file
+   */
+  public void add(double packetDelay, long packetsInSystem, double utilization) {
+    count += 1;
+    totalUtilization += utilization;
+    totalPacketDelay += packetDelay;
+    totalPacketsInSystem += packetsInSystem;
+    packetDelays.record(packetDelay);
+    if (packetsInSystem >= 0 && packetsInSystem < OCCUPANCY_BINS) {
+      occurrences[(int) packetsInSystem] += 1;
+    }
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public double getAverageUtilization() {
+    return totalUtilization / count;
+  }
+
+  public double getAveragePacketDelay() {
+    return totalPacketDelay / count;
+  }
+
+  public double getAveragePacketsInSystem() {
+    return totalPacketsInSystem / count;
+  }
+
+  public QuantileSketch getPacketDelaySketch() {
+    return packetDelays;
+  }
+
+  /** rows of the replica with the given number of packets in system **/
+  public long getOccurrences(int packets) {
+    return occurrences[packets];
+  }
+
+  public void writeTo(DataOutputStream out) throws IOException {
+    out.writeLong(count);
+    out.writeDouble(totalUtilization);
+    out.writeDouble(totalPacketDelay);
+    out.writeDouble(totalPacketsInSystem);
+    packetDelays.writeState(out);
+    for (long occurrence : occurrences) {
+      out.writeLong(occurrence);
+    }
+  }
+
+  public static ReplicaSummary readFrom(DataInputStream in) throws IOException {
+    ReplicaSummary summary = new ReplicaSummary();
+    summary.count = in.readLong();
+    summary.totalUtilization = in.readDouble();
+    summary.totalPacketDelay = in.readDouble();
+    summary.totalPacketsInSystem = in.readDouble();
+    summary.packetDelays.readState(in);
+    for (int i = 0; i < summary.occurrences.length; i++) {
+      summary.occurrences[i] = in.readLong();
+    }
+    return summary;
+  }
+}
@@ -0,0 +1,329 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * Benchmarks of the single server queue hot paths, in groups:
+ *
+ *      FEL      : hold model (remove the first event, schedule
+ *                 a new one) on a TreeSet as in SingleServerQueue,
+ *                 a PriorityQueue and the server IndexedMinHeap
+ *      VARIATES : TES transforms and uniform sources
+ *      CSV      : reading times through TraceEventGenerator and
+ *                 formatting Statistic rows
+ *      MODEL    : end-to-end single server queue runs at
+ *                 several loads, in events per second
+ *
+ * Every line reports ns/op with its interval, ops/s, bytes
+ * allocated per op and the GCs during the measurement.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class SimulationBenchmark {
+
+  public static final String FEL = "FEL";
+  public static final String VARIATES = "VARIATES";
+  public static final String CSV = "CSV";
+  public static final String MODEL = "MODEL";
+  public static final String ALL = "ALL";
+
+  private static final int[] FEL_SIZES = {16, 1024};
+  private static final int[] LAMBDAS = {3, 5, 9};
+  private static final int MU = 10;
+  private static final int PACKETS = 100000;
+  private static final long OPERATIONS = 1000000;
+
+  private Benchmark benchmark;
+  private File folder;
+
+  /**
+   * main
+   *
+   * @param group (FEL, VARIATES, CSV, MODEL or ALL) [default = ALL]
+   * @param measured iterations [default = 10]
+   */
+  public static void main(String[] args) throws Exception {
+
+    String group = args.length > 0 ? args[0] : ALL;
+    int iterations = Benchmark.DEFAULT_ITERATIONS;
+    try {
+      if (args.length > 1) {
+        iterations = Integer.parseInt(args[1]);
+      }
+    } catch (NumberFormatException e) {
+      System.out.println("Usage:\n" +
+        "(1) Group: FEL, VARIATES, CSV, MODEL or ALL [default = ALL]\n" +
+        "(2) Measured iterations [default = 10]");
+      return;
+    }
+
+    SimulationBenchmark benchmarks = new SimulationBenchmark(new Benchmark(Benchmark.DEFAULT_WARMUP_ITERATIONS,
+      iterations));
+    Benchmark.printHeader();
+    try {
+      if (group.equals(FEL) || group.equals(ALL)) {
+        benchmarks.futureEventList();
+      }
+      if (group.equals(VARIATES) || group.equals(ALL)) {
+        benchmarks.variates();
+      }
+      if (group.equals(CSV) || group.equals(ALL)) {
+        benchmarks.csv();
+      }
+      if (group.equals(MODEL) || group.equals(ALL)) {
+        benchmarks.model();
+      }
+    } finally {
+      benchmarks.close();
+    }
+  }
+
+  public SimulationBenchmark(Benchmark benchmark) throws IOException {
+    this.benchmark = benchmark;
+    folder = java.nio.file.Files.createTempDirectory("benchmark").toFile();
+  }
+
+  /**
+   * futureEventList
+   *
+   * Hold model: the list keeps its size, every operation
+   * removes the first event and schedules one an
+   * exponential time later
+   */
+  public void futureEventList() throws Exception {
+    final Comparator<HoldEvent> order = new Comparator<HoldEvent>() {
+      public int compare(HoldEvent one, HoldEvent two) {
+        int result = Double.compare(one.time, two.time);
+        return result != 0 ? result : Long.compare(one.sequence, two.sequence);
+      }
+    };
+
+    for (final int size : FEL_SIZES) {
+      benchmark.measure("fel.treeset." + size, OPERATIONS, new Benchmark.Operation() {
+        public double run(long operations) {
+          Random random = new Random(1);
+          TreeSet<HoldEvent> list = new TreeSet<HoldEvent>(order);
+          long sequence = 0;
+          for (int i = 0; i < size; i++) {
+            list.add(new HoldEvent(-Math.log(random.nextDouble()), sequence++));
+          }
+          double clock = 0.0;
+          for (long i = 0; i < operations; i++) {
+            clock = list.pollFirst().time;
+            list.add(new HoldEvent(clock - Math.log(random.nextDouble()), sequence++));
+          }
+          return clock;
+        }
+      });
+
+      benchmark.measure("fel.priorityqueue." + size, OPERATIONS, new Benchmark.Operation() {
+        public double run(long operations) {
+          Random random = new Random(1);
+          PriorityQueue<HoldEvent> list = new PriorityQueue<HoldEvent>(size, order);
+          long sequence = 0;
+          for (int i = 0; i < size; i++) {
+            list.add(new HoldEvent(-Math.log(random.nextDouble()), sequence++));
+          }
+          double clock = 0.0;
+          for (long i = 0; i < operations; i++) {
+            clock = list.poll().time;
+            list.add(new HoldEvent(clock - Math.log(random.nextDouble()), sequence++));
+          }
+          return clock;
+        }
+      });
+
+      // one slot per pending event, rescheduled in place
+      benchmark.measure("fel.indexedminheap." + size, OPERATIONS, new Benchmark.Operation() {
+        public double run(long operations) {
+          Random random = new Random(1);
+          IndexedMinHeap list = new IndexedMinHeap(size);
+          for (int i = 0; i < size; i++) {
+            list.update(i, -Math.log(random.nextDouble()));
+          }
+          double clock = 0.0;
+          for (long i = 0; i < operations; i++) {
+            int first = list.min();
+            clock = list.key(first);
+            list.update(first, clock - Math.log(random.nextDouble()));
+          }
+          return clock;
+        }
+      });
+    }
+  }
+
+  /**
+   * variates
+   *
+   * Uniform sources and the TES chain used by
+   * TrafficGenerator for every generated time
+   */
+  public void variates() throws Exception {
+    benchmark.measure("variates.random", OPERATIONS, new Benchmark.Operation() {
+      public double run(long operations) {
+        Random random = new Random(1);
+        double total = 0.0;
+        for (long i = 0; i < operations; i++) {
+          total += random.nextDouble();
+        }
+        return total;
+      }
+    });
+
+    benchmark.measure("variates.lattice", OPERATIONS, new Benchmark.Operation() {
+      public double run(long operations) {
+        Random random = new LatticeRandom(1, GenerateReplicas.RQMC_POINTS, 1);
+        double total = 0.0;
+        for (long i = 0; i < operations; i++) {
+          total += random.nextDouble();
+        }
+        return total;
+      }
+    });
+
+    final TESModelGenerator generator = quietGenerator(0.1, -0.1);
+    benchmark.measure("variates.tes", OPERATIONS, new Benchmark.Operation() {
+      public double run(long operations) {
+        Random random = new Random(1);
+        double u = random.nextDouble();
+        double total = 0.0;
+        for (long i = 0; i < operations; i++) {
+          u = generator.generateNext(u, random.nextDouble());
+          total += generator.inverseExponentialTransform(MU, generator.stitchTransform(u, 0.7));
+        }
+        return total;
+      }
+    });
+  }
+
+  /**
+   * csv
+   *
+   * Parsing times files and formatting output rows
+   */
+  public void csv() throws Exception {
+    final String times = writeTimes(3, PACKETS);
+
+    benchmark.measure("csv.eventgenerator.read", PACKETS, new Benchmark.Operation() {
+      public double run(long operations) throws IOException {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        TraceEventGenerator generator;
+        try {
+          generator = new TraceEventGenerator(times, times);
+        } finally {
+          System.setOut(out);
+        }
+        double total = 0.0;
+        for (long i = 0; i < operations; i++) {
+          total += generator.nextServiceTime();
+        }
+        generator.close();
+        return total;
+      }
+    });
+
+    for (final String format : new String[]{"delay", "csv"}) {
+      benchmark.measure("csv.statistic." + format, OPERATIONS / 10, new Benchmark.Operation() {
+        public double run(long operations) {
+          double total = 0.0;
+          for (long i = 0; i < operations; i++) {
+            SingleServerQueue.Statistic statistic = new SingleServerQueue.Statistic(i * 0.1,
+              Collections.emptyList(), i, i % 7, 0.5, 1, i * 0.01, format);
+            total += statistic.toString().length();
+          }
+          return total;
+        }
+      });
+    }
+  }
+
+  /**
+   * model
+   *
+   * Full runs of the single server queue; an operation
+   * is one event, every packet arrives and departs once
+   */
+  public void model() throws Exception {
+    final String serviceTimes = writeTimes(MU, PACKETS);
+
+    for (int lambda : LAMBDAS) {
+      final String arrivalTimes = writeTimes(lambda, PACKETS);
+
+      benchmark.measure("model.ssq.rho=" + (double) lambda / MU, 2L * PACKETS, new Benchmark.Operation() {
+        public double run(long operations) throws IOException {
+          PrintStream out = System.out;
+          System.setOut(new PrintStream(new ByteArrayOutputStream()));
+          try {
+            SingleServerQueue server = new SingleServerQueue(new TraceEventGenerator(arrivalTimes, serviceTimes),
+              "delay");
+            server.run();
+            server.closeGenerator();
+            return server.getAverageNumberInSystem();
+          } finally {
+            System.setOut(out);
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * writeTimes
+   *
+   * Independent exponential times with the given
+   * rate, as TrafficGenerator writes them
+   */
+  private String writeTimes(int rate, int count) throws IOException {
+    String random = folder.getPath() + File.separator + "random-" + rate;
+    String times = folder.getPath() + File.separator + "times-" + rate + ".csv";
+    RandomNumberGenerator.generate(0, 1, count, random, new Random(rate));
+
+    PrintStream out = System.out;
+    System.setOut(new PrintStream(new ByteArrayOutputStream()));
+    try {
+      TrafficGenerator.generateTimes(0.5, -0.5, 0.7, rate, random, times);
+    } finally {
+      System.setOut(out);
+    }
+    return times;
+  }
+
+  private static TESModelGenerator quietGenerator(double a, double b) {
+    PrintStream out = System.out;
+    System.setOut(new PrintStream(new ByteArrayOutputStream()));
+    try {
+      TESModelGenerator generator = new TESModelGenerator();
+      generator.setUniformRange(a, b);
+      return generator;
+    } finally {
+      System.setOut(out);
+    }
+  }
+
+  public void close() {
+    File[] files = folder.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    folder.delete();
+  }
+
+  /**
+   * HoldEvent
+   *
+   * Event with the fields SingleServerQueue orders by
+   */
+  private static class HoldEvent {
+    double time;
+    long sequence;
+
+    HoldEvent(double time, long sequence) {
+      this.time = time;
+      this.sequence = sequence;
+    }
+  }
+}
@@ -0,0 +1,161 @@
+import jdk.jfr.*;
+
+/**
+ * Java Flight Recorder events of the simulation pipeline:
+ *
+ *      simulation.Phase   : span of one generate, simulate,
+ *                           write or analyze step and its file
+ *      simulation.Replica : summary of a finished replica
+ *      simulation.Sample  : periodic FEL depth and queue state
+ *                           of every monitored running queue
+ *
+ * All three are disabled by default. A disabled event costs
+ * one small allocation per phase and no work at all per
+ * simulated event; samples are read from the SimulationMonitor
+ * snapshots only while a recording asks for them. Enable them
+ * with the settings file next to this class:
+ *
+ *      java -XX:StartFlightRecording:filename=sweep.jfr,settings=default,settings=simulation.jfc ...
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class SimulationEvents {
+
+  public static final String GENERATE = "generate";
+  public static final String SIMULATE = "simulate";
+  public static final String WRITE = "write";
+  public static final String ANALYZE = "analyze";
+
+  static {
+    FlightRecorder.addPeriodicEvent(Sample.class, new Runnable() {
+      public void run() {
+        for (SimulationMonitor monitor : SimulationMonitor.active()) {
+          long[] queueLengths = monitor.getQueueLengths();
+          long[] busyServers = monitor.getBusyServers();
+          for (int station = 0; station < queueLengths.length; station++) {
+            Sample sample = new Sample();
+            sample.run = monitor.getName();
+            sample.station = station;
+            sample.clock = monitor.getClock();
+            sample.eventsProcessed = monitor.getEventsProcessed();
+            sample.futureEventListSize = monitor.getFutureEventListSize();
+            sample.queueLength = queueLengths[station];
+            sample.busyServers = busyServers[station];
+            sample.commit();
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * phase
+   *
+   * Start timing a phase, ended and recorded by its
+   * commit, which does nothing when the event is disabled
+   *
+   * @param phase : GENERATE, SIMULATE, WRITE or ANALYZE
+   * @param file  : file the phase works on
+   */
+  public static Phase phase(String phase, String file) {
+    Phase event = new Phase();
+    if (event.isEnabled()) {
+      event.phase = phase;
+      event.file = file;
+      event.begin();
+    }
+    return event;
+  }
+
+  /**
+   * replica
+   *
+   * Record the summary of a finished replica
+   */
+  public static void replica(String file, SingleServerQueue server, long nanos) {
+    Replica event = new Replica();
+    if (event.isEnabled()) {
+      event.file = file;
+      event.nanos = nanos;
+      event.customers = server.getDelaySketch().getCount();
+      event.eventsProcessed = server.getEventsProcessed();
+      event.averageDelay = server.getDelaySketch().getMean();
+      event.delayP99 = server.getDelaySketch().getQuantile(0.99);
+      event.averageNumberInSystem = server.getAverageNumberInSystem();
+      event.averageBusyServers = server.getAverageBusyServers();
+      event.commit();
+    }
+  }
+
+  @Name("simulation.Phase")
+  @Label("Simulation Phase")
+  @Category("Simulation")
+  @Enabled(false)
+  public static class Phase extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("File")
+    String file;
+  }
+
+  @Name("simulation.Replica")
+  @Label("Simulation Replica")
+  @Category("Simulation")
+  @Enabled(false)
+  public static class Replica extends Event {
+    @Label("Output File")
+    String file;
+
+    @Label("Run Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long nanos;
+
+    @Label("Customers")
+    long customers;
+
+    @Label("Events Processed")
+    long eventsProcessed;
+
+    @Label("Average Delay")
+    double averageDelay;
+
+    @Label("Delay P99")
+    double delayP99;
+
+    @Label("Average Number In System")
+    double averageNumberInSystem;
+
+    @Label("Average Busy Servers")
+    double averageBusyServers;
+  }
+
+  @Name("simulation.Sample")
+  @Label("Simulation Sample")
+  @Category("Simulation")
+  @Enabled(false)
+  @Period("1 s")
+  public static class Sample extends Event {
+    @Label("Run")
+    String run;
+
+    @Label("Station")
+    int station;
+
+    @Label("Simulated Clock")
+    double clock;
+
+    @Label("Events Processed")
+    long eventsProcessed;
+
+    @Label("Future Event List Size")
+    int futureEventListSize;
+
+    @Label("Queue Length")
+    long queueLength;
+
+    @Label("Busy Servers")
+    long busyServers;
+  }
+}
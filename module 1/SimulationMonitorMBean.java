@@ -0,0 +1,42 @@
+/**
+ * Management interface of a running simulation, see
+ * SimulationMonitor. Per station arrays are indexed by
+ * station (queue or node) number.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public interface SimulationMonitorMBean {
+
+  String getModel();
+
+  String getName();
+
+  /** simulated time of the last published event **/
+  double getClock();
+
+  long getEventsProcessed();
+
+  /** rate since the previous read of this attribute **/
+  double getEventsPerSecond();
+
+  /** rate since the simulation started **/
+  double getAverageEventsPerSecond();
+
+  int getFutureEventListSize();
+
+  int getStations();
+
+  /** customers waiting at each station, not in service **/
+  long[] getQueueLengths();
+
+  long[] getBusyServers();
+
+  /** busy servers over servers of each station **/
+  double[] getUtilizations();
+
+  /** running mean delay (or sojourn time) at each station **/
+  double[] getAverageDelays();
+
+  boolean isFinished();
+}
@@ -10,12 +10,17 @@ import java.io.*;
  */
 public class Simulator {
 
+  private static final String WARMUP_DETECTION = "MSER";
+
   /**
    * main
    *
    * @param inter-arrival input file
    * @param service times input file
    * @param statistics output file
+   * @param output format
+   * @param number of servers
+   * @param MSER to detect and discard the warm-up period
    */
   public static void main(String[] args) throws IOException {
 
@@ -24,7 +29,9 @@ public class Simulator {
         "(1) Inter Arrival Times Input File\n" +
         "(2) Service Times Input File\n" +
         "(3) Statistics Output File\n" +
-        "(4) Output Format [default = csv]");
+        "(4) Output Format [default = csv]\n" +
+        "(5) Number of Servers [default = 1]\n" +
+        "(6) Warm-up Detection: MSER or NONE [default = NONE]");
       return;
     }
 
@@ -33,7 +40,19 @@ public class Simulator {
       format = args[3];
     }
 
-    run(args[0], args[1], args[2], format);
+    int servers = 1;
+    if (args.length > 4) {
+      try {
+        servers = Integer.parseInt(args[4]);
+      } catch (NumberFormatException e) {
+        System.out.println("Error: Could not parse number of servers");
+        return;
+      }
+    }
+
+    boolean warmup = args.length > 5 && args[5].equals(WARMUP_DETECTION);
+
+    run(args[0], args[1], args[2], format, servers, warmup);
   }
 
   /**
@@ -41,13 +60,78 @@ public class Simulator {
    *
    * Initialize and run Single Server Queue
    */
-  public static void run(String interArrivalTimesFile,
+  public static SingleServerQueue run(String interArrivalTimesFile,
     String serviceTimesFile, String outputFile, String outputFormat) throws IOException {
+    return run(interArrivalTimesFile, serviceTimesFile, outputFile, outputFormat, 1);
+  }
+
+  /**
+   * run
+   *
+   * Initialize and run the queue with c servers
+   */
+  public static SingleServerQueue run(String interArrivalTimesFile,
+    String serviceTimesFile, String outputFile, String outputFormat, int servers) throws IOException {
+    return run(interArrivalTimesFile, serviceTimesFile, outputFile, outputFormat, servers, false);
+  }
+
+  /**
+   * run
+   *
+   * Initialize and run the queue, optionally discarding
+   * the warm-up period found by MSER-5
+   *
+   * @return the finished queue, for in memory statistics
+   */
+  public static SingleServerQueue run(String interArrivalTimesFile, String serviceTimesFile,
+    String outputFile, String outputFormat, int servers, boolean warmup) throws IOException {
+    return run(interArrivalTimesFile, serviceTimesFile, outputFile, outputFormat, servers, warmup, null);
+  }
+
+  /**
+   * run
+   *
+   * Initialize and run the queue, reporting its departures
+   * to a sweep progress cell, which is finished once the
+   * queue is done
+   */
+  public static SingleServerQueue run(String interArrivalTimesFile, String serviceTimesFile,
+    String outputFile, String outputFormat, int servers, boolean warmup,
+    ProgressTracker.Cell progress) throws IOException {
+
+    EventGenerator generator = new TraceEventGenerator(interArrivalTimesFile, serviceTimesFile);
+    SingleServerQueue server = new SingleServerQueue(generator, outputFormat, servers);
+    server.setWarmupDetection(warmup);
+    server.setProgress(progress);
+
+    SimulationMonitor monitor = SimulationMonitor.register("SingleServerQueue", outputFile, new int[]{servers});
+    server.setMonitor(monitor);
+    SimulationEvents.Phase phase = SimulationEvents.phase(SimulationEvents.SIMULATE, outputFile);
+    long start = System.nanoTime();
+    try {
+      server.run();
+    } finally {
+      monitor.unregister();
+    }
+    phase.commit();
+    SimulationEvents.replica(outputFile, server, System.nanoTime() - start);
+    if (progress != null) {
+      progress.finish();
+    }
+
+    if (warmup) {
+      System.out.println("Warm-up cutoff: " + server.getWarmupCutoff() +
+        " (" + server.getWarmupCustomers() + " customers discarded)");
+      System.out.println("Average delay after warm-up: " + server.getAverageDelay());
+    }
 
-    EventGenerator generator = new EventGenerator(interArrivalTimesFile, serviceTimesFile);
-    SingleServerQueue server = new SingleServerQueue(generator, outputFormat);
-    server.run();
+    System.out.println("Time average number in system: " + server.getAverageNumberInSystem() +
+      ", in queue: " + server.getAverageQueueLength());
+    System.out.println("Delay percentiles: p50 = " + server.getDelaySketch().getQuantile(0.5) +
+      ", p95 = " + server.getDelaySketch().getQuantile(0.95) +
+      ", p99 = " + server.getDelaySketch().getQuantile(0.99));
 
+    phase = SimulationEvents.phase(SimulationEvents.WRITE, outputFile);
     BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "utf-8"));
     
     if (outputFormat.equals("csv")) {
@@ -65,5 +149,7 @@ public class Simulator {
     }
 
     out.close();
+    phase.commit();
+    return server;
   }
 }
\ No newline at end of file
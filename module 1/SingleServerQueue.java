@@ -4,7 +4,16 @@ import java.io.*;
 
 /**
  * Implementation of a Single Server Simulation
- * with a First-In-First-Out Queue
+ * with a First-In-First-Out Queue. The station can
+ * also be run with c servers (M/M/c style).
+ *
+ * A queue built with an output format runs until its trace
+ * runs out and keeps a Statistic row per departure for the
+ * output file. A queue built with a StopCondition runs any
+ * EventGenerator until the condition is met and keeps only
+ * the O(1) accumulators, time weighted statistics, sketches
+ * and batch means, so it runs in constant memory for any
+ * number of customers.
  *
  * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
  * @version 11/03/16
@@ -20,8 +29,21 @@ public class SingleServerQueue {
   /** Future Event list (set) ordered by event time **/
   private TreeSet<Event> futureEventList;
 
-  /** List of collected statistics **/
+  /** List of collected statistics, empty without an output format **/
   private List<Statistic> statistics;
+  private boolean keepStatistics;
+
+  /** when a generator driven run ends, null for a trace run **/
+  private StopCondition stopCondition;
+  private long departureLimit;
+  private double horizon;
+
+  /** batch means of the customer delays **/
+  private ConfidenceInterval.Running delayBatchMeans;
+  private double batchSum;
+  private long batchCount;
+  private long batchSize;
+  private boolean precise;
 
   /** customer queue **/
   private Queue<Double> queue;
@@ -35,8 +57,14 @@ public class SingleServerQueue {
   /** current clock time **/
   private double clock;
 
-  /** Server in use **/
-  private boolean isBusy;
+  /** number of servers c **/
+  private int servers;
+
+  /** idle servers **/
+  private IdleServerSet idleServers;
+
+  /** insertion counter, orders events with equal times **/
+  private long nextSequence;
 
   private String outputFormat;
 
@@ -44,12 +72,41 @@ public class SingleServerQueue {
 
   private double totalServerFreeTime;
 
+  /** per server idle time accounting **/
+  private double[] serverFreeTime;
+  private double[] serverIdleSince;
+
+  /** sum of serverIdleSince over the idle servers **/
+  private double idleSinceTotal;
+
   private double delay;
 
-  private double previousServiceTime;
+  /**
+   * time each server has worked off the customers
+   * routed to it so far (Kiefer-Wolfowitz recursion,
+   * the Lindley recursion when c = 1)
+   */
+  private IndexedMinHeap serverFreeAt;
+
+  /** time weighted customers in system and busy servers **/
+  private TimeWeightedStatistic numberInSystem;
+  private TimeWeightedStatistic busyServers;
+
+  /** per customer delay and number in system seen on arrival **/
+  private QuantileSketch delaySketch;
+  private QuantileSketch queueLengthSketch;
+
+  /** MSER-5 warm-up detection over the delays, off by default **/
+  private WarmupDetector warmupDetector;
 
-  private double previousArrivalTime;
+  /** number of events processed so far **/
+  private long eventsProcessed;
 
+  /** live JMX view, null when not monitored **/
+  private SimulationMonitor monitor;
+
+  /** sweep progress of this run, null when not tracked **/
+  private ProgressTracker.Cell progress;
 
   /**
    * SingleServerQueue
@@ -58,24 +115,80 @@ public class SingleServerQueue {
    *        and service times
    */
   public SingleServerQueue(EventGenerator eventGenerator, String outputFormat) {
+    this(eventGenerator, outputFormat, 1);
+  }
+
+  /**
+   * SingleServerQueue
+   *
+   * @param eventGenerator for generating arrival times
+   *        and service times
+   * @param servers number of servers c
+   */
+  public SingleServerQueue(EventGenerator eventGenerator, String outputFormat, int servers) {
+    this(eventGenerator, outputFormat, null, servers);
+  }
+
+  /**
+   * SingleServerQueue
+   *
+   * Run the generator until the stop condition is met,
+   * without collecting Statistic rows
+   *
+   * @param eventGenerator for generating arrival times
+   *        and service times
+   * @param stopCondition when the run ends
+   * @param servers number of servers c
+   */
+  public SingleServerQueue(EventGenerator eventGenerator, StopCondition stopCondition, int servers) {
+    this(eventGenerator, null, stopCondition, servers);
+  }
+
+  private SingleServerQueue(EventGenerator eventGenerator, String outputFormat,
+    StopCondition stopCondition, int servers) {
     this.eventGenerator = eventGenerator;
 
     futureEventList = new TreeSet<Event>(new EventComparator());
     statistics = new ArrayList<Statistic>();
-    queue = new LinkedList<Double>();
+    keepStatistics = outputFormat != null;
+    queue = new ArrayDeque<Double>();
 
     this.outputFormat = outputFormat;
+    this.stopCondition = stopCondition;
+    departureLimit = stopCondition != null ? stopCondition.getDepartures() : Long.MAX_VALUE;
+    horizon = stopCondition != null ? stopCondition.getHorizon() : Double.POSITIVE_INFINITY;
+    batchSize = stopCondition != null ? stopCondition.getBatchSize() : StopCondition.DEFAULT_BATCH_SIZE;
+    delayBatchMeans = new ConfidenceInterval.Running();
 
     clock = 0.0;
-    isBusy = false;
+    this.servers = servers;
+    idleServers = new IdleServerSet(servers);
     numberOfArrivals = 0;
     numberOfDepartures = 0;
+    nextSequence = 0;
     currentStartTime = 0.0;
     totalServerFreeTime = 0.0;
+    serverFreeTime = new double[servers];
+    serverIdleSince = new double[servers];
+    idleSinceTotal = 0.0;
 
     delay = 0.0;
-    previousArrivalTime = 0.0;
-    previousServiceTime = 0.0;
+    serverFreeAt = new IndexedMinHeap(servers);
+    numberInSystem = new TimeWeightedStatistic(0.0);
+    busyServers = new TimeWeightedStatistic(0.0);
+    delaySketch = new QuantileSketch(QuantileSketch.TIME_UNIT);
+    queueLengthSketch = new QuantileSketch(QuantileSketch.COUNT_UNIT);
+  }
+
+  /**
+   * setWarmupDetection
+   *
+   * Detect the end of the warm-up period online with
+   * MSER-5 over the customer delays. Statistics collected
+   * before the cutoff are discarded at the end of the run.
+   */
+  public void setWarmupDetection(boolean enabled) {
+    warmupDetector = enabled ? new WarmupDetector() : null;
   }
 
   /**
@@ -83,7 +196,8 @@ public class SingleServerQueue {
    *
    * run the simulation.
    * simulation ends when an event in the
-   * futureEventList has time t = -1
+   * futureEventList has time t = -1, or when
+   * the stop condition is met
    */
   public void run() throws IOException {
 
@@ -96,6 +210,11 @@ public class SingleServerQueue {
       if (nextEvent.time < 0) {
         System.out.println("Reached end of events list");
         break;
+      } else if (nextEvent.time > horizon) {
+
+        // Stop at the horizon, the event never happens
+        clock = horizon;
+        break;
       } else {
 
         // Advance clock to next event time
@@ -103,17 +222,103 @@ public class SingleServerQueue {
       }
 
       if (nextEvent.type.equals(DEPARTURE_EVENT)) {
-        departureEvent();
+        departureEvent(nextEvent);
 
       } else if (nextEvent.type.equals(ARRIVAL_EVENT)) {
         arrivalEvent();
 
       }
+
+      eventsProcessed += 1;
+      if ((eventsProcessed & SimulationMonitor.PUBLISH_MASK) == 0) {
+        publish();
+      }
+
+      if (numberOfDepartures >= departureLimit || precise) {
+        break;
+      }
+    }
+
+    publish();
+    if (monitor != null) {
+      monitor.finish();
+    }
+
+    if (warmupDetector != null) {
+      truncateWarmup();
     }
 
     closeGenerator();
   }
 
+  /**
+   * setMonitor
+   *
+   * Publish progress to the given monitor while running
+   */
+  public void setMonitor(SimulationMonitor monitor) {
+    this.monitor = monitor;
+  }
+
+  /**
+   * setProgress
+   *
+   * Report completed departures to the given cell while running
+   */
+  public void setProgress(ProgressTracker.Cell progress) {
+    this.progress = progress;
+  }
+
+  /**
+   * publish
+   *
+   * Copy the current state to the monitor and the
+   * departures to the progress cell
+   */
+  private void publish() {
+    if (progress != null) {
+      progress.update(numberOfDepartures);
+    }
+    if (monitor != null) {
+      monitor.publishStation(0, queue.size(), servers - idleServers.size(),
+        delaySketch.getCount() > 0 ? delaySketch.getMean() : 0.0);
+      monitor.publish(clock, eventsProcessed, futureEventList.size());
+    }
+  }
+
+  /**
+   * truncateWarmup
+   *
+   * drop the statistics collected before the warm-up cutoff
+   * and restart the utilization of the others at the cutoff
+   */
+  private void truncateWarmup() {
+    warmupDetector.finish();
+    double cutoff = warmupDetector.getCutoffTime();
+    if (!keepStatistics) {
+      return;
+    }
+
+    int first = 0;
+    while (first < statistics.size() && statistics.get(first).clock < cutoff) {
+      first++;
+    }
+    if (first == 0) {
+      return;
+    }
+
+    // busy servers stay constant from the last dropped row to the cutoff
+    Statistic last = statistics.get(first - 1);
+    double busyTimeAtCutoff = last.busyTime + last.serverInUse * (cutoff - last.clock);
+    for (int i = first; i < statistics.size(); i++) {
+      Statistic statistic = statistics.get(i);
+      double elapsed = statistic.clock - cutoff;
+      statistic.serverUtilization = elapsed > 0
+        ? (statistic.busyTime - busyTimeAtCutoff) / (servers * elapsed) : 0.0;
+    }
+    statistics.subList(0, first).clear();
+  }
+
   /**
    * initialConditions
    *
@@ -129,29 +334,26 @@ public class SingleServerQueue {
 
 
     // Set LS(t) = 1
-    isBusy = true;
-    totalServerFreeTime += clock;
+    int server = seizeServer();
 
     // Generate Service Time s*;
     // Schedule new Departure event
     // at time t + s*;
     double serviceTime = eventGenerator.nextServiceTime();
-    futureEventList.add(new Event(DEPARTURE_EVENT, clock + serviceTime));
+    futureEventList.add(newEvent(DEPARTURE_EVENT, clock + serviceTime, server));
 
     // Generate interarrival time a*;
     // Schedule next arrival event
     // at time t + a*;
-    futureEventList.add(new Event(ARRIVAL_EVENT, clock + eventGenerator.nextArrivalTime()));
+    futureEventList.add(newEvent(ARRIVAL_EVENT, clock + eventGenerator.nextArrivalTime(), -1));
 
     numberOfArrivals += 1;
 
-    delay = Math.max(0, delay + previousArrivalTime + previousServiceTime - arrivalTime);
+    updateDelay(arrivalTime, serviceTime);
+    updateStatistics();
 
     collectStatistics();
 
-    previousArrivalTime = arrivalTime;
-    previousServiceTime = serviceTime;
-
     // Return control to time-advance
     // routine to continue simulation
   }
@@ -166,39 +368,36 @@ public class SingleServerQueue {
     double serviceTime = 0.0;
     double arrivalTime = clock;
 
-    // Is LS(t) = 1 ?
-    if (isBusy) {
+    // Is LS(t) = c ?
+    if (idleServers.isEmpty()) {
 
       // Increase LQ(t) by 1
       serviceTime = eventGenerator.nextServiceTime();
       queue.add(serviceTime);
     } else {
 
-      // Set LS(t) = 1
-      isBusy = true;
-      totalServerFreeTime += clock - currentStartTime;
+      // Increase LS(t) by 1
+      int server = seizeServer();
 
       // Generate Service Time s*;
       // Schedule new Departure event
       // at time t + s*;
       serviceTime = eventGenerator.nextServiceTime();
-      futureEventList.add(new Event(DEPARTURE_EVENT, clock + serviceTime));
+      futureEventList.add(newEvent(DEPARTURE_EVENT, clock + serviceTime, server));
     }
 
     // Generate interarrival time a*;
     // Schedule next arrival event
     // at time t + a*;
-    futureEventList.add(new Event(ARRIVAL_EVENT, clock + eventGenerator.nextArrivalTime()));
+    futureEventList.add(newEvent(ARRIVAL_EVENT, clock + eventGenerator.nextArrivalTime(), -1));
 
     numberOfArrivals += 1;
 
-    delay = Math.max(0, delay + previousArrivalTime + previousServiceTime - arrivalTime);
+    updateDelay(arrivalTime, serviceTime);
+    updateStatistics();
 
     // collectStatistics();
 
-    previousArrivalTime = arrivalTime;
-    previousServiceTime = serviceTime;
-
     // Return control to time-advance
     // routine to continue simulation
   }
@@ -208,7 +407,7 @@ public class SingleServerQueue {
    *
    * simulate departure event at time t = clock
    */
-  private void departureEvent() throws IOException {
+  private void departureEvent(Event event) throws IOException {
 
     // Is LQ(t) > 0 ?
     if (queue.size() > 0) {
@@ -219,17 +418,18 @@ public class SingleServerQueue {
       // Generate service time s*;
       // Schedule new departure
       // event at time t + s*;
-      futureEventList.add(new Event(DEPARTURE_EVENT, clock + serviceTime));
+      futureEventList.add(newEvent(DEPARTURE_EVENT, clock + serviceTime, event.server));
 
     } else {
 
-      // Set LS(t) = 0
-      isBusy = false;
+      // Reduce LS(t) by 1
+      releaseServer(event.server);
 
       currentStartTime = clock;
     }
 
     numberOfDepartures += 1;
+    updateStatistics();
     collectStatistics();
 
     // Return control to time-advance
@@ -245,11 +445,17 @@ public class SingleServerQueue {
    */
   private void collectStatistics() {
 
+    if (!keepStatistics) {
+      return;
+    }
+
     double serverUtilization = 0.0;
+    double freeTime = totalServerFreeTime + (idleServers.size() * clock - idleSinceTotal);
+    double busyTime = servers * clock - freeTime;
 
     if (clock != 0) {
-      // Server Utilization = Time server is busy / total running time
-      serverUtilization = (clock - totalServerFreeTime) / clock;
+      // Server Utilization = Time servers are busy / total running time
+      serverUtilization = busyTime / (servers * clock);
     }
 
 
@@ -259,13 +465,237 @@ public class SingleServerQueue {
       this.numberOfDepartures,
       this.queue.size(),
       serverUtilization,
-      isBusy ? 1: 0,
+      servers - idleServers.size(),
       delay,
       outputFormat);
+    statistic.busyTime = busyTime;
 
     statistics.add(statistic);
   }
 
+  /**
+   * updateDelay
+   *
+   * FIFO customers start on the server that frees up first
+   */
+  private void updateDelay(double arrivalTime, double serviceTime) {
+    int server = serverFreeAt.min();
+    delay = Math.max(0, serverFreeAt.key(server) - arrivalTime);
+    serverFreeAt.update(server, delay + arrivalTime + serviceTime);
+
+    if (warmupDetector != null && warmupDetector.add(delay, arrivalTime)) {
+      // time averages restart once the warm-up is detected
+      numberInSystem.reset(clock);
+      busyServers.reset(clock);
+      delaySketch.reset();
+      queueLengthSketch.reset();
+      delayBatchMeans = new ConfidenceInterval.Running();
+      batchSum = 0.0;
+      batchCount = 0;
+    }
+    delaySketch.record(delay);
+
+    batchSum += delay;
+    batchCount += 1;
+    if (batchCount == batchSize) {
+      delayBatchMeans.add(batchSum / batchSize);
+      batchSum = 0.0;
+      batchCount = 0;
+      precise = stopCondition != null && stopCondition.isPrecise(delayBatchMeans);
+    }
+  }
+
+  /**
+   * updateStatistics
+   *
+   * record the new number of customers and busy
+   * servers in the time weighted accumulators
+   */
+  private void updateStatistics() {
+    int busy = servers - idleServers.size();
+    int customers = queue.size() + busy;
+    if (customers > numberInSystem.getValue()) {
+      // an arrival, record the customers it found
+      queueLengthSketch.record(numberInSystem.getValue());
+    }
+    numberInSystem.update(customers, clock);
+    busyServers.update(busy, clock);
+  }
+
+  /**
+   * seizeServer
+   *
+   * take the lowest idle server
+   */
+  private int seizeServer() {
+    int server = idleServers.poll();
+    double idle = clock - serverIdleSince[server];
+    serverFreeTime[server] += idle;
+    totalServerFreeTime += idle;
+    idleSinceTotal -= serverIdleSince[server];
+    return server;
+  }
+
+  /**
+   * releaseServer
+   *
+   * return a server to the idle set
+   */
+  private void releaseServer(int server) {
+    serverIdleSince[server] = clock;
+    idleSinceTotal += clock;
+    idleServers.add(server);
+  }
+
+  private Event newEvent(String type, double time, int server) {
+    return new Event(type, time, server, nextSequence++);
+  }
+
+  /**
+   * getServerUtilization
+   *
+   * @return fraction of time one server is busy
+   */
+  public double getServerUtilization(int server) {
+    double freeTime = serverFreeTime[server];
+    if (idleServers.contains(server)) {
+      freeTime += clock - serverIdleSince[server];
+    }
+    return clock > 0 ? (clock - freeTime) / clock : 0.0;
+  }
+
+  public int getServers() {
+    return servers;
+  }
+
+  /**
+   * getAverageNumberInSystem
+   *
+   * @return time average number of customers in the system
+   */
+  public double getAverageNumberInSystem() {
+    return numberInSystem.getAverage(clock);
+  }
+
+  /**
+   * getAverageQueueLength
+   *
+   * @return time average number of waiting customers
+   */
+  public double getAverageQueueLength() {
+    return numberInSystem.getAverage(clock) - busyServers.getAverage(clock);
+  }
+
+  /**
+   * getAverageBusyServers
+   *
+   * @return time average number of busy servers
+   */
+  public double getAverageBusyServers() {
+    return busyServers.getAverage(clock);
+  }
+
+  /**
+   * getStateProbability
+   *
+   * @return fraction of time n customers are in the system
+   */
+  public double getStateProbability(int n) {
+    return numberInSystem.getStateProbability(n, clock);
+  }
+
+  /**
+   * getTimeInStates
+   *
+   * @return time spent with 0..max customers in the system
+   */
+  public double[] getTimeInStates() {
+    return numberInSystem.getTimeInStates(clock);
+  }
+
+  /**
+   * getDelaySketch
+   *
+   * @return quantile sketch of the customer delays,
+   *         mergeable across replicas
+   */
+  public QuantileSketch getDelaySketch() {
+    return delaySketch;
+  }
+
+  /**
+   * getQueueLengthSketch
+   *
+   * @return quantile sketch of the number of customers
+   *         found in the system by arriving customers
+   */
+  public QuantileSketch getQueueLengthSketch() {
+    return queueLengthSketch;
+  }
+
+  /**
+   * getWarmupCutoff
+   *
+   * @return time of the first statistic kept, 0 without
+   *         warm-up detection or before a cutoff is found
+   */
+  public double getWarmupCutoff() {
+    return warmupDetector != null ? warmupDetector.getCutoffTime() : 0.0;
+  }
+
+  /**
+   * getWarmupCustomers
+   *
+   * @return number of customers treated as warm-up
+   */
+  public long getWarmupCustomers() {
+    return warmupDetector != null ? warmupDetector.getTruncatedObservations() : 0;
+  }
+
+  /**
+   * getAverageDelay
+   *
+   * @return average delay of the customers after the cutoff,
+   *         of all customers without warm-up detection
+   */
+  public double getAverageDelay() {
+    if (warmupDetector != null) {
+      return warmupDetector.getMean();
+    }
+    return delaySketch.getCount() > 0 ? delaySketch.getMean() : 0.0;
+  }
+
+  public long getEventsProcessed() {
+    return eventsProcessed;
+  }
+
+  public long getNumberOfDepartures() {
+    return numberOfDepartures;
+  }
+
+  public double getClock() {
+    return clock;
+  }
+
+  /**
+   * getDelayBatchMeans
+   *
+   * @return means of consecutive batches of customer delays,
+   *         after the warm-up cutoff when it is detected
+   */
+  public ConfidenceInterval.Running getDelayBatchMeans() {
+    return delayBatchMeans;
+  }
+
+  /**
+   * isPrecise
+   *
+   * @return whether the run stopped on its precision
+   */
+  public boolean isPrecise() {
+    return precise;
+  }
+
   /**
    * getStatistics
    *
@@ -284,23 +714,31 @@ public class SingleServerQueue {
    */
   private static class Event {
 
-    private DecimalFormat df;
-
     /** Event Type **/
     public String type;
 
     /** Time to run event **/
     public double time;
 
-    public Event(String type, double time) {
+    /** Server that finishes, departures only **/
+    public int server;
+
+    /** Order of scheduling, breaks ties in time **/
+    public long sequence;
+
+    public Event(String type, double time, int server, long sequence) {
       this.type = type;
       this.time = time;
-
-      df = new DecimalFormat("#.#########");
+      this.server = server;
+      this.sequence = sequence;
     }
 
     @Override
     public String toString() {
+      return toString(new DecimalFormat("#.#########"));
+    }
+
+    public String toString(DecimalFormat df) {
       return "(" + type + "; " + df.format(time) + ")";
     }
   }
@@ -330,6 +768,9 @@ public class SingleServerQueue {
     public double delay;
     public int serverInUse;
 
+    /** server time busy since t = 0, not written **/
+    public double busyTime;
+
     public Statistic(double clock, List<Event> futureEventList,
       long numberOfDepartures, long queueSize, double serverUtilization, int serverInUse,
       double delay, String format) {
@@ -349,7 +790,7 @@ public class SingleServerQueue {
     public String toString() {
       String fel = "";
       for (Event e : futureEventList) {
-        fel += e.toString() + "; ";
+        fel += e.toString(df) + "; ";
       }
 
       if (format.equals("csv") || format.equals("csv-no-header")) {
@@ -384,7 +825,8 @@ public class SingleServerQueue {
    */
   private static class EventComparator implements Comparator<Event> {
     public int compare(Event one, Event two) {
-      return Double.compare(one.time, two.time);
+      int order = Double.compare(one.time, two.time);
+      return order != 0 ? order : Long.compare(one.sequence, two.sequence);
     }
   }
 
@@ -0,0 +1,173 @@
+import java.io.*;
+
+/**
+ * Long steady-state runs of the single server queue. The
+ * inter-arrival and service times come from a generator,
+ * exponential (EXP) or TES correlated (TES), or from a trace
+ * (TRACE), and the run ends on a StopCondition instead of at
+ * the end of a times file. No Statistic rows are kept, so
+ * memory stays constant however many customers are served,
+ * and the summary is printed instead of written to a file.
+ *
+ * Example, a billion customers at rho = 0.9:
+ *
+ *      java SteadyStateSimulator EXP 9 10 DEPARTURES 1000000000
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class SteadyStateSimulator {
+
+  /** Sources **/
+  public static final String EXPONENTIAL = "EXP";
+  public static final String TES = "TES";
+  public static final String TRACE = "TRACE";
+
+  /** Stop conditions **/
+  public static final String DEPARTURES = "DEPARTURES";
+  public static final String TIME = "TIME";
+  public static final String PRECISION = "PRECISION";
+
+  private static final String WARMUP_DETECTION = "MSER";
+
+  private static final double DEFAULT_INTERVAL = 0.5;
+  private static final double DEFAULT_XI = 0.7;
+
+  /**
+   * main
+   *
+   * @param source EXP, TES or TRACE
+   * @param lambda or inter-arrival times file for TRACE
+   * @param mu or service times file for TRACE
+   * @param stop DEPARTURES, TIME or PRECISION
+   * @param limit departures, simulated time or relative half width
+   * @param number of servers
+   * @param seed of the generator
+   * @param MSER to detect and discard the warm-up period
+   * @param TES interval
+   * @param TES stitching parameter xi
+   */
+  public static void main(String[] args) throws IOException {
+
+    if (args.length < 5) {
+      System.out.println("Missing parameters:\n" +
+        "(1) Source: EXP, TES or TRACE\n" +
+        "(2) Arrival Rate Lambda, or Inter Arrival Times Input File for TRACE\n" +
+        "(3) Service Rate Mu, or Service Times Input File for TRACE\n" +
+        "(4) Stop Condition: DEPARTURES, TIME or PRECISION\n" +
+        "(5) Limit: departures, simulated time or relative half width of the mean delay\n" +
+        "(6) Number of Servers [default = 1]\n" +
+        "(7) Seed [default = 1]\n" +
+        "(8) Warm-up Detection: MSER or NONE [default = NONE]\n" +
+        "(9) TES Interval [default = 0.5]\n" +
+        "(10) TES Stitching Parameter xi [default = 0.7]");
+      return;
+    }
+
+    String source = args[0];
+    StopCondition stopCondition;
+    int servers = 1;
+    long seed = 1;
+    double interval = DEFAULT_INTERVAL;
+    double xi = DEFAULT_XI;
+    try {
+      if (args[3].equals(DEPARTURES)) {
+        stopCondition = StopCondition.departures((long) Double.parseDouble(args[4]));
+      } else if (args[3].equals(TIME)) {
+        stopCondition = StopCondition.horizon(Double.parseDouble(args[4]));
+      } else if (args[3].equals(PRECISION)) {
+        stopCondition = StopCondition.precision(Double.parseDouble(args[4]), Long.MAX_VALUE);
+      } else {
+        System.out.println("Error: unknown stop condition " + args[3]);
+        return;
+      }
+      if (args.length > 5) {
+        servers = Integer.parseInt(args[5]);
+      }
+      if (args.length > 6) {
+        seed = Long.parseLong(args[6]);
+      }
+      if (args.length > 8) {
+        interval = Double.parseDouble(args[8]);
+      }
+      if (args.length > 9) {
+        xi = Double.parseDouble(args[9]);
+      }
+    } catch (NumberFormatException e) {
+      System.out.println("Error: Could not parse " + e.getMessage());
+      return;
+    } catch (IllegalArgumentException e) {
+      System.out.println("Error: " + e.getMessage() + ": " + args[3] + " " + args[4]);
+      return;
+    }
+
+    EventGenerator generator;
+    try {
+      if (source.equals(TRACE)) {
+        generator = new TraceEventGenerator(args[1], args[2]);
+      } else if (source.equals(EXPONENTIAL)) {
+        generator = new DefaultEventGenerator(Double.parseDouble(args[1]), Double.parseDouble(args[2]), seed);
+      } else if (source.equals(TES)) {
+        generator = new CorrelatedEventGenerator(Double.parseDouble(args[1]), Double.parseDouble(args[2]),
+          xi, interval, seed);
+      } else {
+        System.out.println("Error: unknown source " + source);
+        return;
+      }
+    } catch (NumberFormatException e) {
+      System.out.println("Error: Could not parse lambda or mu");
+      return;
+    }
+
+    boolean warmup = args.length > 7 && args[7].equals(WARMUP_DETECTION);
+    run(generator, stopCondition, servers, warmup, source + " " + args[1] + " " + args[2]);
+  }
+
+  /**
+   * run
+   *
+   * Run the queue on the generator until the stop
+   * condition is met and print its summary
+   *
+   * @return the finished queue
+   */
+  public static SingleServerQueue run(EventGenerator generator, StopCondition stopCondition,
+    int servers, boolean warmup, String name) throws IOException {
+
+    SingleServerQueue server = new SingleServerQueue(generator, stopCondition, servers);
+    server.setWarmupDetection(warmup);
+
+    System.out.println("Running " + name + " with " + servers + " server(s) until " + stopCondition);
+    SimulationMonitor monitor = SimulationMonitor.register("SingleServerQueue", name, new int[]{servers});
+    server.setMonitor(monitor);
+    SimulationEvents.Phase phase = SimulationEvents.phase(SimulationEvents.SIMULATE, name);
+    long start = System.nanoTime();
+    try {
+      server.run();
+    } finally {
+      monitor.unregister();
+    }
+    long nanos = System.nanoTime() - start;
+    phase.commit();
+    SimulationEvents.replica(name, server, nanos);
+
+    ConfidenceInterval.Running batchMeans = server.getDelayBatchMeans();
+    System.out.println("Departures: " + server.getNumberOfDepartures() + ", simulated time: " +
+      server.getClock() + ", events: " + server.getEventsProcessed() + " in " + nanos / 1e9 + " s (" +
+      (long) (server.getEventsProcessed() * 1e9 / nanos) + " events/s)");
+    if (warmup) {
+      System.out.println("Warm-up cutoff: " + server.getWarmupCutoff() +
+        " (" + server.getWarmupCustomers() + " customers discarded)");
+    }
+    System.out.println("Average delay: " + server.getDelaySketch().getMean() + " +/- " +
+      batchMeans.getHalfWidth() + " (95%, " + batchMeans.getCount() + " batch means" +
+      (server.isPrecise() ? ", precision reached" : "") + ")");
+    System.out.println("Time average number in system: " + server.getAverageNumberInSystem() +
+      ", in queue: " + server.getAverageQueueLength() + ", busy servers: " + server.getAverageBusyServers());
+    System.out.println("Delay percentiles: p50 = " + server.getDelaySketch().getQuantile(0.5) +
+      ", p95 = " + server.getDelaySketch().getQuantile(0.95) +
+      ", p99 = " + server.getDelaySketch().getQuantile(0.99));
+
+    return server;
+  }
+}
@@ -0,0 +1,118 @@
+/**
+ * When a generator driven run of the single server queue
+ * ends. The run stops at the first of
+ *
+ *      departures : number of customers served
+ *      horizon    : simulated time
+ *      precision  : relative half width of the 95% confidence
+ *                   interval on the mean delay, from batch means
+ *                   of batchSize consecutive customers
+ *
+ * that is reached; a limit that is not set never stops the
+ * run. Batch means are checked once MINIMUM_BATCHES batches
+ * are complete, batches restart with the statistics when a
+ * warm-up cutoff is detected.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class StopCondition {
+
+  public static final long DEFAULT_BATCH_SIZE = 10000;
+
+  /** fewest batch means the precision is judged on **/
+  public static final int MINIMUM_BATCHES = 20;
+
+  private long departures;
+  private double horizon;
+  private double precision;
+  private long batchSize;
+
+  /**
+   * StopCondition
+   *
+   * @param departures : customers served, Long.MAX_VALUE for no limit
+   * @param horizon    : simulated time, infinity for no limit
+   * @param precision  : relative half width, 0 for no limit
+   * @param batchSize  : customers per batch mean
+   */
+  public StopCondition(long departures, double horizon, double precision, long batchSize) {
+    if (departures < 1 || !(horizon > 0) || precision < 0 || batchSize < 1) {
+      throw new IllegalArgumentException("Invalid stop condition");
+    }
+    this.departures = departures;
+    this.horizon = horizon;
+    this.precision = precision;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * departures
+   *
+   * Stop after the given number of departures
+   */
+  public static StopCondition departures(long departures) {
+    return new StopCondition(departures, Double.POSITIVE_INFINITY, 0.0, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * horizon
+   *
+   * Stop at the given simulated time
+   */
+  public static StopCondition horizon(double horizon) {
+    return new StopCondition(Long.MAX_VALUE, horizon, 0.0, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * precision
+   *
+   * Stop once the relative half width of the mean delay
+   * is at most the given precision, or after maxDepartures
+   */
+  public static StopCondition precision(double precision, long maxDepartures) {
+    return new StopCondition(maxDepartures, Double.POSITIVE_INFINITY, precision, DEFAULT_BATCH_SIZE);
+  }
+
+  public long getDepartures() {
+    return departures;
+  }
+
+  public double getHorizon() {
+    return horizon;
+  }
+
+  public double getPrecision() {
+    return precision;
+  }
+
+  public long getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * isPrecise
+   *
+   * @return whether the batch means are precise enough
+   */
+  public boolean isPrecise(ConfidenceInterval.Running batchMeans) {
+    return precision > 0 && batchMeans.getCount() >= MINIMUM_BATCHES &&
+      batchMeans.getHalfWidth() <= precision * Math.abs(batchMeans.getMean());
+  }
+
+  @Override
+  public String toString() {
+    String condition = "";
+    if (departures < Long.MAX_VALUE) {
+      condition += "departures = " + departures;
+    }
+    if (horizon < Double.POSITIVE_INFINITY) {
+      condition += (condition.isEmpty() ? "" : ", ") + "horizon = " + horizon;
+    }
+    if (precision > 0) {
+      condition += (condition.isEmpty() ? "" : ", ") + "precision = " + precision +
+        " (batches of " + batchSize + ")";
+    }
+    return condition.isEmpty() ? "none" : condition;
+  }
+}
@@ -0,0 +1,734 @@
+import java.util.*;
+import java.net.*;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.channels.*;
+
+/**
+ * Coordinator of a sweep distributed over worker JVMs. The
+ * coordinator expands a sweep spec into one task per replica
+ * and cell, each described by its model, parameters and
+ * replica seed, and serves them over TCP to SweepWorker
+ * processes, which simulate them and send back a compact
+ * binary summary (averages and the delay sketch).
+ *
+ * Workers pull tasks, so a fast worker simply takes more of
+ * them. Once no task is left, an idle worker steals a copy
+ * of the oldest task still running elsewhere and the first
+ * result wins. Workers send heartbeats while simulating; the
+ * tasks of a worker that goes silent or disconnects are put
+ * back in front of the queue for the other workers. Workers
+ * send the contents of their sims files with the summary, so
+ * they need not share the output folder. Every copy is
+ * received into a temporary file of its own; the first
+ * result is moved into place atomically and the files of
+ * later copies are deleted.
+ *
+ * Local workers that exit while tasks remain are restarted,
+ * at most MAX_ATTEMPTS times per worker. Once no local
+ * worker is left and no worker is connected the sweep is
+ * aborted instead of waiting forever. Without local workers
+ * the coordinator waits for remote workers to connect.
+ *
+ * The coordinator binds the loopback address by default and
+ * starts the local workers itself. Summaries are appended to
+ * a journal in the output folder so an interrupted sweep
+ * resumes where it stopped, with the same replica seeds. The
+ * journal records the hash of the spec; the journal of a
+ * different spec is discarded, its results are never mixed
+ * into the cells of the new one.
+ *
+ * Protocol (DataOutputStream, big endian):
+ *
+ *      worker      : PROTOCOL_VERSION, then messages
+ *      REQUEST     : -> TASK task | WAIT | DONE
+ *      RESULT      : id, sims file length and bytes, utilization, delay, packets, sketch
+ *      FAILED      : id, message
+ *      HEARTBEAT
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class SweepCoordinator {
+
+  public static final int PROTOCOL_VERSION = 3;
+
+  /** Worker to coordinator messages **/
+  public static final byte REQUEST = 1;
+  public static final byte RESULT = 2;
+  public static final byte FAILED = 3;
+  public static final byte HEARTBEAT = 4;
+
+  /** Coordinator to worker messages **/
+  public static final byte TASK = 10;
+  public static final byte WAIT = 11;
+  public static final byte DONE = 12;
+
+  /** milliseconds between worker heartbeats **/
+  public static final int HEARTBEAT_INTERVAL = 1000;
+
+  /** milliseconds of silence after which a worker is lost **/
+  public static final int HEARTBEAT_TIMEOUT = 10000;
+
+  /** a task that failed or lost its worker this often is dropped **/
+  private static final int MAX_ATTEMPTS = 3;
+
+  /** copies of one task running at once when stealing **/
+  private static final int MAX_COPIES = 2;
+
+  private static final String JOURNAL_FILE = "coordinator.journal";
+  private static final String OUTPUT_SIMS_FOLDER = "sims";
+  private static final String JOURNAL_HEADER = "spec ";
+
+  private SweepSpec spec;
+  private InetAddress bindAddress;
+  private int port;
+  private ServerSocket server;
+
+  /** base seed, replica i always gets the same seeds **/
+  private long seed;
+
+  private List<Task> tasks;
+  private ArrayDeque<Task> pending;
+  private int finishedTasks;
+  private int failedTasks;
+  private int nextWorker;
+
+  /** open worker connections and restarts of local workers **/
+  private int connections;
+  private int restarts;
+
+  /** per cell summaries and merged delay sketches **/
+  private Map<String, List<double[]>> results;
+  private Map<String, QuantileSketch> sketches;
+  private DataOutputStream journal;
+  private ProgressTracker progress;
+
+  /**
+   * main
+   *
+   * @param sweep spec file
+   * @param number of local workers [default = available processors]
+   * @param port [default = 0, any free port]
+   * @param bind address [default = loopback]
+   */
+  public static void main(String[] args) throws Exception {
+
+    if (args.length < 1) {
+      System.out.println("Missing parameters:\n" +
+        "(1) Sweep Spec File\n" +
+        "(2) Number of Local Workers [default = available processors]\n" +
+        "(3) Port [default = 0, any free port]\n" +
+        "(4) Bind Address [default = loopback]");
+      return;
+    }
+
+    int workers = Runtime.getRuntime().availableProcessors();
+    int port = 0;
+    InetAddress bindAddress = InetAddress.getLoopbackAddress();
+    try {
+      if (args.length > 1) {
+        workers = Integer.parseInt(args[1]);
+      }
+      if (args.length > 2) {
+        port = Integer.parseInt(args[2]);
+      }
+      if (args.length > 3) {
+        bindAddress = InetAddress.getByName(args[3]);
+      }
+    } catch (NumberFormatException e) {
+      System.out.println("Error: Could not parse number of workers or port");
+      return;
+    } catch (UnknownHostException e) {
+      System.out.println("Error: Unknown bind address " + args[3]);
+      return;
+    }
+
+    SweepSpec spec;
+    try {
+      spec = SweepSpec.load(args[0]);
+    } catch (IOException e) {
+      System.out.println("Error: " + e.getMessage());
+      return;
+    }
+
+    if (!spec.getMode().equals(GenerateReplicas.INDEPENDENT)) {
+      System.out.println("Error: distributed sweeps run independent replicas only");
+      return;
+    }
+
+    new SweepCoordinator(spec, bindAddress, port).run(workers);
+  }
+
+  public SweepCoordinator(SweepSpec spec, InetAddress bindAddress, int port) {
+    this.spec = spec;
+    this.bindAddress = bindAddress;
+    this.port = port;
+    tasks = new ArrayList<Task>();
+    pending = new ArrayDeque<Task>();
+    results = new LinkedHashMap<String, List<double[]>>();
+    sketches = new HashMap<String, QuantileSketch>();
+  }
+
+  /**
+   * run
+   *
+   * Serve the sweep to the given number of local
+   * workers plus any remote worker that connects
+   */
+  public void run(int workers) throws IOException, InterruptedException {
+
+    new File(spec.getOutput()).mkdirs();
+    Set<String> finished = readJournal(new File(spec.getOutput(), JOURNAL_FILE));
+
+    for (double interval : spec.getIntervals()) {
+      for (int lambda : spec.getLambdas()) {
+        results.put(cell(interval, lambda), new ArrayList<double[]>());
+        sketches.put(cell(interval, lambda), new QuantileSketch(QuantileSketch.TIME_UNIT));
+      }
+    }
+    replayJournal(new File(spec.getOutput(), JOURNAL_FILE));
+
+    for (int i = 0; i < spec.getReplicas(); i++) {
+      for (double interval : spec.getIntervals()) {
+        for (int lambda : spec.getLambdas()) {
+          Task task = new Task(tasks.size(), i, interval, lambda);
+          if (!finished.contains(task.key)) {
+            tasks.add(task);
+            pending.add(task);
+          }
+        }
+      }
+    }
+    System.out.println(tasks.size() + " of " + spec.getReplicas() * spec.getIntervals().length *
+      spec.getLambdas().length + " tasks to run");
+
+    // remote workers are only tracked per finished task
+    progress = GenerateReplicas.progressTracker(spec);
+    progress.expect(tasks.size(), spec.getPackets());
+    progress.start();
+
+    server = new ServerSocket(port, 50, bindAddress);
+    System.out.println("Coordinator listening on " + bindAddress.getHostAddress() + ":" + server.getLocalPort());
+
+    Thread acceptor = new Thread(new Runnable() {
+      public void run() {
+        accept();
+      }
+    });
+    acceptor.setDaemon(true);
+    acceptor.start();
+
+    List<Process> processes = new ArrayList<Process>();
+    for (int i = 0; i < workers; i++) {
+      processes.add(launchWorker(i));
+    }
+
+    boolean aborted = false;
+    synchronized (this) {
+      while (finishedTasks + failedTasks < tasks.size()) {
+        wait(HEARTBEAT_INTERVAL);
+        if (finishedTasks + failedTasks < tasks.size() && !superviseWorkers(processes)) {
+          aborted = true;
+          break;
+        }
+      }
+    }
+
+    // workers get DONE on their next request
+    if (!aborted) {
+      for (Process process : processes) {
+        process.waitFor();
+      }
+    }
+    server.close();
+    journal.close();
+    progress.stop();
+
+    if (aborted) {
+      System.out.println("Error: sweep aborted, no worker is left with " +
+        (tasks.size() - finishedTasks - failedTasks) + " tasks to run; run the sweep again to resume");
+      printResults();
+      return;
+    }
+
+    if (failedTasks > 0) {
+      System.out.println("Error: " + failedTasks + " tasks failed, run the sweep again to retry them");
+    }
+    printResults();
+
+    if (spec.hasStage(SweepSpec.PROCESS)) {
+      new ProcessData(spec).run();
+    }
+  }
+
+  private void accept() {
+    try {
+      while (true) {
+        Socket socket = server.accept();
+        int worker;
+        synchronized (this) {
+          worker = nextWorker++;
+        }
+        // not a daemon like the acceptor, so remote
+        // workers still get DONE after the sweep ends
+        Thread connection = new Thread(new WorkerConnection(socket, worker));
+        connection.setDaemon(false);
+        connection.start();
+      }
+    } catch (IOException e) {
+      // server closed
+    }
+  }
+
+  /**
+   * launchWorker
+   *
+   * Start a worker JVM on this machine, with the
+   * classpath of the coordinator
+   */
+  private Process launchWorker(int worker) throws IOException {
+    String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    ProcessBuilder builder = new ProcessBuilder(java,
+      "-cp", System.getProperty("java.class.path"),
+      "SweepWorker", server.getInetAddress().getHostAddress(), "" + server.getLocalPort());
+    builder.redirectErrorStream(true);
+    builder.redirectOutput(ProcessBuilder.Redirect.appendTo(new File(spec.getOutput(), "worker-" + worker + ".log")));
+    return builder.start();
+  }
+
+  /**
+   * superviseWorkers
+   *
+   * Restart the local workers that exited while tasks
+   * remain, called with the lock held
+   *
+   * @return false when no worker is left to run the
+   *         remaining tasks
+   */
+  private boolean superviseWorkers(List<Process> processes) throws IOException {
+    int alive = 0;
+    for (int i = 0; i < processes.size(); i++) {
+      Process process = processes.get(i);
+      if (process.isAlive()) {
+        alive += 1;
+      } else if (restarts < MAX_ATTEMPTS * processes.size()) {
+        System.out.println("Worker process " + i + " exited with status " + process.exitValue() + ", restarting");
+        restarts += 1;
+        processes.set(i, launchWorker(i));
+        alive += 1;
+      }
+    }
+    return processes.isEmpty() || alive > 0 || connections > 0;
+  }
+
+  /**
+   * assign
+   *
+   * @return the next pending task, a stolen copy of
+   *         a running task or null when there is none
+   */
+  private synchronized Task assign(WorkerConnection worker) {
+    Task task = pending.pollFirst();
+
+    if (task == null) {
+      for (Task running : tasks) {
+        if (running.copies > 0 && running.copies < MAX_COPIES && !running.finished
+            && !worker.running.contains(running)
+            && (task == null || running.started < task.started)) {
+          task = running;
+        }
+      }
+    }
+
+    if (task != null) {
+      if (task.copies == 0) {
+        task.started = System.currentTimeMillis();
+      }
+      task.copies += 1;
+      worker.running.add(task);
+    }
+    return task;
+  }
+
+  private synchronized boolean isComplete() {
+    return finishedTasks + failedTasks == tasks.size();
+  }
+
+  /**
+   * finish
+   *
+   * Record the first result of a task
+   */
+  private synchronized void finish(WorkerConnection worker, int id, String simsFile, double[] summary,
+    QuantileSketch sketch) throws IOException {
+
+    Task task = tasks.get(id);
+    if (task.finished || task.failed) {
+      worker.running.remove(task);
+      task.copies -= 1;
+      new File(simsFile).delete();
+      return;
+    }
+
+    try {
+      Files.move(Paths.get(simsFile), Paths.get(task.simsFile),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      new File(simsFile).delete();
+      requeue(worker, task, "could not move " + simsFile + ": " + e.getMessage());
+      return;
+    }
+    worker.running.remove(task);
+    task.copies -= 1;
+
+    task.finished = true;
+    finishedTasks += 1;
+    progress.complete(spec.getPackets());
+    record(task.cell, summary, sketch);
+
+    journal.writeUTF(task.key);
+    for (double value : summary) {
+      journal.writeDouble(value);
+    }
+    sketch.writeState(journal);
+    journal.flush();
+
+    notifyAll();
+  }
+
+  /**
+   * requeue
+   *
+   * A copy of a task failed or its worker was lost
+   */
+  private synchronized void requeue(WorkerConnection worker, Task task, String reason) {
+    worker.running.remove(task);
+    task.copies -= 1;
+    if (task.finished || task.failed || task.copies > 0) {
+      return;
+    }
+
+    task.attempts += 1;
+    if (task.attempts >= MAX_ATTEMPTS) {
+      System.out.println("Error: task " + task.key + " dropped after " + task.attempts + " attempts: " + reason);
+      task.failed = true;
+      failedTasks += 1;
+      notifyAll();
+    } else {
+      pending.addFirst(task);
+    }
+  }
+
+  private synchronized void lost(WorkerConnection worker, String reason) {
+    if (worker.running.isEmpty()) {
+      return;
+    }
+    System.out.println("Worker " + worker.id + " lost (" + reason + "), requeueing " +
+      worker.running.size() + " tasks");
+    for (Task task : new ArrayList<Task>(worker.running)) {
+      requeue(worker, task, "worker lost");
+    }
+  }
+
+  private void record(String cell, double[] summary, QuantileSketch sketch) {
+    results.get(cell).add(summary);
+    sketches.get(cell).merge(sketch);
+  }
+
+  /**
+   * readJournal
+   *
+   * Read the base seed and the finished task keys, cut a
+   * record torn by an interruption and reopen the journal.
+   * A journal written for another spec is replaced.
+   *
+   * @return keys of the finished tasks
+   */
+  private Set<String> readJournal(File file) throws IOException {
+    Set<String> finished = new HashSet<String>();
+
+    byte[] bytes = file.exists() ? Files.readAllBytes(file.toPath()) : new byte[0];
+    ByteArrayInputStream buffer = new ByteArrayInputStream(bytes);
+    DataInputStream in = new DataInputStream(buffer);
+    String header = null;
+    try {
+      seed = in.readLong();
+      header = in.readUTF();
+    } catch (IOException e) {
+      // empty or torn header
+    }
+
+    if (header == null || !header.equals(JOURNAL_HEADER + spec.hash())) {
+      if (bytes.length > 0) {
+        System.out.println("Sweep spec changed since the journal was written, starting over");
+      }
+      seed = new Random().nextLong();
+      journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      journal.writeLong(seed);
+      journal.writeUTF(JOURNAL_HEADER + spec.hash());
+      journal.flush();
+      return finished;
+    }
+    long valid = bytes.length - buffer.available();
+
+    QuantileSketch sketch = new QuantileSketch(QuantileSketch.TIME_UNIT);
+    try {
+      while (buffer.available() > 0) {
+        String key = in.readUTF();
+        for (int i = 0; i < 3; i++) {
+          in.readDouble();
+        }
+        sketch.readState(in);
+        finished.add(key);
+        valid = bytes.length - buffer.available();
+      }
+    } catch (IOException e) {
+      System.out.println("Discarding torn journal record");
+    }
+
+    FileChannel channel = new FileOutputStream(file, true).getChannel();
+    channel.truncate(valid);
+    channel.close();
+
+    journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    System.out.println("Resuming sweep, " + finished.size() + " tasks already done");
+    return finished;
+  }
+
+  /**
+   * replayJournal
+   *
+   * Add the summaries of the journaled tasks to their cells
+   */
+  private void replayJournal(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())));
+    in.readLong();
+    in.readUTF();
+    while (in.available() > 0) {
+      String key = in.readUTF();
+      double[] summary = new double[3];
+      for (int i = 0; i < summary.length; i++) {
+        summary[i] = in.readDouble();
+      }
+      QuantileSketch sketch = new QuantileSketch(QuantileSketch.TIME_UNIT);
+      sketch.readState(in);
+
+      String[] parts = key.split(" ");
+      String cell = cell(Double.parseDouble(parts[2]), Integer.parseInt(parts[3]));
+      if (results.containsKey(cell)) {
+        record(cell, summary, sketch);
+      }
+    }
+  }
+
+  private void printResults() {
+    System.out.println("File,Replicas,Utilization,Packet Delay,Packet Delay CI," +
+      "Packets in System,Packets in System CI,Pooled Packet Delay P99");
+
+    for (Map.Entry<String, List<double[]>> entry : results.entrySet()) {
+      List<double[]> cell = entry.getValue();
+      if (cell.isEmpty()) {
+        continue;
+      }
+      double[] delays = column(cell, 1);
+      double[] packets = column(cell, 2);
+      System.out.println(entry.getKey() +
+        "," + cell.size() +
+        "," + ConfidenceInterval.mean(column(cell, 0)) +
+        "," + ConfidenceInterval.mean(delays) +
+        "," + (cell.size() > 1 ? ConfidenceInterval.halfWidth(delays) : Double.NaN) +
+        "," + ConfidenceInterval.mean(packets) +
+        "," + (cell.size() > 1 ? ConfidenceInterval.halfWidth(packets) : Double.NaN) +
+        "," + sketches.get(entry.getKey()).getQuantile(0.99));
+    }
+  }
+
+  private static double[] column(List<double[]> results, int index) {
+    double[] values = new double[results.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = results.get(i)[index];
+    }
+    return values;
+  }
+
+  private String cell(double interval, int lambda) {
+    return "sim-" + lambda + "-" + spec.getMu() + "-" + interval;
+  }
+
+  /**
+   * replicaSeed
+   *
+   * Seed of replica i, shared by all its cells so the
+   * cells are compared under common random numbers
+   */
+  private long replicaSeed(int replica) {
+    return seed + replica * 0x9E3779B97F4A7C15L;
+  }
+
+  /**
+   * Task
+   *
+   * One replica of one sweep cell
+   */
+  private class Task {
+    int id;
+    int replica;
+    double interval;
+    int lambda;
+    String key;
+    String cell;
+    String simsFile;
+
+    /** copies running on workers **/
+    int copies;
+    int attempts;
+    long started;
+    boolean finished;
+    boolean failed;
+
+    Task(int id, int replica, double interval, int lambda) {
+      this.id = id;
+      this.replica = replica;
+      this.interval = interval;
+      this.lambda = lambda;
+      key = SweepSpec.SIMULATE + " " + replica + " " + interval + " " + lambda;
+      cell = cell(interval, lambda);
+      simsFile = spec.getOutput() + File.separator + OUTPUT_SIMS_FOLDER + File.separator + cell +
+        File.separator + "replica-" + replica + ".csv";
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeInt(id);
+      out.writeUTF(spec.getModel());
+      out.writeInt(replica);
+      out.writeDouble(interval);
+      out.writeInt(lambda);
+      out.writeInt(spec.getMu());
+      out.writeDouble(spec.getXi());
+      out.writeInt(spec.getPackets());
+      out.writeInt(spec.getServers());
+      out.writeLong(replicaSeed(replica));
+    }
+  }
+
+  /**
+   * WorkerConnection
+   *
+   * Serves the requests of one worker
+   */
+  private class WorkerConnection implements Runnable {
+    private Socket socket;
+    private int id;
+
+    /** tasks handed to this worker without a result yet **/
+    private Set<Task> running = new HashSet<Task>();
+
+    /**
+     * receiveSimsFile
+     *
+     * Copy the sims file sent by the worker into a temporary
+     * file next to the sims file of the task
+     *
+     * @return path of the temporary file
+     */
+    private String receiveSimsFile(DataInputStream in, Task task) throws IOException {
+      long length = in.readLong();
+      File cell = new File(task.simsFile).getParentFile();
+      cell.mkdirs();
+      File file = File.createTempFile("replica-" + task.replica + ".csv.", ".tmp", cell);
+      try {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+          byte[] buffer = new byte[8192];
+          while (length > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, length));
+            if (read < 0) {
+              throw new EOFException("sims file of task " + task.key + " cut short");
+            }
+            out.write(buffer, 0, read);
+            length -= read;
+          }
+        } finally {
+          out.close();
+        }
+      } catch (IOException e) {
+        file.delete();
+        throw e;
+      }
+      return file.getPath();
+    }
+
+    WorkerConnection(Socket socket, int id) {
+      this.socket = socket;
+      this.id = id;
+    }
+
+    public void run() {
+      synchronized (SweepCoordinator.this) {
+        connections += 1;
+      }
+      try {
+        socket.setSoTimeout(HEARTBEAT_TIMEOUT);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        int version = in.readInt();
+        if (version != PROTOCOL_VERSION) {
+          throw new IOException("protocol version " + version);
+        }
+
+        while (true) {
+          byte type = in.readByte();
+
+          if (type == REQUEST) {
+            if (isComplete()) {
+              out.writeByte(DONE);
+              out.flush();
+              break;
+            }
+            Task task = assign(this);
+            if (task == null) {
+              out.writeByte(WAIT);
+            } else {
+              out.writeByte(TASK);
+              task.write(out);
+            }
+            out.flush();
+          } else if (type == RESULT) {
+            int task = in.readInt();
+            String simsFile = receiveSimsFile(in, tasks.get(task));
+            double[] summary = new double[3];
+            for (int i = 0; i < summary.length; i++) {
+              summary[i] = in.readDouble();
+            }
+            QuantileSketch sketch = new QuantileSketch(QuantileSketch.TIME_UNIT);
+            sketch.readState(in);
+            finish(this, task, simsFile, summary, sketch);
+          } else if (type == FAILED) {
+            int task = in.readInt();
+            String message = in.readUTF();
+            System.out.println("Error: worker " + id + " failed task " + tasks.get(task).key + ": " + message);
+            requeue(this, tasks.get(task), message);
+          } else if (type != HEARTBEAT) {
+            throw new IOException("unknown message " + type);
+          }
+        }
+      } catch (SocketTimeoutException e) {
+        lost(this, "no heartbeat");
+      } catch (IOException e) {
+        lost(this, e.getMessage() != null ? e.getMessage() : "disconnected");
+      } finally {
+        try {
+          socket.close();
+        } catch (IOException e) {
+          // already closed
+        }
+        synchronized (SweepCoordinator.this) {
+          connections -= 1;
+          SweepCoordinator.this.notifyAll();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,306 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.io.*;
+
+/**
+ * Runs the stages of a sweep spec in parallel. Every stage
+ * is expanded into independent tasks (random variables per
+ * replica, traffic per replica and interval, one simulation
+ * per replica and cell) which run on a work stealing
+ * ForkJoinPool. Each finished task is appended to a journal
+ * in the output folder; when the sweep is started again
+ * after an interruption the journaled tasks are skipped.
+ * The journal starts with the hash of the spec, a journal
+ * of a different spec is discarded and the sweep starts over.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class SweepScheduler {
+
+  private static final String JOURNAL_FILE = "sweep.journal";
+  private static final String JOURNAL_HEADER = "spec ";
+  private static final String OUTPUT_TIMES_FOLDER = "times";
+  private static final String OUTPUT_SIMS_FOLDER = "sims";
+  private static final String OUTPUT_PROCESSED_FOLDER = "processed";
+
+  private SweepSpec spec;
+  private ForkJoinPool pool;
+
+  /** keys of the finished tasks **/
+  private Set<String> finished;
+  private BufferedWriter journal;
+
+  /** tasks that failed in the current stage **/
+  private Queue<String> failures;
+
+  /** departures of the simulate stage, null in other stages **/
+  private volatile ProgressTracker progress;
+
+  /**
+   * main
+   *
+   * @param sweep spec file
+   * @param number of threads [default = available processors]
+   */
+  public static void main(String[] args) throws IOException {
+
+    if (args.length < 1) {
+      System.out.println("Missing parameters:\n" +
+        "(1) Sweep Spec File\n" +
+        "(2) Number of Threads [default = available processors]");
+      return;
+    }
+
+    int threads = Runtime.getRuntime().availableProcessors();
+    if (args.length > 1) {
+      try {
+        threads = Integer.parseInt(args[1]);
+      } catch (NumberFormatException e) {
+        System.out.println("Error: Could not parse number of threads");
+        return;
+      }
+    }
+
+    SweepSpec spec;
+    try {
+      spec = SweepSpec.load(args[0]);
+    } catch (IOException e) {
+      System.out.println("Error: " + e.getMessage());
+      return;
+    }
+
+    new SweepScheduler(spec, threads).run();
+  }
+
+  public SweepScheduler(SweepSpec spec, int threads) {
+    this.spec = spec;
+    pool = new ForkJoinPool(threads);
+    finished = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    failures = new ConcurrentLinkedQueue<String>();
+  }
+
+  /**
+   * run
+   *
+   * Run the stages of the spec in order, resuming
+   * from the journal of an earlier run
+   */
+  public void run() throws IOException {
+
+    createFolders();
+
+    File journalFile = new File(spec.getOutput(), JOURNAL_FILE);
+    boolean resume = readJournal(journalFile);
+    journal = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, resume), "utf-8"));
+    if (!resume) {
+      journal.write(JOURNAL_HEADER + spec.hash());
+      journal.newLine();
+      journal.flush();
+    }
+
+    try {
+      String[] stages = {SweepSpec.RANDOM, SweepSpec.TRAFFIC, SweepSpec.SIMULATE};
+      for (String stage : stages) {
+        if (!spec.hasStage(stage)) {
+          continue;
+        }
+
+        List<SweepTask> tasks = expand(stage);
+        int total = tasks.size();
+        tasks.removeIf(new Predicate<SweepTask>() {
+          public boolean test(SweepTask task) {
+            return finished.contains(task.key);
+          }
+        });
+        System.out.println("Stage " + stage + ": " + tasks.size() + " of " + total + " tasks to run");
+
+        if (!tasks.isEmpty()) {
+          if (stage.equals(SweepSpec.SIMULATE)) {
+            progress = GenerateReplicas.progressTracker(spec);
+            progress.expect(tasks.size(), spec.getPackets());
+            progress.start();
+          }
+          try {
+            pool.invoke(new TaskRange(tasks, 0, tasks.size()));
+          } finally {
+            if (progress != null) {
+              progress.stop();
+              progress = null;
+            }
+          }
+        }
+
+        if (!failures.isEmpty()) {
+          System.out.println("Error: " + failures.size() + " tasks failed in stage " + stage +
+            ", run the sweep again to retry them");
+          return;
+        }
+      }
+    } finally {
+      journal.close();
+      pool.shutdown();
+    }
+
+    if (spec.hasStage(SweepSpec.PROCESS)) {
+      new ProcessData(spec).run();
+    }
+  }
+
+  /**
+   * expand
+   *
+   * Cartesian product of the spec for one stage
+   */
+  private List<SweepTask> expand(String stage) {
+    List<SweepTask> tasks = new ArrayList<SweepTask>();
+
+    if (stage.equals(SweepSpec.RANDOM)) {
+      for (int unit = 0; unit < GenerateReplicas.randomUnits(spec); unit++) {
+        final int u = unit;
+        tasks.add(new SweepTask(stage + " " + unit) {
+          void execute() throws IOException {
+            GenerateReplicas.generateRandomVariables(spec, u);
+          }
+        });
+      }
+    } else if (stage.equals(SweepSpec.TRAFFIC)) {
+      for (int i = 0; i < spec.totalReplicas(); i++) {
+        for (double interval : spec.getIntervals()) {
+          final int replica = i;
+          final double x = interval;
+          tasks.add(new SweepTask(stage + " " + i + " " + interval) {
+            void execute() throws IOException {
+              GenerateReplicas.generateTraffic(spec, replica, x);
+            }
+          });
+        }
+      }
+    } else {
+      for (int i = 0; i < spec.totalReplicas(); i++) {
+        for (double interval : spec.getIntervals()) {
+          for (int lambda : spec.getLambdas()) {
+            final int replica = i;
+            final double x = interval;
+            final int l = lambda;
+            tasks.add(new SweepTask(stage + " " + i + " " + interval + " " + lambda) {
+              void execute() throws IOException {
+                GenerateReplicas.runSimulation(spec, replica, x, l, progress);
+              }
+            });
+          }
+        }
+      }
+    }
+    return tasks;
+  }
+
+  private void createFolders() {
+    String output = spec.getOutput() + File.separator;
+    new File(output + OUTPUT_TIMES_FOLDER).mkdirs();
+    for (double interval : spec.getIntervals()) {
+      for (int lambda : spec.getLambdas()) {
+        String cell = "sim-" + lambda + "-" + spec.getMu() + "-" + interval;
+        new File(output + OUTPUT_SIMS_FOLDER + File.separator + cell).mkdirs();
+        new File(output + OUTPUT_PROCESSED_FOLDER + File.separator + cell).mkdirs();
+      }
+    }
+  }
+
+  /**
+   * readJournal
+   *
+   * Read the finished task keys of a journal written
+   * for the same spec
+   *
+   * @return false when there is no journal to resume
+   */
+  private boolean readJournal(File file) throws IOException {
+    if (!file.exists()) {
+      return false;
+    }
+    BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "utf-8"));
+    try {
+      String header = in.readLine();
+      if (header == null || !header.trim().equals(JOURNAL_HEADER + spec.hash())) {
+        System.out.println("Sweep spec changed since the journal was written, starting over");
+        return false;
+      }
+      String line;
+      while ((line = in.readLine()) != null) {
+        finished.add(line.trim());
+      }
+    } finally {
+      in.close();
+    }
+    System.out.println("Resuming sweep, " + finished.size() + " tasks already done");
+    return true;
+  }
+
+  /**
+   * markFinished
+   *
+   * journal a finished task, flushed so an
+   * interruption loses at most running tasks
+   */
+  private synchronized void markFinished(String key) throws IOException {
+    journal.write(key);
+    journal.newLine();
+    journal.flush();
+    finished.add(key);
+  }
+
+  /**
+   * SweepTask
+   *
+   * One unit of work identified by its journal key
+   */
+  private abstract class SweepTask {
+    String key;
+
+    SweepTask(String key) {
+      this.key = key;
+    }
+
+    abstract void execute() throws IOException;
+  }
+
+  /**
+   * TaskRange
+   *
+   * Splits a range of tasks in halves until single tasks
+   * remain, so idle workers steal the larger halves
+   */
+  private class TaskRange extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private List<SweepTask> tasks;
+    private int from;
+    private int to;
+
+    TaskRange(List<SweepTask> tasks, int from, int to) {
+      this.tasks = tasks;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > 1) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new TaskRange(tasks, from, middle), new TaskRange(tasks, middle, to));
+        return;
+      }
+
+      SweepTask task = tasks.get(from);
+      try {
+        task.execute();
+        markFinished(task.key);
+      } catch (Exception e) {
+        System.out.println("Error: task " + task.key + " failed: " + e.getMessage());
+        failures.add(task.key);
+      }
+    }
+  }
+}
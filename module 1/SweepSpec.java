@@ -0,0 +1,243 @@
+import java.util.*;
+import java.io.*;
+import java.security.*;
+
+/**
+ * Declarative description of a replica sweep: the parameter
+ * grid, the number of replicas, the replica mode and the
+ * stages to run. A spec is read from a properties file,
+ * for example:
+ *
+ *      model     = SSQ
+ *      mode      = IND
+ *      intervals = 0.1, 0.01, 0.5
+ *      lambdas   = 1, 3, 5, 7, 9
+ *      mu        = 10
+ *      xi        = 0.7
+ *      replicas  = 20
+ *      packets   = 110000
+ *      output    = replicas
+ *      stages    = random, traffic, simulate, process
+ *
+ * Missing keys keep the defaults, which are the grid that
+ * GenerateReplicas and ProcessData used to hard-code.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class SweepSpec {
+
+  /** Models **/
+  public static final String SINGLE_SERVER_QUEUE = "SSQ";
+
+  /** Stages **/
+  public static final String RANDOM = "random";
+  public static final String TRAFFIC = "traffic";
+  public static final String SIMULATE = "simulate";
+  public static final String PROCESS = "process";
+
+  private String model = SINGLE_SERVER_QUEUE;
+  private String mode = GenerateReplicas.INDEPENDENT;
+  private double[] intervals = new double[]{0.1,0.01,0.5};
+  private int[] lambdas = new int[]{1,3,5,7,9};
+  private int mu = 10;
+  private double xi = 0.7;
+  private int replicas = 20;
+  private int packets = 110000;
+  private int servers = 1;
+  private String output = "replicas";
+  private List<String> stages = Arrays.asList(SIMULATE);
+
+  /**
+   * defaults
+   *
+   * @return the built in sweep grid
+   */
+  public static SweepSpec defaults() {
+    return new SweepSpec();
+  }
+
+  /**
+   * load
+   *
+   * @param file : properties file describing the sweep
+   */
+  public static SweepSpec load(String file) throws IOException {
+    Properties properties = new Properties();
+    Reader in = new InputStreamReader(new FileInputStream(file), "utf-8");
+    try {
+      properties.load(in);
+    } finally {
+      in.close();
+    }
+
+    SweepSpec spec = new SweepSpec();
+    try {
+      spec.model = properties.getProperty("model", spec.model).trim();
+      spec.mode = properties.getProperty("mode", spec.mode).trim();
+      if (properties.containsKey("intervals")) {
+        spec.intervals = parseDoubles(properties.getProperty("intervals"));
+      }
+      if (properties.containsKey("lambdas")) {
+        spec.lambdas = parseInts(properties.getProperty("lambdas"));
+      }
+      spec.mu = Integer.parseInt(properties.getProperty("mu", "" + spec.mu).trim());
+      spec.xi = Double.parseDouble(properties.getProperty("xi", "" + spec.xi).trim());
+      spec.replicas = Integer.parseInt(properties.getProperty("replicas", "" + spec.replicas).trim());
+      spec.packets = Integer.parseInt(properties.getProperty("packets", "" + spec.packets).trim());
+      spec.servers = Integer.parseInt(properties.getProperty("servers", "" + spec.servers).trim());
+      spec.output = properties.getProperty("output", spec.output).trim();
+      if (properties.containsKey("stages")) {
+        spec.stages = Arrays.asList(properties.getProperty("stages").trim().split("\\s*,\\s*"));
+      }
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid number in sweep spec " + file + ": " + e.getMessage());
+    }
+
+    spec.validate(file);
+    return spec;
+  }
+
+  private void validate(String file) throws IOException {
+    if (!model.equals(SINGLE_SERVER_QUEUE)) {
+      throw new IOException("Unknown model in " + file + ": " + model);
+    }
+    if (!mode.equals(GenerateReplicas.INDEPENDENT) && !mode.equals(GenerateReplicas.ANTITHETIC)
+        && !mode.equals(GenerateReplicas.RQMC)) {
+      throw new IOException("Unknown replica mode in " + file + ": " + mode);
+    }
+    if (mode.equals(GenerateReplicas.RQMC)) {
+      try {
+        LatticeRandom.checkNumberOfPoints(GenerateReplicas.RQMC_POINTS);
+      } catch (IllegalArgumentException e) {
+        throw new IOException("RQMC in " + file + ": " + e.getMessage());
+      }
+    }
+    if (mode.equals(GenerateReplicas.RQMC) && replicas % GenerateReplicas.RQMC_POINTS != 0) {
+      throw new IOException("RQMC needs a multiple of " + GenerateReplicas.RQMC_POINTS + " replicas");
+    }
+    for (String stage : stages) {
+      if (!stage.equals(RANDOM) && !stage.equals(TRAFFIC) && !stage.equals(SIMULATE) && !stage.equals(PROCESS)) {
+        throw new IOException("Unknown stage in " + file + ": " + stage);
+      }
+    }
+  }
+
+  private static double[] parseDoubles(String list) {
+    String[] values = list.trim().split("\\s*,\\s*");
+    double[] result = new double[values.length];
+    for (int i = 0; i < values.length; i++) {
+      result[i] = Double.parseDouble(values[i]);
+    }
+    return result;
+  }
+
+  private static int[] parseInts(String list) {
+    String[] values = list.trim().split("\\s*,\\s*");
+    int[] result = new int[values.length];
+    for (int i = 0; i < values.length; i++) {
+      result[i] = Integer.parseInt(values[i]);
+    }
+    return result;
+  }
+
+  /**
+   * totalReplicas
+   *
+   * @return number of replicas including antithetic twins
+   */
+  public int totalReplicas() {
+    return mode.equals(GenerateReplicas.ANTITHETIC) ? 2 * replicas : replicas;
+  }
+
+  public boolean hasStage(String stage) {
+    return stages.contains(stage);
+  }
+
+  public String getModel() {
+    return model;
+  }
+
+  public String getMode() {
+    return mode;
+  }
+
+  public double[] getIntervals() {
+    return intervals;
+  }
+
+  public int[] getLambdas() {
+    return lambdas;
+  }
+
+  public int getMu() {
+    return mu;
+  }
+
+  public double getXi() {
+    return xi;
+  }
+
+  /** independent replicas, without antithetic twins **/
+  public int getReplicas() {
+    return replicas;
+  }
+
+  public int getPackets() {
+    return packets;
+  }
+
+  public int getServers() {
+    return servers;
+  }
+
+  public String getOutput() {
+    return output;
+  }
+
+  /**
+   * withMode
+   *
+   * @return a copy of this spec with the given replica mode
+   */
+  public SweepSpec withMode(String mode) {
+    SweepSpec copy = new SweepSpec();
+    copy.model = model;
+    copy.mode = mode;
+    copy.intervals = intervals.clone();
+    copy.lambdas = lambdas.clone();
+    copy.mu = mu;
+    copy.xi = xi;
+    copy.replicas = replicas;
+    copy.packets = packets;
+    copy.servers = servers;
+    copy.output = output;
+    copy.stages = new ArrayList<String>(stages);
+    return copy;
+  }
+
+  /**
+   * hash
+   *
+   * @return hash of every parameter the generated files and
+   *         the simulated results depend on, which excludes
+   *         only the output folder and the stages; journals
+   *         record it so a changed spec is never resumed
+   */
+  public String hash() {
+    String parameters = model + "|" + mode + "|" + Arrays.toString(intervals) + "|" +
+      Arrays.toString(lambdas) + "|" + mu + "|" + xi + "|" + replicas + "|" + packets + "|" + servers;
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(parameters.getBytes("UTF-8"));
+      StringBuilder builder = new StringBuilder();
+      for (int i = 0; i < 8; i++) {
+        builder.append(String.format("%02x", digest[i]));
+      }
+      return builder.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,232 @@
+import java.util.*;
+import java.net.*;
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * Worker of a distributed sweep. Connects to a
+ * SweepCoordinator, pulls tasks, generates the random
+ * variables and traffic of each task from its replica seed
+ * and runs the simulation. The sims file is written to a
+ * temporary file of the worker and its contents are sent
+ * back with a binary summary, so workers need no access to
+ * the output folder of the coordinator.
+ *
+ * A heartbeat thread keeps the connection alive during
+ * long simulations. Random variable and traffic files are
+ * cached in a temporary folder, since the cells of one
+ * replica share them, and deleted when the worker exits.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class SweepWorker {
+
+  /** milliseconds to wait when the coordinator has no task **/
+  private static final int WAIT_INTERVAL = 200;
+
+  /** Always Use 0.5 intervals for Service Times **/
+  private static final double SERVICE_INTERVAL = 0.5;
+
+  private Socket socket;
+  private DataInputStream in;
+  private DataOutputStream out;
+  private File cache;
+
+  /**
+   * main
+   *
+   * @param coordinator host
+   * @param coordinator port
+   */
+  public static void main(String[] args) throws Exception {
+
+    if (args.length < 2) {
+      System.out.println("Missing parameters:\n" +
+        "(1) Coordinator Host\n" +
+        "(2) Coordinator Port");
+      return;
+    }
+
+    int port;
+    try {
+      port = Integer.parseInt(args[1]);
+    } catch (NumberFormatException e) {
+      System.out.println("Error: Could not parse port");
+      return;
+    }
+
+    SweepWorker worker = new SweepWorker(args[0], port);
+    try {
+      worker.run();
+    } catch (EOFException e) {
+      System.out.println("Coordinator closed the connection");
+    } finally {
+      worker.close();
+    }
+  }
+
+  public SweepWorker(String host, int port) throws IOException {
+    socket = new Socket(host, port);
+    in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    cache = Files.createTempDirectory("sweep-worker").toFile();
+  }
+
+  /**
+   * run
+   *
+   * Request and run tasks until the coordinator is done
+   */
+  public void run() throws IOException, InterruptedException {
+
+    synchronized (out) {
+      out.writeInt(SweepCoordinator.PROTOCOL_VERSION);
+      out.flush();
+    }
+
+    Thread heartbeat = new Thread(new Runnable() {
+      public void run() {
+        try {
+          while (true) {
+            Thread.sleep(SweepCoordinator.HEARTBEAT_INTERVAL);
+            send(SweepCoordinator.HEARTBEAT);
+          }
+        } catch (Exception e) {
+          // connection closed
+        }
+      }
+    });
+    heartbeat.setDaemon(true);
+    heartbeat.start();
+
+    while (true) {
+      send(SweepCoordinator.REQUEST);
+      byte reply = in.readByte();
+
+      if (reply == SweepCoordinator.DONE) {
+        return;
+      } else if (reply == SweepCoordinator.WAIT) {
+        Thread.sleep(WAIT_INTERVAL);
+      } else if (reply == SweepCoordinator.TASK) {
+        runTask();
+      } else {
+        throw new IOException("Unknown message from coordinator: " + reply);
+      }
+    }
+  }
+
+  private void send(byte type) throws IOException {
+    synchronized (out) {
+      out.writeByte(type);
+      out.flush();
+    }
+  }
+
+  /**
+   * runTask
+   *
+   * Read one task, simulate it and send its summary
+   */
+  private void runTask() throws IOException {
+    int id = in.readInt();
+    String model = in.readUTF();
+    int replica = in.readInt();
+    double interval = in.readDouble();
+    int lambda = in.readInt();
+    int mu = in.readInt();
+    double xi = in.readDouble();
+    int packets = in.readInt();
+    int servers = in.readInt();
+    long seed = in.readLong();
+
+    SingleServerQueue server;
+    File simsFile = null;
+    try {
+      if (!model.equals(SweepSpec.SINGLE_SERVER_QUEUE)) {
+        throw new IOException("Unknown model " + model);
+      }
+      simsFile = File.createTempFile("replica-" + replica + ".csv.", ".tmp", cache);
+      server = simulate(interval, lambda, mu, xi, packets, servers, seed, simsFile.getPath());
+    } catch (Exception e) {
+      if (simsFile != null) {
+        simsFile.delete();
+      }
+      synchronized (out) {
+        out.writeByte(SweepCoordinator.FAILED);
+        out.writeInt(id);
+        out.writeUTF("" + e.getMessage());
+        out.flush();
+      }
+      return;
+    }
+
+    double utilization = 0.0;
+    double delay = 0.0;
+    double inSystem = 0.0;
+    List<SingleServerQueue.Statistic> statistics = server.getStatistics();
+    for (SingleServerQueue.Statistic stat : statistics) {
+      utilization += stat.serverUtilization;
+      delay += stat.delay;
+      inSystem += stat.queueSize + stat.serverInUse;
+    }
+    int count = Math.max(statistics.size(), 1);
+
+    try {
+      synchronized (out) {
+        out.writeByte(SweepCoordinator.RESULT);
+        out.writeInt(id);
+        out.writeLong(simsFile.length());
+        Files.copy(simsFile.toPath(), out);
+        out.writeDouble(utilization / count);
+        out.writeDouble(delay / count);
+        out.writeDouble(inSystem / count);
+        server.getDelaySketch().writeState(out);
+        out.flush();
+      }
+    } finally {
+      simsFile.delete();
+    }
+  }
+
+  /**
+   * simulate
+   *
+   * Generate the missing files of the replica from its
+   * seed and run the queue into the sims file
+   */
+  private SingleServerQueue simulate(double interval, int lambda, int mu, double xi,
+    int packets, int servers, long seed, String outFile) throws IOException {
+
+    String folder = cache.getPath() + File.separator;
+    String randomIA = folder + "randomIA-" + seed;
+    String randomST = folder + "randomST-" + seed;
+    String stFile = folder + "replica-" + seed + "-st-" + mu + "-" + interval + ".csv";
+    String iaFile = folder + "replica-" + seed + "-ia-" + lambda + "-" + interval + ".csv";
+
+    if (!new File(randomIA).exists()) {
+      Random seeds = new Random(seed);
+      RandomNumberGenerator.generate(0, 1, packets, randomIA, new Random(seeds.nextLong()));
+      RandomNumberGenerator.generate(0, 1, packets, randomST, new Random(seeds.nextLong()));
+    }
+    if (!new File(stFile).exists()) {
+      TrafficGenerator.generateTimes(SERVICE_INTERVAL, -SERVICE_INTERVAL, xi, mu, randomST, stFile);
+    }
+    if (!new File(iaFile).exists()) {
+      TrafficGenerator.generateTimes(interval, -interval, xi, lambda, randomIA, iaFile);
+    }
+
+    return Simulator.run(iaFile, stFile, outFile, "delay", servers);
+  }
+
+  public void close() throws IOException {
+    socket.close();
+    File[] files = cache.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    cache.delete();
+  }
+}
@@ -1,6 +1,9 @@
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
+import java.nio.file.*;
+import java.security.*;
 
 /**
  * Implementation of a traffic generator.
@@ -10,7 +13,10 @@ import java.io.*;
  */
 public class TrafficGenerator {
 
-  private static TESModelGenerator generator = new TESModelGenerator();
+  private static final String HASH_FIELD = ", hash = ";
+
+  /** content digests of input files by path, length and modification time **/
+  private static final Map<String, String> digests = new ConcurrentHashMap<String, String>();
 
   /**
    * Generate Random Variables
@@ -93,21 +99,131 @@ public class TrafficGenerator {
    */
   public static void generateTimes(double a, double b, double xi, 
     double lambda, String inputFile, String outputFile) {
-    // Set Range
+    String hash;
+    try {
+      hash = inputHash(a, b, xi, lambda, inputFile);
+      generateTimes(a, b, xi, lambda, inputFile, outputFile, hash);
+    } catch (IOException e) {
+      System.out.println(e.getMessage());
+    }
+  }
+
+  /**
+   * generateTimesIfStale
+   *
+   * Generate the times only when the hash of the input file
+   * and parameters differs from the one recorded in the
+   * header of the output file
+   *
+   * @return true when the output file was regenerated
+   * @throws IOException when generation failed, the output
+   *         file and its recorded hash are then left as they were
+   */
+  public static boolean generateTimesIfStale(double a, double b, double xi,
+    double lambda, String inputFile, String outputFile) throws IOException {
+
+    String hash = inputHash(a, b, xi, lambda, inputFile);
+    if (hash.equals(recordedHash(outputFile))) {
+      return false;
+    }
+    generateTimes(a, b, xi, lambda, inputFile, outputFile, hash);
+    return true;
+  }
+
+  /**
+   * inputHash
+   *
+   * SHA-256 of the parameters and the content of the input file
+   */
+  public static String inputHash(double a, double b, double xi,
+    double lambda, String inputFile) throws IOException {
+
+    File file = new File(inputFile);
+    String version = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+    String digest = digests.get(version);
+    if (digest == null) {
+      digest = hex(sha256().digest(Files.readAllBytes(file.toPath())));
+      digests.put(version, digest);
+    }
+
+    String key = a + "," + b + "," + xi + "," + lambda + "," + digest;
+    return hex(sha256().digest(key.getBytes("utf-8")));
+  }
+
+  /**
+   * recordedHash
+   *
+   * @return the input hash in the header of a
+   *         generated file or null when there is none
+   */
+  public static String recordedHash(String outputFile) {
+    File file = new File(outputFile);
+    if (!file.exists()) {
+      return null;
+    }
+
+    try {
+      BufferedReader in = new BufferedReader(new FileReader(file));
+      try {
+        String header = in.readLine();
+        int index = header == null ? -1 : header.indexOf(HASH_FIELD);
+        return index < 0 ? null : header.substring(index + HASH_FIELD.length()).trim();
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String hex(byte[] bytes) {
+    StringBuilder builder = new StringBuilder();
+    for (byte value : bytes) {
+      builder.append(String.format("%02x", value));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * generateTimes
+   *
+   * Write the times to a temporary file that replaces the
+   * output only once complete, so an interrupted run never
+   * leaves a truncated file behind a valid hash. On failure
+   * the temporary file is removed and the exception thrown.
+   */
+  private static void generateTimes(double a, double b, double xi,
+    double lambda, String inputFile, String outputFile, String hash) throws IOException {
+    // Set Range, one generator per call so replicas
+    // can be generated from several threads
+    TESModelGenerator generator = new TESModelGenerator();
     generator.setUniformRange(a, b);
 
     DecimalFormat df = new DecimalFormat("#.#########");
+    SimulationEvents.Phase phase = SimulationEvents.phase(SimulationEvents.GENERATE, outputFile);
 
     BufferedReader in = null;
     BufferedWriter out = null;
     try {
       in = new BufferedReader(new FileReader(new File(inputFile)));
-      out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "utf-8"));
+      out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile + ".tmp"), "utf-8"));
 
-      out.write("Interval = [" + b + ", " + a + "), xi = " + xi + ", lambda = " + lambda + ", in: " + inputFile);
+      out.write("Interval = [" + b + ", " + a + "), xi = " + xi + ", lambda = " + lambda + ", in: " + inputFile +
+        HASH_FIELD + hash);
       out.newLine();
 
       String line = in.readLine();
+      if (line == null) {
+        throw new IOException("No random variables in " + inputFile);
+      }
       double previous_U_prime = Double.parseDouble(line);
       double previous_u_n = generator.stitchTransform(previous_U_prime, xi);
       double previous_inverse = generator.inverseExponentialTransform(lambda, previous_u_n);
@@ -127,8 +243,12 @@ public class TrafficGenerator {
         previous_U_prime = u_prime;
       }
 
-    } catch (Exception e) {
-      System.out.println(e.getMessage());
+      out.close();
+      out = null;
+      Files.move(Paths.get(outputFile + ".tmp"), Paths.get(outputFile), StandardCopyOption.REPLACE_EXISTING);
+
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid random variable in " + inputFile + ": " + e.getMessage());
     } finally {
 
       try {
@@ -142,6 +262,8 @@ public class TrafficGenerator {
       } catch (Exception e) {
         // ignore
       }
+      new File(outputFile + ".tmp").delete();
+      phase.commit();
     }
   }
 }
\ No newline at end of file
@@ -0,0 +1,219 @@
+import java.util.*;
+
+/**
+ * Online warm-up detection with MSER-5. Observations (for
+ * example customer delays) are grouped into batches of 5 and
+ * the batch means Z_1..Z_k are kept. The truncation point is
+ * the number of leading batches d that minimizes
+ *
+ *      MSER(d) = 1/(k-d)^2 * sum_{j>d} (Z_j - mean_d)^2
+ *
+ * over d <= k/2. The search is repeated every time the number
+ * of batches doubles, so its O(k) cost is O(1) per observation.
+ * Once the minimum falls inside the first half of the data the
+ * warm-up is detected; later searches only refine the cutoff.
+ *
+ * When the number of batches reaches the capacity, adjacent
+ * batches are merged and the batch size doubles, so memory is
+ * bounded for runs of any length.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 03/11/16
+ */
+public class WarmupDetector {
+
+  /** MSER-5 **/
+  public static final int DEFAULT_BATCH_SIZE = 5;
+
+  private static final int DEFAULT_CAPACITY = 1 << 16;
+
+  /** fewest batches before a cutoff is accepted **/
+  private static final int MINIMUM_BATCHES = 20;
+
+  private long batchSize;
+  private double[] batchSums;
+  private double[] batchStartTimes;
+  private int batches;
+
+  /** current, incomplete batch **/
+  private double partialSum;
+  private long partialCount;
+  private double partialStartTime;
+
+  private long observations;
+  private int nextSearch;
+
+  /** chosen truncation point in batches **/
+  private int truncation;
+  private boolean warmedUp;
+  private double detectionTime;
+
+  public WarmupDetector() {
+    this(DEFAULT_BATCH_SIZE, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * WarmupDetector
+   *
+   * @param batchSize : observations per batch
+   * @param capacity  : batches kept before merging, even
+   */
+  public WarmupDetector(int batchSize, int capacity) {
+    if (batchSize < 1 || capacity < 2 * MINIMUM_BATCHES || capacity % 2 != 0) {
+      throw new IllegalArgumentException("Invalid batch size or capacity");
+    }
+    this.batchSize = batchSize;
+    batchSums = new double[capacity];
+    batchStartTimes = new double[capacity];
+    nextSearch = MINIMUM_BATCHES;
+  }
+
+  /**
+   * add
+   *
+   * @param value : next observation
+   * @param time  : simulation time of the observation
+   * @return true if the warm-up was detected by this observation
+   */
+  public boolean add(double value, double time) {
+    if (partialCount == 0) {
+      partialStartTime = time;
+    }
+    partialSum += value;
+    partialCount += 1;
+    observations += 1;
+
+    if (partialCount < batchSize) {
+      return false;
+    }
+
+    if (batches == batchSums.length) {
+      merge();
+    }
+    batchSums[batches] = partialSum;
+    batchStartTimes[batches] = partialStartTime;
+    batches += 1;
+    partialSum = 0.0;
+    partialCount = 0;
+
+    if (batches < nextSearch) {
+      return false;
+    }
+    nextSearch = Math.min(2 * batches, batchSums.length);
+
+    boolean detected = !warmedUp;
+    search();
+    if (detected && warmedUp) {
+      detectionTime = time;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * search
+   *
+   * find the batch count d minimizing MSER(d)
+   */
+  private void search() {
+    double sum = 0.0;
+    double sumOfSquares = 0.0;
+    double best = Double.POSITIVE_INFINITY;
+    int bestTruncation = 0;
+
+    // suffix sums from the last batch backwards
+    for (int d = batches - 1; d >= 0; d--) {
+      double mean = batchSums[d] / batchSize;
+      sum += mean;
+      sumOfSquares += mean * mean;
+
+      int n = batches - d;
+      if (d <= batches / 2) {
+        double mser = (sumOfSquares - sum * sum / n) / ((double) n * n);
+        if (mser <= best) {
+          best = mser;
+          bestTruncation = d;
+        }
+      }
+    }
+
+    if (bestTruncation < batches / 2) {
+      truncation = bestTruncation;
+      warmedUp = true;
+    }
+  }
+
+  /**
+   * merge
+   *
+   * halve the number of batches by merging neighbours
+   */
+  private void merge() {
+    int half = batches / 2;
+    for (int j = 0; j < half; j++) {
+      batchSums[j] = batchSums[2 * j] + batchSums[2 * j + 1];
+      batchStartTimes[j] = batchStartTimes[2 * j];
+    }
+    batches = half;
+    batchSize *= 2;
+    truncation /= 2;
+    // the incomplete batch simply fills up to the new size
+    nextSearch = Math.max(MINIMUM_BATCHES, batches + 1);
+  }
+
+  /**
+   * finish
+   *
+   * search once more over all batches, at the end of a run
+   */
+  public void finish() {
+    if (batches >= MINIMUM_BATCHES) {
+      boolean detected = !warmedUp;
+      search();
+      if (detected && warmedUp) {
+        detectionTime = batches > 0 ? batchStartTimes[batches - 1] : 0.0;
+      }
+    }
+  }
+
+  public boolean isWarmedUp() {
+    return warmedUp;
+  }
+
+  /** observations discarded as warm-up **/
+  public long getTruncatedObservations() {
+    return warmedUp ? truncation * batchSize : 0;
+  }
+
+  /** simulation time of the first observation kept **/
+  public double getCutoffTime() {
+    if (!warmedUp || truncation == 0) {
+      return 0.0;
+    }
+    return truncation < batches ? batchStartTimes[truncation] : partialStartTime;
+  }
+
+  /** simulation time at which the warm-up was detected **/
+  public double getDetectionTime() {
+    return detectionTime;
+  }
+
+  public long getObservations() {
+    return observations;
+  }
+
+  /**
+   * getMean
+   *
+   * @return mean of the observations after the cutoff
+   */
+  public double getMean() {
+    int first = warmedUp ? truncation : 0;
+    double sum = partialSum;
+    for (int j = first; j < batches; j++) {
+      sum += batchSums[j];
+    }
+    long count = (batches - first) * batchSize + partialCount;
+    return count > 0 ? sum / count : 0.0;
+  }
+}
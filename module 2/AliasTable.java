@@ -0,0 +1,93 @@
+/**
+ * Walker's alias method (Vose's construction) for sampling
+ * a discrete distribution in O(1) with one uniform variable.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class AliasTable {
+
+  private int[] outcomes;
+  private int[] alias;
+  private double[] threshold;
+
+  /**
+   * AliasTable
+   *
+   * @param outcomes      : values returned by sample
+   * @param probabilities : probability of every outcome,
+   *                        normalized if they do not sum to 1
+   */
+  public AliasTable(int[] outcomes, double[] probabilities) {
+    int n = outcomes.length;
+    this.outcomes = outcomes.clone();
+    alias = new int[n];
+    threshold = new double[n];
+
+    double total = 0.0;
+    for (double probability : probabilities) {
+      total += probability;
+    }
+
+    double[] scaled = new double[n];
+    int[] small = new int[n];
+    int[] large = new int[n];
+    int smallCount = 0;
+    int largeCount = 0;
+
+    for (int i = 0; i < n; i++) {
+      scaled[i] = probabilities[i] * n / total;
+      if (scaled[i] < 1.0) {
+        small[smallCount++] = i;
+      } else {
+        large[largeCount++] = i;
+      }
+    }
+
+    while (smallCount > 0 && largeCount > 0) {
+      int less = small[--smallCount];
+      int more = large[--largeCount];
+
+      threshold[less] = scaled[less];
+      alias[less] = more;
+
+      scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+      if (scaled[more] < 1.0) {
+        small[smallCount++] = more;
+      } else {
+        large[largeCount++] = more;
+      }
+    }
+
+    // remaining columns are full up to rounding errors
+    while (largeCount > 0) {
+      int i = large[--largeCount];
+      threshold[i] = 1.0;
+      alias[i] = i;
+    }
+    while (smallCount > 0) {
+      int i = small[--smallCount];
+      threshold[i] = 1.0;
+      alias[i] = i;
+    }
+  }
+
+  /**
+   * sample
+   *
+   * @param u : uniform random variable in [0, 1)
+   * @return sampled outcome
+   */
+  public int sample(double u) {
+    double scaled = u * threshold.length;
+    int column = (int) scaled;
+    if (column >= threshold.length) {
+      column = threshold.length - 1;
+    }
+    return (scaled - column) < threshold[column] ? outcomes[column] : outcomes[alias[column]];
+  }
+
+  public int size() {
+    return outcomes.length;
+  }
+}
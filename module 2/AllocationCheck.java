@@ -0,0 +1,171 @@
+import java.util.*;
+
+/**
+ * Allocation regression check of the simulators' event loops.
+ *
+ * Every model is first run WARMUP_RUNS times so the JIT has
+ * compiled its hot path. Then the bytes allocated by this
+ * thread are measured over a run of N and a run of 2N
+ * departures; the difference over the difference in events
+ * is the steady-state allocation per event, free of the
+ * set-up cost and of the initial transient. A model fails
+ * when it exceeds its budget in bytes per event.
+ *
+ * Budgets are the allocation of the current event loops:
+ * JacksonNetwork allocates nothing per event and must stay
+ * that way, the TreeSet based simulators allocate an event,
+ * its tree node and the amortized growth of their queues.
+ * Lower a budget when a loop gets leaner.
+ *
+ * Exits with status 1 when a model is over its budget.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class AllocationCheck {
+
+  private static final long DEFAULT_DEPARTURES = 200000;
+  private static final int WARMUP_RUNS = 3;
+
+  /** budgets in bytes per event **/
+  private static final double JACKSON_BUDGET = 0.0;
+  private static final double FEEDBACK_BUDGET = 128.0;
+  private static final double ROUTING_BUDGET = 128.0;
+
+  /** allowance for the counter's TLAB granularity **/
+  private static final double TOLERANCE = 0.5;
+
+  private static final double LAMBDA = 4;
+  private static final double MU = 10;
+
+  /**
+   * main
+   *
+   * @param departures of the measured window [default = 200000]
+   * @param budget in bytes per event for every model [default = per model]
+   */
+  public static void main(String[] args) {
+
+    long departures = DEFAULT_DEPARTURES;
+    double budget = Double.NaN;
+    try {
+      if (args.length > 0) {
+        departures = Long.parseLong(args[0]);
+      }
+      if (args.length > 1) {
+        budget = Double.parseDouble(args[1]);
+      }
+    } catch (NumberFormatException e) {
+      System.out.println("Usage:\n" +
+        "(1) Departures of the measured window [default = 200000]\n" +
+        "(2) Budget in bytes per event for every model [default = per model]");
+      return;
+    }
+
+    if (Benchmark.allocatedBytes() < 0) {
+      System.out.println("Error: this JVM does not count allocated bytes per thread");
+      System.exit(1);
+    }
+
+    final NetworkTopology topology = NetworkTopology.random(16, 4, LAMBDA * 0.2, MU, 0.2, 1);
+    boolean passed = true;
+
+    passed &= check("NetworkFeedbackQueues", departures, Double.isNaN(budget) ? FEEDBACK_BUDGET : budget,
+      new Model() {
+        NetworkFeedbackQueues server;
+
+        void prepare(long departures) {
+          server = new NetworkFeedbackQueues(new DefaultEventGenerator(LAMBDA / 2, MU, 1),
+            new DefaultEventGenerator(LAMBDA / 2, MU, 2), 0.5, 0.5, departures, new Random(3));
+        }
+
+        long run() {
+          server.run();
+          return server.getEventsProcessed();
+        }
+      });
+
+    passed &= check("SimpleRoutingTopology", departures, Double.isNaN(budget) ? ROUTING_BUDGET : budget,
+      new Model() {
+        SimpleRoutingTopology server;
+
+        void prepare(long departures) {
+          server = new SimpleRoutingTopology(new DefaultEventGenerator(LAMBDA, MU, 1), departures,
+            SimpleRoutingTopology.ROUND_ROBIN);
+        }
+
+        long run() {
+          server.run();
+          return server.getEventsProcessed();
+        }
+      });
+
+    passed &= check("JacksonNetwork", departures, Double.isNaN(budget) ? JACKSON_BUDGET : budget,
+      new Model() {
+        JacksonNetwork network;
+
+        void prepare(long departures) {
+          network = new JacksonNetwork(topology, departures, 1);
+        }
+
+        long run() {
+          network.run();
+          return network.getEventsProcessed();
+        }
+      });
+
+    if (!passed) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * check
+   *
+   * Measure the steady-state allocation of a model
+   *
+   * @return whether it is within the budget
+   */
+  private static boolean check(String name, long departures, double budget, Model model) {
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      model.prepare(departures);
+      model.run();
+    }
+
+    long[] shortRun = measure(model, departures);
+    long[] longRun = measure(model, 2 * departures);
+    double bytesPerEvent = (double) (longRun[1] - shortRun[1]) / (longRun[0] - shortRun[0]);
+
+    boolean passed = bytesPerEvent <= budget + TOLERANCE;
+    System.out.println(name + ": " + bytesPerEvent + " bytes/event, budget " + budget +
+      (passed ? " - OK" : " - FAILED"));
+    return passed;
+  }
+
+  /**
+   * measure
+   *
+   * @return {events, bytes allocated} of one run, the
+   *         set-up of the model is not measured
+   */
+  private static long[] measure(Model model, long departures) {
+    model.prepare(departures);
+    long before = Benchmark.allocatedBytes();
+    long events = model.run();
+    return new long[]{events, Benchmark.allocatedBytes() - before};
+  }
+
+  /**
+   * Model
+   *
+   * A simulator set up by prepare and run by run
+   */
+  private abstract static class Model {
+    abstract void prepare(long departures);
+
+    /**
+     * @return events processed by the run
+     */
+    abstract long run();
+  }
+}
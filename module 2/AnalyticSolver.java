@@ -0,0 +1,346 @@
+import java.util.*;
+
+/**
+ * Closed form solutions of the product-form models that the
+ * simulators cover:
+ *
+ *      M/M/c     : Erlang C waiting probability, mean queue
+ *                  lengths and times, queue length distribution
+ *      Jackson   : traffic equations gamma = lambda + gamma P,
+ *                  then every node is an independent M/M/c
+ *      closed    : exact mean value analysis
+ *
+ * The solutions take microseconds and are used to skip the
+ * simulation of product-form cells (Poisson arrivals and
+ * exponential services), to validate the simulators and as
+ * known means for control variates.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class AnalyticSolver {
+
+  /** convergence of the traffic equation iteration **/
+  private static final double TOLERANCE = 1e-12;
+  private static final int MAX_ITERATIONS = 100000;
+
+  /**
+   * erlangC
+   *
+   * Probability that an arriving customer waits in an
+   * M/M/c queue, from the Erlang B recursion
+   *
+   * @param servers : c
+   * @param load    : offered load a = lambda / mu, below c
+   */
+  public static double erlangC(int servers, double load) {
+    double erlangB = 1.0;
+    for (int k = 1; k <= servers; k++) {
+      erlangB = load * erlangB / (k + load * erlangB);
+    }
+    double rho = load / servers;
+    return erlangB / (1 - rho * (1 - erlangB));
+  }
+
+  /**
+   * mm1
+   *
+   * @return the stationary M/M/1 queue
+   */
+  public static Station mm1(double lambda, double mu) {
+    return mmc(lambda, mu, 1);
+  }
+
+  /**
+   * mmc
+   *
+   * @return the stationary M/M/c queue
+   * @throws IllegalArgumentException when lambda >= c mu
+   */
+  public static Station mmc(double lambda, double mu, int servers) {
+    if (lambda < 0 || mu <= 0 || servers < 1) {
+      throw new IllegalArgumentException("Invalid M/M/c parameters");
+    }
+    if (lambda >= servers * mu) {
+      throw new IllegalArgumentException("Unstable queue: lambda = " + lambda +
+        " >= c mu = " + servers * mu);
+    }
+    return new Station(lambda, mu, servers);
+  }
+
+  /**
+   * trafficEquations
+   *
+   * Total arrival rate of every node of an open network,
+   * the solution of gamma = lambda + gamma P, by fixed point
+   * iteration over the sparse routing matrix
+   *
+   * @throws IllegalArgumentException when the iteration
+   *         does not converge (customers never leave)
+   */
+  public static double[] trafficEquations(NetworkTopology topology) {
+    int n = topology.getNumberOfNodes();
+    double[] gamma = new double[n];
+    double[] next = new double[n];
+    for (int i = 0; i < n; i++) {
+      gamma[i] = topology.getLambda(i);
+    }
+
+    for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+      for (int j = 0; j < n; j++) {
+        next[j] = topology.getLambda(j);
+      }
+      for (int i = 0; i < n; i++) {
+        for (int k = topology.routeStart(i); k < topology.routeEnd(i); k++) {
+          next[topology.routeTo(k)] += gamma[i] * topology.routeProbability(k);
+        }
+      }
+
+      double change = 0.0;
+      double total = 0.0;
+      for (int j = 0; j < n; j++) {
+        change += Math.abs(next[j] - gamma[j]);
+        total += next[j];
+      }
+
+      double[] swap = gamma;
+      gamma = next;
+      next = swap;
+
+      if (change <= TOLERANCE * Math.max(total, 1.0)) {
+        return gamma;
+      }
+    }
+    throw new IllegalArgumentException("Traffic equations did not converge, is the network open?");
+  }
+
+  /**
+   * jackson
+   *
+   * @return the stationary queue of every node of an
+   *         open Jackson network
+   * @throws IllegalArgumentException when a node is unstable
+   */
+  public static Station[] jackson(NetworkTopology topology) {
+    double[] gamma = trafficEquations(topology);
+    Station[] stations = new Station[gamma.length];
+    for (int i = 0; i < gamma.length; i++) {
+      try {
+        stations[i] = mmc(gamma[i], topology.getMu(i), topology.getServers(i));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Node " + i + ": " + e.getMessage());
+      }
+    }
+    return stations;
+  }
+
+  /**
+   * networkDelay
+   *
+   * @return mean time in the network per customer,
+   *         sum of L over the external arrival rate
+   */
+  public static double networkDelay(NetworkTopology topology, Station[] stations) {
+    double customers = 0.0;
+    double arrivals = 0.0;
+    for (int i = 0; i < stations.length; i++) {
+      customers += stations[i].getNumberInSystem();
+      arrivals += topology.getLambda(i);
+    }
+    return customers / arrivals;
+  }
+
+  /**
+   * printResults
+   *
+   * Print the analytic solution of an open network
+   */
+  public static void printResults(NetworkTopology topology, Station[] stations) {
+    int shown = Math.min(stations.length, 20);
+    for (int i = 0; i < shown; i++) {
+      System.out.println("Node " + i +
+        ": gamma = " + stations[i].getArrivalRate() +
+        ", L = " + stations[i].getNumberInSystem() +
+        ", W = " + stations[i].getSojournTime() +
+        ", Wq = " + stations[i].getWaitingTime() +
+        ", utilization = " + stations[i].getUtilization());
+    }
+    if (shown < stations.length) {
+      System.out.println("... " + (stations.length - shown) + " more nodes");
+    }
+    System.out.println("Average network delay: " + networkDelay(topology, stations));
+  }
+
+  /**
+   * mva
+   *
+   * Exact mean value analysis of a closed network of single
+   * server FCFS stations with a delay (think) station
+   *
+   * @param demands   : service demand D_k = V_k / mu_k of every station
+   * @param customers : population N
+   * @param thinkTime : Z, 0 without a delay station
+   * @return {throughput, R_1 .. R_K, Q_1 .. Q_K} at population N
+   */
+  public static double[] mva(double[] demands, int customers, double thinkTime) {
+    int stations = demands.length;
+    double[] queue = new double[stations];
+    double[] residence = new double[stations];
+    double throughput = 0.0;
+
+    for (int n = 1; n <= customers; n++) {
+      double total = thinkTime;
+      for (int k = 0; k < stations; k++) {
+        residence[k] = demands[k] * (1 + queue[k]);
+        total += residence[k];
+      }
+      throughput = n / total;
+      for (int k = 0; k < stations; k++) {
+        queue[k] = throughput * residence[k];
+      }
+    }
+
+    double[] result = new double[1 + 2 * stations];
+    result[0] = throughput;
+    System.arraycopy(residence, 0, result, 1, stations);
+    System.arraycopy(queue, 0, result, 1 + stations, stations);
+    return result;
+  }
+
+  /**
+   * controlVariate
+   *
+   * Control variate estimate of the mean of y over replicas,
+   * given a control c with known mean:
+   *
+   *      y_cv = mean(y) - beta (mean(c) - expected)
+   *      beta = cov(y, c) / var(c)
+   *
+   * @return {estimate, half width of its 95% interval}
+   */
+  public static double[] controlVariate(double[] y, double[] c, double expected) {
+    int n = y.length;
+    double meanY = ConfidenceInterval.mean(y);
+    double meanC = ConfidenceInterval.mean(c);
+
+    double covariance = 0.0;
+    double varianceC = 0.0;
+    for (int i = 0; i < n; i++) {
+      covariance += (y[i] - meanY) * (c[i] - meanC);
+      varianceC += (c[i] - meanC) * (c[i] - meanC);
+    }
+    double beta = varianceC > 0 ? covariance / varianceC : 0.0;
+
+    // residuals lose one more degree of freedom for beta
+    double[] adjusted = new double[n];
+    for (int i = 0; i < n; i++) {
+      adjusted[i] = y[i] - beta * (c[i] - expected);
+    }
+    double residual = 0.0;
+    double estimate = ConfidenceInterval.mean(adjusted);
+    for (int i = 0; i < n; i++) {
+      residual += (adjusted[i] - estimate) * (adjusted[i] - estimate);
+    }
+    double halfWidth = n > 2
+      ? ConfidenceInterval.tQuantile(n - 2) * Math.sqrt(residual / (n - 2) / n)
+      : Double.NaN;
+
+    return new double[]{estimate, halfWidth};
+  }
+
+  /**
+   * Station
+   *
+   * Stationary M/M/c queue
+   */
+  public static class Station {
+    private double lambda;
+    private double mu;
+    private int servers;
+
+    /** offered load lambda / mu and utilization lambda / (c mu) **/
+    private double load;
+    private double rho;
+
+    /** probability of an empty queue **/
+    private double empty;
+    private double waitingProbability;
+
+    Station(double lambda, double mu, int servers) {
+      this.lambda = lambda;
+      this.mu = mu;
+      this.servers = servers;
+      load = lambda / mu;
+      rho = load / servers;
+      waitingProbability = lambda > 0 ? erlangC(servers, load) : 0.0;
+
+      // P(0) = 1 / (sum_{k<c} a^k / k! + a^c / (c! (1 - rho)))
+      double term = 1.0;
+      double sum = 0.0;
+      for (int k = 0; k < servers; k++) {
+        sum += term;
+        term *= load / (k + 1);
+      }
+      empty = 1.0 / (sum + term / (1 - rho));
+    }
+
+    public double getArrivalRate() {
+      return lambda;
+    }
+
+    public double getUtilization() {
+      return rho;
+    }
+
+    public double getWaitingProbability() {
+      return waitingProbability;
+    }
+
+    /** Lq **/
+    public double getNumberInQueue() {
+      return waitingProbability * rho / (1 - rho);
+    }
+
+    /** L = Lq + lambda / mu **/
+    public double getNumberInSystem() {
+      return getNumberInQueue() + load;
+    }
+
+    /** Wq, the delay before service **/
+    public double getWaitingTime() {
+      return lambda > 0 ? getNumberInQueue() / lambda : 0.0;
+    }
+
+    /** W = Wq + 1 / mu **/
+    public double getSojournTime() {
+      return getWaitingTime() + 1 / mu;
+    }
+
+    /**
+     * getStateProbability
+     *
+     * @return P(n customers at the station)
+     */
+    public double getStateProbability(int n) {
+      double probability = empty;
+      for (int k = 1; k <= n; k++) {
+        probability *= load / Math.min(k, servers);
+      }
+      return probability;
+    }
+
+    /**
+     * getWaitingTimeQuantile
+     *
+     * P(Wq > t) = C exp(-(c mu - lambda) t)
+     *
+     * @return the q quantile of the delay before service
+     */
+    public double getWaitingTimeQuantile(double q) {
+      if (1 - q >= waitingProbability) {
+        return 0.0;
+      }
+      return Math.log(waitingProbability / (1 - q)) / (servers * mu - lambda);
+    }
+  }
+}
@@ -0,0 +1,30 @@
+import java.util.*;
+
+/**
+ * Antithetic random number stream. Returns 1 - u for every
+ * uniform u of the underlying stream, so a generator seeded
+ * like its twin produces negatively correlated variates.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class AntitheticRandom extends Random {
+
+  private static final long serialVersionUID = 1L;
+
+  public AntitheticRandom(long seed) {
+    super(seed);
+  }
+
+  /**
+   * nextDouble
+   *
+   * @return 1 - u, kept in [0, 1) so that the inverse
+   *         transform never takes the log of zero
+   */
+  @Override
+  public double nextDouble() {
+    double u = 1.0 - super.nextDouble();
+    return u < 1.0 ? u : Math.nextDown(1.0);
+  }
+}
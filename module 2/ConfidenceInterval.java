@@ -0,0 +1,75 @@
+import java.util.*;
+
+/**
+ * Student-t confidence intervals over replica results.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class ConfidenceInterval {
+
+  /** t(0.975, df) for df = 1..30 **/
+  private static final double[] T_0975 = {
+    12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+    2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+    2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+  };
+
+  private static final double Z_0975 = 1.959963985;
+
+  /**
+   * tQuantile
+   *
+   * Two sided 95% Student-t quantile t(0.975, df).
+   * Uses the table up to 30 degrees of freedom and
+   * the Cornish-Fisher expansion above that.
+   */
+  public static double tQuantile(int degreesOfFreedom) {
+    if (degreesOfFreedom < 1) {
+      return Double.NaN;
+    }
+    if (degreesOfFreedom <= T_0975.length) {
+      return T_0975[degreesOfFreedom - 1];
+    }
+
+    double z = Z_0975;
+    double df = degreesOfFreedom;
+    double z3 = z * z * z;
+    double z5 = z3 * z * z;
+    return z + (z3 + z) / (4 * df)
+             + (5 * z5 + 16 * z3 + 3 * z) / (96 * df * df);
+  }
+
+  public static double mean(double[] values) {
+    double sum = 0.0;
+    for (double value : values) {
+      sum += value;
+    }
+    return sum / values.length;
+  }
+
+  /**
+   * variance
+   *
+   * Unbiased sample variance
+   */
+  public static double variance(double[] values) {
+    double mean = mean(values);
+    double sum = 0.0;
+    for (double value : values) {
+      sum += (value - mean) * (value - mean);
+    }
+    return sum / (values.length - 1);
+  }
+
+  /**
+   * halfWidth
+   *
+   * Half width of the 95% confidence interval
+   * of the mean of the given replica values.
+   */
+  public static double halfWidth(double[] values) {
+    int n = values.length;
+    return tQuantile(n - 1) * Math.sqrt(variance(values) / n);
+  }
+}
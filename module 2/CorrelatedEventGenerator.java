@@ -1,4 +1,5 @@
 import java.util.*;
+import java.io.*;
 
 /**
  * Implementation of a correlated random event generator.
@@ -39,6 +40,76 @@ public class CorrelatedEventGenerator implements EventGenerator {
     previous_ST_U_prime = randomST.nextDouble();
   }
 
+  /**
+   * Seeded generator. Two generators built with the same
+   * seed produce identical arrival and service streams,
+   * which is used for common random numbers.
+   *
+   * @param lambda
+   * @param mu
+   * @param seed for the arrival and service streams
+   */
+  public CorrelatedEventGenerator(double lambda, double mu, double xi, double interval, long seed) {
+    this(lambda, mu, xi, interval, seed, false);
+  }
+
+  /**
+   * Seeded generator with optional antithetic streams.
+   * The antithetic twin of a generator uses the same seed
+   * and feeds 1 - u through the TES transforms.
+   *
+   * @param lambda
+   * @param mu
+   * @param seed for the arrival and service streams
+   * @param antithetic use 1 - u instead of u
+   */
+  public CorrelatedEventGenerator(double lambda, double mu, double xi, double interval,
+      long seed, boolean antithetic) {
+    this.lambda = lambda;
+    this.mu = mu;
+    this.xi = xi;
+
+    Random seeder = new Random(seed);
+    if (antithetic) {
+      randomAT = new AntitheticRandom(seeder.nextLong());
+      randomST = new AntitheticRandom(seeder.nextLong());
+    } else {
+      randomAT = new Random(seeder.nextLong());
+      randomST = new Random(seeder.nextLong());
+    }
+
+    generator = new TESModelGenerator();
+    generator.setUniformRange(interval, -interval);
+
+    previous_AT_U_prime = randomAT.nextDouble();
+    previous_ST_U_prime = randomST.nextDouble();
+  }
+
+  /**
+   * Generator driven by the given uniform streams, for
+   * example LatticeRandom streams for randomized
+   * quasi-Monte Carlo replicas.
+   *
+   * @param lambda
+   * @param mu
+   * @param randomAT uniform source for arrival times
+   * @param randomST uniform source for service times
+   */
+  public CorrelatedEventGenerator(double lambda, double mu, double xi, double interval,
+      Random randomAT, Random randomST) {
+    this.lambda = lambda;
+    this.mu = mu;
+    this.xi = xi;
+    this.randomAT = randomAT;
+    this.randomST = randomST;
+
+    generator = new TESModelGenerator();
+    generator.setUniformRange(interval, -interval);
+
+    previous_AT_U_prime = randomAT.nextDouble();
+    previous_ST_U_prime = randomST.nextDouble();
+  }
+
   /**
    * nextArrivalTime
    *
@@ -73,4 +144,29 @@ public class CorrelatedEventGenerator implements EventGenerator {
     return generator.inverseExponentialTransform(mu, u_n);
   }
 
+  /**
+   * writeState
+   *
+   * Write the arrival and service stream states
+   * together with the last TES values U'
+   */
+  public void writeState(DataOutputStream out) throws IOException {
+    SimulationState.writeRandom(out, randomAT);
+    SimulationState.writeRandom(out, randomST);
+    out.writeDouble(previous_AT_U_prime);
+    out.writeDouble(previous_ST_U_prime);
+  }
+
+  /**
+   * readState
+   *
+   * Restore the arrival and service stream states
+   * together with the last TES values U'
+   */
+  public void readState(DataInputStream in) throws IOException {
+    randomAT = SimulationState.readRandom(in);
+    randomST = SimulationState.readRandom(in);
+    previous_AT_U_prime = in.readDouble();
+    previous_ST_U_prime = in.readDouble();
+  }
 }
@@ -0,0 +1,220 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * Table of the customers in flight, stored as parallel
+ * primitive arrays indexed by customer id. Ids of customers
+ * that left are recycled through a free list, so the table
+ * only grows to the largest number of customers in the
+ * system at once and a new customer does not allocate.
+ *
+ * Every customer carries its network entry time, the time it
+ * arrived at its current station, its current station, the
+ * number of stations visited and its pending service time,
+ * which gives exact per station and end-to-end sojourn times
+ * with feedback and routing.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class CustomerTable {
+
+  private static final int INITIAL_CAPACITY = 64;
+  private static final int NONE = -1;
+
+  private double[] entryTime;
+  private double[] stationArrivalTime;
+  private double[] serviceTime;
+  private int[] station;
+  private int[] visits;
+
+  /** next free id, free slots only **/
+  private int[] nextFree;
+  private int firstFree;
+
+  private int size;
+
+  public CustomerTable() {
+    this(INITIAL_CAPACITY);
+  }
+
+  public CustomerTable(int capacity) {
+    entryTime = new double[capacity];
+    stationArrivalTime = new double[capacity];
+    serviceTime = new double[capacity];
+    station = new int[capacity];
+    visits = new int[capacity];
+    nextFree = new int[capacity];
+    firstFree = NONE;
+    linkFree(0, capacity);
+  }
+
+  /**
+   * linkFree
+   *
+   * put the ids from..to-1 in front of the free list
+   */
+  private void linkFree(int from, int to) {
+    for (int id = to - 1; id >= from; id--) {
+      nextFree[id] = firstFree;
+      firstFree = id;
+    }
+  }
+
+  /**
+   * enter
+   *
+   * A customer enters the network
+   *
+   * @return id of the new customer
+   */
+  public int enter(double time, int firstStation) {
+    if (firstFree == NONE) {
+      grow();
+    }
+    int id = firstFree;
+    firstFree = nextFree[id];
+    size += 1;
+
+    entryTime[id] = time;
+    stationArrivalTime[id] = time;
+    station[id] = firstStation;
+    visits[id] = 1;
+    serviceTime[id] = 0.0;
+    return id;
+  }
+
+  /**
+   * move
+   *
+   * A customer arrives at its next station
+   */
+  public void move(int id, double time, int nextStation) {
+    stationArrivalTime[id] = time;
+    station[id] = nextStation;
+    visits[id] += 1;
+  }
+
+  /**
+   * leave
+   *
+   * A customer leaves the network, its id is recycled
+   */
+  public void leave(int id) {
+    nextFree[id] = firstFree;
+    firstFree = id;
+    size -= 1;
+  }
+
+  private void grow() {
+    int capacity = entryTime.length;
+    int larger = 2 * capacity;
+    entryTime = Arrays.copyOf(entryTime, larger);
+    stationArrivalTime = Arrays.copyOf(stationArrivalTime, larger);
+    serviceTime = Arrays.copyOf(serviceTime, larger);
+    station = Arrays.copyOf(station, larger);
+    visits = Arrays.copyOf(visits, larger);
+    nextFree = Arrays.copyOf(nextFree, larger);
+    linkFree(capacity, larger);
+  }
+
+  /** time in the system since entering the network **/
+  public double getSojournTime(int id, double now) {
+    return now - entryTime[id];
+  }
+
+  /** time at the current station **/
+  public double getStationSojournTime(int id, double now) {
+    return now - stationArrivalTime[id];
+  }
+
+  public double getEntryTime(int id) {
+    return entryTime[id];
+  }
+
+  public int getStation(int id) {
+    return station[id];
+  }
+
+  public int getVisits(int id) {
+    return visits[id];
+  }
+
+  public double getServiceTime(int id) {
+    return serviceTime[id];
+  }
+
+  public void setServiceTime(int id, double time) {
+    serviceTime[id] = time;
+  }
+
+  /** number of customers in flight **/
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return entryTime.length;
+  }
+
+  /**
+   * writeState
+   *
+   * Write the customers in flight with their ids
+   */
+  public void writeState(DataOutputStream out) throws IOException {
+    boolean[] free = freeSlots();
+    out.writeInt(entryTime.length);
+    out.writeInt(size);
+    for (int id = 0; id < entryTime.length; id++) {
+      if (!free[id]) {
+        out.writeInt(id);
+        out.writeDouble(entryTime[id]);
+        out.writeDouble(stationArrivalTime[id]);
+        out.writeDouble(serviceTime[id]);
+        out.writeInt(station[id]);
+        out.writeInt(visits[id]);
+      }
+    }
+  }
+
+  /**
+   * readState
+   *
+   * Replace the table with a written one, ids are kept
+   */
+  public static CustomerTable readState(DataInputStream in) throws IOException {
+    int capacity = in.readInt();
+    int customers = in.readInt();
+
+    CustomerTable table = new CustomerTable(capacity);
+    boolean[] used = new boolean[capacity];
+    for (int i = 0; i < customers; i++) {
+      int id = in.readInt();
+      used[id] = true;
+      table.entryTime[id] = in.readDouble();
+      table.stationArrivalTime[id] = in.readDouble();
+      table.serviceTime[id] = in.readDouble();
+      table.station[id] = in.readInt();
+      table.visits[id] = in.readInt();
+    }
+
+    table.firstFree = NONE;
+    for (int id = capacity - 1; id >= 0; id--) {
+      if (!used[id]) {
+        table.nextFree[id] = table.firstFree;
+        table.firstFree = id;
+      }
+    }
+    table.size = customers;
+    return table;
+  }
+
+  private boolean[] freeSlots() {
+    boolean[] free = new boolean[entryTime.length];
+    for (int id = firstFree; id != NONE; id = nextFree[id]) {
+      free[id] = true;
+    }
+    return free;
+  }
+}
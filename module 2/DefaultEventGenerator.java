@@ -28,6 +28,60 @@ public class DefaultEventGenerator implements EventGenerator {
     randomST = new Random();
   }
 
+  /**
+   * Seeded generator. Two generators built with the same
+   * seed produce identical arrival and service streams,
+   * which is used for common random numbers.
+   *
+   * @param lambda
+   * @param mu
+   * @param seed for the arrival and service streams
+   */
+  public DefaultEventGenerator(double lambda, double mu, long seed) {
+    this(lambda, mu, seed, false);
+  }
+
+  /**
+   * Seeded generator with optional antithetic streams.
+   * The antithetic twin of a generator uses the same seed
+   * and feeds 1 - u into the inversion method.
+   *
+   * @param lambda
+   * @param mu
+   * @param seed for the arrival and service streams
+   * @param antithetic use 1 - u instead of u
+   */
+  public DefaultEventGenerator(double lambda, double mu, long seed, boolean antithetic) {
+    this.lambda = lambda;
+    this.mu = mu;
+
+    Random seeder = new Random(seed);
+    if (antithetic) {
+      randomAT = new AntitheticRandom(seeder.nextLong());
+      randomST = new AntitheticRandom(seeder.nextLong());
+    } else {
+      randomAT = new Random(seeder.nextLong());
+      randomST = new Random(seeder.nextLong());
+    }
+  }
+
+  /**
+   * Generator driven by the given uniform streams, for
+   * example LatticeRandom streams for randomized
+   * quasi-Monte Carlo replicas.
+   *
+   * @param lambda
+   * @param mu
+   * @param randomAT uniform source for arrival times
+   * @param randomST uniform source for service times
+   */
+  public DefaultEventGenerator(double lambda, double mu, Random randomAT, Random randomST) {
+    this.lambda = lambda;
+    this.mu = mu;
+    this.randomAT = randomAT;
+    this.randomST = randomST;
+  }
+
   /**
    * nextArrivalTime
    *
@@ -49,4 +103,24 @@ public class DefaultEventGenerator implements EventGenerator {
   public double nextServiceTime() {
     return (-1 / mu) * Math.log(1 - randomST.nextDouble());
   }
+
+  /**
+   * writeState
+   *
+   * Write the arrival and service stream states
+   */
+  public void writeState(DataOutputStream out) throws IOException {
+    SimulationState.writeRandom(out, randomAT);
+    SimulationState.writeRandom(out, randomST);
+  }
+
+  /**
+   * readState
+   *
+   * Restore the arrival and service stream states
+   */
+  public void readState(DataInputStream in) throws IOException {
+    randomAT = SimulationState.readRandom(in);
+    randomST = SimulationState.readRandom(in);
+  }
 }
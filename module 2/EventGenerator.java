@@ -1,3 +1,5 @@
+import java.io.*;
+
 /**
  * Event Generator Interface
  * Random event generator.
@@ -8,4 +10,10 @@
 public interface EventGenerator {
   double nextArrivalTime();
   double nextServiceTime();
+
+  /** write the random stream state for a checkpoint **/
+  void writeState(DataOutputStream out) throws IOException;
+
+  /** continue from a state written by writeState **/
+  void readState(DataInputStream in) throws IOException;
 }
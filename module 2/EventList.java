@@ -0,0 +1,152 @@
+import java.util.*;
+
+/**
+ * Future event list stored as a binary min-heap over
+ * primitive arrays. An event is a time and an int payload
+ * whose meaning is up to the simulation (for example a node
+ * and event type packed together). Events with equal times
+ * come out in the order they were added.
+ *
+ * Adding and removing events does not allocate once the
+ * arrays have grown to the largest list size.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class EventList {
+
+  private static final int DEFAULT_CAPACITY = 64;
+
+  private double[] times;
+  private long[] sequences;
+  private int[] payloads;
+  private int size;
+
+  /** insertion counter used to break ties **/
+  private long nextSequence;
+
+  public EventList() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public EventList(int capacity) {
+    capacity = Math.max(capacity, 1);
+    times = new double[capacity];
+    sequences = new long[capacity];
+    payloads = new int[capacity];
+    size = 0;
+    nextSequence = 0;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * add
+   *
+   * Schedule an event at the given time
+   */
+  public void add(double time, int payload) {
+    if (size == times.length) {
+      grow();
+    }
+
+    int i = size++;
+    long sequence = nextSequence++;
+
+    // sift up
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (!before(time, sequence, times[parent], sequences[parent])) {
+        break;
+      }
+      times[i] = times[parent];
+      sequences[i] = sequences[parent];
+      payloads[i] = payloads[parent];
+      i = parent;
+    }
+
+    times[i] = time;
+    sequences[i] = sequence;
+    payloads[i] = payload;
+  }
+
+  /** time of the first event **/
+  public double firstTime() {
+    return times[0];
+  }
+
+  /** payload of the first event **/
+  public int firstPayload() {
+    return payloads[0];
+  }
+
+  /**
+   * removeFirst
+   *
+   * Remove the first event; read it with firstTime()
+   * and firstPayload() beforehand.
+   */
+  public void removeFirst() {
+    size -= 1;
+    if (size == 0) {
+      return;
+    }
+
+    double time = times[size];
+    long sequence = sequences[size];
+    int payload = payloads[size];
+
+    // sift down
+    int i = 0;
+    int half = size >>> 1;
+    while (i < half) {
+      int child = 2 * i + 1;
+      int right = child + 1;
+      if (right < size && before(times[right], sequences[right], times[child], sequences[child])) {
+        child = right;
+      }
+      if (!before(times[child], sequences[child], time, sequence)) {
+        break;
+      }
+      times[i] = times[child];
+      sequences[i] = sequences[child];
+      payloads[i] = payloads[child];
+      i = child;
+    }
+
+    times[i] = time;
+    sequences[i] = sequence;
+    payloads[i] = payload;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  /** time of the i-th stored event, in heap order **/
+  public double timeAt(int i) {
+    return times[i];
+  }
+
+  /** payload of the i-th stored event, in heap order **/
+  public int payloadAt(int i) {
+    return payloads[i];
+  }
+
+  private static boolean before(double time, long sequence, double otherTime, long otherSequence) {
+    return time < otherTime || (time == otherTime && sequence < otherSequence);
+  }
+
+  private void grow() {
+    int capacity = times.length * 2;
+    times = Arrays.copyOf(times, capacity);
+    sequences = Arrays.copyOf(sequences, capacity);
+    payloads = Arrays.copyOf(payloads, capacity);
+  }
+}
@@ -0,0 +1,71 @@
+import java.util.*;
+
+/**
+ * FIFO queue of ints stored in a growable ring buffer,
+ * used for queues of customer ids so that enqueueing a
+ * customer does not box or allocate a node.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class IntQueue {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private int[] elements;
+  private int head;
+  private int size;
+
+  public IntQueue() {
+    elements = new int[INITIAL_CAPACITY];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public void add(int value) {
+    if (size == elements.length) {
+      grow();
+    }
+    elements[(head + size) % elements.length] = value;
+    size += 1;
+  }
+
+  /**
+   * remove
+   *
+   * @return the head of the queue
+   */
+  public int remove() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    int value = elements[head];
+    head = (head + 1) % elements.length;
+    size -= 1;
+    return value;
+  }
+
+  /**
+   * get
+   *
+   * @return the i-th element from the head
+   */
+  public int get(int i) {
+    return elements[(head + i) % elements.length];
+  }
+
+  private void grow() {
+    int[] larger = new int[2 * elements.length];
+    for (int i = 0; i < size; i++) {
+      larger[i] = get(i);
+    }
+    elements = larger;
+    head = 0;
+  }
+}
@@ -0,0 +1,391 @@
+import java.util.*;
+
+/**
+ * Implementation of an open network of N FIFO stations
+ * with c_i servers each (a Jackson network). Each node has
+ * Poisson external arrivals, exponential service and routes
+ * finished customers with a sparse probability matrix; the
+ * next hop is drawn in O(1) from an alias table.
+ *
+ * All per node state is kept in arrays indexed by node and
+ * the future event list is a primitive heap, so processing
+ * an event does not allocate.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class JacksonNetwork {
+
+  /**
+   * event types, stored in the lowest payload bit. Arrivals
+   * carry the node, departures the server that finishes.
+   */
+  private static final int ARRIVAL_EVENT = 0;
+  private static final int DEPARTURE_EVENT = 1;
+
+  /** random streams of a node **/
+  private static final int ARRIVAL_STREAM = 0;
+  private static final int SERVICE_STREAM = 1;
+  private static final int ROUTING_STREAM = 2;
+  private static final int STREAMS_PER_NODE = 3;
+
+  private NetworkTopology topology;
+  private int numberOfNodes;
+
+  /** Future Event list ordered by event time **/
+  private EventList futureEventList;
+
+  /** per node random streams **/
+  private RandomStreams streams;
+
+  /** next hop of every node, -1 leaves the network **/
+  private AliasTable[] routing;
+
+  private double[] lambda;
+  private double[] mu;
+
+  /** servers of node i are serverStart[i] .. serverStart[i+1]-1 **/
+  private int[] serverStart;
+  private int[] serverNode;
+
+  /** idle servers of every node **/
+  private IdleServerSet[] idleServers;
+
+  /** per server busy time accounting **/
+  private double[] serverBusyTime;
+  private double[] serverBusySince;
+
+  /** customers at each node, including the one in service **/
+  private int[] numberInSystem;
+
+  /** time weighted statistics **/
+  private double[] areaNumberInSystem;
+  private double[] lastChangeTime;
+
+  private long[] arrivals;
+  private long[] departures;
+  private long externalArrivals;
+  private long externalDepartures;
+
+  /** current clock time **/
+  private double clock;
+
+  /** How many departures before exiting **/
+  private long numberOfDepartures;
+
+  /** simulated time before exiting **/
+  private double horizon;
+
+  /** number of departures so far **/
+  private long totalNumberOfDepartures;
+
+  private long eventsProcessed;
+
+  private boolean started;
+
+  /** live JMX view, null when not monitored **/
+  private SimulationMonitor monitor;
+
+  /**
+   * JacksonNetwork
+   *
+   * @param topology           : rates and routing matrix
+   * @param numberOfDepartures : station departures before exiting
+   * @param seed               : seed of the per node streams
+   */
+  public JacksonNetwork(NetworkTopology topology, long numberOfDepartures, long seed) {
+    this.topology = topology;
+    this.numberOfDepartures = numberOfDepartures;
+    this.horizon = Double.POSITIVE_INFINITY;
+
+    numberOfNodes = topology.getNumberOfNodes();
+    futureEventList = new EventList(2 * numberOfNodes);
+    streams = new RandomStreams(STREAMS_PER_NODE * numberOfNodes, seed);
+
+    routing = new AliasTable[numberOfNodes];
+    lambda = new double[numberOfNodes];
+    mu = new double[numberOfNodes];
+    serverStart = new int[numberOfNodes + 1];
+    idleServers = new IdleServerSet[numberOfNodes];
+    for (int i = 0; i < numberOfNodes; i++) {
+      routing[i] = topology.routingTable(i);
+      lambda[i] = topology.getLambda(i);
+      mu[i] = topology.getMu(i);
+      serverStart[i + 1] = serverStart[i] + topology.getServers(i);
+      idleServers[i] = new IdleServerSet(topology.getServers(i));
+    }
+
+    serverNode = new int[serverStart[numberOfNodes]];
+    for (int i = 0; i < numberOfNodes; i++) {
+      for (int k = serverStart[i]; k < serverStart[i + 1]; k++) {
+        serverNode[k] = i;
+      }
+    }
+    serverBusyTime = new double[serverNode.length];
+    serverBusySince = new double[serverNode.length];
+
+    numberInSystem = new int[numberOfNodes];
+    areaNumberInSystem = new double[numberOfNodes];
+    lastChangeTime = new double[numberOfNodes];
+    arrivals = new long[numberOfNodes];
+    departures = new long[numberOfNodes];
+
+    clock = 0.0;
+    totalNumberOfDepartures = 0;
+    eventsProcessed = 0;
+    started = false;
+  }
+
+  /**
+   * setHorizon
+   *
+   * Also stop the simulation at the given simulated time
+   */
+  public void setHorizon(double horizon) {
+    this.horizon = horizon;
+  }
+
+  /**
+   * setMonitor
+   *
+   * Publish progress to the given monitor while running
+   */
+  public void setMonitor(SimulationMonitor monitor) {
+    this.monitor = monitor;
+  }
+
+  /**
+   * publish
+   *
+   * Copy the current state of every node to the monitor,
+   * with the running sojourn time area / arrivals as delay
+   */
+  private void publish() {
+    for (int i = 0; i < numberOfNodes; i++) {
+      int busy = idleServers[i].servers() - idleServers[i].size();
+      monitor.publishStation(i, numberInSystem[i] - busy, busy,
+        arrivals[i] > 0 ? areaNumberInSystem[i] / arrivals[i] : 0.0);
+    }
+    monitor.publish(clock, eventsProcessed, futureEventList.size());
+  }
+
+  /**
+   * run
+   *
+   * run the simulation until the number of departures
+   * or the horizon is reached.
+   */
+  public void run() {
+
+    if (!started) {
+      initialConditions(); // start simulation
+      started = true;
+    }
+
+    while (!futureEventList.isEmpty()) {
+      double time = futureEventList.firstTime();
+      if (totalNumberOfDepartures >= numberOfDepartures || time > horizon) {
+        break;
+      }
+
+      int payload = futureEventList.firstPayload();
+      futureEventList.removeFirst();
+
+      // Advance clock to next event time
+      clock = time;
+
+      if ((payload & 1) == ARRIVAL_EVENT) {
+        externalArrivalEvent(payload >>> 1);
+      } else {
+        departureEvent(payload >>> 1);
+      }
+
+      eventsProcessed += 1;
+      if (monitor != null && (eventsProcessed & SimulationMonitor.PUBLISH_MASK) == 0) {
+        publish();
+      }
+    }
+
+    if (monitor != null) {
+      publish();
+      monitor.finish();
+    }
+
+    // close the time weighted statistics at the final clock
+    for (int i = 0; i < numberOfNodes; i++) {
+      updateArea(i);
+    }
+  }
+
+  /**
+   * initialConditions
+   *
+   * schedule the first external arrival of every node
+   */
+  private void initialConditions() {
+    for (int i = 0; i < numberOfNodes; i++) {
+      scheduleExternalArrival(i);
+    }
+  }
+
+  private void scheduleExternalArrival(int node) {
+    if (lambda[node] > 0) {
+      double interArrivalTime = streams.nextExponential(STREAMS_PER_NODE * node + ARRIVAL_STREAM, lambda[node]);
+      futureEventList.add(clock + interArrivalTime, (node << 1) | ARRIVAL_EVENT);
+    }
+  }
+
+  /**
+   * externalArrivalEvent
+   *
+   * customer enters the network at node at time t = clock
+   */
+  private void externalArrivalEvent(int node) {
+
+    // Schedule next arrival event
+    scheduleExternalArrival(node);
+
+    externalArrivals += 1;
+    arrival(node);
+  }
+
+  /**
+   * arrival
+   *
+   * customer joins node at time t = clock, either from
+   * outside the network or routed from another node
+   */
+  private void arrival(int node) {
+    updateArea(node);
+
+    numberInSystem[node] += 1;
+    arrivals[node] += 1;
+
+    // Is a server idle?
+    if (numberInSystem[node] <= idleServers[node].servers()) {
+      int server = serverStart[node] + idleServers[node].poll();
+      serverBusySince[server] = clock;
+      startService(node, server);
+    }
+  }
+
+  /**
+   * departureEvent
+   *
+   * customer finishes service on server at time t = clock
+   */
+  private void departureEvent(int server) {
+    int node = serverNode[server];
+    updateArea(node);
+
+    numberInSystem[node] -= 1;
+    departures[node] += 1;
+    totalNumberOfDepartures += 1;
+
+    // Is LQ(t) > 0? The freed server takes the next customer
+    if (numberInSystem[node] >= idleServers[node].servers()) {
+      startService(node, server);
+    } else {
+      serverBusyTime[server] += clock - serverBusySince[server];
+      idleServers[node].add(server - serverStart[node]);
+    }
+
+    // Route the customer to its next node
+    int next = routing[node].sample(streams.nextDouble(STREAMS_PER_NODE * node + ROUTING_STREAM));
+    if (next >= 0) {
+      arrival(next);
+    } else {
+      externalDepartures += 1;
+    }
+  }
+
+  private void startService(int node, int server) {
+    double serviceTime = streams.nextExponential(STREAMS_PER_NODE * node + SERVICE_STREAM, mu[node]);
+    futureEventList.add(clock + serviceTime, (server << 1) | DEPARTURE_EVENT);
+  }
+
+  /**
+   * updateArea
+   *
+   * accumulate the area under L(t) of a node
+   * since its last state change
+   */
+  private void updateArea(int node) {
+    areaNumberInSystem[node] += numberInSystem[node] * (clock - lastChangeTime[node]);
+    lastChangeTime[node] = clock;
+  }
+
+  /** time average number of customers at a node **/
+  public double getAverageNumberInSystem(int node) {
+    return clock > 0 ? areaNumberInSystem[node] / clock : 0.0;
+  }
+
+  /** fraction of time the servers of a node are busy **/
+  public double getUtilization(int node) {
+    double busy = 0.0;
+    for (int k = 0; k < getServers(node); k++) {
+      busy += getServerUtilization(node, k);
+    }
+    return busy / getServers(node);
+  }
+
+  /** fraction of time one server of a node is busy **/
+  public double getServerUtilization(int node, int server) {
+    int k = serverStart[node] + server;
+    double busy = serverBusyTime[k];
+    if (!idleServers[node].contains(server)) {
+      busy += clock - serverBusySince[k];
+    }
+    return clock > 0 ? busy / clock : 0.0;
+  }
+
+  public int getServers(int node) {
+    return serverStart[node + 1] - serverStart[node];
+  }
+
+  /** average time per visit at a node (Little's law) **/
+  public double getAverageSojournTime(int node) {
+    return arrivals[node] > 0 ? areaNumberInSystem[node] / arrivals[node] : 0.0;
+  }
+
+  /** average time in the network per customer (Little's law) **/
+  public double getAverageNetworkDelay() {
+    double area = 0.0;
+    for (int i = 0; i < numberOfNodes; i++) {
+      area += areaNumberInSystem[i];
+    }
+    return externalArrivals > 0 ? area / externalArrivals : 0.0;
+  }
+
+  public int getNumberOfNodes() {
+    return numberOfNodes;
+  }
+
+  public double getClock() {
+    return clock;
+  }
+
+  public long getEventsProcessed() {
+    return eventsProcessed;
+  }
+
+  public long getTotalNumberOfDepartures() {
+    return totalNumberOfDepartures;
+  }
+
+  public void printResults() {
+    int shown = Math.min(numberOfNodes, 20);
+    for (int i = 0; i < shown; i++) {
+      System.out.println("Node " + i +
+        ": L = " + getAverageNumberInSystem(i) +
+        ", W = " + getAverageSojournTime(i) +
+        ", utilization = " + getUtilization(i));
+    }
+    if (shown < numberOfNodes) {
+      System.out.println("... " + (numberOfNodes - shown) + " more nodes");
+    }
+
+    System.out.println("Average network delay: " + getAverageNetworkDelay());
+    System.out.println("Customers in: " + externalArrivals + ", out: " + externalDepartures);
+  }
+}
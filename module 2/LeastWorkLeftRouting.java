@@ -0,0 +1,30 @@
+/**
+ * Least work left routing: the customer joins the server
+ * that will finish its current work first. For a FIFO
+ * server the time its work runs out only changes when a
+ * customer joins, so the servers are ordered by that time
+ * in an indexed min-heap and routing costs O(log K).
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class LeastWorkLeftRouting implements RoutingPolicy {
+
+  private IndexedMinHeap workEndsAt;
+
+  public LeastWorkLeftRouting(int numberOfServers) {
+    workEndsAt = new IndexedMinHeap(numberOfServers);
+  }
+
+  public int chooseServer(double serviceTime, double clock) {
+    return workEndsAt.min();
+  }
+
+  public void customerArrived(int server, double serviceTime, double clock) {
+    double start = Math.max(clock, workEndsAt.key(server));
+    workEndsAt.update(server, start + serviceTime);
+  }
+
+  public void customerDeparted(int server, double clock) {
+  }
+}
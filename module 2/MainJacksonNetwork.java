@@ -0,0 +1,270 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * Implemenation of the Simulator used to initialize
+ * the N node Jackson network.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class MainJacksonNetwork {
+
+  /** Parallel engines **/
+  public static final String CONSERVATIVE = "YAWNS";
+  public static final String TIME_WARP = "TW";
+
+  /**
+   * fewest events per window for which the conservative
+   * engine can make up for its barriers
+   */
+  private static final double EFFICIENT_WINDOW = 100.0;
+
+  /** Analytic modes **/
+  public static final String ANALYTIC_SKIP = "SKIP";
+  public static final String ANALYTIC_VALIDATE = "VALIDATE";
+
+  /**
+   * main
+   *
+   * @param topology
+   * @param Number of departures
+   * @param Number of replicas
+   * @param Simulated time horizon
+   * @param Number of partitions for the parallel engine
+   * @param Parallel engine (YAWNS or TW)
+   * @param Optimism window of the time warp engine
+   * @param Analytic solution (SKIP, VALIDATE or NONE)
+   */
+  public static void main(String[] args) throws IOException, InterruptedException {
+
+    if (args.length < 3) {
+      System.out.println("Missing parameters:\n" +
+        "(1) Topology: a topology file,\n" +
+        "    FEEDBACK:lambda:mu:p:q[:servers] or\n" +
+        "    RANDOM:nodes:fanout:lambda:mu:exitProbability[:servers]\n" +
+        "(2) Number of departures\n" +
+        "(3) Number of replicas\n" +
+        "(4) Simulated time horizon [default = none]\n" +
+        "(5) Partitions, run in parallel above 1 (needs a horizon) [default = 1]\n" +
+        "(6) Parallel engine, TW (time warp) or YAWNS (conservative, for partitions\n" +
+        "    with few nodes routing to other partitions) [default = TW]\n" +
+        "(7) Time warp optimism window in simulated time [default = unbounded]\n" +
+        "(8) Analytic solution: SKIP, VALIDATE or NONE [default = NONE]");
+      return;
+    }
+
+    NetworkTopology topology;
+    long departures = 0;
+    int replicas = 0;
+    double horizon = Double.POSITIVE_INFINITY;
+    int partitions = 1;
+    String engine = TIME_WARP;
+    double optimismWindow = Double.POSITIVE_INFINITY;
+    String analytic = args.length > 7 ? args[7] : "NONE";
+
+    try {
+      topology = readTopology(args[0]);
+      departures = Long.parseLong(args[1]);
+      replicas = Integer.parseInt(args[2]);
+      if (args.length > 3) {
+        horizon = Double.parseDouble(args[3]);
+      }
+      if (args.length > 4) {
+        partitions = Integer.parseInt(args[4]);
+      }
+      if (args.length > 5 && args[5].equals(CONSERVATIVE)) {
+        engine = CONSERVATIVE;
+      }
+      if (args.length > 6) {
+        optimismWindow = Double.parseDouble(args[6]);
+      }
+    } catch (NumberFormatException e) {
+      System.out.println("Error: Could not parse parameters");
+      return;
+    }
+
+    System.out.println("Running simulation with:\n" +
+        "\tNodes: " + topology.getNumberOfNodes() + "\n" +
+        "\t# of Departures: " + departures + "\n" +
+        "\t# of Replicas: " + replicas + "\n" +
+        "\tHorizon: " + horizon + "\n" +
+        "\tPartitions: " + partitions + "\n" +
+        "\tParallel engine: " + engine + "\n");
+
+    if (partitions > 1 && Double.isInfinite(horizon)) {
+      System.out.println("Error: the parallel engine needs a horizon");
+      return;
+    }
+
+    // Poisson arrivals and exponential services make
+    // every Jackson network product-form
+    AnalyticSolver.Station[] stations = null;
+    if (analytic.equals(ANALYTIC_SKIP) || analytic.equals(ANALYTIC_VALIDATE)) {
+      try {
+        stations = AnalyticSolver.jackson(topology);
+      } catch (IllegalArgumentException e) {
+        System.out.println("Error: " + e.getMessage());
+        return;
+      }
+    }
+    if (analytic.equals(ANALYTIC_SKIP)) {
+      System.out.println("Analytic solution:");
+      AnalyticSolver.printResults(topology, stations);
+      return;
+    }
+
+    double[] delays = new double[replicas];
+    double[] utilizations = new double[replicas];
+
+    Random seeds = new Random();
+    for (int i = 0; i < replicas; i++) {
+      if (partitions > 1 && engine.equals(TIME_WARP)) {
+        TimeWarpJacksonNetwork network = runTimeWarp(topology, partitions, horizon, optimismWindow,
+          seeds.nextLong());
+        delays[i] = network.getAverageNetworkDelay();
+        for (int node = 0; node < topology.getNumberOfNodes(); node++) {
+          utilizations[i] += network.getUtilization(node) / topology.getNumberOfNodes();
+        }
+        continue;
+      } else if (partitions > 1) {
+        ParallelJacksonNetwork network = runParallel(topology, partitions, horizon, seeds.nextLong());
+        delays[i] = network.getAverageNetworkDelay();
+        for (int node = 0; node < topology.getNumberOfNodes(); node++) {
+          utilizations[i] += network.getUtilization(node) / topology.getNumberOfNodes();
+        }
+        continue;
+      }
+
+      JacksonNetwork network = new JacksonNetwork(topology, departures, seeds.nextLong());
+      network.setHorizon(horizon);
+
+      int[] servers = new int[topology.getNumberOfNodes()];
+      for (int node = 0; node < servers.length; node++) {
+        servers[node] = topology.getServers(node);
+      }
+      SimulationMonitor monitor = SimulationMonitor.register("JacksonNetwork", "replica-" + i, servers);
+      network.setMonitor(monitor);
+
+      long start = System.nanoTime();
+      try {
+        network.run();
+      } finally {
+        monitor.unregister();
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+
+      network.printResults();
+      System.out.println("Events: " + network.getEventsProcessed() +
+        ", events/second: " + (long) (network.getEventsProcessed() / seconds) + "\n");
+
+      delays[i] = network.getAverageNetworkDelay();
+      for (int node = 0; node < topology.getNumberOfNodes(); node++) {
+        utilizations[i] += network.getUtilization(node) / topology.getNumberOfNodes();
+      }
+    }
+
+    if (analytic.equals(ANALYTIC_VALIDATE)) {
+      validate(topology, stations, delays, utilizations);
+    }
+  }
+
+  /**
+   * validate
+   *
+   * Compare the simulated network delay with the analytic
+   * solution, with the mean node utilization as control variate
+   */
+  private static void validate(NetworkTopology topology, AnalyticSolver.Station[] stations,
+      double[] delays, double[] utilizations) {
+
+    System.out.println("Analytic solution:");
+    AnalyticSolver.printResults(topology, stations);
+
+    double exact = AnalyticSolver.networkDelay(topology, stations);
+    double simulated = ConfidenceInterval.mean(delays);
+    System.out.println("Simulated network delay: " + simulated +
+      (delays.length > 1 ? " +/- " + ConfidenceInterval.halfWidth(delays) : "") +
+      ", relative error: " + (simulated - exact) / exact);
+
+    if (delays.length > 2) {
+      double rho = 0.0;
+      for (AnalyticSolver.Station station : stations) {
+        rho += station.getUtilization() / stations.length;
+      }
+      double[] estimate = AnalyticSolver.controlVariate(delays, utilizations, rho);
+      System.out.println("Control variate network delay: " + estimate[0] + " +/- " + estimate[1]);
+    }
+  }
+
+  /**
+   * runParallel
+   *
+   * Run one replica on the conservative parallel engine
+   */
+  public static ParallelJacksonNetwork runParallel(NetworkTopology topology, int partitions, double horizon,
+      long seed) throws InterruptedException {
+    ParallelJacksonNetwork network = new ParallelJacksonNetwork(topology, partitions, seed);
+    network.setHorizon(horizon);
+
+    long start = System.nanoTime();
+    network.run();
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    network.printResults();
+    double eventsPerWindow = (double) network.getEventsProcessed() / network.getWindows();
+    System.out.println("Events: " + network.getEventsProcessed() +
+      ", events/second: " + (long) (network.getEventsProcessed() / seconds) +
+      ", events/window: " + eventsPerWindow);
+    if (eventsPerWindow < EFFICIENT_WINDOW) {
+      System.out.println("Note: windows end at the earliest time a boundary node (one with a route to another\n" +
+        "partition) could send, bounded by its pre-sampled service times until its next crossing route.\n" +
+        "Partition along clusters so fewer nodes route across, or run the sequential engine with 1 partition");
+    }
+    System.out.println();
+    return network;
+  }
+
+  /**
+   * runTimeWarp
+   *
+   * Run one replica on the optimistic time warp engine
+   */
+  public static TimeWarpJacksonNetwork runTimeWarp(NetworkTopology topology, int processes, double horizon,
+      double optimismWindow, long seed) throws InterruptedException {
+    TimeWarpJacksonNetwork network = new TimeWarpJacksonNetwork(topology, processes, seed);
+    network.setHorizon(horizon);
+    network.setOptimismWindow(optimismWindow);
+
+    long start = System.nanoTime();
+    network.run();
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    network.printResults();
+    System.out.println("Committed events: " + network.getEventsCommitted() +
+      ", committed events/second: " + (long) (network.getEventsCommitted() / seconds) + "\n");
+    return network;
+  }
+
+  /**
+   * readTopology
+   *
+   * Parse the topology argument
+   */
+  public static NetworkTopology readTopology(String topology) throws IOException {
+    String[] data = topology.split(":");
+
+    if (data[0].equals("FEEDBACK") && (data.length == 5 || data.length == 6)) {
+      int servers = data.length == 6 ? Integer.parseInt(data[5]) : 1;
+      return NetworkTopology.feedback(Double.parseDouble(data[1]), Double.parseDouble(data[2]),
+        servers, Double.parseDouble(data[3]), Double.parseDouble(data[4]));
+    } else if (data[0].equals("RANDOM") && (data.length == 6 || data.length == 7)) {
+      int servers = data.length == 7 ? Integer.parseInt(data[6]) : 1;
+      return NetworkTopology.random(Integer.parseInt(data[1]), Integer.parseInt(data[2]),
+        Double.parseDouble(data[3]), Double.parseDouble(data[4]), servers, Double.parseDouble(data[5]),
+        new Random().nextLong());
+    }
+
+    return NetworkTopology.read(topology);
+  }
+}
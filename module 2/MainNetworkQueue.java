@@ -13,6 +13,25 @@ public class MainNetworkQueue {
   private static final double XI = 0.7;
   private static final double INTERVAL = 0.01;
 
+  /** Replica modes **/
+  public static final String INDEPENDENT = "IND";
+  public static final String ANTITHETIC = "ANTI";
+  public static final String RQMC = "RQMC";
+
+  /** lattice points per RQMC randomization, a prime **/
+  public static final int RQMC_POINTS = 7;
+
+  private static final long DEFAULT_CHECKPOINT_INTERVAL = 1000000;
+
+  private static final String WARMUP_DETECTION = "MSER";
+
+  /** Analytic modes **/
+  public static final String ANALYTIC_SKIP = "SKIP";
+  public static final String ANALYTIC_VALIDATE = "VALIDATE";
+
+  /** progress of the replicas run by main with -Dprogress, null otherwise **/
+  private static ProgressTracker progress;
+
   /**
    * main
    *
@@ -30,7 +49,12 @@ public class MainNetworkQueue {
         "(4) Probability q\n" +
         "(5) Number of departures\n" +
         "(6) Number of replicas\n" +
-        "(7) Event Generation Type (DEF or COR)");
+        "(7) Event Generation Type (DEF or COR)\n" +
+        "(8) Replica Mode (IND, ANTI or RQMC) [default = IND]\n" +
+        "(9) Checkpoint file prefix (IND only, resumes from existing checkpoints)\n" +
+        "(10) Checkpoint interval in events [default = 1000000]\n" +
+        "(11) Warm-up Detection: MSER or NONE (IND only) [default = NONE]\n" +
+        "(12) Analytic Solution: SKIP, VALIDATE or NONE (DEF only) [default = NONE]");
       return;
     }
 
@@ -41,6 +65,27 @@ public class MainNetworkQueue {
       }
     }
 
+    String replicaMode = INDEPENDENT;
+    if (args.length > 7) {
+      if (args[7].equals(ANTITHETIC) || args[7].equals(RQMC)) {
+        replicaMode = args[7];
+      }
+    }
+
+    String checkpointPrefix = null;
+    long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    if (args.length > 8 && !args[8].equals("NONE")) {
+      checkpointPrefix = args[8];
+    }
+
+    boolean warmup = args.length > 10 && args[10].equals(WARMUP_DETECTION);
+
+    String analytic = args.length > 11 ? args[11] : "NONE";
+    if (!analytic.equals("NONE") && generatorType.equals("COR")) {
+      System.out.println("Error: correlated arrivals have no analytic solution");
+      return;
+    }
+
     double p = 0.0;
     double q = 0.0;
     double lambda = 0.0;
@@ -54,6 +99,9 @@ public class MainNetworkQueue {
       q = Double.parseDouble(args[3]);
       departures = Long.parseLong(args[4]);
       replicas = Integer.parseInt(args[5]);
+      if (args.length > 9) {
+        checkpointInterval = Long.parseLong(args[9]);
+      }
     } catch (Exception e) {
       System.out.println("Error: Could not parse doubles");
       return;
@@ -64,9 +112,43 @@ public class MainNetworkQueue {
         "\tMu: " + mu + "\n" +
         "\tp: " + p + "\n" +
         "\tq: " + q + "\n" +
-        "\t# of Departures: " + departures);
+        "\t# of Departures: " + departures + "\n" +
+        "\tReplica Mode: " + replicaMode);
 
-    run(generatorType, lambda, mu, p, q, departures, replicas);
+    if (analytic.equals(ANALYTIC_SKIP)) {
+      // Poisson arrivals and exponential services: the
+      // network is product-form, no need to simulate
+      System.out.println("\nAnalytic solution:");
+      try {
+        NetworkTopology topology = NetworkTopology.feedback(lambda, mu, p, q);
+        AnalyticSolver.printResults(topology, AnalyticSolver.jackson(topology));
+      } catch (IllegalArgumentException e) {
+        System.out.println("Error: " + e.getMessage());
+      }
+      return;
+    }
+
+    progress = ProgressTracker.fromProperty("departures");
+    if (progress != null) {
+      int cells = replicaMode.equals(ANTITHETIC) ? 2 * replicas
+        : replicaMode.equals(RQMC) ? replicas * RQMC_POINTS : replicas;
+      progress.expect(cells, departures);
+      progress.start();
+    }
+    try {
+      if (replicaMode.equals(ANTITHETIC)) {
+        runAntithetic(generatorType, lambda, mu, p, q, departures, replicas);
+      } else if (replicaMode.equals(RQMC)) {
+        runRandomizedQMC(generatorType, lambda, mu, p, q, departures, replicas);
+      } else {
+        run(generatorType, lambda, mu, p, q, departures, replicas, checkpointPrefix, checkpointInterval, warmup,
+          analytic.equals(ANALYTIC_VALIDATE));
+      }
+    } finally {
+      if (progress != null) {
+        progress.stop();
+      }
+    }
 
   }
 
@@ -76,8 +158,52 @@ public class MainNetworkQueue {
    * Initialize and run Single Server Queue
    */
   public static void run(String generatorType, double lambda, double mu, double p, double q, long departures, int replicas) {
+    try {
+      run(generatorType, lambda, mu, p, q, departures, replicas, null, 0);
+    } catch (IOException e) {
+      System.out.println("Error: " + e.getMessage());
+    }
+  }
+
+  /**
+   * run
+   *
+   * Initialize and run the replicas, checkpointing replica i
+   * to checkpointPrefix-i.ckpt every checkpointInterval events.
+   * A replica whose checkpoint already exists is resumed from it,
+   * the checkpoint of a finished replica is deleted.
+   */
+  public static void run(String generatorType, double lambda, double mu, double p, double q,
+      long departures, int replicas, String checkpointPrefix, long checkpointInterval) throws IOException {
+    run(generatorType, lambda, mu, p, q, departures, replicas, checkpointPrefix, checkpointInterval, false);
+  }
+
+  /**
+   * run
+   *
+   * Initialize and run the replicas, optionally detecting
+   * and discarding the warm-up period of each station
+   */
+  public static void run(String generatorType, double lambda, double mu, double p, double q,
+      long departures, int replicas, String checkpointPrefix, long checkpointInterval,
+      boolean warmup) throws IOException {
+    run(generatorType, lambda, mu, p, q, departures, replicas, checkpointPrefix, checkpointInterval,
+      warmup, false);
+  }
+
+  /**
+   * run
+   *
+   * Initialize and run the replicas, optionally comparing
+   * them with the analytic Jackson network solution
+   */
+  public static void run(String generatorType, double lambda, double mu, double p, double q,
+      long departures, int replicas, String checkpointPrefix, long checkpointInterval,
+      boolean warmup, boolean validate) throws IOException {
 
     EventGenerator generator1, generator2;
+    double[] delays = new double[replicas];
+    double[] utilizations = new double[replicas];
 
     for (int i = 0; i < replicas; i++) {
       if (generatorType.equals("COR")) {
@@ -88,11 +214,223 @@ public class MainNetworkQueue {
         generator2 = new DefaultEventGenerator(lambda, mu);
       }
 
-      NetworkFeedbackQueues server = new NetworkFeedbackQueues(generator1, generator2, p, q, departures);
-      server.run();
+      NetworkFeedbackQueues server;
+      if (checkpointPrefix == null) {
+        server = new NetworkFeedbackQueues(generator1, generator2, p, q, departures);
+        server.setWarmupDetection(warmup);
+      } else {
+        String checkpointFile = checkpointPrefix + "-" + i + ".ckpt";
+        if (new File(checkpointFile).exists()) {
+          System.out.println("Resuming replica " + i + " from " + checkpointFile);
+          server = NetworkFeedbackQueues.restore(checkpointFile, generator1, generator2, true);
+          if (server.isWarmupDetection() != warmup) {
+            System.out.println("Error: " + checkpointFile + " was written " +
+              (warmup ? "without" : "with") + " warm-up detection");
+            return;
+          }
+        } else {
+          server = new NetworkFeedbackQueues(generator1, generator2, p, q, departures);
+          server.setWarmupDetection(warmup);
+        }
+        server.setCheckpoint(checkpointFile, checkpointInterval);
+      }
+      runMonitored(server, "replica-" + i, departures);
 
       System.out.println("\n");
       server.printResults();
+
+      delays[i] = server.getAverageEndToEndDelay();
+      utilizations[i] = (server.getUtilization(0) + server.getUtilization(1)) / 2;
+    }
+
+    if (validate) {
+      validate(lambda, mu, p, q, delays, utilizations);
+    }
+  }
+
+  /**
+   * validate
+   *
+   * Compare the simulated end-to-end delay with the Jackson
+   * network solution and use the station utilization, whose
+   * mean is known exactly, as a control variate for it
+   */
+  private static void validate(double lambda, double mu, double p, double q,
+      double[] delays, double[] utilizations) {
+
+    NetworkTopology topology = NetworkTopology.feedback(lambda, mu, p, q);
+    AnalyticSolver.Station[] stations;
+    try {
+      stations = AnalyticSolver.jackson(topology);
+    } catch (IllegalArgumentException e) {
+      System.out.println("Error: " + e.getMessage());
+      return;
+    }
+
+    System.out.println("\nAnalytic solution:");
+    AnalyticSolver.printResults(topology, stations);
+
+    double exact = AnalyticSolver.networkDelay(topology, stations);
+    double simulated = ConfidenceInterval.mean(delays);
+    System.out.println("Simulated network delay: " + simulated +
+      (delays.length > 1 ? " +/- " + ConfidenceInterval.halfWidth(delays) : "") +
+      ", relative error: " + (simulated - exact) / exact);
+
+    if (delays.length > 2) {
+      double rho = (stations[0].getUtilization() + stations[1].getUtilization()) / 2;
+      double[] estimate = AnalyticSolver.controlVariate(delays, utilizations, rho);
+      System.out.println("Control variate network delay: " + estimate[0] + " +/- " + estimate[1]);
+    }
+  }
+
+  /**
+   * runAntithetic
+   *
+   * Run every replica together with its antithetic twin. The
+   * twin uses the same seeds but 1 - u for the arrival, service
+   * and routing uniforms. The average delay of a pair is one
+   * observation for the confidence interval.
+   */
+  public static void runAntithetic(String generatorType, double lambda, double mu,
+      double p, double q, long departures, int replicas) {
+
+    if (replicas < 2) {
+      System.out.println("Error: antithetic replicas need at least 2 pairs");
+      return;
+    }
+
+    Random seeds = new Random();
+
+    double[] delays = new double[2 * replicas];
+    double[] pairDelays = new double[replicas];
+
+    for (int i = 0; i < replicas; i++) {
+      long seed1 = seeds.nextLong();
+      long seed2 = seeds.nextLong();
+      long routingSeed = seeds.nextLong();
+
+      double original = runReplica(generatorType, lambda, mu, p, q, departures,
+        seed1, seed2, routingSeed, false);
+      double twin = runReplica(generatorType, lambda, mu, p, q, departures,
+        seed1, seed2, routingSeed, true);
+
+      delays[2 * i] = original;
+      delays[2 * i + 1] = twin;
+      pairDelays[i] = (original + twin) / 2;
+
+      System.out.println("Pair " + i + ": delay = " + original +
+        ", antithetic delay = " + twin);
+    }
+
+    // A pair costs two runs; compare with the variance of
+    // the mean of two independent runs
+    double independentVariance = ConfidenceInterval.variance(delays) / 2;
+    double pairVariance = ConfidenceInterval.variance(pairDelays);
+
+    System.out.println("\nAverage delay: " + ConfidenceInterval.mean(pairDelays) +
+      " +/- " + ConfidenceInterval.halfWidth(pairDelays));
+    System.out.println("Variance reduction factor: " + independentVariance / pairVariance);
+  }
+
+  /**
+   * runRandomizedQMC
+   *
+   * Run the given number of independent randomizations of
+   * an RQMC_POINTS point lattice. Each point is one replica
+   * whose arrival, service and routing uniforms come from
+   * LatticeRandom streams; the average over the points of a
+   * randomization is one observation for the interval.
+   */
+  public static void runRandomizedQMC(String generatorType, double lambda, double mu,
+      double p, double q, long departures, int randomizations) {
+
+    if (randomizations < 2) {
+      System.out.println("Error: RQMC needs at least 2 randomizations");
+      return;
+    }
+
+    Random seeds = new Random();
+    double[] observations = new double[randomizations];
+
+    for (int r = 0; r < randomizations; r++) {
+
+      // one shift seed per stream, shared by all points
+      long[] shiftSeeds = new long[5];
+      for (int k = 0; k < shiftSeeds.length; k++) {
+        shiftSeeds[k] = seeds.nextLong();
+      }
+
+      double total = 0.0;
+      for (int point = 0; point < RQMC_POINTS; point++) {
+        Random[] streams = new Random[shiftSeeds.length];
+        for (int k = 0; k < streams.length; k++) {
+          streams[k] = new LatticeRandom(point, RQMC_POINTS, shiftSeeds[k]);
+        }
+
+        EventGenerator generator1, generator2;
+        if (generatorType.equals("COR")) {
+          generator1 = new CorrelatedEventGenerator(lambda, mu, XI, INTERVAL, streams[0], streams[1]);
+          generator2 = new CorrelatedEventGenerator(lambda, mu, XI, INTERVAL, streams[2], streams[3]);
+        } else {
+          generator1 = new DefaultEventGenerator(lambda, mu, streams[0], streams[1]);
+          generator2 = new DefaultEventGenerator(lambda, mu, streams[2], streams[3]);
+        }
+
+        NetworkFeedbackQueues server = new NetworkFeedbackQueues(generator1, generator2, p, q,
+          departures, streams[4]);
+        runMonitored(server, "randomization-" + r + "-point-" + point, departures);
+        total += server.getAverageDelay();
+      }
+
+      observations[r] = total / RQMC_POINTS;
+      System.out.println("Randomization " + r + ": delay = " + observations[r]);
+    }
+
+    System.out.println("\nAverage delay: " + ConfidenceInterval.mean(observations) +
+      " +/- " + ConfidenceInterval.halfWidth(observations));
+  }
+
+  private static double runReplica(String generatorType, double lambda, double mu,
+      double p, double q, long departures, long seed1, long seed2, long routingSeed,
+      boolean antithetic) {
+
+    EventGenerator generator1, generator2;
+    if (generatorType.equals("COR")) {
+      generator1 = new CorrelatedEventGenerator(lambda, mu, XI, INTERVAL, seed1, antithetic);
+      generator2 = new CorrelatedEventGenerator(lambda, mu, XI, INTERVAL, seed2, antithetic);
+    } else {
+      generator1 = new DefaultEventGenerator(lambda, mu, seed1, antithetic);
+      generator2 = new DefaultEventGenerator(lambda, mu, seed2, antithetic);
+    }
+
+    Random routing = antithetic ? new AntitheticRandom(routingSeed) : new Random(routingSeed);
+
+    NetworkFeedbackQueues server = new NetworkFeedbackQueues(generator1, generator2, p, q,
+      departures, routing);
+    runMonitored(server, (antithetic ? "antithetic-" : "replica-") + seed1, departures);
+    return server.getAverageDelay();
+  }
+
+  /**
+   * runMonitored
+   *
+   * Run a replica with its progress visible over JMX
+   * and reported to the progress of main
+   */
+  private static void runMonitored(NetworkFeedbackQueues server, String name, long departures) {
+    int servers = server.getServers();
+    SimulationMonitor monitor = SimulationMonitor.register("NetworkFeedbackQueues", name,
+      new int[]{servers, servers});
+    ProgressTracker.Cell cell = progress != null ? progress.startCell(departures) : null;
+    server.setMonitor(monitor);
+    server.setProgress(cell);
+    try {
+      server.run();
+    } finally {
+      monitor.unregister();
+    }
+    if (cell != null) {
+      cell.finish();
     }
   }
 }
@@ -10,23 +10,39 @@ import java.io.*;
  */
 public class MainSimpleRoutingTopology {
 
+  /** Paired comparison of RR and STQ using common random numbers **/
+  public static final String PAIRED = "CRN";
+
+  private static final int DEFAULT_NUMBER_OF_SERVERS = 2;
+
+  private static final String WARMUP_DETECTION = "MSER";
+
+  /** progress of the replicas run by main with -Dprogress, null otherwise **/
+  private static ProgressTracker progress;
+
   /**
    * main
    *
    * @param lambda
    * @param mu
+   * @param Routing strategy (RR, STQ, JSQD:d, LWL, WRR:w1,..,wK or CRN)
    * @param Number of data points to generate
    * @param Number of replicas
+   * @param Number of servers (optional, default 2)
+   * @param MSER to detect and discard the warm-up period (optional)
    */
   public static void main(String[] args) throws IOException {
 
-    if (args.length < 4) {
+    if (args.length < 5) {
       System.out.println("Missing parameters:\n" +
         "(1) Lambda\n" +
         "(2) Mu\n" +
-        "(3) Routing Strategy (RR or STQ)\n" +
+        "(3) Routing Strategy (RR, STQ, JSQD:d, LWL, WRR:w1,..,wK\n" +
+        "    or CRN for a paired RR vs STQ comparison)\n" +
         "(4) Number of Data Points\n" +
-        "(5) Number of Replicas");
+        "(5) Number of Replicas\n" +
+        "(6) Number of Servers (optional, default 2)\n" +
+        "(7) Warm-up Detection: MSER or NONE (optional, default NONE)");
       return;
     }
 
@@ -34,32 +50,73 @@ public class MainSimpleRoutingTopology {
     double mu = 0.0;
     long dataPoints = 0;
     int replicas = 0;
+    int servers = DEFAULT_NUMBER_OF_SERVERS;
 
     try {
       lambda = Double.parseDouble(args[0]);
       mu = Double.parseDouble(args[1]);
       dataPoints = Long.parseLong(args[3]);
       replicas = Integer.parseInt(args[4]);
+      if (args.length > 5) {
+        servers = Integer.parseInt(args[5]);
+      }
     } catch (Exception e) {
       System.out.println("Error: Could not parse doubles");
       return;
     }
 
-    String routingStrategy = SimpleRoutingTopology.ROUND_ROBIN; // default
-    if (args[2].equals("STQ")) {
-      routingStrategy = SimpleRoutingTopology.SHORTEST_TOTAL_QUEUE;
+    String routingStrategy = args[2];
+    boolean warmup = args.length > 6 && args[6].equals(WARMUP_DETECTION);
+    if (!routingStrategy.equals(PAIRED)) {
+      try {
+        SimpleRoutingTopology.createRoutingPolicy(routingStrategy, servers, new Random());
+      } catch (IllegalArgumentException e) {
+        System.out.println("Error: " + e.getMessage());
+        return;
+      }
     }
 
     System.out.println("Running simulation with:\n" +
         "\tLambda: " + lambda + "\n" +
         "\tMu: " + mu + "\n" +
         "\tRouting Strategy: " + routingStrategy + "\n" +
+        "\tServers: " + servers + "\n" +
         "\tData Points: " + dataPoints + "\n" +
         "\t# of Replicas: " + replicas + "\n\n");
 
-    // Run simulations
-    for (int i = 0; i < replicas; i++) {
-      run(lambda, mu, dataPoints, routingStrategy);
+    progress = ProgressTracker.fromProperty("departures");
+    if (progress != null) {
+      progress.expect(routingStrategy.equals(PAIRED) ? 2 * replicas : replicas, dataPoints);
+      progress.start();
+    }
+    try {
+      if (routingStrategy.equals(PAIRED)) {
+        runPaired(lambda, mu, dataPoints, replicas);
+        return;
+      }
+
+      // Run simulations
+      for (int i = 0; i < replicas; i++) {
+        run(lambda, mu, dataPoints, servers, routingStrategy, warmup);
+      }
+    } finally {
+      if (progress != null) {
+        progress.stop();
+      }
+    }
+  }
+
+  /**
+   * track
+   *
+   * Run a replica, reporting to the progress of main
+   */
+  private static void track(SimpleRoutingTopology server, long dataPoints) {
+    ProgressTracker.Cell cell = progress != null ? progress.startCell(dataPoints) : null;
+    server.setProgress(cell);
+    server.run();
+    if (cell != null) {
+      cell.finish();
     }
   }
 
@@ -70,9 +127,99 @@ public class MainSimpleRoutingTopology {
    */
   public static void run(double lambda, double mu, long dataPoints, String routingStrategy) {
 
-    EventGenerator generator = new EventGenerator(lambda, mu);
+    EventGenerator generator = new DefaultEventGenerator(lambda, mu);
     SimpleRoutingTopology server = new SimpleRoutingTopology(generator, dataPoints, routingStrategy);
     server.run();
     server.printResults();
   }
+
+  /**
+   * run
+   *
+   * Initialize and run a K server routing topology
+   */
+  public static void run(double lambda, double mu, long dataPoints, int servers, String routingStrategy) {
+    run(lambda, mu, dataPoints, servers, routingStrategy, false);
+  }
+
+  /**
+   * run
+   *
+   * Initialize and run a K server routing topology,
+   * optionally discarding the warm-up period
+   */
+  public static void run(double lambda, double mu, long dataPoints, int servers,
+      String routingStrategy, boolean warmup) {
+
+    Random random = new Random();
+    EventGenerator generator = new DefaultEventGenerator(lambda, mu);
+    RoutingPolicy policy = SimpleRoutingTopology.createRoutingPolicy(routingStrategy, servers, random);
+    SimpleRoutingTopology server = new SimpleRoutingTopology(generator, dataPoints, servers, policy);
+    server.setWarmupDetection(warmup);
+    track(server, dataPoints);
+    server.printResults();
+    System.out.println("Average delay: " + server.getAverageDelay() + "\n");
+  }
+
+  /**
+   * runPaired
+   *
+   * Run RR and STQ side by side with common random numbers:
+   * in every replica both strategies are driven by generators
+   * built from the same seed, so they see identical arrival
+   * and service streams. The difference in average delay is
+   * computed per replica and the confidence interval is taken
+   * over those paired differences.
+   */
+  public static void runPaired(double lambda, double mu, long dataPoints, int replicas) {
+
+    if (replicas < 2) {
+      System.out.println("Error: a paired comparison needs at least 2 replicas");
+      return;
+    }
+
+    Random seeds = new Random();
+
+    double[] roundRobinDelays = new double[replicas];
+    double[] shortestQueueDelays = new double[replicas];
+    double[] differences = new double[replicas];
+
+    for (int i = 0; i < replicas; i++) {
+      long seed = seeds.nextLong();
+
+      SimpleRoutingTopology roundRobin = new SimpleRoutingTopology(
+        new DefaultEventGenerator(lambda, mu, seed), dataPoints, SimpleRoutingTopology.ROUND_ROBIN);
+      track(roundRobin, dataPoints);
+
+      SimpleRoutingTopology shortestQueue = new SimpleRoutingTopology(
+        new DefaultEventGenerator(lambda, mu, seed), dataPoints, SimpleRoutingTopology.SHORTEST_TOTAL_QUEUE);
+      track(shortestQueue, dataPoints);
+
+      roundRobinDelays[i] = roundRobin.getAverageDelay();
+      shortestQueueDelays[i] = shortestQueue.getAverageDelay();
+      differences[i] = roundRobinDelays[i] - shortestQueueDelays[i];
+
+      System.out.println("Replica " + i +
+        ": RR delay = " + roundRobinDelays[i] +
+        ", STQ delay = " + shortestQueueDelays[i] +
+        ", difference = " + differences[i]);
+    }
+
+    // Variance of the difference had the two strategies
+    // been run with independent streams
+    double independentVariance = ConfidenceInterval.variance(roundRobinDelays)
+      + ConfidenceInterval.variance(shortestQueueDelays);
+    double pairedVariance = ConfidenceInterval.variance(differences);
+
+    System.out.println("\nAverage delay RR:  " + ConfidenceInterval.mean(roundRobinDelays) +
+      " +/- " + ConfidenceInterval.halfWidth(roundRobinDelays));
+    System.out.println("Average delay STQ: " + ConfidenceInterval.mean(shortestQueueDelays) +
+      " +/- " + ConfidenceInterval.halfWidth(shortestQueueDelays));
+    System.out.println("Paired difference (RR - STQ): " + ConfidenceInterval.mean(differences) +
+      " +/- " + ConfidenceInterval.halfWidth(differences));
+
+    // Independent replicas needed for the same half width
+    // scale with the ratio of the two variances
+    System.out.println("Variance reduction factor: " + independentVariance / pairedVariance);
+  }
 }
@@ -4,6 +4,7 @@ import java.io.*;
 
 /**
  * Implementation of a Network Feedback Queue
+ * with c servers per station
  *
  * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
  * @version 09/04/16
@@ -17,6 +18,10 @@ public class NetworkFeedbackQueues {
   private static final int QUEUE_ONE = 0;
   private static final int QUEUE_TWO = 1;
 
+  /** checkpoint file header **/
+  private static final int CHECKPOINT_MAGIC = 0x4E465143; // "NFQC"
+  private static final int CHECKPOINT_VERSION = 6;
+
   /** random number generator for probabilities **/
   private Random random;
 
@@ -30,16 +35,28 @@ public class NetworkFeedbackQueues {
   /** Future Event list (set) ordered by event time **/
   private TreeSet<Event> futureEventList;
 
-  /** customer queues **/
-  private Queue<Double> queue_one;
-  private Queue<Double> queue_two;
+  /** insertion counter, orders events with equal times **/
+  private long nextSequence;
+
+  /** customer queues, ids into the customer table **/
+  private IntQueue queue_one;
+  private IntQueue queue_two;
+
+  /** customers in flight through the network **/
+  private CustomerTable customers;
 
   /** current clock time **/
   private double clock;
 
-  /** Server in use **/
-  private boolean queue_one_is_busy;
-  private boolean queue_two_is_busy;
+  /** number of servers per station **/
+  private int servers;
+
+  /** idle servers of each station **/
+  private IdleServerSet[] idleServers;
+
+  /** per server busy time accounting **/
+  private double[][] serverBusyTime;
+  private double[][] serverBusySince;
 
   /** How many departures before exiting **/
   private long numberOfDepartures;
@@ -47,16 +64,67 @@ public class NetworkFeedbackQueues {
   /** number of departures so far **/
   private long totalNumberOfDepartures;
 
-  private Map<Integer, Long> queue_one_histogram;
-  private Map<Integer, Long> queue_two_histogram;
+  /**
+   * queue size counts per bin, the last bin also holds
+   * everything above it. Bins are evenly spaced so the
+   * bin of a queue size is found without a search.
+   */
+  private long[] queue_one_histogram;
+  private long[] queue_two_histogram;
   private int[] bins = {5, 10, 15, 20, 25, 30, 35, 40, 45, 50, 55};
 
+  /** per customer delay and queue length seen on arrival **/
+  private QuantileSketch[] delaySketch;
+  private QuantileSketch[] queueLengthSketch;
+
+  /** exact time from arrival to departure at each station **/
+  private double[] totalSojournTime;
+  private long[] sojournCount;
+  private QuantileSketch[] sojournSketch;
+
+  /** exact time from entering to leaving the network **/
+  private double totalEndToEndDelay;
+  private long totalVisits;
+  private long networkDepartures;
+  private QuantileSketch endToEndSketch;
+
   /** used to calculate delays **/
   private double[] delay;
   private double[] totalDelay;
   private double[] delayCount;
-  private double[] previousServiceTime;
-  private double[] previousArrivalTime;
+
+  /**
+   * time each server of a station has worked off the
+   * customers routed to it so far (Kiefer-Wolfowitz
+   * recursion, the Lindley recursion when c = 1)
+   */
+  private IndexedMinHeap[] serverFreeAt;
+
+  /** MSER-5 warm-up detection per station, off by default **/
+  private WarmupDetector[] warmupDetectors;
+
+  /** start of the statistics kept for each station **/
+  private double[] statisticsStart;
+
+  /** time weighted customers and busy servers per station **/
+  private TimeWeightedStatistic[] numberInSystem;
+  private TimeWeightedStatistic[] busyServers;
+
+  /** number of events processed so far **/
+  private long eventsProcessed;
+
+  /** set once the initial conditions have been applied **/
+  private boolean started;
+
+  /** checkpoint destination and interval in events **/
+  private String checkpointFile;
+  private long checkpointInterval;
+
+  /** live JMX view, null when not monitored **/
+  private SimulationMonitor monitor;
+
+  /** progress of this run, null when not tracked **/
+  private ProgressTracker.Cell progress;
 
   /**
    * SingleServerQueue
@@ -66,38 +134,73 @@ public class NetworkFeedbackQueues {
    */
   public NetworkFeedbackQueues(EventGenerator eventGenerator_one,
       EventGenerator eventGenerator_two, double p, double q, long numberOfDepartures) {
+    this(eventGenerator_one, eventGenerator_two, p, q, numberOfDepartures, new Random());
+  }
+
+  /**
+   * NetworkFeedbackQueues
+   *
+   * @param random stream used for the p and q routing
+   *        decisions, seeded to replay or pair replicas
+   */
+  public NetworkFeedbackQueues(EventGenerator eventGenerator_one,
+      EventGenerator eventGenerator_two, double p, double q, long numberOfDepartures,
+      Random random) {
+    this(eventGenerator_one, eventGenerator_two, p, q, numberOfDepartures, random, 1);
+  }
+
+  /**
+   * NetworkFeedbackQueues
+   *
+   * @param servers number of servers c at each station
+   */
+  public NetworkFeedbackQueues(EventGenerator eventGenerator_one,
+      EventGenerator eventGenerator_two, double p, double q, long numberOfDepartures,
+      Random random, int servers) {
     this.eventGenerator_one = eventGenerator_one;
     this.eventGenerator_two = eventGenerator_two;
     this.numberOfDepartures = numberOfDepartures;
 
     futureEventList = new TreeSet<Event>(new EventComparator());
-    queue_one = new LinkedList<Double>();
-    queue_two = new LinkedList<Double>();
+    queue_one = new IntQueue();
+    queue_two = new IntQueue();
+    customers = new CustomerTable();
 
     clock = 0.0;
-    queue_one_is_busy = false;
-    queue_two_is_busy = false;
+    this.servers = servers;
+    idleServers = new IdleServerSet[]{new IdleServerSet(servers), new IdleServerSet(servers)};
+    serverBusyTime = new double[2][servers];
+    serverBusySince = new double[2][servers];
 
     delay = new double[]{0.0, 0.0};
     totalDelay = new double[]{0.0, 0.0};
     delayCount = new double[]{0, 0};
-    previousArrivalTime = new double[]{0.0, 0.0};
-    previousServiceTime = new double[]{0.0, 0.0};
+    serverFreeAt = new IndexedMinHeap[]{new IndexedMinHeap(servers), new IndexedMinHeap(servers)};
+    statisticsStart = new double[]{0.0, 0.0};
+    numberInSystem = new TimeWeightedStatistic[]{new TimeWeightedStatistic(0.0), new TimeWeightedStatistic(0.0)};
+    busyServers = new TimeWeightedStatistic[]{new TimeWeightedStatistic(0.0), new TimeWeightedStatistic(0.0)};
 
     totalNumberOfDepartures = 0;
+    eventsProcessed = 0;
+    started = false;
 
-    random = new Random();
+    this.random = random;
     this.p = p;
     this.q = q;
 
-    queue_one_histogram = new HashMap<>();
-    queue_two_histogram = new HashMap<>();
+    queue_one_histogram = new long[bins.length];
+    queue_two_histogram = new long[bins.length];
 
-    // Create bins in hashmap
-    for (int i = 0; i < bins.length; i++) {
-      queue_one_histogram.put(bins[i], new Long(0));
-      queue_two_histogram.put(bins[i], new Long(0));
-    }
+    delaySketch = new QuantileSketch[]{
+      new QuantileSketch(QuantileSketch.TIME_UNIT), new QuantileSketch(QuantileSketch.TIME_UNIT)};
+    queueLengthSketch = new QuantileSketch[]{
+      new QuantileSketch(QuantileSketch.COUNT_UNIT), new QuantileSketch(QuantileSketch.COUNT_UNIT)};
+
+    totalSojournTime = new double[]{0.0, 0.0};
+    sojournCount = new long[]{0, 0};
+    sojournSketch = new QuantileSketch[]{
+      new QuantileSketch(QuantileSketch.TIME_UNIT), new QuantileSketch(QuantileSketch.TIME_UNIT)};
+    endToEndSketch = new QuantileSketch(QuantileSketch.TIME_UNIT);
   }
 
   /**
@@ -109,7 +212,10 @@ public class NetworkFeedbackQueues {
    */
   public void run() {
 
-    initialConditions(); // start simulation
+    if (!started) {
+      initialConditions(); // start simulation
+      started = true;
+    }
 
     Event nextEvent;
     while (!futureEventList.isEmpty()) {
@@ -130,6 +236,365 @@ public class NetworkFeedbackQueues {
       } else if (nextEvent.type.equals(FEEDBACK_EVENT)) {
         feedbackEvent(nextEvent);
       }
+
+      eventsProcessed += 1;
+      if (checkpointInterval > 0 && eventsProcessed % checkpointInterval == 0) {
+        try {
+          checkpoint(checkpointFile);
+        } catch (IOException e) {
+          System.out.println("Error: could not write checkpoint " + checkpointFile + ": " + e.getMessage());
+        }
+      }
+      if ((eventsProcessed & SimulationMonitor.PUBLISH_MASK) == 0) {
+        publish();
+      }
+    }
+
+    publish();
+    if (monitor != null) {
+      monitor.finish();
+    }
+
+    if (warmupDetectors != null) {
+      warmupDetectors[QUEUE_ONE].finish();
+      warmupDetectors[QUEUE_TWO].finish();
+    }
+
+    // a finished run has nothing left to resume
+    if (checkpointFile != null) {
+      new File(checkpointFile).delete();
+      new File(checkpointFile + ".tmp").delete();
+    }
+  }
+
+  /**
+   * setCheckpoint
+   *
+   * Write a checkpoint to the given file every
+   * checkpointInterval events while running. The file
+   * is deleted when the run finishes.
+   */
+  public void setCheckpoint(String checkpointFile, long checkpointInterval) {
+    this.checkpointFile = checkpointFile;
+    this.checkpointInterval = checkpointInterval;
+  }
+
+  /**
+   * setMonitor
+   *
+   * Publish progress to the given monitor while running
+   */
+  public void setMonitor(SimulationMonitor monitor) {
+    this.monitor = monitor;
+  }
+
+  /**
+   * setProgress
+   *
+   * Report completed departures to the given cell while running
+   */
+  public void setProgress(ProgressTracker.Cell progress) {
+    this.progress = progress;
+  }
+
+  /**
+   * publish
+   *
+   * Copy the current state of both stations to the monitor
+   * and the departures to the progress cell
+   */
+  private void publish() {
+    if (progress != null) {
+      progress.update(totalNumberOfDepartures);
+    }
+    if (monitor == null) {
+      return;
+    }
+    for (int i = QUEUE_ONE; i <= QUEUE_TWO; i++) {
+      monitor.publishStation(i, i == QUEUE_ONE ? queue_one.size() : queue_two.size(),
+        servers - idleServers[i].size(), delayCount[i] > 0 ? totalDelay[i] / delayCount[i] : 0.0);
+    }
+    monitor.publish(clock, eventsProcessed, futureEventList.size());
+  }
+
+  /**
+   * checkpoint
+   *
+   * Write the complete simulation state: clock, future
+   * event list, customer queues, busy flags, delay and
+   * time weighted accumulators, histograms and random
+   * number streams.
+   * The file is replaced atomically so a crash while
+   * writing leaves the previous checkpoint intact.
+   */
+  public void checkpoint(String file) throws IOException {
+    File target = new File(file);
+    File temp = new File(file + ".tmp");
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+    try {
+      out.writeInt(CHECKPOINT_MAGIC);
+      out.writeInt(CHECKPOINT_VERSION);
+
+      out.writeDouble(clock);
+      out.writeDouble(p);
+      out.writeDouble(q);
+      out.writeLong(numberOfDepartures);
+      out.writeLong(totalNumberOfDepartures);
+      out.writeLong(eventsProcessed);
+      out.writeInt(servers);
+      for (int i = QUEUE_ONE; i <= QUEUE_TWO; i++) {
+        for (int k = 0; k < servers; k++) {
+          out.writeBoolean(idleServers[i].contains(k));
+          out.writeDouble(serverBusyTime[i][k]);
+          out.writeDouble(serverBusySince[i][k]);
+          out.writeDouble(serverFreeAt[i].key(k));
+        }
+      }
+
+      out.writeInt(futureEventList.size());
+      for (Event event : futureEventList) {
+        out.writeInt(event.queue);
+        out.writeInt(event.server);
+        out.writeInt(event.customer);
+        out.writeByte(eventCode(event.type));
+        out.writeDouble(event.time);
+        out.writeDouble(event.serviceTime);
+      }
+
+      writeQueue(out, queue_one);
+      writeQueue(out, queue_two);
+      customers.writeState(out);
+
+      writeHistogram(out, bins, queue_one_histogram);
+      writeHistogram(out, bins, queue_two_histogram);
+
+      for (double[] values : new double[][]{delay, totalDelay, delayCount}) {
+        for (double value : values) {
+          out.writeDouble(value);
+        }
+      }
+
+      for (int i = QUEUE_ONE; i <= QUEUE_TWO; i++) {
+        numberInSystem[i].writeState(out);
+        busyServers[i].writeState(out);
+        delaySketch[i].writeState(out);
+        queueLengthSketch[i].writeState(out);
+        out.writeDouble(totalSojournTime[i]);
+        out.writeLong(sojournCount[i]);
+        sojournSketch[i].writeState(out);
+      }
+      out.writeDouble(totalEndToEndDelay);
+      out.writeLong(totalVisits);
+      out.writeLong(networkDepartures);
+      endToEndSketch.writeState(out);
+
+      out.writeBoolean(warmupDetectors != null);
+      for (int i = QUEUE_ONE; i <= QUEUE_TWO; i++) {
+        if (warmupDetectors != null) {
+          warmupDetectors[i].writeState(out);
+        }
+        out.writeDouble(statisticsStart[i]);
+      }
+
+      SimulationState.writeRandom(out, random);
+      SimulationState.writeBlock(out, generatorState(eventGenerator_one));
+      SimulationState.writeBlock(out, generatorState(eventGenerator_two));
+    } finally {
+      out.close();
+    }
+
+    java.nio.file.Files.move(temp.toPath(), target.toPath(),
+      java.nio.file.StandardCopyOption.REPLACE_EXISTING,
+      java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * restore
+   *
+   * Rebuild a simulation from a checkpoint. The generators
+   * must be of the same type and parameters as the ones
+   * that were checkpointed. With restoreStreams the random
+   * streams continue exactly where the run stopped; without
+   * it the given generators keep their own streams, which
+   * reuses a warmed-up state for independent runs.
+   */
+  public static NetworkFeedbackQueues restore(String file, EventGenerator eventGenerator_one,
+      EventGenerator eventGenerator_two, boolean restoreStreams) throws IOException {
+
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (in.readInt() != CHECKPOINT_MAGIC) {
+        throw new IOException("Not a network feedback queue checkpoint: " + file);
+      }
+      int version = in.readInt();
+      if (version != CHECKPOINT_VERSION) {
+        throw new IOException("Unsupported checkpoint version " + version + ": " + file);
+      }
+
+      double clock = in.readDouble();
+      double p = in.readDouble();
+      double q = in.readDouble();
+      long numberOfDepartures = in.readLong();
+      long totalNumberOfDepartures = in.readLong();
+      long eventsProcessed = in.readLong();
+      int servers = in.readInt();
+
+      NetworkFeedbackQueues server = new NetworkFeedbackQueues(eventGenerator_one,
+        eventGenerator_two, p, q, numberOfDepartures, new Random(), servers);
+      server.clock = clock;
+      server.totalNumberOfDepartures = totalNumberOfDepartures;
+      server.eventsProcessed = eventsProcessed;
+      for (int i = QUEUE_ONE; i <= QUEUE_TWO; i++) {
+        for (int k = 0; k < servers; k++) {
+          if (!in.readBoolean()) {
+            server.idleServers[i].remove(k);
+          }
+          server.serverBusyTime[i][k] = in.readDouble();
+          server.serverBusySince[i][k] = in.readDouble();
+          server.serverFreeAt[i].update(k, in.readDouble());
+        }
+      }
+
+      int events = in.readInt();
+      for (int i = 0; i < events; i++) {
+        int queue = in.readInt();
+        int serverIndex = in.readInt();
+        int customer = in.readInt();
+        String type = eventType(in.readByte());
+        double time = in.readDouble();
+        double serviceTime = in.readDouble();
+        server.futureEventList.add(server.newEvent(queue, serverIndex, customer, type, time, serviceTime));
+      }
+
+      readQueue(in, server.queue_one);
+      readQueue(in, server.queue_two);
+      server.customers = CustomerTable.readState(in);
+
+      readHistogram(in, server.bins, server.queue_one_histogram);
+      readHistogram(in, server.bins, server.queue_two_histogram);
+
+      for (double[] values : new double[][]{server.delay, server.totalDelay, server.delayCount}) {
+        for (int i = 0; i < values.length; i++) {
+          values[i] = in.readDouble();
+        }
+      }
+
+      for (int i = QUEUE_ONE; i <= QUEUE_TWO; i++) {
+        server.numberInSystem[i].readState(in);
+        server.busyServers[i].readState(in);
+        server.delaySketch[i].readState(in);
+        server.queueLengthSketch[i].readState(in);
+        server.totalSojournTime[i] = in.readDouble();
+        server.sojournCount[i] = in.readLong();
+        server.sojournSketch[i].readState(in);
+      }
+      server.totalEndToEndDelay = in.readDouble();
+      server.totalVisits = in.readLong();
+      server.networkDepartures = in.readLong();
+      server.endToEndSketch.readState(in);
+
+      server.setWarmupDetection(in.readBoolean());
+      for (int i = QUEUE_ONE; i <= QUEUE_TWO; i++) {
+        if (server.warmupDetectors != null) {
+          server.warmupDetectors[i].readState(in);
+        }
+        server.statisticsStart[i] = in.readDouble();
+      }
+
+      Random random = SimulationState.readRandom(in);
+      byte[] stateOne = SimulationState.readBlock(in);
+      byte[] stateTwo = SimulationState.readBlock(in);
+      if (restoreStreams) {
+        server.random = random;
+        eventGenerator_one.readState(new DataInputStream(new ByteArrayInputStream(stateOne)));
+        eventGenerator_two.readState(new DataInputStream(new ByteArrayInputStream(stateTwo)));
+      }
+
+      server.started = true;
+      return server;
+    } finally {
+      in.close();
+    }
+  }
+
+  private static byte[] generatorState(EventGenerator generator) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    generator.writeState(out);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  private static void writeQueue(DataOutputStream out, IntQueue queue) throws IOException {
+    out.writeInt(queue.size());
+    for (int i = 0; i < queue.size(); i++) {
+      out.writeInt(queue.get(i));
+    }
+  }
+
+  private static void readQueue(DataInputStream in, IntQueue queue) throws IOException {
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      queue.add(in.readInt());
+    }
+  }
+
+  private static void writeHistogram(DataOutputStream out, int[] bins, long[] histogram) throws IOException {
+    out.writeInt(histogram.length);
+    for (int i = 0; i < histogram.length; i++) {
+      out.writeInt(bins[i]);
+      out.writeLong(histogram[i]);
+    }
+  }
+
+  private static void readHistogram(DataInputStream in, int[] bins, long[] histogram) throws IOException {
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      int bin = in.readInt();
+      long count = in.readLong();
+      int index = Arrays.binarySearch(bins, bin);
+      if (index < 0) {
+        throw new IOException("Unknown histogram bin in checkpoint: " + bin);
+      }
+      histogram[index] = count;
+    }
+  }
+
+  /**
+   * setWarmupDetection
+   *
+   * Detect the end of the warm-up period of each station
+   * online with MSER-5 over its customer delays. Once it is
+   * detected the histogram, utilization and time averages
+   * of the station restart, and the average delay only
+   * counts customers after the cutoff. A restored queue
+   * keeps the detection state of its checkpoint.
+   */
+  public void setWarmupDetection(boolean enabled) {
+    warmupDetectors = enabled ? new WarmupDetector[]{new WarmupDetector(), new WarmupDetector()} : null;
+  }
+
+  public boolean isWarmupDetection() {
+    return warmupDetectors != null;
+  }
+
+  private static byte eventCode(String type) {
+    if (type.equals(ARRIVAL_EVENT)) {
+      return 0;
+    } else if (type.equals(FEEDBACK_EVENT)) {
+      return 1;
+    } else {
+      return 2;
+    }
+  }
+
+  private static String eventType(byte code) throws IOException {
+    switch (code) {
+      case 0: return ARRIVAL_EVENT;
+      case 1: return FEEDBACK_EVENT;
+      case 2: return DEPARTURE_EVENT;
+      default: throw new IOException("Unknown event type in checkpoint: " + code);
     }
   }
 
@@ -147,29 +612,33 @@ public class NetworkFeedbackQueues {
     double arrivalTime = clock;
 
     // Set LS(t) = 1
-    queue_one_is_busy = true;
-    queue_two_is_busy = true;
+    int server_one = seizeServer(QUEUE_ONE);
+    int server_two = seizeServer(QUEUE_TWO);
+    int customer_one = customers.enter(clock, QUEUE_ONE);
+    int customer_two = customers.enter(clock, QUEUE_TWO);
 
     // Generate Service Time s*;
     // Schedule new Departure event
     // at time t + s*;
     double serviceTime = eventGenerator_one.nextServiceTime();
-    futureEventList.add(new Event(QUEUE_ONE, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
+    futureEventList.add(newEvent(QUEUE_ONE, server_one, customer_one, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
     updateDelays(QUEUE_ONE, arrivalTime, serviceTime);
 
     serviceTime = eventGenerator_two.nextServiceTime();
-    futureEventList.add(new Event(QUEUE_TWO, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
+    futureEventList.add(newEvent(QUEUE_TWO, server_two, customer_two, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
     updateDelays(QUEUE_TWO, arrivalTime, serviceTime);
 
     // Generate interarrival time a*;
     // Schedule next arrival event
     // at time t + a*;
     double nextArrivalTime = eventGenerator_one.nextArrivalTime();
-    futureEventList.add(new Event(QUEUE_ONE, ARRIVAL_EVENT, clock + nextArrivalTime, nextArrivalTime));
+    futureEventList.add(newEvent(QUEUE_ONE, -1, ARRIVAL_EVENT, clock + nextArrivalTime, nextArrivalTime));
 
     nextArrivalTime = eventGenerator_two.nextArrivalTime();
-    futureEventList.add(new Event(QUEUE_TWO, ARRIVAL_EVENT, clock + nextArrivalTime, nextArrivalTime));
+    futureEventList.add(newEvent(QUEUE_TWO, -1, ARRIVAL_EVENT, clock + nextArrivalTime, nextArrivalTime));
 
+    updateStatistics(QUEUE_ONE);
+    updateStatistics(QUEUE_TWO);
     collectStatistics();
 
     // Return control to time-advance
@@ -185,64 +654,69 @@ public class NetworkFeedbackQueues {
 
     double serviceTime = 0.0;
     double arrivalTime = clock;
+    int customer = customers.enter(clock, event.queue);
 
     if (event.queue == QUEUE_ONE) {
 
-      // Is LS_1(t) = 1?
-      if (queue_one_is_busy) {
+      // Is LS_1(t) = c?
+      if (idleServers[QUEUE_ONE].isEmpty()) {
 
         // Increase LQ_1(t) by 1
         serviceTime = eventGenerator_one.nextServiceTime();
-        queue_one.add(serviceTime);
+        customers.setServiceTime(customer, serviceTime);
+        queue_one.add(customer);
       } else {
 
-        // Set LS_1(t) = 1
-        queue_one_is_busy = true;
+        // Increase LS_1(t) by 1
+        int server = seizeServer(QUEUE_ONE);
 
         // Generate service time s*;
         // Schedule new Departure event
         // at time t + s*;
         serviceTime = eventGenerator_one.nextServiceTime();
-        futureEventList.add(new Event(QUEUE_ONE, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
+        futureEventList.add(newEvent(QUEUE_ONE, server, customer, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
       }
 
       // Generate interarrival time a*;
       // Schedule next arrival event
       // at time t + a*;
       double nextArrivalTime = eventGenerator_one.nextArrivalTime();
-      futureEventList.add(new Event(QUEUE_ONE, ARRIVAL_EVENT, clock + nextArrivalTime, nextArrivalTime));
+      futureEventList.add(newEvent(QUEUE_ONE, -1, ARRIVAL_EVENT, clock + nextArrivalTime, nextArrivalTime));
 
       updateDelays(QUEUE_ONE, arrivalTime, serviceTime);
 
     } else { // QUEUE_TWO
 
-      // Is LS_2(t) = 1?
-      if (queue_two_is_busy) {
+      // Is LS_2(t) = c?
+      if (idleServers[QUEUE_TWO].isEmpty()) {
 
         // Increase LQ_2(t) by 1
         serviceTime = eventGenerator_two.nextServiceTime();
-        queue_two.add(serviceTime);
+        customers.setServiceTime(customer, serviceTime);
+        queue_two.add(customer);
       } else {
 
-        // Set LS_2(t) = 1
-        queue_two_is_busy = true;
+        // Increase LS_2(t) by 1
+        int server = seizeServer(QUEUE_TWO);
 
         // Generate service time s*;
         // Schedule new Departure event
         // at time t + s*;
         serviceTime = eventGenerator_two.nextServiceTime();
-        futureEventList.add(new Event(QUEUE_TWO, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
+        futureEventList.add(newEvent(QUEUE_TWO, server, customer, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
       }
 
       // Generate interarrival time a*;
       // Schedule next arrival event
       // at time t + a*;
       double nextArrivalTime = eventGenerator_two.nextArrivalTime();
-      futureEventList.add(new Event(QUEUE_TWO, ARRIVAL_EVENT, clock + nextArrivalTime, nextArrivalTime));
+      futureEventList.add(newEvent(QUEUE_TWO, -1, ARRIVAL_EVENT, clock + nextArrivalTime, nextArrivalTime));
 
       updateDelays(QUEUE_TWO, arrivalTime, serviceTime);
     }
 
+    updateStatistics(event.queue);
+
     // Return control to time-advance
     // routine to continue simulation
   }
@@ -256,48 +730,54 @@ public class NetworkFeedbackQueues {
 
     double serviceTime = 0.0;
     double arrivalTime = clock;
+    int customer = event.customer;
+    customers.move(customer, clock, event.queue);
 
     if (event.queue == QUEUE_ONE) {
 
-      // Is LS_1(t) = 1?
-      if (queue_one_is_busy) {
+      // Is LS_1(t) = c?
+      if (idleServers[QUEUE_ONE].isEmpty()) {
 
         // Increase LQ_1(t) by 1
         serviceTime = eventGenerator_one.nextServiceTime();
-        queue_one.add(serviceTime);
+        customers.setServiceTime(customer, serviceTime);
+        queue_one.add(customer);
       } else {
 
-        // Set LS_1(t) = 1
-        queue_one_is_busy = true;
+        // Increase LS_1(t) by 1
+        int server = seizeServer(QUEUE_ONE);
 
         // Generate service time s*;
         // Schedule new Departure event
         // at time t + s*;
         serviceTime = eventGenerator_one.nextServiceTime();
-        futureEventList.add(new Event(QUEUE_ONE, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
+        futureEventList.add(newEvent(QUEUE_ONE, server, customer, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
       }
 
     } else { // QUEUE_TWO
 
-      // Is LS_2(t) = 1?
-      if (queue_two_is_busy) {
+      // Is LS_2(t) = c?
+      if (idleServers[QUEUE_TWO].isEmpty()) {
 
         // Increase LQ_2(t) by 1
         serviceTime = eventGenerator_two.nextServiceTime();
-        queue_two.add(serviceTime);
+        customers.setServiceTime(customer, serviceTime);
+        queue_two.add(customer);
       } else {
 
-        // Set LS_2(t) = 1
-        queue_two_is_busy = true;
+        // Increase LS_2(t) by 1
+        int server = seizeServer(QUEUE_TWO);
 
         // Generate service time s*;
         // Schedule new Departure event
         // at time t + s*;
         serviceTime = eventGenerator_two.nextServiceTime();
-        futureEventList.add(new Event(QUEUE_TWO, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
+        futureEventList.add(newEvent(QUEUE_TWO, server, customer, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
       }
     }
 
+    updateStatistics(event.queue);
+
     // Return control to time-advance
     // routine to continue simulation
   }
@@ -316,27 +796,34 @@ public class NetworkFeedbackQueues {
       if (queue_one.size() > 0) {
 
         // Reduce LQ_1(t) by 1
-        double serviceTime = queue_one.remove();
+        int next = queue_one.remove();
+        double serviceTime = customers.getServiceTime(next);
 
         // Generate service time s*;
         // Schedule new departure
         // event at time t + s*;
-        futureEventList.add(new Event(QUEUE_ONE, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
+        futureEventList.add(newEvent(QUEUE_ONE, event.server, next, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
 
       } else { // LQ_1(t) <= 0
 
-        // Set LS_1(t) = 0
-        queue_one_is_busy = false;
+        // Reduce LS_1(t) by 1
+        releaseServer(QUEUE_ONE, event.server);
       }
 
+      recordSojourn(QUEUE_ONE, event.customer);
+
       // Generate p*
       // Is p >= p*?
       if (p > getProbability()) {
         // Scehdule next arrival
         // event at time t for queue two
-        futureEventList.add(new Event(QUEUE_TWO, FEEDBACK_EVENT, clock, event.serviceTime));
+        futureEventList.add(newEvent(QUEUE_TWO, -1, event.customer, FEEDBACK_EVENT, clock, event.serviceTime));
 
         updateDelays(QUEUE_TWO, clock, event.serviceTime);
+      } else {
+
+        // Leave the network
+        leaveNetwork(event.customer);
       }
 
     } else { // QUEUE_TWO
@@ -345,37 +832,91 @@ public class NetworkFeedbackQueues {
       if (queue_two.size() > 0) {
 
         // Reduce LQ_2(t) by 1
-        double serviceTime = queue_two.remove();
+        int next = queue_two.remove();
+        double serviceTime = customers.getServiceTime(next);
 
         // Generate service time s*;
         // Schedule new departure
         // event at time t + s*;
-        futureEventList.add(new Event(QUEUE_TWO, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
+        futureEventList.add(newEvent(QUEUE_TWO, event.server, next, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
 
       } else { // LQ_2(t) <= 0
 
-        // Set LS_2(t) = 0
-        queue_two_is_busy = false;
+        // Reduce LS_2(t) by 1
+        releaseServer(QUEUE_TWO, event.server);
       }
 
+      recordSojourn(QUEUE_TWO, event.customer);
+
       // Generate q*
       // Is q >= q*?
       if (q > getProbability()) {
         // Scehdule next arrival
         // event at time t for queue one
-        futureEventList.add(new Event(QUEUE_ONE, FEEDBACK_EVENT, clock, event.serviceTime));
+        futureEventList.add(newEvent(QUEUE_ONE, -1, event.customer, FEEDBACK_EVENT, clock, event.serviceTime));
 
         updateDelays(QUEUE_ONE, clock, event.serviceTime);
+      } else {
+
+        // Leave the network
+        leaveNetwork(event.customer);
       }
     }
 
     totalNumberOfDepartures += 1;
+    updateStatistics(event.queue);
     collectStatistics();
 
     // Return control to time-advance
     // routine to continue simulation
   }
 
+  /**
+   * updateStatistics
+   *
+   * record the new number of customers and busy
+   * servers of a station in its time weighted
+   * accumulators
+   */
+  private void updateStatistics(int queue) {
+    int busy = servers - idleServers[queue].size();
+    int waiting = queue == QUEUE_ONE ? queue_one.size() : queue_two.size();
+    if (waiting + busy > numberInSystem[queue].getValue()) {
+      // an arrival, record the customers it found
+      queueLengthSketch[queue].record(numberInSystem[queue].getValue());
+    }
+    numberInSystem[queue].update(waiting + busy, clock);
+    busyServers[queue].update(busy, clock);
+  }
+
+  /**
+   * recordSojourn
+   *
+   * a customer leaves a station, record the exact
+   * time it spent there
+   */
+  private void recordSojourn(int queue, int customer) {
+    double sojourn = customers.getStationSojournTime(customer, clock);
+    totalSojournTime[queue] += sojourn;
+    sojournCount[queue] += 1;
+    sojournSketch[queue].record(sojourn);
+  }
+
+  /**
+   * leaveNetwork
+   *
+   * a customer leaves the network, record its end-to-end
+   * delay and recycle its id
+   */
+  private void leaveNetwork(int customer) {
+    double sojourn = customers.getSojournTime(customer, clock);
+    totalEndToEndDelay += sojourn;
+    totalVisits += customers.getVisits(customer);
+    networkDepartures += 1;
+    endToEndSketch.record(sojourn);
+    customers.leave(customer);
+  }
+
   /**
    * collectStatistics
    *
@@ -384,34 +925,43 @@ public class NetworkFeedbackQueues {
    * the simulation
    */
   private void collectStatistics() {
+    queue_one_histogram[histogramBin(queue_one.size())] += 1;
+    queue_two_histogram[histogramBin(queue_two.size())] += 1;
+  }
 
-    for (int i = 0; i < bins.length - 1; i++) {
-      if (queue_one.size() <= bins[i]) {
-        queue_one_histogram.put(bins[i], queue_one_histogram.get(bins[i]) + 1);
-        break;
-      }
-    }
-
-    for (int i = 0; i < bins.length - 1; i++) {
-      if (queue_two.size() <= bins[i]) {
-        queue_two_histogram.put(bins[i], queue_two_histogram.get(bins[i]) + 1);
-        break;
-      }
-    }
-
-    if (queue_one.size() > bins[bins.length - 1]) {
-      queue_one_histogram.put(bins[bins.length - 1], queue_one_histogram.get(bins[bins.length - 1]) + 1);
-    }
+  /**
+   * histogramBin
+   *
+   * @return index of the first bin >= size, the
+   *         last bin for sizes above all bins
+   */
+  private int histogramBin(int size) {
+    int width = bins[0];
+    return size <= width ? 0 : Math.min((size - 1) / width, bins.length - 1);
+  }
 
-    if (queue_two.size() > bins[bins.length - 1]) {
-      queue_two_histogram.put(bins[bins.length - 1], queue_two_histogram.get(bins[bins.length - 1]) + 1);
+  private Map<Integer, Long> histogramMap(long[] histogram) {
+    Map<Integer, Long> map = new HashMap<>();
+    for (int i = 0; i < bins.length; i++) {
+      map.put(bins[i], histogram[i]);
     }
+    return map;
   }
 
   private double getProbability() {
     return random.nextDouble();
   }
 
+  private Event newEvent(int queue, int server, String type, double time, double serviceTime) {
+    return newEvent(queue, server, -1, type, time, serviceTime);
+  }
+
+  private Event newEvent(int queue, int server, int customer, String type, double time, double serviceTime) {
+    Event event = new Event(queue, server, customer, type, time, serviceTime);
+    event.sequence = nextSequence++;
+    return event;
+  }
+
   /**
    * Event
    *
@@ -433,11 +983,26 @@ public class NetworkFeedbackQueues {
     /** Which queue this event is for **/
     public int queue;
 
-    public Event(int queue, String type, double time, double serviceTime) {
+    /** Server that finishes, departures only **/
+    public int server;
+
+    /** Customer served or fed back, -1 for arrivals **/
+    public int customer;
+
+    /** Order of scheduling, breaks ties in time **/
+    public long sequence;
+
+    public Event(int queue, int server, String type, double time, double serviceTime) {
+      this(queue, server, -1, type, time, serviceTime);
+    }
+
+    public Event(int queue, int server, int customer, String type, double time, double serviceTime) {
       this.type = type;
       this.time = time;
       this.serviceTime = serviceTime;
       this.queue = queue;
+      this.server = server;
+      this.customer = customer;
     }
   }
 
@@ -448,7 +1013,8 @@ public class NetworkFeedbackQueues {
    */
   private static class EventComparator implements Comparator<Event> {
     public int compare(Event one, Event two) {
-      return Double.compare(one.time, two.time);
+      int order = Double.compare(one.time, two.time);
+      return order != 0 ? order : Long.compare(one.sequence, two.sequence);
     }
   }
 
@@ -457,31 +1023,290 @@ public class NetworkFeedbackQueues {
 
   public void printResults() {
     // Histogram Queues
-    System.out.println("QUEUE ONE: " + queue_one_histogram.toString());
-    System.out.println("QUEUE TWO: " + queue_two_histogram.toString());
+    System.out.println("QUEUE ONE: " + getQueueOneHistogram().toString());
+    System.out.println("QUEUE TWO: " + getQueueTwoHistogram().toString());
 
     // Delays
-    System.out.println("Average delay for queue 1: " + totalDelay[0] / delayCount[0]);
-    System.out.println("Average delay for queue 2: " + totalDelay[1] / delayCount[1]);
+    System.out.println("Average delay for queue 1: " + getAverageDelay(QUEUE_ONE));
+    System.out.println("Average delay for queue 2: " + getAverageDelay(QUEUE_TWO));
+
+    // Time averages
+    System.out.println("Time average number in queue 1: " + getAverageNumberInSystem(QUEUE_ONE));
+    System.out.println("Time average number in queue 2: " + getAverageNumberInSystem(QUEUE_TWO));
+
+    // Sojourn times
+    System.out.println("Average sojourn time for queue 1: " + getAverageSojournTime(QUEUE_ONE));
+    System.out.println("Average sojourn time for queue 2: " + getAverageSojournTime(QUEUE_TWO));
+    System.out.println("Average end-to-end delay: " + getAverageEndToEndDelay() +
+      ", p99 = " + endToEndSketch.getQuantile(0.99) +
+      ", visits = " + getAverageVisits());
+
+    // Delay percentiles
+    for (int i = QUEUE_ONE; i <= QUEUE_TWO; i++) {
+      System.out.println("Delay percentiles for queue " + (i + 1) +
+        ": p50 = " + delaySketch[i].getQuantile(0.5) +
+        ", p95 = " + delaySketch[i].getQuantile(0.95) +
+        ", p99 = " + delaySketch[i].getQuantile(0.99));
+    }
+
+    if (warmupDetectors != null) {
+      System.out.println("Warm-up cutoff for queue 1: " + getWarmupCutoff(QUEUE_ONE));
+      System.out.println("Warm-up cutoff for queue 2: " + getWarmupCutoff(QUEUE_TWO));
+    }
+  }
+
+  /**
+   * getUtilization
+   *
+   * @return fraction of time the servers of a station are busy
+   */
+  public double getUtilization(int queue) {
+    double busy = 0.0;
+    for (int k = 0; k < servers; k++) {
+      busy += getServerUtilization(queue, k);
+    }
+    return busy / servers;
+  }
+
+  /**
+   * getServerUtilization
+   *
+   * @return fraction of time one server of a station is busy
+   */
+  public double getServerUtilization(int queue, int server) {
+    double busy = serverBusyTime[queue][server];
+    if (!idleServers[queue].contains(server)) {
+      busy += clock - serverBusySince[queue][server];
+    }
+    double elapsed = clock - statisticsStart[queue];
+    return elapsed > 0 ? busy / elapsed : 0.0;
+  }
+
+  public int getServers() {
+    return servers;
+  }
+
+  /**
+   * getAverageNumberInSystem
+   *
+   * @return time average number of customers at a station
+   */
+  public double getAverageNumberInSystem(int queue) {
+    return numberInSystem[queue].getAverage(clock);
+  }
+
+  /**
+   * getAverageQueueLength
+   *
+   * @return time average number of waiting customers
+   */
+  public double getAverageQueueLength(int queue) {
+    return numberInSystem[queue].getAverage(clock) - busyServers[queue].getAverage(clock);
+  }
+
+  /**
+   * getAverageBusyServers
+   *
+   * @return time average number of busy servers
+   */
+  public double getAverageBusyServers(int queue) {
+    return busyServers[queue].getAverage(clock);
+  }
+
+  /**
+   * getStateProbability
+   *
+   * @return fraction of time a station holds n customers
+   */
+  public double getStateProbability(int queue, int n) {
+    return numberInSystem[queue].getStateProbability(n, clock);
+  }
+
+  /**
+   * getTimeInStates
+   *
+   * @return time a station spent holding 0..max customers
+   */
+  public double[] getTimeInStates(int queue) {
+    return numberInSystem[queue].getTimeInStates(clock);
   }
 
   public Map<Integer, Long> getQueueOneHistogram() {
-    return queue_one_histogram;
+    return histogramMap(queue_one_histogram);
   }
 
   public Map<Integer, Long> getQueueTwoHistogram() {
-    return queue_two_histogram;
+    return histogramMap(queue_two_histogram);
+  }
+
+  /**
+   * getDelaySketch
+   *
+   * @return quantile sketch of the customer delays at a
+   *         station, mergeable across replicas
+   */
+  public QuantileSketch getDelaySketch(int queue) {
+    return delaySketch[queue];
+  }
+
+  /**
+   * getAverageSojournTime
+   *
+   * @return exact average time from arrival to departure
+   *         at a station, every visit counted separately
+   */
+  public double getAverageSojournTime(int queue) {
+    return sojournCount[queue] > 0 ? totalSojournTime[queue] / sojournCount[queue] : 0.0;
+  }
+
+  public QuantileSketch getSojournSketch(int queue) {
+    return sojournSketch[queue];
+  }
+
+  /**
+   * getAverageEndToEndDelay
+   *
+   * @return exact average time from entering to leaving
+   *         the network, feedback visits included
+   */
+  public double getAverageEndToEndDelay() {
+    return networkDepartures > 0 ? totalEndToEndDelay / networkDepartures : 0.0;
+  }
+
+  public QuantileSketch getEndToEndSketch() {
+    return endToEndSketch;
+  }
+
+  /**
+   * getAverageVisits
+   *
+   * @return average number of station visits of the
+   *         customers that left the network
+   */
+  public double getAverageVisits() {
+    return networkDepartures > 0 ? (double) totalVisits / networkDepartures : 0.0;
+  }
+
+  /** customers currently in the network **/
+  public int getCustomersInFlight() {
+    return customers.size();
+  }
+
+  /** events taken off the future event list so far **/
+  public long getEventsProcessed() {
+    return eventsProcessed;
+  }
+
+  /**
+   * getQueueLengthSketch
+   *
+   * @return quantile sketch of the number of customers
+   *         found at a station by arriving customers
+   */
+  public QuantileSketch getQueueLengthSketch(int queue) {
+    return queueLengthSketch[queue];
   }
 
   public double getAverageDelay() {
-    return (totalDelay[0] / delayCount[0] + totalDelay[1] / delayCount[1]) / 2;
+    return (getAverageDelay(QUEUE_ONE) + getAverageDelay(QUEUE_TWO)) / 2;
+  }
+
+  /**
+   * getAverageDelay
+   *
+   * @return average delay of a station, after the
+   *         warm-up cutoff when detection is enabled
+   */
+  public double getAverageDelay(int queue) {
+    if (warmupDetectors != null) {
+      return warmupDetectors[queue].getMean();
+    }
+    return totalDelay[queue] / delayCount[queue];
+  }
+
+  /**
+   * getWarmupCutoff
+   *
+   * @return time of the first delay kept at a station, 0
+   *         without detection or before a cutoff is found
+   */
+  public double getWarmupCutoff(int queue) {
+    return warmupDetectors != null ? warmupDetectors[queue].getCutoffTime() : 0.0;
+  }
+
+  /**
+   * getWarmupCustomers
+   *
+   * @return number of customers of a station treated as warm-up
+   */
+  public long getWarmupCustomers(int queue) {
+    return warmupDetectors != null ? warmupDetectors[queue].getTruncatedObservations() : 0;
   }
 
   private void updateDelays(int i, double arrivalTime, double serviceTime) {
-    delay[i] = Math.max(0, delay[i] + previousArrivalTime[i] + previousServiceTime[i] - arrivalTime);
+    // FIFO customers start on the server that frees up first
+    int server = serverFreeAt[i].min();
+    delay[i] = Math.max(0, serverFreeAt[i].key(server) - arrivalTime);
     totalDelay[i] += delay[i];
     delayCount[i] += 1;
-    previousArrivalTime[i] = arrivalTime;
-    previousServiceTime[i] = serviceTime;
+    serverFreeAt[i].update(server, delay[i] + arrivalTime + serviceTime);
+
+    if (warmupDetectors != null && warmupDetectors[i].add(delay[i], arrivalTime)) {
+      discardWarmup(i);
+    }
+    delaySketch[i].record(delay[i]);
+  }
+
+  /**
+   * discardWarmup
+   *
+   * restart the histograms, sketches, busy time and time
+   * averages of a station at the moment its warm-up is
+   * detected
+   */
+  private void discardWarmup(int queue) {
+    Arrays.fill(queue == QUEUE_ONE ? queue_one_histogram : queue_two_histogram, 0);
+    delaySketch[queue].reset();
+    queueLengthSketch[queue].reset();
+    totalSojournTime[queue] = 0.0;
+    sojournCount[queue] = 0;
+    sojournSketch[queue].reset();
+
+    // end-to-end customers cross both stations
+    totalEndToEndDelay = 0.0;
+    totalVisits = 0;
+    networkDepartures = 0;
+    endToEndSketch.reset();
+
+    for (int k = 0; k < servers; k++) {
+      serverBusyTime[queue][k] = 0.0;
+      if (!idleServers[queue].contains(k)) {
+        serverBusySince[queue][k] = clock;
+      }
+    }
+    statisticsStart[queue] = clock;
+    numberInSystem[queue].reset(clock);
+    busyServers[queue].reset(clock);
+  }
+
+  /**
+   * seizeServer
+   *
+   * take the lowest idle server of a station
+   */
+  private int seizeServer(int queue) {
+    int server = idleServers[queue].poll();
+    serverBusySince[queue][server] = clock;
+    return server;
+  }
+
+  /**
+   * releaseServer
+   *
+   * return a server to the idle set of a station
+   */
+  private void releaseServer(int queue, int server) {
+    serverBusyTime[queue][server] += clock - serverBusySince[queue][server];
+    idleServers[queue].add(server);
   }
 }
@@ -0,0 +1,305 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * Topology of an open network of queues: an external
+ * arrival rate, a service rate and a number of servers per
+ * node and a sparse routing probability matrix. A customer leaving node i
+ * goes to node j with probability P(i, j) and leaves the
+ * network with probability 1 - sum_j P(i, j).
+ *
+ * Topology file format, one entry per line:
+ *
+ *      node  <id> <lambda> <mu> [servers]
+ *      route <from> <to> <probability>
+ *
+ * Node ids are 0 .. n-1, nodes have one server unless
+ * given; lines starting with # are ignored.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class NetworkTopology {
+
+  private int numberOfNodes;
+  private double[] lambda;
+  private double[] mu;
+  private int[] servers;
+
+  /** routing matrix in compressed sparse row form **/
+  private int[] routeStart;
+  private int[] routeTo;
+  private double[] routeProbability;
+
+  /**
+   * NetworkTopology
+   *
+   * @param lambda : external arrival rate per node
+   * @param mu     : service rate per node
+   * @param from, to, probability : routing matrix entries
+   */
+  public NetworkTopology(double[] lambda, double[] mu, int[] from, int[] to, double[] probability) {
+    this(lambda, mu, singleServers(lambda.length), from, to, probability);
+  }
+
+  /**
+   * NetworkTopology
+   *
+   * @param lambda  : external arrival rate per node
+   * @param mu      : service rate of every server of a node
+   * @param servers : number of servers per node
+   * @param from, to, probability : routing matrix entries
+   */
+  public NetworkTopology(double[] lambda, double[] mu, int[] servers, int[] from, int[] to,
+      double[] probability) {
+    if (lambda.length != mu.length || lambda.length != servers.length) {
+      throw new IllegalArgumentException("lambda, mu and servers must have one entry per node");
+    }
+
+    numberOfNodes = lambda.length;
+    this.lambda = lambda.clone();
+    this.mu = mu.clone();
+    this.servers = servers.clone();
+    for (int i = 0; i < numberOfNodes; i++) {
+      if (servers[i] < 1) {
+        throw new IllegalArgumentException("Node " + i + " needs at least one server");
+      }
+    }
+
+    routeStart = new int[numberOfNodes + 1];
+    for (int k = 0; k < from.length; k++) {
+      checkNode(from[k]);
+      checkNode(to[k]);
+      routeStart[from[k] + 1] += 1;
+    }
+    for (int i = 0; i < numberOfNodes; i++) {
+      routeStart[i + 1] += routeStart[i];
+    }
+
+    routeTo = new int[from.length];
+    routeProbability = new double[from.length];
+    int[] next = Arrays.copyOf(routeStart, numberOfNodes);
+    for (int k = 0; k < from.length; k++) {
+      int slot = next[from[k]]++;
+      routeTo[slot] = to[k];
+      routeProbability[slot] = probability[k];
+    }
+
+    for (int i = 0; i < numberOfNodes; i++) {
+      if (exitProbability(i) < -1e-9) {
+        throw new IllegalArgumentException("Routing probabilities of node " + i + " exceed 1");
+      }
+    }
+  }
+
+  /**
+   * read
+   *
+   * Read a topology file
+   */
+  public static NetworkTopology read(String file) throws IOException {
+    Map<Integer, double[]> nodes = new TreeMap<Integer, double[]>();
+    List<int[]> routes = new ArrayList<int[]>();
+    List<Double> probabilities = new ArrayList<Double>();
+
+    BufferedReader in = new BufferedReader(new FileReader(new File(file)));
+    try {
+      String line;
+      int lineNumber = 0;
+      while ((line = in.readLine()) != null) {
+        lineNumber += 1;
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+
+        String[] data = line.split("\\s+");
+        try {
+          if (data[0].equals("node") && (data.length == 4 || data.length == 5)) {
+            nodes.put(Integer.parseInt(data[1]),
+              new double[]{Double.parseDouble(data[2]), Double.parseDouble(data[3]),
+                data.length == 5 ? Integer.parseInt(data[4]) : 1});
+          } else if (data[0].equals("route") && data.length == 4) {
+            routes.add(new int[]{Integer.parseInt(data[1]), Integer.parseInt(data[2])});
+            probabilities.add(Double.parseDouble(data[3]));
+          } else {
+            throw new IOException("Invalid line " + lineNumber + " in " + file + ": " + line);
+          }
+        } catch (NumberFormatException e) {
+          throw new IOException("Invalid number on line " + lineNumber + " in " + file + ": " + line);
+        }
+      }
+    } finally {
+      in.close();
+    }
+
+    int n = nodes.size();
+    double[] lambda = new double[n];
+    double[] mu = new double[n];
+    int[] servers = new int[n];
+    for (Map.Entry<Integer, double[]> entry : nodes.entrySet()) {
+      if (entry.getKey() < 0 || entry.getKey() >= n) {
+        throw new IOException("Node ids must be 0.." + (n - 1) + " in " + file);
+      }
+      lambda[entry.getKey()] = entry.getValue()[0];
+      mu[entry.getKey()] = entry.getValue()[1];
+      servers[entry.getKey()] = (int) entry.getValue()[2];
+    }
+
+    int[] from = new int[routes.size()];
+    int[] to = new int[routes.size()];
+    double[] probability = new double[routes.size()];
+    for (int k = 0; k < routes.size(); k++) {
+      from[k] = routes.get(k)[0];
+      to[k] = routes.get(k)[1];
+      probability[k] = probabilities.get(k);
+    }
+
+    return new NetworkTopology(lambda, mu, servers, from, to, probability);
+  }
+
+  /**
+   * feedback
+   *
+   * The two station network of NetworkFeedbackQueues:
+   * both stations receive external arrivals at rate lambda,
+   * station one feeds station two with probability p and
+   * station two feeds station one with probability q.
+   */
+  public static NetworkTopology feedback(double lambda, double mu, double p, double q) {
+    return feedback(lambda, mu, 1, p, q);
+  }
+
+  /**
+   * feedback
+   *
+   * The two station network with c servers per station
+   */
+  public static NetworkTopology feedback(double lambda, double mu, int servers, double p, double q) {
+    return new NetworkTopology(
+      new double[]{lambda, lambda},
+      new double[]{mu, mu},
+      new int[]{servers, servers},
+      new int[]{0, 1},
+      new int[]{1, 0},
+      new double[]{p, q});
+  }
+
+  /**
+   * random
+   *
+   * Random network where every node routes to fanout
+   * uniformly chosen nodes with equal probability and
+   * leaves the network with the given exit probability.
+   */
+  public static NetworkTopology random(int numberOfNodes, int fanout, double lambda, double mu,
+      double exitProbability, long seed) {
+    return random(numberOfNodes, fanout, lambda, mu, 1, exitProbability, seed);
+  }
+
+  /**
+   * random
+   *
+   * Random network with c servers per node
+   */
+  public static NetworkTopology random(int numberOfNodes, int fanout, double lambda, double mu,
+      int servers, double exitProbability, long seed) {
+    Random random = new Random(seed);
+
+    double[] lambdas = new double[numberOfNodes];
+    double[] mus = new double[numberOfNodes];
+    int[] serverCounts = new int[numberOfNodes];
+    Arrays.fill(lambdas, lambda);
+    Arrays.fill(mus, mu);
+    Arrays.fill(serverCounts, servers);
+
+    int[] from = new int[numberOfNodes * fanout];
+    int[] to = new int[numberOfNodes * fanout];
+    double[] probability = new double[numberOfNodes * fanout];
+    for (int i = 0; i < numberOfNodes; i++) {
+      for (int k = 0; k < fanout; k++) {
+        from[i * fanout + k] = i;
+        to[i * fanout + k] = random.nextInt(numberOfNodes);
+        probability[i * fanout + k] = (1 - exitProbability) / fanout;
+      }
+    }
+
+    return new NetworkTopology(lambdas, mus, serverCounts, from, to, probability);
+  }
+
+  /**
+   * routingTable
+   *
+   * Alias table over the next hops of a node, where
+   * -1 means the customer leaves the network.
+   */
+  public AliasTable routingTable(int node) {
+    int start = routeStart[node];
+    int count = routeStart[node + 1] - start;
+
+    int[] outcomes = new int[count + 1];
+    double[] probabilities = new double[count + 1];
+    for (int k = 0; k < count; k++) {
+      outcomes[k] = routeTo[start + k];
+      probabilities[k] = routeProbability[start + k];
+    }
+    outcomes[count] = -1;
+    probabilities[count] = Math.max(0.0, exitProbability(node));
+
+    return new AliasTable(outcomes, probabilities);
+  }
+
+  public double exitProbability(int node) {
+    double total = 0.0;
+    for (int k = routeStart[node]; k < routeStart[node + 1]; k++) {
+      total += routeProbability[k];
+    }
+    return 1.0 - total;
+  }
+
+  public int getNumberOfNodes() {
+    return numberOfNodes;
+  }
+
+  public double getLambda(int node) {
+    return lambda[node];
+  }
+
+  public double getMu(int node) {
+    return mu[node];
+  }
+
+  public int getServers(int node) {
+    return servers[node];
+  }
+
+  /** first routing entry of a node **/
+  public int routeStart(int node) {
+    return routeStart[node];
+  }
+
+  /** one past the last routing entry of a node **/
+  public int routeEnd(int node) {
+    return routeStart[node + 1];
+  }
+
+  public int routeTo(int entry) {
+    return routeTo[entry];
+  }
+
+  public double routeProbability(int entry) {
+    return routeProbability[entry];
+  }
+
+  private static int[] singleServers(int numberOfNodes) {
+    int[] servers = new int[numberOfNodes];
+    Arrays.fill(servers, 1);
+    return servers;
+  }
+
+  private void checkNode(int node) {
+    if (node < 0 || node >= numberOfNodes) {
+      throw new IllegalArgumentException("Unknown node in routing matrix: " + node);
+    }
+  }
+}
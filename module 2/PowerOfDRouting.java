@@ -0,0 +1,44 @@
+import java.util.*;
+
+/**
+ * Power of d choices, JSQ(d): the customer samples d servers
+ * uniformly at random and joins the one with the fewest
+ * customers. Routing costs O(d) independent of K.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class PowerOfDRouting implements RoutingPolicy {
+
+  private int[] numberInSystem;
+  private int choices;
+  private Random random;
+
+  public PowerOfDRouting(int numberOfServers, int choices, Random random) {
+    if (choices < 1) {
+      throw new IllegalArgumentException("Number of choices must be at least 1");
+    }
+    numberInSystem = new int[numberOfServers];
+    this.choices = choices;
+    this.random = random;
+  }
+
+  public int chooseServer(double serviceTime, double clock) {
+    int best = random.nextInt(numberInSystem.length);
+    for (int i = 1; i < choices; i++) {
+      int server = random.nextInt(numberInSystem.length);
+      if (numberInSystem[server] < numberInSystem[best]) {
+        best = server;
+      }
+    }
+    return best;
+  }
+
+  public void customerArrived(int server, double serviceTime, double clock) {
+    numberInSystem[server] += 1;
+  }
+
+  public void customerDeparted(int server, double clock) {
+    numberInSystem[server] -= 1;
+  }
+}
@@ -0,0 +1,220 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * Streaming quantile sketch stored as a log-linear (HDR style)
+ * histogram of non negative values. Values are counted in
+ * units of the given resolution; below 2^b units every unit
+ * has its own bucket, above it every power of two is split
+ * into 2^(b-1) buckets, so a bucket is never wider than
+ * 2 / 2^b of the values it holds (0.8% for b = 8).
+ *
+ * The bucket array is allocated once, so recording a value is
+ * O(1) and allocation free. Two sketches with the same
+ * resolution merge losslessly by adding their bucket counts,
+ * which gives exact pooled quantiles over replicas.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class QuantileSketch {
+
+  /** resolution for delays and other times **/
+  public static final double TIME_UNIT = 1e-6;
+
+  /** resolution for counts such as queue lengths **/
+  public static final double COUNT_UNIT = 1.0;
+
+  public static final int DEFAULT_SIGNIFICANT_BITS = 8;
+
+  private double unit;
+  private int significantBits;
+  private int subBuckets;
+  private long[] counts;
+
+  private long count;
+  private double sum;
+  private double min;
+  private double max;
+
+  public QuantileSketch(double unit) {
+    this(unit, DEFAULT_SIGNIFICANT_BITS);
+  }
+
+  /**
+   * QuantileSketch
+   *
+   * @param unit            : smallest value told apart from 0
+   * @param significantBits : b, the relative bucket width is 2 / 2^b
+   */
+  public QuantileSketch(double unit, int significantBits) {
+    if (unit <= 0 || significantBits < 2 || significantBits > 16) {
+      throw new IllegalArgumentException("Invalid sketch resolution");
+    }
+    this.unit = unit;
+    this.significantBits = significantBits;
+    subBuckets = 1 << significantBits;
+    counts = new long[bucketIndex(Long.MAX_VALUE) + 1];
+    min = Double.POSITIVE_INFINITY;
+    max = Double.NEGATIVE_INFINITY;
+  }
+
+  /**
+   * bucketIndex
+   *
+   * @param units : value in units of the resolution
+   */
+  private int bucketIndex(long units) {
+    if (units < subBuckets) {
+      return (int) units;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(units);
+    int shift = exponent - significantBits + 1;
+    int mantissa = (int) (units >>> shift);
+    return subBuckets + (shift - 1) * (subBuckets >> 1) + (mantissa - (subBuckets >> 1));
+  }
+
+  /**
+   * bucketValue
+   *
+   * @return midpoint of a bucket in value units
+   */
+  private double bucketValue(int index) {
+    if (index < subBuckets) {
+      return index * unit;
+    }
+    int offset = index - subBuckets;
+    int shift = offset / (subBuckets >> 1) + 1;
+    long mantissa = offset % (subBuckets >> 1) + (subBuckets >> 1);
+    long lower = mantissa << shift;
+    return (lower + ((1L << shift) - 1) / 2.0) * unit;
+  }
+
+  public void record(double value) {
+    record(value, 1);
+  }
+
+  /**
+   * record
+   *
+   * Count a value n times, negative values count as 0
+   */
+  public void record(double value, long n) {
+    double units = value / unit;
+    long scaled = units <= 0 ? 0 : units >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) units;
+    counts[bucketIndex(scaled)] += n;
+
+    count += n;
+    sum += value * n;
+    if (value < min) {
+      min = value;
+    }
+    if (value > max) {
+      max = value;
+    }
+  }
+
+  /**
+   * merge
+   *
+   * Add the counts of a sketch with the same resolution
+   */
+  public void merge(QuantileSketch other) {
+    if (other.unit != unit || other.significantBits != significantBits) {
+      throw new IllegalArgumentException("Cannot merge sketches with different resolutions");
+    }
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+    count += other.count;
+    sum += other.sum;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  /**
+   * getQuantile
+   *
+   * @param q : quantile in [0, 1], e.g. 0.99
+   * @return value below which a fraction q of the
+   *         recorded values lies, NaN when empty
+   */
+  public double getQuantile(double q) {
+    if (count == 0) {
+      return Double.NaN;
+    }
+    long rank = Math.max(1, (long) Math.ceil(q * count));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.max(min, Math.min(max, bucketValue(i)));
+      }
+    }
+    return max;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public double getMean() {
+    return count > 0 ? sum / count : Double.NaN;
+  }
+
+  public double getMin() {
+    return min;
+  }
+
+  public double getMax() {
+    return max;
+  }
+
+  public void reset() {
+    Arrays.fill(counts, 0);
+    count = 0;
+    sum = 0.0;
+    min = Double.POSITIVE_INFINITY;
+    max = Double.NEGATIVE_INFINITY;
+  }
+
+  /**
+   * writeState
+   *
+   * Write the non empty buckets
+   */
+  public void writeState(DataOutputStream out) throws IOException {
+    out.writeLong(count);
+    out.writeDouble(sum);
+    out.writeDouble(min);
+    out.writeDouble(max);
+
+    int buckets = 0;
+    for (long c : counts) {
+      if (c != 0) {
+        buckets++;
+      }
+    }
+    out.writeInt(buckets);
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] != 0) {
+        out.writeInt(i);
+        out.writeLong(counts[i]);
+      }
+    }
+  }
+
+  public void readState(DataInputStream in) throws IOException {
+    reset();
+    count = in.readLong();
+    sum = in.readDouble();
+    min = in.readDouble();
+    max = in.readDouble();
+
+    int buckets = in.readInt();
+    for (int i = 0; i < buckets; i++) {
+      int index = in.readInt();
+      counts[index] = in.readLong();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * A set of independent random number streams kept as one
+ * long of state each (SplitMix64). Used where a model needs
+ * a stream per node: drawing a number does not allocate and
+ * a stream can be saved or restored by copying its state.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class RandomStreams {
+
+  private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+  private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+  private long[] states;
+
+  /**
+   * RandomStreams
+   *
+   * @param numberOfStreams
+   * @param seed : streams with the same seed are identical
+   */
+  public RandomStreams(int numberOfStreams, long seed) {
+    states = new long[numberOfStreams];
+    long seeder = seed;
+    for (int i = 0; i < numberOfStreams; i++) {
+      seeder += GOLDEN_GAMMA;
+      states[i] = mix(seeder);
+    }
+  }
+
+  /**
+   * nextDouble
+   *
+   * @return next uniform variable in [0, 1) of the stream
+   */
+  public double nextDouble(int stream) {
+    long state = states[stream] + GOLDEN_GAMMA;
+    states[stream] = state;
+    return (mix(state) >>> 11) * DOUBLE_UNIT;
+  }
+
+  /**
+   * nextExponential
+   *
+   * Inversion method for an exponential variable
+   */
+  public double nextExponential(int stream, double rate) {
+    return (-1 / rate) * Math.log(1 - nextDouble(stream));
+  }
+
+  public long getState(int stream) {
+    return states[stream];
+  }
+
+  public void setState(int stream, long state) {
+    states[stream] = state;
+  }
+
+  public int size() {
+    return states.length;
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
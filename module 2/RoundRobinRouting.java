@@ -0,0 +1,28 @@
+/**
+ * Round robin routing: servers are chosen in turn.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class RoundRobinRouting implements RoutingPolicy {
+
+  private int numberOfServers;
+  private int next;
+
+  public RoundRobinRouting(int numberOfServers) {
+    this.numberOfServers = numberOfServers;
+    next = 0;
+  }
+
+  public int chooseServer(double serviceTime, double clock) {
+    int server = next;
+    next = (next + 1) % numberOfServers;
+    return server;
+  }
+
+  public void customerArrived(int server, double serviceTime, double clock) {
+  }
+
+  public void customerDeparted(int server, double clock) {
+  }
+}
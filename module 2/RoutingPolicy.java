@@ -0,0 +1,20 @@
+/**
+ * Routing Policy Interface
+ * Chooses the server an arriving customer joins and is
+ * kept up to date with the arrivals and departures of
+ * every server.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public interface RoutingPolicy {
+
+  /** server for a customer with the given service time **/
+  int chooseServer(double serviceTime, double clock);
+
+  /** customer joined server **/
+  void customerArrived(int server, double serviceTime, double clock);
+
+  /** customer left server **/
+  void customerDeparted(int server, double clock);
+}
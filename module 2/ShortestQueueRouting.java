@@ -0,0 +1,29 @@
+/**
+ * Join the shortest queue routing: the customer joins the
+ * server with the fewest customers (waiting or in service),
+ * the lowest server number on ties. The queue lengths are
+ * kept in an indexed min-heap so routing costs O(log K).
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class ShortestQueueRouting implements RoutingPolicy {
+
+  private IndexedMinHeap numberInSystem;
+
+  public ShortestQueueRouting(int numberOfServers) {
+    numberInSystem = new IndexedMinHeap(numberOfServers);
+  }
+
+  public int chooseServer(double serviceTime, double clock) {
+    return numberInSystem.min();
+  }
+
+  public void customerArrived(int server, double serviceTime, double clock) {
+    numberInSystem.update(server, numberInSystem.key(server) + 1);
+  }
+
+  public void customerDeparted(int server, double clock) {
+    numberInSystem.update(server, numberInSystem.key(server) - 1);
+  }
+}
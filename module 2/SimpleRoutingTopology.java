@@ -1,9 +1,10 @@
-import java.text.DecimalFormat;
 import java.util.*;
 import java.io.*;
 
 /**
- * Implementation of a Simple Routing Topology
+ * Implementation of a Simple Routing Topology: arriving
+ * customers are routed to one of K single server FIFO
+ * queues by a routing policy.
  *
  * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
  * @version 09/04/16
@@ -13,12 +14,15 @@ public class SimpleRoutingTopology {
   /** Routing Strategies **/
   public static final String ROUND_ROBIN = "RR";
   public static final String SHORTEST_TOTAL_QUEUE = "STQ";
+  public static final String POWER_OF_D = "JSQD";
+  public static final String LEAST_WORK_LEFT = "LWL";
+  public static final String WEIGHTED_ROUND_ROBIN = "WRR";
 
   private static final String ARRIVAL_EVENT = "Arrival";
   private static final String DEPARTURE_EVENT = "Departure";
 
-  private static final int QUEUE_ONE = 1;
-  private static final int QUEUE_TWO = 2;
+  private static final int DEFAULT_NUMBER_OF_SERVERS = 2;
+  private static final int DEFAULT_CHOICES = 2;
 
   private Random random;
 
@@ -28,9 +32,21 @@ public class SimpleRoutingTopology {
   /** Future Event list (set) ordered by event time **/
   private TreeSet<Event> futureEventList;
 
-  /** customer queues **/
-  private Queue<Double> queue_one;
-  private Queue<Double> queue_two;
+  /** insertion counter, orders events with equal times **/
+  private long nextSequence;
+
+  /** number of servers K **/
+  private int numberOfServers;
+
+  /** customer queues, ids into the customer table **/
+  private List<IntQueue> queues;
+
+  /** customers in the system **/
+  private CustomerTable customers;
+
+  /** exact time from arrival to departure **/
+  private double totalSojournTime;
+  private QuantileSketch sojournSketch;
 
   /** total number of departures **/
   private long totalNumberOfDepartures;
@@ -42,8 +58,7 @@ public class SimpleRoutingTopology {
   private double clock;
 
   /** Server in use **/
-  private boolean queue_one_is_busy;
-  private boolean queue_two_is_busy;
+  private boolean[] isBusy;
 
   private double[] delay;
   private double[] totalDelay;
@@ -53,56 +68,147 @@ public class SimpleRoutingTopology {
 
   private long numOfDataPoints;
 
-  private boolean arrivalUp;
+  /** number of events processed so far **/
+  private long eventsProcessed;
+
+  /** progress of this run, null when not tracked **/
+  private ProgressTracker.Cell progress;
+
+  /** departures before the sojourn statistics restarted **/
+  private long sojournStart;
 
-  private String routingStrategy;
+  private RoutingPolicy routingPolicy;
+
+  /** time weighted number of customers at every server **/
+  private TimeWeightedStatistic[] numberInSystem;
+
+  /** per customer delay and queue length seen on arrival **/
+  private QuantileSketch delaySketch;
+  private QuantileSketch[] queueLengthSketch;
+
+  /** MSER-5 warm-up detection over all delays, off by default **/
+  private WarmupDetector warmupDetector;
 
   /**
-   * SingleServerQueue
+   * SimpleRoutingTopology
+   *
+   * Two servers routed with RR or STQ
    *
    * @param eventGenerator for generating arrival times
    *        and service times
    */
   public SimpleRoutingTopology(EventGenerator eventGenerator, long numOfDataPoints, String routingStrategy) {
+    this(eventGenerator, numOfDataPoints, DEFAULT_NUMBER_OF_SERVERS,
+      createRoutingPolicy(routingStrategy, DEFAULT_NUMBER_OF_SERVERS, new Random()));
+  }
+
+  /**
+   * SimpleRoutingTopology
+   *
+   * @param eventGenerator for generating arrival times
+   *        and service times
+   * @param numberOfServers K
+   * @param routingPolicy chooses the server of every arrival
+   */
+  public SimpleRoutingTopology(EventGenerator eventGenerator, long numOfDataPoints,
+      int numberOfServers, RoutingPolicy routingPolicy) {
 
     this.eventGenerator = eventGenerator;
     this.numOfDataPoints = numOfDataPoints;
+    this.numberOfServers = numberOfServers;
+    this.routingPolicy = routingPolicy;
 
     futureEventList = new TreeSet<Event>(new EventComparator());
-    queue_one = new LinkedList<Double>();
-    queue_two = new LinkedList<Double>();
+    queues = new ArrayList<IntQueue>();
+    for (int i = 0; i < numberOfServers; i++) {
+      queues.add(new IntQueue());
+    }
+    customers = new CustomerTable();
+    sojournSketch = new QuantileSketch(QuantileSketch.TIME_UNIT);
 
     clock = 0.0;
-    queue_one_is_busy = false;
-    queue_two_is_busy = false;
+    isBusy = new boolean[numberOfServers];
     numberOfArrivals = 0;
 
-    delay = new double[]{0.0, 0.0};
-    totalDelay = new double[]{0.0, 0.0};
-    delayCount = new double[]{0, 0};
-    previousArrivalTime = new double[]{0.0, 0.0};
-    previousServiceTime = new double[]{0.0, 0.0};
+    delay = new double[numberOfServers];
+    totalDelay = new double[numberOfServers];
+    delayCount = new double[numberOfServers];
+    previousArrivalTime = new double[numberOfServers];
+    previousServiceTime = new double[numberOfServers];
+    numberInSystem = new TimeWeightedStatistic[numberOfServers];
+    queueLengthSketch = new QuantileSketch[numberOfServers];
+    for (int i = 0; i < numberOfServers; i++) {
+      numberInSystem[i] = new TimeWeightedStatistic(0.0);
+      queueLengthSketch[i] = new QuantileSketch(QuantileSketch.COUNT_UNIT);
+    }
+    delaySketch = new QuantileSketch(QuantileSketch.TIME_UNIT);
 
     totalNumberOfDepartures = 0;
 
     random = new Random();
+  }
 
-    arrivalUp = false;
-
-    if (routingStrategy.equals(ROUND_ROBIN) || routingStrategy.equals(SHORTEST_TOTAL_QUEUE)) {
-      this.routingStrategy = routingStrategy;
-    } else {
-      System.out.println("Error: invalid routing strategy: " + routingStrategy);
-      return;
+  /**
+   * createRoutingPolicy
+   *
+   * @param routingStrategy RR, STQ, LWL, JSQD[:d] or WRR:w1,w2,..
+   * @param numberOfServers K
+   * @param random used by randomized policies
+   */
+  public static RoutingPolicy createRoutingPolicy(String routingStrategy, int numberOfServers, Random random) {
+    String[] data = routingStrategy.split(":");
+
+    if (data[0].equals(ROUND_ROBIN)) {
+      return new RoundRobinRouting(numberOfServers);
+    } else if (data[0].equals(SHORTEST_TOTAL_QUEUE)) {
+      return new ShortestQueueRouting(numberOfServers);
+    } else if (data[0].equals(LEAST_WORK_LEFT)) {
+      return new LeastWorkLeftRouting(numberOfServers);
+    } else if (data[0].equals(POWER_OF_D)) {
+      int choices = data.length > 1 ? Integer.parseInt(data[1]) : DEFAULT_CHOICES;
+      return new PowerOfDRouting(numberOfServers, choices, random);
+    } else if (data[0].equals(WEIGHTED_ROUND_ROBIN) && data.length > 1) {
+      String[] values = data[1].split(",");
+      if (values.length != numberOfServers) {
+        throw new IllegalArgumentException("WRR needs one weight per server: " + routingStrategy);
+      }
+      int[] weights = new int[numberOfServers];
+      for (int i = 0; i < numberOfServers; i++) {
+        weights[i] = Integer.parseInt(values[i]);
+      }
+      return new WeightedRoundRobinRouting(weights);
     }
+
+    throw new IllegalArgumentException("Invalid routing strategy: " + routingStrategy);
+  }
+
+  /**
+   * setWarmupDetection
+   *
+   * Detect the end of the warm-up period online with
+   * MSER-5 over the delays of all customers. Once it is
+   * detected the per queue delay totals restart, and the
+   * average delay only counts customers after the cutoff.
+   */
+  public void setWarmupDetection(boolean enabled) {
+    warmupDetector = enabled ? new WarmupDetector() : null;
+  }
+
+  /**
+   * setProgress
+   *
+   * Report completed data points to the given cell while running
+   */
+  public void setProgress(ProgressTracker.Cell progress) {
+    this.progress = progress;
   }
 
   /**
    * run
    *
    * run the simulation.
-   * simulation ends when an event in the
-   * futureEventList has time t = -1
+   * simulation ends when the number of data
+   * points (departures) has been reached
    */
   public void run() {
 
@@ -127,137 +233,81 @@ public class SimpleRoutingTopology {
         arrivalEvent(nextEvent);
 
       }
+
+      eventsProcessed += 1;
+      if (progress != null && (eventsProcessed & SimulationMonitor.PUBLISH_MASK) == 0) {
+        progress.update(totalNumberOfDepartures);
+      }
+    }
+
+    if (progress != null) {
+      progress.update(totalNumberOfDepartures);
+    }
+
+    if (warmupDetector != null) {
+      warmupDetector.finish();
     }
   }
 
   /**
    * initialConditions
    *
-   * start the clock at the first arrival time and
-   * setup departure of first event for queue one
+   * start the clock at the first arrival time
+   * and route the first customer
    */
   private void initialConditions() {
 
     // Set clock to first arrival time
     clock = eventGenerator.nextArrivalTime();
 
-    double arrivalTime = clock;
-
-    // Set LS(t) = 1
-    queue_one_is_busy = true;
-
-    // Generate Service Time s*;
-    // Schedule new Departure event
-    // at time t + s*;
-    double serviceTime = eventGenerator.nextServiceTime();
-    futureEventList.add(new Event(QUEUE_ONE, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
-
-    // Generate interarrival time a*;
-    // Schedule next arrival event
-    // at time t + a*;
-    double nextArrivalTime = eventGenerator.nextArrivalTime();
-    futureEventList.add(new Event(QUEUE_ONE, ARRIVAL_EVENT, clock + nextArrivalTime, nextArrivalTime));
-
-    numberOfArrivals += 1;
-
-    updateDelays(QUEUE_ONE, arrivalTime, serviceTime);
+    arrivalEvent(null);
 
     // Return control to time-advance
     // routine to continue simulation
   }
 
-  /**
-   * chooseQueue
-   *
-   * determines which queue the customer
-   * should be placed in.
-   *
-   * @return queue number
-   */
-  private int chooseQueue() {
-
-    if (routingStrategy.equals(SHORTEST_TOTAL_QUEUE)) {
-      if (!queue_one_is_busy) {
-        return QUEUE_ONE;
-      } else if (!queue_two_is_busy) {
-        return QUEUE_TWO;
-      } else if (queue_one.size() <= queue_two.size()) {
-        return QUEUE_ONE;
-      } else {
-        return QUEUE_TWO;
-      }
-    } else { // Round Robin
-      if (arrivalUp) {
-        arrivalUp = false;
-        return QUEUE_ONE;
-      } else {
-        arrivalUp = true;
-        return QUEUE_TWO;
-      }
-    }
-  }
-
   /**
    * arrivalEvent
    *
-   * simulate arrival event at time t = clock
+   * simulate arrival event at time t = clock. The
+   * routing policy chooses the server at the moment
+   * the customer arrives.
    */
   private void arrivalEvent(Event event) {
 
-    double serviceTime = 0.0;
     double arrivalTime = clock;
 
-    if (event.queue == QUEUE_ONE) {
-
-      // Is LS_1(t) = 1?
-      if (queue_one_is_busy) {
-
-        // Increase LQ_1(t) by 1
-        serviceTime = eventGenerator.nextServiceTime();
-        queue_one.add(serviceTime);
-      } else {
-
-        // Set LS_1(t) = 1
-        queue_one_is_busy = true;
-
-        // Generate service time s*;
-        // Schedule new Departure event
-        // at time t + s*;
-        serviceTime = eventGenerator.nextServiceTime();
-        futureEventList.add(new Event(QUEUE_ONE, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
-      }
-
-      updateDelays(QUEUE_ONE, arrivalTime, serviceTime);
-
-    } else { // QUEUE_TWO
+    // Generate service time s*
+    double serviceTime = eventGenerator.nextServiceTime();
 
-      // Is LS_2(t) = 1?
-      if (queue_two_is_busy) {
+    int server = routingPolicy.chooseServer(serviceTime, clock);
+    routingPolicy.customerArrived(server, serviceTime, clock);
+    int customer = customers.enter(clock, server);
+    customers.setServiceTime(customer, serviceTime);
 
-        // Increase LQ_2(t) by 1
-        serviceTime = eventGenerator.nextServiceTime();
-        queue_two.add(serviceTime);
-      } else {
+    // Is LS_i(t) = 1?
+    if (isBusy[server]) {
 
-        // Set LS_2(t) = 1
-        queue_two_is_busy = true;
+      // Increase LQ_i(t) by 1
+      queues.get(server).add(customer);
+    } else {
 
-        // Generate service time s*;
-        // Schedule new Departure event
-        // at time t + s*;
-        serviceTime = eventGenerator.nextServiceTime();
-        futureEventList.add(new Event(QUEUE_TWO, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
-      }
+      // Set LS_i(t) = 1
+      isBusy[server] = true;
 
-      updateDelays(QUEUE_TWO, arrivalTime, serviceTime);
+      // Schedule new Departure event
+      // at time t + s*;
+      futureEventList.add(newEvent(server, customer, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
     }
 
+    updateStatistics(server);
+    updateDelays(server, arrivalTime, serviceTime);
 
     // Generate interarrival time a*;
     // Schedule next arrival event
     // at time t + a*;
     double nextArrivalTime = eventGenerator.nextArrivalTime();
-    futureEventList.add(new Event(chooseQueue(), ARRIVAL_EVENT, clock + nextArrivalTime, nextArrivalTime));
+    futureEventList.add(newEvent(-1, -1, ARRIVAL_EVENT, clock + nextArrivalTime, nextArrivalTime));
 
     numberOfArrivals += 1;
 
@@ -266,12 +316,41 @@ public class SimpleRoutingTopology {
   }
 
   private void updateDelays(int i, double arrivalTime, double serviceTime) {
-    i-=1;
     delay[i] = Math.max(0, delay[i] + previousArrivalTime[i] + previousServiceTime[i] - arrivalTime);
     totalDelay[i] += delay[i];
     delayCount[i] += 1;
     previousArrivalTime[i] = arrivalTime;
     previousServiceTime[i] = serviceTime;
+
+    if (warmupDetector != null && warmupDetector.add(delay[i], arrivalTime)) {
+      // discard the delays and time averages of the warm-up period
+      Arrays.fill(totalDelay, 0.0);
+      Arrays.fill(delayCount, 0.0);
+      for (int k = 0; k < numberOfServers; k++) {
+        numberInSystem[k].reset(clock);
+        queueLengthSketch[k].reset();
+      }
+      delaySketch.reset();
+      totalSojournTime = 0.0;
+      sojournSketch.reset();
+      sojournStart = totalNumberOfDepartures;
+    }
+    delaySketch.record(delay[i]);
+  }
+
+  /**
+   * updateStatistics
+   *
+   * record the new number of customers at a server
+   */
+  private void updateStatistics(int server) {
+    int busy = isBusy[server] ? 1 : 0;
+    int customers = queues.get(server).size() + busy;
+    if (customers > numberInSystem[server].getValue()) {
+      // an arrival, record the customers it found
+      queueLengthSketch[server].record(numberInSystem[server].getValue());
+    }
+    numberInSystem[server].update(customers, clock);
   }
 
   /**
@@ -282,44 +361,33 @@ public class SimpleRoutingTopology {
   private void departureEvent(Event event) {
 
     // Which queue is the event for?
-    if (event.queue == QUEUE_ONE) {
+    int server = event.queue;
+    IntQueue queue = queues.get(server);
 
-      // Is LQ(t) > 0?
-      if (queue_one.size() > 0) {
+    // Is LQ_i(t) > 0?
+    if (queue.size() > 0) {
 
-        // Reduce LQ_1(t) by 1
-        double serviceTime = queue_one.remove();
+      // Reduce LQ_i(t) by 1
+      int next = queue.remove();
+      double serviceTime = customers.getServiceTime(next);
 
-        // Generate service time s*;
-        // Schedule new departure
-        // event at time t + s*;
-        futureEventList.add(new Event(QUEUE_ONE, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
-
-      } else { // LQ_1(t) <= 0
-
-        // Set LS_1(t) = 0
-        queue_one_is_busy = false;
-      }
+      // Schedule new departure
+      // event at time t + s*;
+      futureEventList.add(newEvent(server, next, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
 
-    } else { // QUEUE_TWO
+    } else { // LQ_i(t) <= 0
 
-      // Is LQ_2(t) > 0?
-      if (queue_two.size() > 0) {
-
-        // Reduce LQ_2(t) by 1
-        double serviceTime = queue_two.remove();
-
-        // Generate service time s*;
-        // Schedule new departure
-        // event at time t + s*;
-        futureEventList.add(new Event(QUEUE_TWO, DEPARTURE_EVENT, clock + serviceTime, serviceTime));
+      // Set LS_i(t) = 0
+      isBusy[server] = false;
+    }
 
-      } else { // LQ_2(t) <= 0
+    routingPolicy.customerDeparted(server, clock);
+    updateStatistics(server);
 
-        // Set LS_2(t) = 0
-        queue_two_is_busy = false;
-      }
-    }
+    double sojourn = customers.getSojournTime(event.customer, clock);
+    totalSojournTime += sojourn;
+    sojournSketch.record(sojourn);
+    customers.leave(event.customer);
 
     totalNumberOfDepartures += 1;
 
@@ -327,6 +395,12 @@ public class SimpleRoutingTopology {
     // routine to continue simulation
   }
 
+  private Event newEvent(int queue, int customer, String type, double time, double serviceTime) {
+    Event event = new Event(queue, customer, type, time, serviceTime);
+    event.sequence = nextSequence++;
+    return event;
+  }
+
   /**
    * Event
    *
@@ -336,8 +410,6 @@ public class SimpleRoutingTopology {
    */
   private static class Event {
 
-    private DecimalFormat df;
-
     /** Event Type **/
     public String type;
 
@@ -350,13 +422,18 @@ public class SimpleRoutingTopology {
     /** Which queue this event is for **/
     public int queue;
 
-    public Event(int queue, String type, double time, double serviceTime) {
+    /** Customer that departs, -1 for arrivals **/
+    public int customer;
+
+    /** Order of scheduling, breaks ties in time **/
+    public long sequence;
+
+    public Event(int queue, int customer, String type, double time, double serviceTime) {
       this.type = type;
       this.time = time;
       this.serviceTime = serviceTime;
       this.queue = queue;
-
-      df = new DecimalFormat("#.#########");
+      this.customer = customer;
     }
   }
 
@@ -367,12 +444,152 @@ public class SimpleRoutingTopology {
    */
   private static class EventComparator implements Comparator<Event> {
     public int compare(Event one, Event two) {
-      return Double.compare(one.time, two.time);
+      int order = Double.compare(one.time, two.time);
+      return order != 0 ? order : Long.compare(one.sequence, two.sequence);
     }
   }
 
   public void printResults() {
-    System.out.println("Average delay for queue 1: " + totalDelay[0] / delayCount[0]);
-    System.out.println("Average delay for queue 2: " + totalDelay[1] / delayCount[1]);
+    for (int i = 0; i < numberOfServers; i++) {
+      System.out.println("Average delay for queue " + (i + 1) + ": " + totalDelay[i] / delayCount[i]);
+      System.out.println("Time average number in queue " + (i + 1) + ": " + getAverageNumberInSystem(i) +
+        ", utilization: " + getUtilization(i));
+    }
+
+    System.out.println("Average sojourn time: " + getAverageSojournTime() +
+      ", p99 = " + sojournSketch.getQuantile(0.99));
+    System.out.println("Delay percentiles: p50 = " + delaySketch.getQuantile(0.5) +
+      ", p95 = " + delaySketch.getQuantile(0.95) +
+      ", p99 = " + delaySketch.getQuantile(0.99));
+
+    if (warmupDetector != null) {
+      System.out.println("Warm-up cutoff: " + getWarmupCutoff() +
+        " (" + getWarmupCustomers() + " customers discarded)");
+    }
+  }
+
+  /**
+   * getAverageDelay
+   *
+   * @return average delay over all customers of all queues
+   */
+  public double getAverageDelay() {
+    if (warmupDetector != null) {
+      return warmupDetector.getMean();
+    }
+
+    double total = 0.0;
+    double count = 0.0;
+    for (int i = 0; i < numberOfServers; i++) {
+      total += totalDelay[i];
+      count += delayCount[i];
+    }
+    return total / count;
+  }
+
+  /**
+   * getAverageNumberInSystem
+   *
+   * @return time average number of customers at a server
+   */
+  public double getAverageNumberInSystem(int server) {
+    return numberInSystem[server].getAverage(clock);
+  }
+
+  /**
+   * getAverageNumberInSystem
+   *
+   * @return time average number of customers in all queues
+   */
+  public double getAverageNumberInSystem() {
+    double total = 0.0;
+    for (int i = 0; i < numberOfServers; i++) {
+      total += getAverageNumberInSystem(i);
+    }
+    return total;
+  }
+
+  /**
+   * getUtilization
+   *
+   * @return fraction of time a server is busy
+   */
+  public double getUtilization(int server) {
+    return 1.0 - numberInSystem[server].getStateProbability(0, clock);
+  }
+
+  /**
+   * getStateProbability
+   *
+   * @return fraction of time a server holds n customers
+   */
+  public double getStateProbability(int server, int n) {
+    return numberInSystem[server].getStateProbability(n, clock);
+  }
+
+  /**
+   * getTimeInStates
+   *
+   * @return time a server spent holding 0..max customers
+   */
+  public double[] getTimeInStates(int server) {
+    return numberInSystem[server].getTimeInStates(clock);
+  }
+
+  /**
+   * getAverageSojournTime
+   *
+   * @return exact average time from arrival to departure
+   */
+  public double getAverageSojournTime() {
+    long departures = totalNumberOfDepartures - sojournStart;
+    return departures > 0 ? totalSojournTime / departures : 0.0;
+  }
+
+  public QuantileSketch getSojournSketch() {
+    return sojournSketch;
+  }
+
+  /**
+   * getDelaySketch
+   *
+   * @return quantile sketch of the delays of all
+   *         customers, mergeable across replicas
+   */
+  public QuantileSketch getDelaySketch() {
+    return delaySketch;
+  }
+
+  /**
+   * getQueueLengthSketch
+   *
+   * @return quantile sketch of the number of customers
+   *         found at a server by arriving customers
+   */
+  public QuantileSketch getQueueLengthSketch(int server) {
+    return queueLengthSketch[server];
+  }
+
+  /**
+   * getWarmupCutoff
+   *
+   * @return time of the first delay kept, 0 without
+   *         detection or before a cutoff is found
+   */
+  public double getWarmupCutoff() {
+    return warmupDetector != null ? warmupDetector.getCutoffTime() : 0.0;
+  }
+
+  /**
+   * getWarmupCustomers
+   *
+   * @return number of customers treated as warm-up
+   */
+  public long getWarmupCustomers() {
+    return warmupDetector != null ? warmupDetector.getTruncatedObservations() : 0;
+  }
+
+  public long getEventsProcessed() {
+    return eventsProcessed;
   }
 }
@@ -0,0 +1,315 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * Benchmarks of the network simulator hot paths, in groups:
+ *
+ *      FEL      : hold model (remove the first event, schedule
+ *                 a new one) on a TreeSet as in the feedback and
+ *                 routing simulators, a PriorityQueue and the
+ *                 EventList heap of JacksonNetwork
+ *      VARIATES : event generators, TES transforms and
+ *                 alias table routing decisions
+ *      MODEL    : end-to-end runs of the feedback queues, the
+ *                 routing topology and a Jackson network at
+ *                 several loads, in events per second
+ *
+ * Every line reports ns/op with its interval, ops/s, bytes
+ * allocated per op and the GCs during the measurement.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class SimulationBenchmark {
+
+  public static final String FEL = "FEL";
+  public static final String VARIATES = "VARIATES";
+  public static final String MODEL = "MODEL";
+  public static final String ALL = "ALL";
+
+  private static final int[] FEL_SIZES = {16, 1024};
+  private static final double[] LOADS = {0.3, 0.5, 0.9};
+  private static final double MU = 10;
+  private static final long DEPARTURES = 100000;
+  private static final long OPERATIONS = 1000000;
+
+  private Benchmark benchmark;
+
+  /**
+   * main
+   *
+   * @param group (FEL, VARIATES, MODEL or ALL) [default = ALL]
+   * @param measured iterations [default = 10]
+   */
+  public static void main(String[] args) throws Exception {
+
+    String group = args.length > 0 ? args[0] : ALL;
+    int iterations = Benchmark.DEFAULT_ITERATIONS;
+    try {
+      if (args.length > 1) {
+        iterations = Integer.parseInt(args[1]);
+      }
+    } catch (NumberFormatException e) {
+      System.out.println("Usage:\n" +
+        "(1) Group: FEL, VARIATES, MODEL or ALL [default = ALL]\n" +
+        "(2) Measured iterations [default = 10]");
+      return;
+    }
+
+    SimulationBenchmark benchmarks = new SimulationBenchmark(new Benchmark(Benchmark.DEFAULT_WARMUP_ITERATIONS,
+      iterations));
+    Benchmark.printHeader();
+    if (group.equals(FEL) || group.equals(ALL)) {
+      benchmarks.futureEventList();
+    }
+    if (group.equals(VARIATES) || group.equals(ALL)) {
+      benchmarks.variates();
+    }
+    if (group.equals(MODEL) || group.equals(ALL)) {
+      benchmarks.model();
+    }
+  }
+
+  public SimulationBenchmark(Benchmark benchmark) {
+    this.benchmark = benchmark;
+  }
+
+  /**
+   * futureEventList
+   *
+   * Hold model: the list keeps its size, every operation
+   * removes the first event and schedules one an
+   * exponential time later
+   */
+  public void futureEventList() throws Exception {
+    final Comparator<HoldEvent> order = new Comparator<HoldEvent>() {
+      public int compare(HoldEvent one, HoldEvent two) {
+        int result = Double.compare(one.time, two.time);
+        return result != 0 ? result : Long.compare(one.sequence, two.sequence);
+      }
+    };
+
+    for (final int size : FEL_SIZES) {
+      benchmark.measure("fel.treeset." + size, OPERATIONS, new Benchmark.Operation() {
+        public double run(long operations) {
+          Random random = new Random(1);
+          TreeSet<HoldEvent> list = new TreeSet<HoldEvent>(order);
+          long sequence = 0;
+          for (int i = 0; i < size; i++) {
+            list.add(new HoldEvent(-Math.log(random.nextDouble()), sequence++));
+          }
+          double clock = 0.0;
+          for (long i = 0; i < operations; i++) {
+            clock = list.pollFirst().time;
+            list.add(new HoldEvent(clock - Math.log(random.nextDouble()), sequence++));
+          }
+          return clock;
+        }
+      });
+
+      benchmark.measure("fel.priorityqueue." + size, OPERATIONS, new Benchmark.Operation() {
+        public double run(long operations) {
+          Random random = new Random(1);
+          PriorityQueue<HoldEvent> list = new PriorityQueue<HoldEvent>(size, order);
+          long sequence = 0;
+          for (int i = 0; i < size; i++) {
+            list.add(new HoldEvent(-Math.log(random.nextDouble()), sequence++));
+          }
+          double clock = 0.0;
+          for (long i = 0; i < operations; i++) {
+            clock = list.poll().time;
+            list.add(new HoldEvent(clock - Math.log(random.nextDouble()), sequence++));
+          }
+          return clock;
+        }
+      });
+
+      benchmark.measure("fel.eventlist." + size, OPERATIONS, new Benchmark.Operation() {
+        public double run(long operations) {
+          Random random = new Random(1);
+          EventList list = new EventList(size);
+          for (int i = 0; i < size; i++) {
+            list.add(-Math.log(random.nextDouble()), i);
+          }
+          double clock = 0.0;
+          for (long i = 0; i < operations; i++) {
+            clock = list.firstTime();
+            int payload = list.firstPayload();
+            list.removeFirst();
+            list.add(clock - Math.log(random.nextDouble()), payload);
+          }
+          return clock;
+        }
+      });
+    }
+  }
+
+  /**
+   * variates
+   *
+   * Interarrival and service times of the generators
+   * and the routing decision of every departure
+   */
+  public void variates() throws Exception {
+    benchmark.measure("variates.default", OPERATIONS, new Benchmark.Operation() {
+      public double run(long operations) {
+        EventGenerator generator = new DefaultEventGenerator(5, MU, 1);
+        double total = 0.0;
+        for (long i = 0; i < operations; i++) {
+          total += generator.nextArrivalTime() + generator.nextServiceTime();
+        }
+        return total;
+      }
+    });
+
+    benchmark.measure("variates.correlated", OPERATIONS, new Benchmark.Operation() {
+      public double run(long operations) {
+        EventGenerator generator = new CorrelatedEventGenerator(5, MU, 0.5, 0.2, 1);
+        double total = 0.0;
+        for (long i = 0; i < operations; i++) {
+          total += generator.nextArrivalTime() + generator.nextServiceTime();
+        }
+        return total;
+      }
+    });
+
+    final TESModelGenerator tes = quietGenerator(0.1, -0.1);
+    benchmark.measure("variates.tes", OPERATIONS, new Benchmark.Operation() {
+      public double run(long operations) {
+        Random random = new Random(1);
+        double u = random.nextDouble();
+        double total = 0.0;
+        for (long i = 0; i < operations; i++) {
+          u = tes.generateNext(u, random.nextDouble());
+          total += tes.inverseExponentialTransform(MU, tes.stitchTransform(u, 0.7));
+        }
+        return total;
+      }
+    });
+
+    final AliasTable routing = NetworkTopology.random(64, 8, 1, MU, 0.2, 1).routingTable(0);
+    benchmark.measure("variates.aliastable", OPERATIONS, new Benchmark.Operation() {
+      public double run(long operations) {
+        Random random = new Random(1);
+        double total = 0.0;
+        for (long i = 0; i < operations; i++) {
+          total += routing.sample(random.nextDouble());
+        }
+        return total;
+      }
+    });
+  }
+
+  /**
+   * model
+   *
+   * Full runs of the simulators, where an operation is one
+   * event taken off the future event list
+   */
+  public void model() throws Exception {
+    for (final double load : LOADS) {
+
+      // feedback queues with p = 0.5 on both stations, so
+      // station one sees twice the external rate
+      final double feedbackLambda = load * MU / 2;
+      measureModel("model.feedback.rho=" + load, new Model() {
+        public long run() {
+          NetworkFeedbackQueues server = new NetworkFeedbackQueues(
+            new DefaultEventGenerator(feedbackLambda, MU, 1),
+            new DefaultEventGenerator(feedbackLambda, MU, 2),
+            0.5, 0.5, DEPARTURES, new Random(3));
+          server.run();
+          return server.getEventsProcessed();
+        }
+      });
+
+      // round robin over the two default servers, each loaded to rho
+      measureModel("model.routing.rho=" + load, new Model() {
+        public long run() {
+          SimpleRoutingTopology server = new SimpleRoutingTopology(
+            new DefaultEventGenerator(load * MU * 2, MU, 1), DEPARTURES, SimpleRoutingTopology.ROUND_ROBIN);
+          server.run();
+          return 2 * DEPARTURES; // one arrival and one departure per customer
+        }
+      });
+
+      // random network whose nodes see gamma = lambda / exit
+      final NetworkTopology topology = NetworkTopology.random(64, 4, load * MU * 0.2, MU, 0.2, 1);
+      measureModel("model.jackson.rho=" + load, new Model() {
+        public long run() {
+          JacksonNetwork network = new JacksonNetwork(topology, DEPARTURES, 1);
+          network.run();
+          return network.getEventsProcessed();
+        }
+      });
+    }
+  }
+
+  /**
+   * Model
+   *
+   * One simulation run
+   */
+  private interface Model {
+    /**
+     * @return events processed by the run
+     */
+    long run();
+  }
+
+  /**
+   * measureModel
+   *
+   * Measure whole runs, scaled to time per event from
+   * the events the first run processed
+   */
+  private void measureModel(String name, final Model model) throws Exception {
+    PrintStream out = System.out;
+    System.setOut(new PrintStream(new ByteArrayOutputStream()));
+    final long events;
+    try {
+      events = model.run();
+    } finally {
+      System.setOut(out);
+    }
+
+    benchmark.measure(name, events, new Benchmark.Operation() {
+      public double run(long operations) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try {
+          return model.run();
+        } finally {
+          System.setOut(out);
+        }
+      }
+    });
+  }
+
+  private static TESModelGenerator quietGenerator(double a, double b) {
+    PrintStream out = System.out;
+    System.setOut(new PrintStream(new ByteArrayOutputStream()));
+    try {
+      TESModelGenerator generator = new TESModelGenerator();
+      generator.setUniformRange(a, b);
+      return generator;
+    } finally {
+      System.setOut(out);
+    }
+  }
+
+  /**
+   * HoldEvent
+   *
+   * Event with the fields the simulators order by
+   */
+  private static class HoldEvent {
+    double time;
+    long sequence;
+
+    HoldEvent(double time, long sequence) {
+      this.time = time;
+      this.sequence = sequence;
+    }
+  }
+}
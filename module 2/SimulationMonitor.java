@@ -0,0 +1,215 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+/**
+ * JMX view of one running simulation, registered with the
+ * platform MBean server as
+ *
+ *      Simulation:type=<model>,id=<n>,name=<name>
+ *
+ * so progress can be watched with jconsole or scraped
+ * locally while a long run is going.
+ *
+ * The simulation thread is the only writer. It publishes
+ * its state every PUBLISH_INTERVAL events with ordered
+ * (lazySet) stores, so the event loop only pays a mask test
+ * per event; JMX readers see a snapshot at most that many
+ * events old.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class SimulationMonitor implements SimulationMonitorMBean {
+
+  public static final String DOMAIN = "Simulation";
+
+  /** events between two publications, a power of two **/
+  public static final long PUBLISH_INTERVAL = 1024;
+  public static final long PUBLISH_MASK = PUBLISH_INTERVAL - 1;
+
+  /** distinguishes monitors registered under the same name **/
+  private static final AtomicLong nextId = new AtomicLong();
+
+  private String model;
+  private String name;
+  private ObjectName objectName;
+  private long startNanos;
+
+  /** written by the simulation thread only **/
+  private final AtomicLong clock; // raw double bits
+  private final AtomicLong eventsProcessed;
+  private final AtomicInteger futureEventListSize;
+  private volatile boolean finished;
+  private final int[] servers;
+  private final AtomicLongArray queueLengths;
+  private final AtomicLongArray busyServers;
+  private final AtomicLongArray averageDelays; // raw double bits
+
+  /** reader side state of getEventsPerSecond **/
+  private long lastEvents;
+  private long lastNanos;
+
+  /**
+   * SimulationMonitor
+   *
+   * @param model   : simulated model, the MBean type
+   * @param name    : run name, e.g. the replica
+   * @param servers : servers of every station
+   */
+  public SimulationMonitor(String model, String name, int[] servers) {
+    this.model = model;
+    this.name = name;
+    this.servers = servers.clone();
+    clock = new AtomicLong(Double.doubleToRawLongBits(0.0));
+    eventsProcessed = new AtomicLong();
+    futureEventListSize = new AtomicInteger();
+    queueLengths = new AtomicLongArray(servers.length);
+    busyServers = new AtomicLongArray(servers.length);
+    averageDelays = new AtomicLongArray(servers.length);
+    startNanos = System.nanoTime();
+    lastNanos = startNanos;
+  }
+
+  /**
+   * register
+   *
+   * Create a monitor and register it with the platform
+   * MBean server. A monitor that cannot be registered
+   * still works, it is only not visible.
+   */
+  public static SimulationMonitor register(String model, String name, int[] servers) {
+    SimulationMonitor monitor = new SimulationMonitor(model, name, servers);
+    try {
+      ObjectName objectName = new ObjectName(DOMAIN + ":type=" + model +
+        ",id=" + nextId.getAndIncrement() + ",name=" + ObjectName.quote(name));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(monitor, objectName);
+      monitor.objectName = objectName;
+    } catch (JMException e) {
+      System.out.println("Error: could not register monitor " + name + ": " + e.getMessage());
+    }
+    return monitor;
+  }
+
+  /**
+   * unregister
+   *
+   * Remove the monitor once its simulation is done
+   */
+  public void unregister() {
+    if (objectName == null) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    } catch (JMException e) {
+      System.out.println("Error: could not unregister monitor " + name + ": " + e.getMessage());
+    }
+    objectName = null;
+  }
+
+  /**
+   * publish
+   *
+   * Publish the global state, after the stations
+   */
+  public void publish(double clock, long eventsProcessed, int futureEventListSize) {
+    this.clock.lazySet(Double.doubleToRawLongBits(clock));
+    this.futureEventListSize.lazySet(futureEventListSize);
+    this.eventsProcessed.lazySet(eventsProcessed);
+  }
+
+  /**
+   * publishStation
+   *
+   * Publish the state of one station
+   */
+  public void publishStation(int station, long queueLength, long busy, double averageDelay) {
+    queueLengths.lazySet(station, queueLength);
+    busyServers.lazySet(station, busy);
+    averageDelays.lazySet(station, Double.doubleToRawLongBits(averageDelay));
+  }
+
+  /**
+   * finish
+   *
+   * Mark the simulation done, after a last publish
+   */
+  public void finish() {
+    finished = true;
+  }
+
+  public String getModel() {
+    return model;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public double getClock() {
+    return Double.longBitsToDouble(clock.get());
+  }
+
+  public long getEventsProcessed() {
+    return eventsProcessed.get();
+  }
+
+  public synchronized double getEventsPerSecond() {
+    long now = System.nanoTime();
+    long events = eventsProcessed.get();
+    double rate = now > lastNanos ? (events - lastEvents) * 1e9 / (now - lastNanos) : 0.0;
+    lastEvents = events;
+    lastNanos = now;
+    return rate;
+  }
+
+  public double getAverageEventsPerSecond() {
+    long elapsed = System.nanoTime() - startNanos;
+    return elapsed > 0 ? eventsProcessed.get() * 1e9 / elapsed : 0.0;
+  }
+
+  public int getFutureEventListSize() {
+    return futureEventListSize.get();
+  }
+
+  public int getStations() {
+    return servers.length;
+  }
+
+  public long[] getQueueLengths() {
+    long[] lengths = new long[servers.length];
+    for (int i = 0; i < lengths.length; i++) {
+      lengths[i] = queueLengths.get(i);
+    }
+    return lengths;
+  }
+
+  public long[] getBusyServers() {
+    long[] busy = new long[servers.length];
+    for (int i = 0; i < busy.length; i++) {
+      busy[i] = busyServers.get(i);
+    }
+    return busy;
+  }
+
+  public double[] getUtilizations() {
+    double[] utilizations = new double[servers.length];
+    for (int i = 0; i < utilizations.length; i++) {
+      utilizations[i] = (double) busyServers.get(i) / servers[i];
+    }
+    return utilizations;
+  }
+
+  public double[] getAverageDelays() {
+    double[] delays = new double[servers.length];
+    for (int i = 0; i < delays.length; i++) {
+      delays[i] = Double.longBitsToDouble(averageDelays.get(i));
+    }
+    return delays;
+  }
+
+  public boolean isFinished() {
+    return finished;
+  }
+}
@@ -0,0 +1,56 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * Helpers for writing simulation state to a checkpoint.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class SimulationState {
+
+  /**
+   * writeRandom
+   *
+   * Write the full state of a random number stream
+   * (including subclasses such as AntitheticRandom)
+   * as a length prefixed block.
+   */
+  public static void writeRandom(DataOutputStream out, Random random) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream objects = new ObjectOutputStream(bytes);
+    objects.writeObject(random);
+    objects.close();
+
+    writeBlock(out, bytes.toByteArray());
+  }
+
+  /**
+   * readRandom
+   *
+   * Read a random number stream written by writeRandom.
+   * The returned stream continues exactly where the
+   * checkpointed one stopped.
+   */
+  public static Random readRandom(DataInputStream in) throws IOException {
+    ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(readBlock(in)));
+    try {
+      return (Random) objects.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Unknown random stream in checkpoint", e);
+    } finally {
+      objects.close();
+    }
+  }
+
+  public static void writeBlock(DataOutputStream out, byte[] block) throws IOException {
+    out.writeInt(block.length);
+    out.write(block);
+  }
+
+  public static byte[] readBlock(DataInputStream in) throws IOException {
+    byte[] block = new byte[in.readInt()];
+    in.readFully(block);
+    return block;
+  }
+}
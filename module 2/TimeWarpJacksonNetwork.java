@@ -0,0 +1,899 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Optimistic parallel simulation of a Jackson network (Time
+ * Warp). Nodes are partitioned into logical processes, one
+ * worker thread each, that process their events speculatively
+ * without waiting for each other. This suits feedback networks
+ * where routing has no delay and a conservative engine finds
+ * almost no lookahead.
+ *
+ * Every change an event makes to the model state is written
+ * to an undo log first (incremental state saving). When a
+ * customer from another process arrives in the past of the
+ * receiver (a straggler), the receiver undoes every event at
+ * or after the straggler's time, cancels the events they
+ * scheduled and sends anti-messages for the customers they
+ * routed away; an anti-message annihilates its customer or
+ * rolls the receiver back in turn. Rolled back events are put
+ * back in the event list and processed again.
+ *
+ * Periodically all processes stop and compute the global
+ * virtual time (GVT), the earliest time any of them can still
+ * be rolled back to. History before GVT is committed and its
+ * undo log freed (fossil collection). No process runs more
+ * than the optimism window ahead of GVT, which bounds memory.
+ *
+ * Every node draws from its own random streams in the same
+ * order as in JacksonNetwork, so with the same topology, seed
+ * and horizon the committed statistics equal those of the
+ * sequential run.
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class TimeWarpJacksonNetwork {
+
+  /** event types, stored in the lowest payload bits **/
+  private static final int ARRIVAL_EVENT = 0;
+  private static final int DEPARTURE_EVENT = 1;
+  private static final int ROUTED_EVENT = 2;
+
+  /** random streams of a node, as in JacksonNetwork **/
+  private static final int ARRIVAL_STREAM = 0;
+  private static final int SERVICE_STREAM = 1;
+  private static final int ROUTING_STREAM = 2;
+  private static final int STREAMS_PER_NODE = 3;
+
+  /** undo log entry kinds **/
+  private static final int NUMBER_IN_SYSTEM = 0;
+  private static final int AREA = 1;
+  private static final int LAST_CHANGE = 2;
+  private static final int ARRIVALS = 3;
+  private static final int DEPARTURES = 4;
+  private static final int BUSY_TIME = 5;
+  private static final int BUSY_SINCE = 6;
+  private static final int IDLE = 7;
+  private static final int STREAM = 8;
+  private static final int SCHEDULED = 9;
+  private static final int SENT = 10;
+  private static final int COUNTER = 11;
+  private static final int CLOCK = 12;
+
+  /** process counters saved through the undo log **/
+  private static final int EXTERNAL_ARRIVALS = 0;
+  private static final int EXTERNAL_DEPARTURES = 1;
+  private static final int TOTAL_DEPARTURES = 2;
+
+  private static final long DEFAULT_GVT_INTERVAL = 1000;
+
+  private int numberOfNodes;
+  private int numberOfProcesses;
+
+  /** logical process that owns every node **/
+  private int[] owner;
+
+  private RandomStreams streams;
+  private AliasTable[] routing;
+  private double[] lambda;
+  private double[] mu;
+
+  /** servers of node i are serverStart[i] .. serverStart[i+1]-1 **/
+  private int[] serverStart;
+  private int[] serverNode;
+  private IdleServerSet[] idleServers;
+  private double[] serverBusyTime;
+  private double[] serverBusySince;
+
+  private int[] numberInSystem;
+  private double[] areaNumberInSystem;
+  private double[] lastChangeTime;
+  private long[] arrivals;
+  private long[] departures;
+
+  private LogicalProcess[] processes;
+
+  /** values published by the processes during a GVT round **/
+  private long[] sentDuringRound;
+  private double[] localMinimum;
+  private volatile boolean quiet;
+  private volatile double gvt;
+  private volatile boolean finished;
+
+  private double horizon;
+  private double optimismWindow;
+  private long gvtInterval;
+  private long gvtRounds;
+  private double clock;
+
+  /**
+   * TimeWarpJacksonNetwork
+   *
+   * @param topology  : rates and routing matrix
+   * @param processes : number of logical processes (threads),
+   *                    nodes are split into contiguous blocks
+   * @param seed      : seed of the per node streams
+   */
+  public TimeWarpJacksonNetwork(NetworkTopology topology, int processes, long seed) {
+    this(topology, ParallelJacksonNetwork.blockPartition(topology.getNumberOfNodes(), processes), seed);
+  }
+
+  /**
+   * TimeWarpJacksonNetwork
+   *
+   * @param topology : rates and routing matrix
+   * @param owner    : logical process of every node, 0 .. P-1
+   * @param seed     : seed of the per node streams
+   */
+  public TimeWarpJacksonNetwork(NetworkTopology topology, int[] owner, long seed) {
+    numberOfNodes = topology.getNumberOfNodes();
+    if (owner.length != numberOfNodes) {
+      throw new IllegalArgumentException("Every node needs a logical process");
+    }
+    this.owner = owner.clone();
+    for (int process : owner) {
+      numberOfProcesses = Math.max(numberOfProcesses, process + 1);
+    }
+
+    horizon = Double.POSITIVE_INFINITY;
+    optimismWindow = Double.POSITIVE_INFINITY;
+    gvtInterval = DEFAULT_GVT_INTERVAL;
+    streams = new RandomStreams(STREAMS_PER_NODE * numberOfNodes, seed);
+
+    routing = new AliasTable[numberOfNodes];
+    lambda = new double[numberOfNodes];
+    mu = new double[numberOfNodes];
+    serverStart = new int[numberOfNodes + 1];
+    idleServers = new IdleServerSet[numberOfNodes];
+    for (int i = 0; i < numberOfNodes; i++) {
+      routing[i] = topology.routingTable(i);
+      lambda[i] = topology.getLambda(i);
+      mu[i] = topology.getMu(i);
+      serverStart[i + 1] = serverStart[i] + topology.getServers(i);
+      idleServers[i] = new IdleServerSet(topology.getServers(i));
+    }
+
+    serverNode = new int[serverStart[numberOfNodes]];
+    for (int i = 0; i < numberOfNodes; i++) {
+      for (int k = serverStart[i]; k < serverStart[i + 1]; k++) {
+        serverNode[k] = i;
+      }
+    }
+    serverBusyTime = new double[serverNode.length];
+    serverBusySince = new double[serverNode.length];
+
+    numberInSystem = new int[numberOfNodes];
+    areaNumberInSystem = new double[numberOfNodes];
+    lastChangeTime = new double[numberOfNodes];
+    arrivals = new long[numberOfNodes];
+    departures = new long[numberOfNodes];
+
+    sentDuringRound = new long[numberOfProcesses];
+    localMinimum = new double[numberOfProcesses];
+
+    List<List<Integer>> nodes = new ArrayList<List<Integer>>();
+    for (int p = 0; p < numberOfProcesses; p++) {
+      nodes.add(new ArrayList<Integer>());
+    }
+    for (int i = 0; i < numberOfNodes; i++) {
+      nodes.get(owner[i]).add(i);
+    }
+
+    processes = new LogicalProcess[numberOfProcesses];
+    for (int p = 0; p < numberOfProcesses; p++) {
+      processes[p] = new LogicalProcess(p, nodes.get(p));
+    }
+  }
+
+  /**
+   * setHorizon
+   *
+   * Stop the simulation at the given simulated time
+   */
+  public void setHorizon(double horizon) {
+    this.horizon = horizon;
+  }
+
+  /**
+   * setOptimismWindow
+   *
+   * No process runs further than window ahead of GVT
+   */
+  public void setOptimismWindow(double optimismWindow) {
+    this.optimismWindow = optimismWindow;
+  }
+
+  /**
+   * setGvtInterval
+   *
+   * Events a process handles between two GVT rounds
+   */
+  public void setGvtInterval(long gvtInterval) {
+    this.gvtInterval = Math.max(1, gvtInterval);
+  }
+
+  /**
+   * run
+   *
+   * run the simulation until GVT passes the horizon
+   */
+  public void run() throws InterruptedException {
+    if (Double.isInfinite(horizon)) {
+      throw new IllegalStateException("The time warp network needs a horizon");
+    }
+
+    final CyclicBarrier pause = new CyclicBarrier(numberOfProcesses);
+    final CyclicBarrier drained = new CyclicBarrier(numberOfProcesses, new Runnable() {
+      public void run() {
+        endOfDrain();
+      }
+    });
+
+    final Throwable[] failure = new Throwable[1];
+    Thread[] workers = new Thread[numberOfProcesses];
+    for (int p = 0; p < numberOfProcesses; p++) {
+      final LogicalProcess process = processes[p];
+      workers[p] = new Thread(new Runnable() {
+        public void run() {
+          try {
+            process.run(pause, drained);
+          } catch (Throwable e) {
+            synchronized (failure) {
+              failure[0] = e;
+            }
+            pause.reset();
+            drained.reset();
+          }
+        }
+      }, "process-" + p);
+      workers[p].start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    if (failure[0] != null) {
+      throw new IllegalStateException("Logical process failed", failure[0]);
+    }
+
+    // close the time weighted statistics at the final clock
+    clock = 0.0;
+    for (LogicalProcess process : processes) {
+      clock = Math.max(clock, process.clock);
+    }
+    for (int i = 0; i < numberOfNodes; i++) {
+      areaNumberInSystem[i] += numberInSystem[i] * (clock - lastChangeTime[i]);
+      lastChangeTime[i] = clock;
+    }
+  }
+
+  /**
+   * endOfDrain
+   *
+   * Barrier action of a GVT round: once a drain pass sends
+   * no messages every inbox is empty and GVT is the earliest
+   * unprocessed event of any process.
+   */
+  private void endOfDrain() {
+    boolean sent = false;
+    double minimum = Double.POSITIVE_INFINITY;
+    for (int p = 0; p < numberOfProcesses; p++) {
+      sent |= sentDuringRound[p] > 0;
+      minimum = Math.min(minimum, localMinimum[p]);
+    }
+
+    quiet = !sent;
+    if (quiet) {
+      gvt = minimum;
+      finished = minimum > horizon;
+      gvtRounds += 1;
+    }
+  }
+
+  /**
+   * Message
+   *
+   * A customer routed to a node of another process, or the
+   * anti-message that cancels it.
+   */
+  private static class Message {
+    private double time;
+    private int node;
+    private long id;
+    private boolean anti;
+
+    private Message(double time, int node, long id, boolean anti) {
+      this.time = time;
+      this.node = node;
+      this.id = id;
+      this.anti = anti;
+    }
+  }
+
+  /**
+   * LogicalProcess
+   *
+   * The nodes of one worker thread, their pending events,
+   * the processed history and the undo log.
+   */
+  private class LogicalProcess {
+
+    private int id;
+    private int[] nodes;
+
+    private ConcurrentLinkedQueue<Message> inbox;
+    private List<Message> batch;
+
+    /** pending events, payload is an index into the event pool **/
+    private EventList events;
+
+    /** event pool **/
+    private double[] eventTime;
+    private int[] eventPayload;
+    private long[] eventMessage;
+    private boolean[] eventCancelled;
+    private int[] freeEvents;
+    private int freeCount;
+    private int poolSize;
+
+    /** pool index of every customer received and not committed **/
+    private Map<Long, Integer> received;
+
+    /** processed, uncommitted events in processing order **/
+    private int[] historyEvent;
+    private int[] historyLogStart;
+    private int historySize;
+
+    /** undo log **/
+    private int[] logKind;
+    private int[] logIndex;
+    private long[] logValue;
+    private int logSize;
+
+    private double clock;
+    private long externalArrivals;
+    private long externalDepartures;
+    private long totalNumberOfDepartures;
+
+    private long nextMessage;
+    private long sentSinceRound;
+    private long eventsSinceRound;
+
+    /** performance counters **/
+    private long eventsProcessed;
+    private long eventsRolledBack;
+    private long rollbacks;
+    private long antiMessages;
+
+    private LogicalProcess(int id, List<Integer> nodeList) {
+      this.id = id;
+      nodes = new int[nodeList.size()];
+      for (int k = 0; k < nodes.length; k++) {
+        nodes[k] = nodeList.get(k);
+      }
+
+      inbox = new ConcurrentLinkedQueue<Message>();
+      batch = new ArrayList<Message>();
+      events = new EventList(2 * nodes.length);
+      received = new HashMap<Long, Integer>();
+
+      int capacity = Math.max(16, 2 * nodes.length);
+      eventTime = new double[capacity];
+      eventPayload = new int[capacity];
+      eventMessage = new long[capacity];
+      eventCancelled = new boolean[capacity];
+      freeEvents = new int[capacity];
+
+      historyEvent = new int[capacity];
+      historyLogStart = new int[capacity];
+      logKind = new int[4 * capacity];
+      logIndex = new int[4 * capacity];
+      logValue = new long[4 * capacity];
+    }
+
+    private void run(CyclicBarrier pause, CyclicBarrier drained) throws Exception {
+      for (int node : nodes) {
+        scheduleExternalArrival(node, false);
+      }
+
+      while (true) {
+        drainInbox();
+
+        double limit = Math.min(gvt + optimismWindow, horizon);
+        boolean blocked = !skipCancelled() || events.firstTime() > limit;
+        if (blocked || eventsSinceRound >= gvtInterval) {
+          gvtRound(pause, drained);
+          if (finished) {
+            break;
+          }
+          continue;
+        }
+
+        processNext();
+      }
+    }
+
+    /**
+     * gvtRound
+     *
+     * stop processing, drain inboxes until no process sends
+     * anything, agree on GVT and commit the history before it
+     */
+    private void gvtRound(CyclicBarrier pause, CyclicBarrier drained) throws Exception {
+      pause.await();
+      do {
+        sentSinceRound = 0;
+        drainInbox();
+        sentDuringRound[id] = sentSinceRound;
+        localMinimum[id] = skipCancelled() ? events.firstTime() : Double.POSITIVE_INFINITY;
+        drained.await();
+      } while (!quiet);
+
+      fossilCollect(gvt);
+      eventsSinceRound = 0;
+    }
+
+    /**
+     * drainInbox
+     *
+     * insert received customers and annihilate customers
+     * cancelled by anti-messages. All waiting messages are
+     * taken at once so stragglers cause a single rollback to
+     * the earliest of them.
+     */
+    private void drainInbox() {
+      Message message;
+      double earliest = Double.POSITIVE_INFINITY;
+      while ((message = inbox.poll()) != null) {
+        batch.add(message);
+        earliest = Math.min(earliest, message.time);
+      }
+      if (batch.isEmpty()) {
+        return;
+      }
+
+      if (historySize > 0 && earliest <= clock) {
+        rollback(earliest);
+      }
+
+      for (int k = 0; k < batch.size(); k++) {
+        message = batch.get(k);
+        if (message.anti) {
+          eventCancelled[received.remove(message.id)] = true;
+        } else {
+          int event = newEvent(message.time, (message.node << 2) | ROUTED_EVENT, message.id);
+          received.put(message.id, event);
+          events.add(message.time, event);
+        }
+      }
+      batch.clear();
+    }
+
+    /** drop cancelled events from the front of the list **/
+    private boolean skipCancelled() {
+      while (!events.isEmpty() && eventCancelled[events.firstPayload()]) {
+        freeEvent(events.firstPayload());
+        events.removeFirst();
+      }
+      return !events.isEmpty();
+    }
+
+    private void processNext() {
+      int event = events.firstPayload();
+      double time = events.firstTime();
+      events.removeFirst();
+
+      if (historySize == historyEvent.length) {
+        historyEvent = Arrays.copyOf(historyEvent, 2 * historySize);
+        historyLogStart = Arrays.copyOf(historyLogStart, 2 * historySize);
+      }
+      historyEvent[historySize] = event;
+      historyLogStart[historySize] = logSize;
+      historySize += 1;
+
+      // Advance clock to next event time
+      logDouble(CLOCK, 0, clock);
+      clock = time;
+
+      int payload = eventPayload[event];
+      int type = payload & 3;
+      if (type == DEPARTURE_EVENT) {
+        departureEvent(payload >>> 2);
+      } else if (type == ROUTED_EVENT) {
+        arrival(payload >>> 2);
+      } else {
+        int node = payload >>> 2;
+        scheduleExternalArrival(node, true);
+        count(EXTERNAL_ARRIVALS);
+        arrival(node);
+      }
+
+      eventsProcessed += 1;
+      eventsSinceRound += 1;
+    }
+
+    /**
+     * rollback
+     *
+     * undo every processed event at or after time, newest
+     * first, and put the events back in the event list
+     */
+    private void rollback(double time) {
+      rollbacks += 1;
+      while (historySize > 0 && eventTime[historyEvent[historySize - 1]] >= time) {
+        historySize -= 1;
+        int event = historyEvent[historySize];
+        undo(historyLogStart[historySize]);
+        events.add(eventTime[event], event);
+        eventsRolledBack += 1;
+      }
+    }
+
+    /**
+     * undo
+     *
+     * restore the state saved in the log since start
+     */
+    private void undo(int start) {
+      while (logSize > start) {
+        logSize -= 1;
+        int index = logIndex[logSize];
+        long value = logValue[logSize];
+        switch (logKind[logSize]) {
+          case NUMBER_IN_SYSTEM: numberInSystem[index] = (int) value; break;
+          case AREA: areaNumberInSystem[index] = Double.longBitsToDouble(value); break;
+          case LAST_CHANGE: lastChangeTime[index] = Double.longBitsToDouble(value); break;
+          case ARRIVALS: arrivals[index] = value; break;
+          case DEPARTURES: departures[index] = value; break;
+          case BUSY_TIME: serverBusyTime[index] = Double.longBitsToDouble(value); break;
+          case BUSY_SINCE: serverBusySince[index] = Double.longBitsToDouble(value); break;
+          case IDLE:
+            int node = serverNode[index];
+            if (value != 0) {
+              idleServers[node].add(index - serverStart[node]);
+            } else {
+              idleServers[node].remove(index - serverStart[node]);
+            }
+            break;
+          case STREAM: streams.setState(index, value); break;
+          case SCHEDULED: eventCancelled[index] = true; break;
+          case SENT:
+            // clock is restored last, so it still holds the send time
+            processes[index].inbox.add(new Message(clock, -1, value, true));
+            antiMessages += 1;
+            sentSinceRound += 1;
+            break;
+          case COUNTER: setCounter(index, value); break;
+          case CLOCK: clock = Double.longBitsToDouble(value); break;
+          default: throw new IllegalStateException("Unknown undo log entry " + logKind[logSize]);
+        }
+      }
+    }
+
+    /**
+     * fossilCollect
+     *
+     * commit the history before GVT: it can no longer be
+     * rolled back, so its undo log and events are freed
+     */
+    private void fossilCollect(double gvt) {
+      int committed = 0;
+      while (committed < historySize && eventTime[historyEvent[committed]] < gvt) {
+        int event = historyEvent[committed];
+        if (eventMessage[event] >= 0) {
+          received.remove(eventMessage[event]);
+        }
+        freeEvent(event);
+        committed += 1;
+      }
+      if (committed == 0) {
+        return;
+      }
+
+      int logStart = committed < historySize ? historyLogStart[committed] : logSize;
+      System.arraycopy(logKind, logStart, logKind, 0, logSize - logStart);
+      System.arraycopy(logIndex, logStart, logIndex, 0, logSize - logStart);
+      System.arraycopy(logValue, logStart, logValue, 0, logSize - logStart);
+      logSize -= logStart;
+
+      for (int k = committed; k < historySize; k++) {
+        historyEvent[k - committed] = historyEvent[k];
+        historyLogStart[k - committed] = historyLogStart[k] - logStart;
+      }
+      historySize -= committed;
+    }
+
+    private void scheduleExternalArrival(int node, boolean saveState) {
+      if (lambda[node] > 0) {
+        int stream = STREAMS_PER_NODE * node + ARRIVAL_STREAM;
+        if (saveState) {
+          log(STREAM, stream, streams.getState(stream));
+        }
+        double interArrivalTime = streams.nextExponential(stream, lambda[node]);
+        schedule(clock + interArrivalTime, (node << 2) | ARRIVAL_EVENT, saveState);
+      }
+    }
+
+    private void arrival(int node) {
+      updateArea(node);
+
+      log(NUMBER_IN_SYSTEM, node, numberInSystem[node]);
+      log(ARRIVALS, node, arrivals[node]);
+      numberInSystem[node] += 1;
+      arrivals[node] += 1;
+
+      // Is a server idle?
+      if (numberInSystem[node] <= idleServers[node].servers()) {
+        int local = idleServers[node].first();
+        int server = serverStart[node] + local;
+        log(IDLE, server, 1);
+        idleServers[node].remove(local);
+        logDouble(BUSY_SINCE, server, serverBusySince[server]);
+        serverBusySince[server] = clock;
+        startService(node, server);
+      }
+    }
+
+    private void departureEvent(int server) {
+      int node = serverNode[server];
+      updateArea(node);
+
+      log(NUMBER_IN_SYSTEM, node, numberInSystem[node]);
+      log(DEPARTURES, node, departures[node]);
+      numberInSystem[node] -= 1;
+      departures[node] += 1;
+      count(TOTAL_DEPARTURES);
+
+      // Is LQ(t) > 0? The freed server takes the next customer
+      if (numberInSystem[node] >= idleServers[node].servers()) {
+        startService(node, server);
+      } else {
+        logDouble(BUSY_TIME, server, serverBusyTime[server]);
+        serverBusyTime[server] += clock - serverBusySince[server];
+        log(IDLE, server, 0);
+        idleServers[node].add(server - serverStart[node]);
+      }
+
+      // Route the customer to its next node
+      int stream = STREAMS_PER_NODE * node + ROUTING_STREAM;
+      log(STREAM, stream, streams.getState(stream));
+      int next = routing[node].sample(streams.nextDouble(stream));
+      if (next < 0) {
+        count(EXTERNAL_DEPARTURES);
+      } else if (owner[next] == id) {
+        arrival(next);
+      } else {
+        long message = ((long) id << 40) | nextMessage++;
+        log(SENT, owner[next], message);
+        processes[owner[next]].inbox.add(new Message(clock, next, message, false));
+        sentSinceRound += 1;
+      }
+    }
+
+    private void startService(int node, int server) {
+      int stream = STREAMS_PER_NODE * node + SERVICE_STREAM;
+      log(STREAM, stream, streams.getState(stream));
+      double serviceTime = streams.nextExponential(stream, mu[node]);
+      schedule(clock + serviceTime, (server << 2) | DEPARTURE_EVENT, true);
+    }
+
+    private void updateArea(int node) {
+      logDouble(AREA, node, areaNumberInSystem[node]);
+      logDouble(LAST_CHANGE, node, lastChangeTime[node]);
+      areaNumberInSystem[node] += numberInSystem[node] * (clock - lastChangeTime[node]);
+      lastChangeTime[node] = clock;
+    }
+
+    private void schedule(double time, int payload, boolean saveState) {
+      int event = newEvent(time, payload, -1);
+      if (saveState) {
+        log(SCHEDULED, event, 0);
+      }
+      events.add(time, event);
+    }
+
+    private void count(int counter) {
+      long value = counter == EXTERNAL_ARRIVALS ? externalArrivals
+        : counter == EXTERNAL_DEPARTURES ? externalDepartures : totalNumberOfDepartures;
+      log(COUNTER, counter, value);
+      setCounter(counter, value + 1);
+    }
+
+    private void setCounter(int counter, long value) {
+      if (counter == EXTERNAL_ARRIVALS) {
+        externalArrivals = value;
+      } else if (counter == EXTERNAL_DEPARTURES) {
+        externalDepartures = value;
+      } else {
+        totalNumberOfDepartures = value;
+      }
+    }
+
+    private void logDouble(int kind, int index, double value) {
+      log(kind, index, Double.doubleToRawLongBits(value));
+    }
+
+    private void log(int kind, int index, long value) {
+      if (logSize == logKind.length) {
+        logKind = Arrays.copyOf(logKind, 2 * logSize);
+        logIndex = Arrays.copyOf(logIndex, 2 * logSize);
+        logValue = Arrays.copyOf(logValue, 2 * logSize);
+      }
+      logKind[logSize] = kind;
+      logIndex[logSize] = index;
+      logValue[logSize] = value;
+      logSize += 1;
+    }
+
+    private int newEvent(double time, int payload, long message) {
+      int event;
+      if (freeCount > 0) {
+        event = freeEvents[--freeCount];
+      } else {
+        if (poolSize == eventTime.length) {
+          int capacity = 2 * poolSize;
+          eventTime = Arrays.copyOf(eventTime, capacity);
+          eventPayload = Arrays.copyOf(eventPayload, capacity);
+          eventMessage = Arrays.copyOf(eventMessage, capacity);
+          eventCancelled = Arrays.copyOf(eventCancelled, capacity);
+          freeEvents = Arrays.copyOf(freeEvents, capacity);
+        }
+        event = poolSize++;
+      }
+      eventTime[event] = time;
+      eventPayload[event] = payload;
+      eventMessage[event] = message;
+      eventCancelled[event] = false;
+      return event;
+    }
+
+    private void freeEvent(int event) {
+      freeEvents[freeCount++] = event;
+    }
+  }
+
+  /** time average number of customers at a node **/
+  public double getAverageNumberInSystem(int node) {
+    return clock > 0 ? areaNumberInSystem[node] / clock : 0.0;
+  }
+
+  /** fraction of time the servers of a node are busy **/
+  public double getUtilization(int node) {
+    double busy = 0.0;
+    for (int k = 0; k < getServers(node); k++) {
+      busy += getServerUtilization(node, k);
+    }
+    return busy / getServers(node);
+  }
+
+  /** fraction of time one server of a node is busy **/
+  public double getServerUtilization(int node, int server) {
+    int k = serverStart[node] + server;
+    double busy = serverBusyTime[k];
+    if (!idleServers[node].contains(server)) {
+      busy += clock - serverBusySince[k];
+    }
+    return clock > 0 ? busy / clock : 0.0;
+  }
+
+  /** average time per visit at a node (Little's law) **/
+  public double getAverageSojournTime(int node) {
+    return arrivals[node] > 0 ? areaNumberInSystem[node] / arrivals[node] : 0.0;
+  }
+
+  /** average time in the network per customer (Little's law) **/
+  public double getAverageNetworkDelay() {
+    double area = 0.0;
+    for (int i = 0; i < numberOfNodes; i++) {
+      area += areaNumberInSystem[i];
+    }
+    long externalArrivals = 0;
+    for (LogicalProcess process : processes) {
+      externalArrivals += process.externalArrivals;
+    }
+    return externalArrivals > 0 ? area / externalArrivals : 0.0;
+  }
+
+  public int getServers(int node) {
+    return serverStart[node + 1] - serverStart[node];
+  }
+
+  public int getNumberOfNodes() {
+    return numberOfNodes;
+  }
+
+  public double getClock() {
+    return clock;
+  }
+
+  public long getGvtRounds() {
+    return gvtRounds;
+  }
+
+  /** events processed, including the ones rolled back **/
+  public long getEventsProcessed() {
+    long total = 0;
+    for (LogicalProcess process : processes) {
+      total += process.eventsProcessed;
+    }
+    return total;
+  }
+
+  public long getEventsRolledBack() {
+    long total = 0;
+    for (LogicalProcess process : processes) {
+      total += process.eventsRolledBack;
+    }
+    return total;
+  }
+
+  /**
+   * events that were processed and never undone, including
+   * customers received from other processes
+   */
+  public long getEventsCommitted() {
+    return getEventsProcessed() - getEventsRolledBack();
+  }
+
+  public long getRollbacks() {
+    long total = 0;
+    for (LogicalProcess process : processes) {
+      total += process.rollbacks;
+    }
+    return total;
+  }
+
+  public long getAntiMessages() {
+    long total = 0;
+    for (LogicalProcess process : processes) {
+      total += process.antiMessages;
+    }
+    return total;
+  }
+
+  /** rolled back events per processed event **/
+  public double getRollbackRate() {
+    long processed = getEventsProcessed();
+    return processed > 0 ? (double) getEventsRolledBack() / processed : 0.0;
+  }
+
+  /** committed events per processed event **/
+  public double getEfficiency() {
+    long processed = getEventsProcessed();
+    return processed > 0 ? (double) getEventsCommitted() / processed : 1.0;
+  }
+
+  public long getTotalNumberOfDepartures() {
+    long total = 0;
+    for (LogicalProcess process : processes) {
+      total += process.totalNumberOfDepartures;
+    }
+    return total;
+  }
+
+  public void printResults() {
+    int shown = Math.min(numberOfNodes, 20);
+    for (int i = 0; i < shown; i++) {
+      System.out.println("Node " + i +
+        ": L = " + getAverageNumberInSystem(i) +
+        ", W = " + getAverageSojournTime(i) +
+        ", utilization = " + getUtilization(i));
+    }
+    if (shown < numberOfNodes) {
+      System.out.println("... " + (numberOfNodes - shown) + " more nodes");
+    }
+
+    long externalArrivals = 0;
+    long externalDepartures = 0;
+    for (LogicalProcess process : processes) {
+      externalArrivals += process.externalArrivals;
+      externalDepartures += process.externalDepartures;
+    }
+
+    System.out.println("Average network delay: " + getAverageNetworkDelay());
+    System.out.println("Customers in: " + externalArrivals + ", out: " + externalDepartures);
+    System.out.println("Processes: " + numberOfProcesses + ", GVT rounds: " + gvtRounds +
+      ", rollbacks: " + getRollbacks() + ", anti-messages: " + getAntiMessages());
+    System.out.println("Rollback rate: " + getRollbackRate() + ", efficiency: " + getEfficiency());
+  }
+}
@@ -0,0 +1,175 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * Time weighted accumulator of an integer valued state L(t),
+ * for example the number of customers at a station or the
+ * number of busy servers. Every change of L(t) adds the
+ * rectangle since the previous change to the area under
+ * L(t) and to the time spent in the previous state, in O(1)
+ * and without storing samples. Long-run averages and the
+ * time-in-state distribution follow directly:
+ *
+ *      average = area / elapsed
+ *      P(L = k) = timeInState[k] / elapsed
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class TimeWeightedStatistic {
+
+  private static final int INITIAL_STATES = 16;
+
+  /** current value of L(t) **/
+  private int value;
+
+  /** time of the last change **/
+  private double lastChange;
+
+  /** start of the accumulation **/
+  private double startTime;
+
+  /** area under L(t) up to lastChange **/
+  private double area;
+
+  /** time spent in every state up to lastChange **/
+  private double[] timeInState;
+
+  private int maxValue;
+
+  /**
+   * TimeWeightedStatistic
+   *
+   * @param startTime : time the accumulation starts, with L = 0
+   */
+  public TimeWeightedStatistic(double startTime) {
+    this.startTime = startTime;
+    lastChange = startTime;
+    timeInState = new double[INITIAL_STATES];
+  }
+
+  /**
+   * update
+   *
+   * L(t) changes to the given value at the given time
+   */
+  public void update(int newValue, double time) {
+    double elapsed = time - lastChange;
+    area += value * elapsed;
+    timeInState[value] += elapsed;
+    lastChange = time;
+
+    if (newValue >= timeInState.length) {
+      timeInState = Arrays.copyOf(timeInState, Math.max(2 * timeInState.length, newValue + 1));
+    }
+    value = newValue;
+    maxValue = Math.max(maxValue, newValue);
+  }
+
+  /**
+   * reset
+   *
+   * discard everything accumulated before the given time,
+   * keeping the current value of L(t)
+   */
+  public void reset(double time) {
+    area = 0.0;
+    Arrays.fill(timeInState, 0.0);
+    startTime = time;
+    lastChange = time;
+    maxValue = value;
+  }
+
+  public int getValue() {
+    return value;
+  }
+
+  public int getMaxValue() {
+    return maxValue;
+  }
+
+  /**
+   * getArea
+   *
+   * @return area under L(t) from the start up to now
+   */
+  public double getArea(double now) {
+    return area + value * (now - lastChange);
+  }
+
+  /**
+   * getAverage
+   *
+   * @return time average of L(t) up to now
+   */
+  public double getAverage(double now) {
+    double elapsed = now - startTime;
+    return elapsed > 0 ? getArea(now) / elapsed : 0.0;
+  }
+
+  /**
+   * getTimeInState
+   *
+   * @return total time L(t) = state up to now
+   */
+  public double getTimeInState(int state, double now) {
+    if (state < 0 || state >= timeInState.length) {
+      return 0.0;
+    }
+    double time = timeInState[state];
+    if (state == value) {
+      time += now - lastChange;
+    }
+    return time;
+  }
+
+  /**
+   * getStateProbability
+   *
+   * @return long-run fraction of time L(t) = state
+   */
+  public double getStateProbability(int state, double now) {
+    double elapsed = now - startTime;
+    return elapsed > 0 ? getTimeInState(state, now) / elapsed : 0.0;
+  }
+
+  /**
+   * getTimeInStates
+   *
+   * @return time spent in states 0..max up to now
+   */
+  public double[] getTimeInStates(double now) {
+    double[] times = new double[maxValue + 1];
+    for (int state = 0; state <= maxValue; state++) {
+      times[state] = getTimeInState(state, now);
+    }
+    return times;
+  }
+
+  public double getStartTime() {
+    return startTime;
+  }
+
+  public void writeState(DataOutputStream out) throws IOException {
+    out.writeInt(value);
+    out.writeDouble(lastChange);
+    out.writeDouble(startTime);
+    out.writeDouble(area);
+    out.writeInt(maxValue);
+    for (int state = 0; state <= maxValue; state++) {
+      out.writeDouble(timeInState[state]);
+    }
+  }
+
+  public void readState(DataInputStream in) throws IOException {
+    value = in.readInt();
+    lastChange = in.readDouble();
+    startTime = in.readDouble();
+    area = in.readDouble();
+    maxValue = in.readInt();
+    timeInState = new double[Math.max(INITIAL_STATES, maxValue + 1)];
+    for (int state = 0; state <= maxValue; state++) {
+      timeInState[state] = in.readDouble();
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/**
+ * Weighted round robin routing: server i receives weight[i]
+ * customers out of every sum(weight). The order is the smooth
+ * weighted round robin sequence, which spreads the turns of a
+ * heavy server instead of sending them back to back; it is
+ * computed once so choosing a server is O(1).
+ *
+ * @author Kevin Rosengren, Ian Wong, Nikola Neskovic
+ * @version 10/04/16
+ */
+public class WeightedRoundRobinRouting implements RoutingPolicy {
+
+  private int[] schedule;
+  private int next;
+
+  public WeightedRoundRobinRouting(int[] weights) {
+    int total = 0;
+    for (int weight : weights) {
+      if (weight < 0) {
+        throw new IllegalArgumentException("Weights must not be negative");
+      }
+      total += weight;
+    }
+    if (total == 0) {
+      throw new IllegalArgumentException("At least one weight must be positive");
+    }
+
+    schedule = new int[total];
+    int[] current = new int[weights.length];
+    for (int turn = 0; turn < total; turn++) {
+      int best = 0;
+      for (int i = 0; i < weights.length; i++) {
+        current[i] += weights[i];
+        if (current[i] > current[best]) {
+          best = i;
+        }
+      }
+      current[best] -= total;
+      schedule[turn] = best;
+    }
+
+    next = 0;
+  }
+
+  public int chooseServer(double serviceTime, double clock) {
+    int server = schedule[next];
+    next = (next + 1) % schedule.length;
+    return server;
+  }
+
+  public void customerArrived(int server, double serviceTime, double clock) {
+  }
+
+  public void customerDeparted(int server, double clock) {
+  }
+}